@@ -0,0 +1,82 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.TaskAssigner;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of TaskAssigner: as many idle agents as tasks at random cells of a warehouse, assigned with each method. Shows the time of the
+ * first round and of a second round with the same goals (when HUNGARIAN has their distances cached), the number of goals given an agent,
+ * the total distance and how far over the total of HUNGARIAN that is. HUNGARIAN is left out above a few thousand tasks, where the other two
+ * run on a larger warehouse.
+ * <p>
+ * Usage: AssignmentBenchmark [tasks, default 100,500,1000,10000] [largest for HUNGARIAN, default 1000]
+ * @author Sam
+ */
+public class AssignmentBenchmark {
+	
+	public static void main(String[] args) {
+		int[] sizes = args.length > 0 ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+				: new int[] { 100, 500, 1000, 10000 };
+		int exactLimit = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		
+		PrintStream out = System.out;
+		
+		// A short run first to warm up the JIT
+		for (TaskAssigner.Method method : TaskAssigner.Method.values()) {
+			run(null, method, 200, 0);
+		}
+		
+		out.printf("%-10s %7s %11s %11s %9s %12s %8s%n", "method", "tasks", "first ms", "second ms", "assigned", "distance", "over");
+		for (int n : sizes) {
+			long exact = n <= exactLimit ? run(out, TaskAssigner.Method.HUNGARIAN, n, 0) : 0;
+			run(out, TaskAssigner.Method.GREEDY, n, exact);
+			run(out, TaskAssigner.Method.AUCTION, n, exact);
+		}
+	}
+	
+	/**
+	 * Assign n tasks to n agents twice with the given method, printing a row
+	 * @return total distance
+	 */
+	private static long run(PrintStream out, TaskAssigner.Method method, int n, long exact) {
+		WorldMap map = n > 2000 ? Scenarios.warehouse(1024, 512) : Scenarios.warehouse(256, 256);
+		int[] area = Scenarios.largestArea(map.getGraph());
+		
+		// Agents and goals all in different cells
+		Random r = new Random(n);
+		int[] cells = area.clone();
+		for (int i = 0; i < 2 * n; i++) {
+			int j = i + r.nextInt(cells.length - i);
+			int swap = cells[i];
+			cells[i] = cells[j];
+			cells[j] = swap;
+		}
+		int[] agents = Arrays.copyOfRange(cells, 0, n);
+		int[] goals = Arrays.copyOfRange(cells, n, 2 * n);
+		
+		TaskAssigner assigner = new TaskAssigner(map, method);
+		long t0 = System.nanoTime();
+		int[] result = assigner.assign(agents, goals);
+		long t1 = System.nanoTime();
+		assigner.assign(agents, goals);
+		long t2 = System.nanoTime();
+		
+		int assigned = 0;
+		for (int a : result) {
+			if (a >= 0) {
+				assigned++;
+			}
+		}
+		long cost = assigner.getCost();
+		if (out != null) {
+			out.printf("%-10s %7d %11.1f %11.1f %9d %12d %8s%n", method, n, (t1 - t0) / 1e6, (t2 - t1) / 1e6, assigned, cost,
+					exact > 0 ? String.format("%.1f%%", 100.0 * (cost - exact) / exact) : "");
+		}
+		return cost;
+	}
+	
+}
@@ -0,0 +1,68 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.samchatfield.pathfinding.BatchPlanner;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of BatchPlanner: batches of random queries on a warehouse, run on fixed pools of 1, 2, 4... threads up to the number of cores.
+ * Shows the throughput, the speed up over one thread and the median and 99th percentile time of a single query.
+ * <p>
+ * Usage: BatchBenchmark [queries per batch, default 2000] [batches, default 5]
+ * @author Sam
+ */
+public class BatchBenchmark {
+	
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int batches = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		PrintStream out = System.out;
+		
+		WorldMap map = Scenarios.warehouse(512, 512);
+		int[] area = Scenarios.largestArea(map.getGraph());
+		Random r = new Random(1);
+		int[] starts = new int[queries];
+		int[] goals = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			starts[i] = area[r.nextInt(area.length)];
+			goals[i] = area[r.nextInt(area.length)];
+		}
+		map.getJumpTable();
+		
+		out.printf("%-8s %14s %10s %10s %10s%n", "threads", "queries/s", "speed up", "p50 us", "p99 us");
+		int cores = Runtime.getRuntime().availableProcessors();
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				BatchPlanner planner = new BatchPlanner(map, pool);
+				planner.plan(starts, goals);
+				long[] nanos = new long[queries * batches];
+				long t0 = System.nanoTime();
+				for (int b = 0; b < batches; b++) {
+					List<BatchPlanner.Result> results = planner.plan(starts, goals);
+					for (int i = 0; i < queries; i++) {
+						nanos[b * queries + i] = results.get(i).getNanos();
+					}
+				}
+				double rate = (double) queries * batches / ((System.nanoTime() - t0) / 1e9);
+				if (threads == 1) {
+					single = rate;
+				}
+				Arrays.sort(nanos);
+				out.printf("%-8d %14.0f %9.2fx %10.1f %10.1f%n", threads, rate, rate / single, nanos[nanos.length / 2] / 1e3,
+						nanos[nanos.length * 99 / 100] / 1e3);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+	
+}
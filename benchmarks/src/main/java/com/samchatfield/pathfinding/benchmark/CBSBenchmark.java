@@ -0,0 +1,73 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.ConflictBasedSearch;
+import com.samchatfield.pathfinding.MultiAgentPlanning;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of Conflict-Based Search against prioritised Cooperative A* (MultiAgentPlanning): the share of random instances each solves
+ * (a complete plan without conflicts) for increasing numbers of agents on the default warehouse and on larger random maps, with the average
+ * time taken and, for CBS, the average number of constraint tree nodes expanded. Where both solve an instance the ratio of the CA* sum of
+ * costs to the (optimal) CBS one is shown.
+ * <p>
+ * Usage: CBSBenchmark [instances per row, default 10] [CBS time limit in ms, default 2000]
+ * @author Sam
+ */
+public class CBSBenchmark {
+	
+	public static void main(String[] args) {
+		int instances = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		long limitMs = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		
+		PrintStream out = System.out;
+		
+		out.printf("%-16s %6s | %8s %9s %9s | %8s %9s | %8s%n", "map", "agents", "CBS", "avg ms", "avg nodes", "CA*", "avg ms", "CA*/CBS");
+		run(out, "warehouse 12x8", new WorldMap(), new int[] { 2, 4, 6, 8, 10, 12 }, instances, limitMs);
+		run(out, "random 32x32", WorldMap.random(32, 32, 0.2, 1), new int[] { 10, 20, 30, 40, 50 }, instances, limitMs);
+		run(out, "random 64x64", WorldMap.random(64, 64, 0.2, 2), new int[] { 20, 40, 60, 80, 100 }, instances, limitMs);
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, int[] counts, int instances, long limitMs) {
+		ConflictBasedSearch cbs = new ConflictBasedSearch(map, Integer.MAX_VALUE, limitMs, null);
+		MultiAgentPlanning ca = new MultiAgentPlanning(map);
+		
+		for (int n : counts) {
+			int cbsSolved = 0, caSolved = 0;
+			long cbsNanos = 0, caNanos = 0, nodes = 0;
+			double ratio = 0;
+			int both = 0;
+			
+			for (int i = 0; i < instances; i++) {
+				ArrayList<Agent> as = Scenarios.random(map, n, i);
+				long t0 = System.nanoTime();
+				cbs.computePlan(as);
+				cbsNanos += System.nanoTime() - t0;
+				nodes += cbs.getExpanded();
+				int optimal = cbs.isSolved() ? PlanChecker.sumOfCosts(as) : -1;
+				if (cbs.isSolved()) {
+					cbsSolved++;
+				}
+				
+				as = Scenarios.random(map, n, i);
+				t0 = System.nanoTime();
+				ca.computePlan(as);
+				caNanos += System.nanoTime() - t0;
+				if (PlanChecker.complete(as) && PlanChecker.conflicts(as) == 0) {
+					caSolved++;
+					if (optimal > 0) {
+						ratio += (double) PlanChecker.sumOfCosts(as) / optimal;
+						both++;
+					}
+				}
+			}
+			out.printf("%-16s %6d | %7.0f%% %9.1f %9.1f | %7.0f%% %9.1f | %8s%n", name, n, 100.0 * cbsSolved / instances,
+					cbsNanos / 1e6 / instances, (double) nodes / instances, 100.0 * caSolved / instances, caNanos / 1e6 / instances,
+					both == 0 ? "-" : String.format("%.3f", ratio / both));
+		}
+	}
+	
+}
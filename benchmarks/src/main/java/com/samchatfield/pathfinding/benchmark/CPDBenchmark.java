@@ -0,0 +1,94 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.FirstMoveSearch;
+import com.samchatfield.pathfinding.JumpPointSearch;
+import com.samchatfield.pathfinding.data.CompressedPathDatabase;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of the Compressed Path Database: the time to build it, its size in runs and bytes against the uncompressed table, and the
+ * average query time of FirstMoveSearch on the memory-mapped file against A* and Jump Point Search. Every path is checked to be as short as
+ * the A* one.
+ * <p>
+ * Usage: CPDBenchmark [queries per map, default 5000]
+ * @author Sam
+ */
+public class CPDBenchmark {
+	
+	public static void main(String[] args) throws IOException {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		
+		PrintStream out = System.out;
+		
+		out.printf("%-16s %8s %9s %8s %8s | %9s %9s %9s%n", "map", "build s", "runs/src", "MB", "raw MB", "A* us", "JPS+ us", "CPD us");
+		run(out, "warehouse 12x8", new WorldMap(), queries);
+		run(out, "random 64x64", WorldMap.random(64, 64, 0.2, 2), queries);
+		run(out, "warehouse 128x128", Scenarios.warehouse(128, 128), queries);
+		run(out, "random 128x128", WorldMap.random(128, 128, 0.2, 3), queries);
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, int queries) throws IOException {
+		GridGraph graph = map.getGraph();
+		long t0 = System.nanoTime();
+		CompressedPathDatabase built = CompressedPathDatabase.build(map);
+		long buildNanos = System.nanoTime() - t0;
+		
+		Path file = Files.createTempFile("cpd", ".bin");
+		CompressedPathDatabase db;
+		try {
+			built.write(file);
+			db = CompressedPathDatabase.open(file, map);
+		} finally {
+			// The mapping stays valid after the file is deleted
+			Files.deleteIfExists(file);
+		}
+		
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		int[] starts = new int[queries], goals = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			starts[i] = area[r.nextInt(area.length)];
+			goals[i] = area[r.nextInt(area.length)];
+		}
+		
+		AStar astar = new AStar(map);
+		JumpPointSearch jps = new JumpPointSearch(map);
+		FirstMoveSearch cpd = new FirstMoveSearch(map, db);
+		long[] nanos = new long[3];
+		// The first round warms up the JIT and isn't counted
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < queries; i++) {
+				long a = System.nanoTime();
+				ArrayList<SpacetimePoint> exact = astar.pathfind(starts[i], goals[i]);
+				long b = System.nanoTime();
+				jps.pathfind(starts[i], goals[i]);
+				long c = System.nanoTime();
+				ArrayList<SpacetimePoint> path = cpd.pathfind(starts[i], goals[i]);
+				long d = System.nanoTime();
+				if (path == null || path.size() != exact.size()) {
+					throw new IllegalStateException("CPD path differs from A* from " + starts[i] + " to " + goals[i]);
+				}
+				if (round == 1) {
+					nanos[0] += b - a;
+					nanos[1] += c - b;
+					nanos[2] += d - c;
+				}
+			}
+		}
+		
+		long cells = graph.size();
+		out.printf("%-16s %8.2f %9.1f %8.2f %8.2f | %9.2f %9.2f %9.2f%n", name, buildNanos / 1e9, (double) db.runCount() / cells,
+				db.sizeBytes() / 1e6, cells * cells / 4 / 1e6, nanos[0] / 1e3 / queries, nanos[1] / 1e3 / queries, nanos[2] / 1e3 / queries);
+	}
+	
+}
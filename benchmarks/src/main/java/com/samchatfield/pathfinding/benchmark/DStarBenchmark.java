@@ -0,0 +1,88 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.DStarLite;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Benchmark of replanning with D* Lite against searching again with A*: an agent drives across a warehouse towards its goal and, every few
+ * steps, a pallet is put down in the aisle just ahead of it or somewhere at random, so the route has to be planned again. Shows the average
+ * time per replan and the average number of cells expanded by D* Lite.
+ * <p>
+ * Usage: DStarBenchmark [trips, default 200] [size, default 256]
+ * @author Sam
+ */
+public class DStarBenchmark {
+	
+	public static void main(String[] args) throws InvalidCoordinateException {
+		int trips = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+		
+		PrintStream out = System.out;
+		
+		out.printf("%-10s %10s %12s %12s %14s%n", "", "replans", "A* avg us", "D* avg us", "D* avg expanded");
+		for (int round = 0; round < 2; round++) {
+			run(out, size, trips, round == 1);
+		}
+	}
+	
+	private static void run(PrintStream out, int size, int trips, boolean print) throws InvalidCoordinateException {
+		WorldMap map = Scenarios.warehouse(size, size);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		long aNanos = 0, dNanos = 0, expanded = 0;
+		int replans = 0;
+		
+		for (int trip = 0; trip < trips; trip++) {
+			int cur = area[r.nextInt(area.length)];
+			int goal = area[r.nextInt(area.length)];
+			DStarLite dstar = new DStarLite(map);
+			ArrayList<SpacetimePoint> path = dstar.pathfind(cur, goal);
+			ArrayList<Integer> pallets = new ArrayList<>();
+			
+			for (int step = 1; path != null && path.size() > 1; step++) {
+				SpacetimePoint next = path.get(1);
+				cur = map.getGraph().id(next.getX(), next.getY());
+				if (step % 8 != 0) {
+					path.remove(0);
+					continue;
+				}
+				// Block the aisle a few cells ahead, or failing that somewhere at random
+				int pallet = path.size() > 6 ? map.getGraph().id(path.get(5).getX(), path.get(5).getY()) : area[r.nextInt(area.length)];
+				if (pallet != cur && pallet != goal) {
+					map.setObstacle(graph.x(pallet), graph.y(pallet), true);
+					pallets.add(pallet);
+				}
+				
+				long t0 = System.nanoTime();
+				new AStar(map).pathfind(cur, goal);
+				long t1 = System.nanoTime();
+				path = dstar.pathfind(cur, goal);
+				long t2 = System.nanoTime();
+				aNanos += t1 - t0;
+				dNanos += t2 - t1;
+				expanded += dstar.getExpanded();
+				replans++;
+			}
+			
+			// Clear the pallets away again for the next trip
+			for (int pallet : pallets) {
+				map.setObstacle(graph.x(pallet), graph.y(pallet), false);
+			}
+		}
+		
+		if (print) {
+			out.printf("%-10s %10d %12.2f %12.2f %14.1f%n", size + "x" + size, replans, aNanos / 1e3 / replans, dNanos / 1e3 / replans,
+					(double) expanded / replans);
+		}
+	}
+	
+}
@@ -0,0 +1,84 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.HPAStar;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of hierarchical path-finding (HPAStar) against A* on large maps: the time to build the abstract graph, the average time per
+ * query between random cells of the largest connected area for the whole refined path and for the abstract path alone, how much longer
+ * the HPA* paths are than the shortest ones, and the average time to rebuild the clusters around a changed cell.
+ * <p>
+ * Usage: HPABenchmark [queries per map, default 200] [cluster size, default 32]
+ * @author Sam
+ */
+public class HPABenchmark {
+	
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int clusterSize = args.length > 1 ? Integer.parseInt(args[1]) : HPAStar.DEFAULT_CLUSTER_SIZE;
+		
+		PrintStream out = System.out;
+		
+		out.printf("%-20s %8s %7s | %9s %9s %9s %8s | %8s %10s%n", "map", "build ms", "nodes", "A* ms", "HPA* ms", "abstract", "speedup",
+				"longer", "rebuild us");
+		run(out, "warehouse 1000x1000", Scenarios.warehouse(1000, 1000), queries, clusterSize);
+		run(out, "random 1000x1000 20%", WorldMap.random(1000, 1000, 0.2, 1), queries, clusterSize);
+		run(out, "random 1000x1000 35%", WorldMap.random(1000, 1000, 0.35, 2), queries, clusterSize);
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, int queries, int clusterSize) {
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		int[] starts = new int[queries], goals = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			starts[i] = area[r.nextInt(area.length)];
+			goals[i] = area[r.nextInt(area.length)];
+		}
+		
+		long t0 = System.nanoTime();
+		HPAStar hpa = new HPAStar(map, clusterSize);
+		long buildNanos = System.nanoTime() - t0;
+		
+		long astarNanos = 0, hpaNanos = 0, abstractNanos = 0, shortest = 0, found = 0;
+		// The first round warms up the JIT and isn't counted
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < queries; i++) {
+				long a = System.nanoTime();
+				ArrayList<SpacetimePoint> exact = new AStar(map).pathfind(starts[i], goals[i]);
+				long b = System.nanoTime();
+				ArrayList<SpacetimePoint> path = hpa.pathfind(starts[i], goals[i]);
+				long c = System.nanoTime();
+				hpa.abstractPath(starts[i], goals[i]);
+				long d = System.nanoTime();
+				if (round == 1) {
+					astarNanos += b - a;
+					hpaNanos += c - b;
+					abstractNanos += d - c;
+					shortest += exact.size() - 1;
+					found += path.size() - 1;
+				}
+			}
+		}
+		
+		// Nothing has really changed, but the clusters are rebuilt all the same
+		int changes = Math.min(queries, 1000);
+		t0 = System.nanoTime();
+		for (int i = 0; i < changes; i++) {
+			hpa.cellChanged(graph.x(starts[i]), graph.y(starts[i]));
+		}
+		long rebuildNanos = System.nanoTime() - t0;
+		
+		out.printf("%-20s %8.1f %7d | %9.2f %9.2f %9.2f %7.1fx | %7.2f%% %10.1f%n", name, buildNanos / 1e6, hpa.nodeCount(),
+				astarNanos / 1e6 / queries, hpaNanos / 1e6 / queries, abstractNanos / 1e6 / queries, (double) astarNanos / hpaNanos,
+				100.0 * (found - shortest) / shortest, rebuildNanos / 1e3 / changes);
+	}
+	
+}
@@ -0,0 +1,75 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.JumpPointSearch;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of single-agent queries with A*, Jump Point Search scanning the grid and Jump Point Search with the precomputed jump table
+ * (JPS+): the average time per query between random cells of the largest connected area, on warehouses of long shelves and on random maps.
+ * The time taken to build the jump table is shown separately.
+ * <p>
+ * Usage: JPSBenchmark [queries per map, default 2000]
+ * @author Sam
+ */
+public class JPSBenchmark {
+	
+	public static void main(String[] args) {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		
+		PrintStream out = System.out;
+		
+		out.printf("%-18s %9s | %10s %10s %10s | %8s %8s%n", "map", "table ms", "A* us", "JPS us", "JPS+ us", "JPS x", "JPS+ x");
+		run(out, "warehouse 256x256", Scenarios.warehouse(256, 256), queries);
+		run(out, "warehouse 1024x512", Scenarios.warehouse(1024, 512), queries);
+		run(out, "random 256x256 10%", WorldMap.random(256, 256, 0.1, 1), queries);
+		run(out, "random 256x256 30%", WorldMap.random(256, 256, 0.3, 2), queries);
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, int queries) {
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		int[] starts = new int[queries], goals = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			starts[i] = area[r.nextInt(area.length)];
+			goals[i] = area[r.nextInt(area.length)];
+		}
+		
+		long t0 = System.nanoTime();
+		map.getJumpTable();
+		long tableNanos = System.nanoTime() - t0;
+		
+		AStar astar = new AStar(map);
+		JumpPointSearch jps = new JumpPointSearch(map, false);
+		JumpPointSearch jpsPlus = new JumpPointSearch(map, true);
+		long[] nanos = new long[3];
+		// The first round warms up the JIT and isn't counted
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < queries; i++) {
+				long a = System.nanoTime();
+				int lengthA = astar.pathfind(starts[i], goals[i]).size();
+				long b = System.nanoTime();
+				int lengthJ = jps.pathfind(starts[i], goals[i]).size();
+				long c = System.nanoTime();
+				int lengthP = jpsPlus.pathfind(starts[i], goals[i]).size();
+				long d = System.nanoTime();
+				if (lengthJ != lengthA || lengthP != lengthA) {
+					throw new IllegalStateException("Path lengths differ from " + starts[i] + " to " + goals[i]);
+				}
+				if (round == 1) {
+					nanos[0] += b - a;
+					nanos[1] += c - b;
+					nanos[2] += d - c;
+				}
+			}
+		}
+		out.printf("%-18s %9.1f | %10.1f %10.1f %10.1f | %7.1fx %7.1fx%n", name, tableNanos / 1e6, nanos[0] / 1e3 / queries,
+				nanos[1] / 1e3 / queries, nanos[2] / 1e3 / queries, (double) nanos[0] / nanos[1], (double) nanos[0] / nanos[2]);
+	}
+	
+}
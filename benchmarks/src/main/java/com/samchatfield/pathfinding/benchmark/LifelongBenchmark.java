@@ -0,0 +1,113 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.LifelongPlanner;
+import com.samchatfield.pathfinding.TaskAssigner;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.TaskQueue;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.LatencyHistogram;
+import com.samchatfield.pathfinding.metrics.MetricsRegistry;
+
+/**
+ * Benchmark of lifelong planning: fleets of agents on a warehouse take tasks to random cells from a queue that is kept topped up, for a
+ * number of time steps of one second each. The headline figure is the throughput in tasks finished per hour of simulated time. Alongside
+ * it are the mean time from a task being added to it being finished, the time taken to plan a step and the number of tasks per minute of
+ * planning the planner could keep up with. Every step is checked for agents colliding or swapping cells.
+ * <p>
+ * Usage: LifelongBenchmark [steps, default 1000] [size, default 128] [agents, default 50,100,200] [assignment, first (default), greedy,
+ * auction or hungarian]
+ * @author Sam
+ */
+public class LifelongBenchmark {
+	
+	public static void main(String[] args) {
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+		int[] fleets = args.length > 2 ? Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray() : new int[] { 50, 100, 200 };
+		TaskAssigner.Method method = args.length > 3 && !args[3].equals("first") ? TaskAssigner.Method.valueOf(args[3].toUpperCase()) : null;
+		
+		PrintStream out = System.out;
+		
+		// A short run first to warm up the JIT
+		run(null, size, fleets[0], Math.min(steps, 200), method);
+		
+		out.printf("%-7s %8s %11s %10s | %9s %9s %9s %14s%n", "agents", "tasks", "tasks/hour", "mean steps", "step ms", "p99 ms", "max ms",
+				"tasks/min kept");
+		for (int agents : fleets) {
+			run(out, size, agents, steps, method);
+		}
+	}
+	
+	private static void run(PrintStream out, int size, int agents, int steps, TaskAssigner.Method method) {
+		WorldMap map = Scenarios.warehouse(size, size);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		ArrayList<Agent> as = Scenarios.random(map, agents, 1);
+		Random r = new Random(2);
+		TaskQueue queue = new TaskQueue();
+		LifelongPlanner planner = new LifelongPlanner(map, as, queue);
+		if (method != null) {
+			planner.setAssigner(new TaskAssigner(map, method));
+		}
+		LatencyHistogram stepTimes = new MetricsRegistry().histogram("lifelong_step_seconds", "Time to plan a step");
+		
+		int[] before = new int[agents], after = new int[agents];
+		for (int step = 0; step < steps; step++) {
+			// Keep a task waiting for every agent
+			while (queue.size() < agents) {
+				queue.add(area[r.nextInt(area.length)], planner.getTime());
+			}
+			for (int i = 0; i < agents; i++) {
+				before[i] = graph.id(as.get(i).getStart());
+			}
+			long t0 = System.nanoTime();
+			planner.step();
+			stepTimes.record(System.nanoTime() - t0);
+			for (int i = 0; i < agents; i++) {
+				after[i] = graph.id(as.get(i).getStart());
+			}
+			check(before, after, planner.getTime());
+		}
+		
+		if (out != null) {
+			double planMinutes = stepTimes.getSum() / 60e9;
+			out.printf("%-7d %8d %11.0f %10.1f | %9.2f %9.2f %9.2f %14.0f%n", agents, planner.getCompleted(), planner.getThroughput(1),
+					planner.getMeanTaskTime(), stepTimes.getSum() / 1e6 / steps, stepTimes.percentile(0.99) / 1e6, stepTimes.getMax() / 1e6,
+					planner.getCompleted() / planMinutes);
+		}
+	}
+	
+	/**
+	 * Check that no two agents are in the same cell after a step and that no two have swapped cells
+	 */
+	private static void check(int[] before, int[] after, int time) {
+		int n = after.length;
+		long[] moves = new long[n];
+		for (int i = 0; i < n; i++) {
+			moves[i] = (long) after[i] << 32 | before[i];
+		}
+		int[] sorted = after.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < n; i++) {
+			if (sorted[i] == sorted[i - 1]) {
+				throw new IllegalStateException("Two agents in cell " + sorted[i] + " at time " + time);
+			}
+		}
+		Arrays.sort(moves);
+		for (int i = 0; i < n; i++) {
+			if (before[i] != after[i]) {
+				long swap = (long) before[i] << 32 | after[i];
+				if (Arrays.binarySearch(moves, swap) >= 0) {
+					throw new IllegalStateException("Agents swapped through cell " + after[i] + " at time " + time);
+				}
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,73 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.util.Random;
+
+import com.samchatfield.pathfinding.data.MapUpdate;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Benchmark of changing the obstacles of a map: the average time of an update that toggles one cell, of a batch toggling 64 cells, and of
+ * bringing the jump table up to date after an update, compared with building the whole map again.
+ * <p>
+ * Usage: MapUpdateBenchmark [updates, default 2000]
+ * @author Sam
+ */
+public class MapUpdateBenchmark {
+	
+	public static void main(String[] args) throws InvalidCoordinateException {
+		int updates = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		
+		System.out.printf("%-10s %12s %12s %12s %12s%n", "map", "rebuild us", "cell us", "batch us", "jumps us");
+		for (int round = 0; round < 2; round++) {
+			for (int size : new int[] { 128, 256, 512, 1024 }) {
+				run(size, updates, round == 1);
+			}
+		}
+	}
+	
+	private static void run(int size, int updates, boolean print) throws InvalidCoordinateException {
+		WorldMap map = Scenarios.warehouse(size, size);
+		Random r = new Random(1);
+		
+		long t0 = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			Scenarios.warehouse(size, size);
+		}
+		long rebuild = (System.nanoTime() - t0) / 10;
+		
+		t0 = System.nanoTime();
+		for (int i = 0; i < updates; i++) {
+			int x = r.nextInt(size), y = r.nextInt(size);
+			map.setObstacle(x, y, map.isValidNode(x, y));
+		}
+		long cell = (System.nanoTime() - t0) / updates;
+		
+		t0 = System.nanoTime();
+		for (int i = 0; i < updates / 10; i++) {
+			MapUpdate update = new MapUpdate(map);
+			for (int j = 0; j < 64; j++) {
+				int x = r.nextInt(size), y = r.nextInt(size);
+				update.set(x, y, map.isValidNode(x, y));
+			}
+			map.apply(update);
+		}
+		long batch = (System.nanoTime() - t0) / (updates / 10);
+		
+		map.getJumpTable();
+		long jumps = 0;
+		for (int i = 0; i < updates / 10; i++) {
+			int x = r.nextInt(size), y = r.nextInt(size);
+			map.setObstacle(x, y, map.isValidNode(x, y));
+			long t1 = System.nanoTime();
+			map.getJumpTable();
+			jumps += System.nanoTime() - t1;
+		}
+		jumps /= updates / 10;
+		
+		if (print) {
+			System.out.printf("%-10s %12.1f %12.1f %12.1f %12.1f%n", size + "x" + size, rebuild / 1e3, cell / 1e3, batch / 1e3, jumps / 1e3);
+		}
+	}
+	
+}
@@ -0,0 +1,101 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.MultiAgentPlanning;
+import com.samchatfield.pathfinding.ParallelMultiAgentPlanning;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Benchmark of the parallel prioritised planner (ParallelMultiAgentPlanning) for increasing numbers of threads: the share of random
+ * instances it solves (a complete plan without conflicts), the average sum of costs and the average wall-clock time, with the speedup over
+ * one thread. Both modes are run, and the first row of each map is plain MultiAgentPlanning with the one ordering of the list for
+ * comparison. The speedup can't be more than the number of cores of the machine.
+ * <p>
+ * Usage: ParallelPlanningBenchmark [instances per row, default 10] [orderings, default 32]
+ * @author Sam
+ */
+public class ParallelPlanningBenchmark {
+	
+	public static void main(String[] args) {
+		int instances = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int orderings = args.length > 1 ? Integer.parseInt(args[1]) : ParallelMultiAgentPlanning.DEFAULT_ORDERINGS;
+		
+		int cores = Runtime.getRuntime().availableProcessors();
+		ArrayList<Integer> threads = new ArrayList<>();
+		for (int t = 1; t < cores; t *= 2) {
+			threads.add(t);
+		}
+		threads.add(cores);
+		
+		System.out.printf("%d cores, %d orderings%n", cores, orderings);
+		System.out.printf("%-14s %6s %-6s %7s | %8s %9s %9s %8s%n", "map", "agents", "mode", "threads", "solved", "avg cost", "avg ms",
+				"speedup");
+		run("warehouse 12x8", new WorldMap(), 12, instances, orderings, threads);
+		run("random 32x32", WorldMap.random(32, 32, 0.2, 1), 60, instances, orderings, threads);
+		run("random 64x64", WorldMap.random(64, 64, 0.2, 2), 100, instances, orderings, threads);
+	}
+	
+	private static void run(String name, WorldMap map, int agents, int instances, int orderings, ArrayList<Integer> threads) {
+		// Warm up the JIT and the heuristic's cache of goals so the first row isn't slower for it
+		for (int i = 0; i < instances; i++) {
+			new MultiAgentPlanning(map).computePlan(Scenarios.random(map, agents, i));
+		}
+		
+		Result sequential = new Result();
+		MultiAgentPlanning ca = new MultiAgentPlanning(map);
+		for (int i = 0; i < instances; i++) {
+			ArrayList<Agent> as = Scenarios.random(map, agents, i);
+			long t0 = System.nanoTime();
+			ca.computePlan(as);
+			sequential.add(as, System.nanoTime() - t0);
+		}
+		print(name, agents, "CA*", 1, sequential, instances, sequential.nanos);
+		
+		for (ParallelMultiAgentPlanning.Mode mode : ParallelMultiAgentPlanning.Mode.values()) {
+			long base = 0;
+			for (int t : threads) {
+				ForkJoinPool pool = new ForkJoinPool(t);
+				ParallelMultiAgentPlanning planner = new ParallelMultiAgentPlanning(map, pool, orderings, mode);
+				Result r = new Result();
+				for (int i = 0; i < instances; i++) {
+					ArrayList<Agent> as = Scenarios.random(map, agents, i);
+					long t0 = System.nanoTime();
+					planner.computePlan(as);
+					r.add(as, System.nanoTime() - t0);
+				}
+				pool.shutdown();
+				if (base == 0) {
+					base = r.nanos;
+				}
+				print(name, agents, mode.name(), t, r, instances, base);
+			}
+		}
+	}
+	
+	private static void print(String name, int agents, String mode, int threads, Result r, int instances, long base) {
+		System.out.printf("%-14s %6d %-6s %7d | %7.0f%% %9s %9.1f %7.2fx%n", name, agents, mode, threads, 100.0 * r.solved / instances,
+				r.solved == 0 ? "-" : String.format("%.1f", (double) r.cost / r.solved), r.nanos / 1e6 / instances, (double) base / r.nanos);
+	}
+	
+	/**
+	 * Totals over the instances of one row
+	 */
+	private static class Result {
+		
+		private int solved;
+		private long cost, nanos;
+		
+		void add(ArrayList<Agent> as, long time) {
+			nanos += time;
+			if (PlanChecker.complete(as) && PlanChecker.conflicts(as) == 0) {
+				solved++;
+				cost += PlanChecker.sumOfCosts(as);
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,101 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.JumpPointSearch;
+import com.samchatfield.pathfinding.SingleAgentPlanning;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.PathCache;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Benchmark of the path cache in front of SingleAgentPlanning: robots making trips between a few docks and many shelves, the popular
+ * shelves far more often than the rest, planned with and without the cache. Shows the hit rate, evictions and average time per plan.
+ * Every 10000 trips a pallet is put down in (or taken away from) an aisle, which invalidates the cache.
+ * <p>
+ * Usage: PathCacheBenchmark [trips, default 100000] [shelves, default 2000]
+ * @author Sam
+ */
+public class PathCacheBenchmark {
+	
+	public static void main(String[] args) throws InvalidCoordinateException {
+		int trips = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int shelves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		
+		WorldMap map = Scenarios.warehouse(256, 256);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		Node[] docks = new Node[8];
+		for (int i = 0; i < docks.length; i++) {
+			int c = area[r.nextInt(area.length)];
+			docks[i] = map.nodeAt(graph.x(c), graph.y(c));
+		}
+		Node[] places = new Node[shelves];
+		for (int i = 0; i < shelves; i++) {
+			int c = area[r.nextInt(area.length)];
+			places[i] = map.nodeAt(graph.x(c), graph.y(c));
+		}
+		
+		// Popular shelves come up far more often: shelf i is picked with probability proportional to 1 / (i + 1)
+		int[] shelf = new int[trips];
+		int[] dock = new int[trips];
+		for (int i = 0; i < trips; i++) {
+			shelf[i] = (int) Math.min(shelves - 1, Math.floor(Math.exp(r.nextDouble() * Math.log(shelves + 1)) - 1));
+			dock[i] = r.nextInt(docks.length);
+		}
+		
+		// A free cell that isn't a dock or shelf, for the pallet
+		int pallet;
+		do {
+			pallet = area[r.nextInt(area.length)];
+		} while (isUsed(graph, pallet, docks) || isUsed(graph, pallet, places));
+		
+		System.out.printf("%-10s %10s %10s %10s %12s %10s%n", "cache", "hits", "misses", "evictions", "invalidated", "avg us");
+		for (int round = 0; round < 2; round++) {
+			run("none", map, null, docks, places, dock, shelf, pallet, round == 1);
+			run("default", map, new PathCache(map), docks, places, dock, shelf, pallet, round == 1);
+			run("small", map, new PathCache(map, 256, PathCache.DEFAULT_MAX_CELLS), docks, places, dock, shelf, pallet, round == 1);
+		}
+	}
+	
+	private static boolean isUsed(GridGraph graph, int cell, Node[] nodes) {
+		for (Node n : nodes) {
+			if (graph.id(n) == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static void run(String name, WorldMap map, PathCache cache, Node[] docks, Node[] places, int[] dock, int[] shelf, int pallet,
+			boolean print) throws InvalidCoordinateException {
+		GridGraph graph = map.getGraph();
+		SingleAgentPlanning planner = cache == null ? null : new SingleAgentPlanning(map, cache);
+		ArrayList<Agent> as = new ArrayList<>(1);
+		long t0 = System.nanoTime();
+		for (int i = 0; i < dock.length; i++) {
+			if (i % 10000 == 9999) {
+				map.setObstacle(graph.x(pallet), graph.y(pallet), !map.isObstacle(pallet));
+			}
+			Agent a = new Agent(docks[dock[i]], places[shelf[i]], 0);
+			if (planner == null) {
+				a.setPath(new JumpPointSearch(map).pathfind(a.getStart(), a.getGoal()));
+			} else {
+				as.clear();
+				as.add(a);
+				planner.computePlan(as);
+			}
+		}
+		long nanos = System.nanoTime() - t0;
+		if (print) {
+			System.out.printf("%-10s %10d %10d %10d %12d %10.2f%n", name, cache == null ? 0 : cache.getHits(), cache == null ? 0 : cache.getMisses(),
+					cache == null ? 0 : cache.getEvictions(), cache == null ? 0 : cache.getInvalidations(), nanos / 1e3 / dock.length);
+		}
+	}
+	
+}
@@ -0,0 +1,70 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.MultiAgentPlanning;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.IntervalReservationTable;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Benchmark of SIPP against CA* in MultiAgentPlanning: fleets of agents with random start and goal cells on a large warehouse, so the routes
+ * are long, planned with a HashReservationTable and CAStar and with an IntervalReservationTable and SIPP. Shows the time taken, the states
+ * expanded, the reservations stored and the memory they take, along with the sum of costs and the conflicts left in each plan.
+ * <p>
+ * Usage: SIPPBenchmark [size, default 256] [agents, default 50,100,200,400]
+ * @author Sam
+ */
+public class SIPPBenchmark {
+	
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int[] fleets = args.length > 1 ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray() : new int[] { 50, 100, 200, 400 };
+		
+		PrintStream out = System.out;
+		WorldMap map = Scenarios.warehouse(size, size);
+		
+		// A short run of each first to warm up the JIT
+		run(null, "", map, new HashReservationTable(), fleets[0]);
+		run(null, "", map, new IntervalReservationTable(size, size), fleets[0]);
+		
+		out.printf("%-6s %6s | %9s %12s %13s %10s | %9s %9s%n", "search", "agents", "ms", "expansions", "reservations", "table KB", "cost",
+				"conflicts");
+		for (int agents : fleets) {
+			run(out, "CA*", map, new HashReservationTable(), agents);
+			run(out, "SIPP", map, new IntervalReservationTable(size, size), agents);
+		}
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, HashReservationTable table, int agents) {
+		MultiAgentPlanning planner = new MultiAgentPlanning(map, table);
+		ArrayList<Agent> as = plan(planner, map, agents);
+		print(out, name, planner, table.size(), table.memoryBytes(), as);
+	}
+	
+	private static void run(PrintStream out, String name, WorldMap map, IntervalReservationTable table, int agents) {
+		MultiAgentPlanning planner = new MultiAgentPlanning(map, table);
+		ArrayList<Agent> as = plan(planner, map, agents);
+		print(out, name, planner, table.size(), table.memoryBytes(), as);
+	}
+	
+	private static ArrayList<Agent> plan(MultiAgentPlanning planner, WorldMap map, int agents) {
+		ArrayList<Agent> as = Scenarios.random(map, agents, agents);
+		planner.computePlan(as);
+		return as;
+	}
+	
+	private static void print(PrintStream out, String name, MultiAgentPlanning planner, int reservations, long bytes, ArrayList<Agent> as) {
+		if (out == null) {
+			return;
+		}
+		SearchStats stats = planner.getStats();
+		out.printf("%-6s %6d | %9.1f %12d %13d %10d | %9d %9d%n", name, as.size(), stats.getWallNanos() / 1e6, stats.getExpansions(),
+				reservations, bytes >> 10, PlanChecker.sumOfCosts(as), PlanChecker.conflicts(as));
+	}
+	
+}
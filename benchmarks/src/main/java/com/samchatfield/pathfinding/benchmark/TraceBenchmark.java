@@ -0,0 +1,98 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.JumpPointSearch;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.trace.SearchListener;
+import com.samchatfield.pathfinding.trace.TraceBuffer;
+
+/**
+ * Benchmark of search tracing: the average time per query of A* and JPS+ without a listener and recording into a TraceBuffer of 65536
+ * events, on a warehouse of long shelves. The untraced searches run first and many more times, so the JIT compiles them only ever having seen
+ * SearchListener.NONE, as it would in a program that never traces. Afterwards the trace is dumped to a CSV file and the last search is
+ * drawn on the small built-in warehouse.
+ * <p>
+ * Usage: TraceBenchmark [queries, default 2000] [dump file, default a temporary file]
+ * @author Sam
+ */
+public class TraceBenchmark {
+	
+	public static void main(String[] args) throws IOException {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("trace", ".csv");
+		
+		PrintStream out = System.out;
+		WorldMap map = Scenarios.warehouse(256, 256);
+		GridGraph graph = map.getGraph();
+		map.getJumpTable();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(1);
+		int[] starts = new int[queries], goals = new int[queries];
+		for (int i = 0; i < queries; i++) {
+			starts[i] = area[r.nextInt(area.length)];
+			goals[i] = area[r.nextInt(area.length)];
+		}
+		
+		AStar astar = new AStar(map);
+		JumpPointSearch jps = new JumpPointSearch(map);
+		// Warm up with nothing listening
+		for (int round = 0; round < 5; round++) {
+			time(astar, jps, starts, goals);
+		}
+		long[] plain = time(astar, jps, starts, goals);
+		
+		TraceBuffer trace = new TraceBuffer(graph, 1 << 16);
+		astar.setListener(trace);
+		jps.setListener(trace);
+		time(astar, jps, starts, goals);
+		long[] traced = time(astar, jps, starts, goals);
+		
+		out.printf("%-8s %12s %12s %9s%n", "search", "plain us", "traced us", "overhead");
+		String[] names = { "A*", "JPS+" };
+		for (int i = 0; i < 2; i++) {
+			out.printf("%-8s %12.1f %12.1f %8.1f%%%n", names[i], plain[i] / 1e3 / queries, traced[i] / 1e3 / queries,
+					100.0 * (traced[i] - plain[i]) / plain[i]);
+		}
+		
+		long t0 = System.nanoTime();
+		int written = trace.dump(file);
+		out.printf("%d events recorded, %d overwritten, %d dumped to %s in %.0f ms%n", trace.getRecorded(), trace.getOverwritten(), written,
+				file, (System.nanoTime() - t0) / 1e6);
+		
+		WorldMap small = new WorldMap();
+		GridGraph smallGraph = small.getGraph();
+		TraceBuffer smallTrace = new TraceBuffer(smallGraph, 1024);
+		AStar smallSearch = new AStar(small);
+		smallSearch.setListener(smallTrace);
+		smallSearch.pathfind(smallGraph.id(0, 0), smallGraph.id(small.getWidth() - 1, small.getHeight() - 1));
+		smallSearch.setListener(SearchListener.NONE);
+		out.println();
+		out.print(smallTrace.searchMap());
+	}
+	
+	/**
+	 * Time every query with both searches
+	 * @return total nanoseconds of A* and of JPS+
+	 */
+	private static long[] time(AStar astar, JumpPointSearch jps, int[] starts, int[] goals) {
+		long[] nanos = new long[2];
+		for (int i = 0; i < starts.length; i++) {
+			long a = System.nanoTime();
+			astar.pathfind(starts[i], goals[i]);
+			long b = System.nanoTime();
+			jps.pathfind(starts[i], goals[i]);
+			nanos[0] += b - a;
+			nanos[1] += System.nanoTime() - b;
+		}
+		return nanos;
+	}
+	
+}
@@ -0,0 +1,77 @@
+package com.samchatfield.pathfinding.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.JumpTable;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Building a map from an obstacle grid, changing one of its cells, and bringing its jump table up to date after a change
+ * @author Sam
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+	
+	@Param({ "64", "256", "1024" })
+	public int size;
+	
+	@Param({ "0.1", "0.3" })
+	public double density;
+	
+	private boolean[] grid;
+	private WorldMap map;
+	private Random random;
+	
+	@Setup
+	public void setup() {
+		grid = new boolean[size * size];
+		Random r = new Random(1);
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = r.nextDouble() < density;
+		}
+		map = new WorldMap(size, size, grid.clone());
+		map.getJumpTable();
+		random = new Random(2);
+	}
+	
+	@Benchmark
+	public WorldMap construct() {
+		// The maps built here are never changed, so they can all share the one grid
+		return new WorldMap(size, size, grid);
+	}
+	
+	@Benchmark
+	public GridGraph toggleCell() throws InvalidCoordinateException {
+		int x = random.nextInt(size), y = random.nextInt(size);
+		map.setObstacle(x, y, map.isValidNode(x, y));
+		return map.getGraph();
+	}
+	
+	@Benchmark
+	public JumpTable toggleCellAndJumps() throws InvalidCoordinateException {
+		int x = random.nextInt(size), y = random.nextInt(size);
+		map.setObstacle(x, y, map.isValidNode(x, y));
+		return map.getJumpTable();
+	}
+	
+}
@@ -0,0 +1,91 @@
+package com.samchatfield.pathfinding.jmh;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.AgentPlanning;
+import com.samchatfield.pathfinding.ConflictBasedSearch;
+import com.samchatfield.pathfinding.MultiAgentPlanning;
+import com.samchatfield.pathfinding.ParallelMultiAgentPlanning;
+import com.samchatfield.pathfinding.WindowedMultiAgentPlanning;
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * A whole multi-agent plan for random agents on a random map, for each multi-agent planner. The planner is created once, so anything it
+ * keeps between plans (such as the Reverse Resumable A* heuristic) is warm after the first invocation, as it would be in use.
+ * @author Sam
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanningBenchmark {
+	
+	public enum Planner {
+		CA, WHCA, CBS, PARALLEL
+	}
+	
+	@Param({ "64", "128" })
+	public int size;
+	
+	@Param({ "0.1", "0.2" })
+	public double density;
+	
+	@Param({ "10", "50" })
+	public int agents;
+	
+	@Param
+	public Planner planner;
+	
+	private ArrayList<Agent> as;
+	private AgentPlanning planning;
+	
+	@Setup
+	public void setup() {
+		WorldMap map = WorldMap.random(size, size, density, 1);
+		as = Scenarios.random(map, agents, 2);
+		switch (planner) {
+			case CA:
+				planning = new MultiAgentPlanning(map);
+				break;
+			case WHCA:
+				planning = new WindowedMultiAgentPlanning(map);
+				break;
+			case CBS:
+				planning = new ConflictBasedSearch(map);
+				break;
+			case PARALLEL:
+				planning = new ParallelMultiAgentPlanning(map);
+				break;
+			default:
+				throw new IllegalStateException("Unknown planner " + planner);
+		}
+	}
+	
+	@Benchmark
+	public ArrayList<Agent> plan() {
+		// The planners only plan agents without a path
+		for (Agent a : as) {
+			a.setPath(null);
+		}
+		planning.computePlan(as);
+		return as;
+	}
+	
+}
@@ -0,0 +1,104 @@
+package com.samchatfield.pathfinding.jmh;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.CAStar;
+import com.samchatfield.pathfinding.HPAStar;
+import com.samchatfield.pathfinding.JumpPointSearch;
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Single queries between random cells of a random map, for each search strategy. Every invocation is the next of a fixed list of queries
+ * in the largest connected area of the map, so every strategy runs the same queries.
+ * @author Sam
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+	
+	private static final int QUERIES = 256;
+	
+	public enum Strategy {
+		ASTAR, ASTAR_HEAP, JPS, JPS_PLUS, HPA, CASTAR
+	}
+	
+	@Param({ "64", "256" })
+	public int size;
+	
+	@Param({ "0.1", "0.3" })
+	public double density;
+	
+	@Param
+	public Strategy strategy;
+	
+	private WorldMap map;
+	private HPAStar hpa;
+	private Node[] starts, goals;
+	private int next;
+	
+	@Setup
+	public void setup() {
+		map = WorldMap.random(size, size, density, 1);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(2);
+		starts = new Node[QUERIES];
+		goals = new Node[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			starts[i] = map.getNodes().get(area[r.nextInt(area.length)]);
+			goals[i] = map.getNodes().get(area[r.nextInt(area.length)]);
+		}
+		map.getJumpTable();
+		hpa = strategy == Strategy.HPA ? new HPAStar(map) : null;
+	}
+	
+	@Benchmark
+	public ArrayList<SpacetimePoint> query() {
+		int i = next;
+		next = (i + 1) % QUERIES;
+		Node start = starts[i], goal = goals[i];
+		switch (strategy) {
+			case ASTAR:
+				return new AStar(map).pathfind(start, goal);
+			case ASTAR_HEAP:
+				return new AStar(map, OpenList.Kind.HEAP).pathfind(start, goal);
+			case JPS:
+				return new JumpPointSearch(map, false).pathfind(start, goal);
+			case JPS_PLUS:
+				return new JumpPointSearch(map).pathfind(start, goal);
+			case HPA:
+				return hpa.pathfind(start, goal);
+			case CASTAR:
+				return new CAStar(map, new Agent(start, goal, 0), new HashReservationTable()).pathfind(start, goal);
+			default:
+				throw new IllegalStateException("Unknown strategy " + strategy);
+		}
+	}
+	
+}
@@ -0,0 +1,173 @@
+package com.samchatfield.pathfinding.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Loopback load generator for the PlanningServer. Starts a server on a warehouse in the same process, then opens a number of connections
+ * that each send random requests as fast as they can while keeping at most a set number waiting for a response. A BUSY response is sent
+ * again after a short pause. Shows the throughput, the latency of the requests that were planned, how big the rounds were and the server's
+ * metrics.
+ * <p>
+ * Usage: LoadGenerator [connections, default 8] [requests per connection, default 20000] [in flight per connection, default 64]
+ * @author Sam
+ */
+public class LoadGenerator {
+	
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		
+		PrintStream out = System.out;
+		
+		WorldMap map = Scenarios.warehouse(256, 256);
+		map.getJumpTable();
+		int[] area = Scenarios.largestArea(map.getGraph());
+		try (PlanningServer server = new PlanningServer(map, 0)) {
+			server.start();
+			
+			Client[] clients = new Client[connections];
+			Thread[] threads = new Thread[connections];
+			long t0 = System.nanoTime();
+			for (int i = 0; i < connections; i++) {
+				clients[i] = new Client(server.getPort(), map.getGraph(), area, requests, inFlight, i);
+				threads[i] = new Thread(clients[i]::run, "load-" + i);
+				threads[i].start();
+			}
+			long busy = 0;
+			long[] latencies = new long[connections * requests];
+			int k = 0;
+			for (int i = 0; i < connections; i++) {
+				threads[i].join();
+				if (clients[i].failure != null) {
+					throw clients[i].failure;
+				}
+				busy += clients[i].busy.sum();
+				System.arraycopy(clients[i].latencies, 0, latencies, k, requests);
+				k += requests;
+			}
+			double seconds = (System.nanoTime() - t0) / 1e9;
+			
+			Arrays.sort(latencies);
+			out.printf("%d connections x %d requests in %.2f s: %.0f requests/s%n", connections, requests, seconds, k / seconds);
+			out.printf("latency p50 %.0f us, p99 %.0f us, max %.0f us%n", latencies[k / 2] / 1e3, latencies[k * 99 / 100] / 1e3,
+					latencies[k - 1] / 1e3);
+			out.printf("%d rounds of %.1f requests on average, %d busy responses%n", server.getRounds(),
+					(double) server.getPlanned() / server.getRounds(), busy);
+			out.println(server.getMetrics().toJson());
+		}
+	}
+	
+	/**
+	 * One connection to the server, with a thread sending requests and a thread reading the responses
+	 */
+	private static final class Client {
+		
+		private final Socket socket;
+		private final DataOutputStream out;
+		private final DataInputStream in;
+		private final int[] starts, goals;
+		private final long[] sent, latencies;
+		private final Semaphore window;
+		private final GridGraph graph;
+		private final LongAdder busy = new LongAdder();
+		private volatile Exception failure;
+		
+		Client(int port, GridGraph graph, int[] area, int requests, int inFlight, long seed) throws IOException {
+			this.graph = graph;
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			Random r = new Random(seed);
+			starts = new int[requests];
+			goals = new int[requests];
+			for (int i = 0; i < requests; i++) {
+				starts[i] = area[r.nextInt(area.length)];
+				goals[i] = area[r.nextInt(area.length)];
+			}
+			sent = new long[requests];
+			latencies = new long[requests];
+			window = new Semaphore(inFlight);
+		}
+		
+		void run() {
+			Thread reader = new Thread(this::read, Thread.currentThread().getName() + "-read");
+			reader.start();
+			try {
+				for (int i = 0; i < starts.length; i++) {
+					// Only flush when the window is full, so requests go out in batches
+					if (!window.tryAcquire()) {
+						synchronized (out) {
+							out.flush();
+						}
+						window.acquire();
+					}
+					send(i);
+				}
+				synchronized (out) {
+					out.flush();
+				}
+				reader.join();
+			} catch (IOException | InterruptedException e) {
+				failure = e;
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Done with it anyway
+				}
+			}
+		}
+		
+		private void send(int i) throws IOException {
+			synchronized (out) {
+				sent[i] = System.nanoTime();
+				Protocol.writeRequest(out, i, graph.x(starts[i]), graph.y(starts[i]), graph.x(goals[i]), graph.y(goals[i]));
+			}
+		}
+		
+		private void read() {
+			try {
+				for (int done = 0; done < starts.length;) {
+					Protocol.Response r = Protocol.readResponse(in);
+					if (r.getStatus() == Protocol.BUSY) {
+						// Back off a little and try again
+						busy.increment();
+						Thread.sleep(1);
+						send(r.getId());
+						synchronized (out) {
+							out.flush();
+						}
+						continue;
+					}
+					if (r.getStatus() == Protocol.BAD_REQUEST || r.getStatus() == Protocol.ERROR) {
+						throw new IllegalStateException("Request " + r.getId() + " was refused with status " + r.getStatus());
+					}
+					latencies[r.getId()] = System.nanoTime() - sent[r.getId()];
+					window.release();
+					done++;
+				}
+			} catch (IOException | InterruptedException | RuntimeException e) {
+				failure = e;
+			}
+		}
+		
+	}
+	
+}
@@ -1,169 +1,217 @@
 package com.samchatfield.pathfinding;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.PriorityQueue;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
+import com.samchatfield.pathfinding.data.GridGraph;
 import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SearchContext;
 import com.samchatfield.pathfinding.data.SpacetimePoint;
 import com.samchatfield.pathfinding.data.WorldMap;
-import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+import com.samchatfield.pathfinding.trace.SearchListener;
 
 /**
- * My implementation of A* search using Manhattan distance as the heuristic. The open set is implemented as a priority queue with the
- * priority being the f value of the search node (f(x) = g(x) + h(x) where h(x) is the heuristic value of x to the goal). The closed set is
- * simply a hash set and a hash table is used to store where each search node came from (i.e. which node led to it).
+ * My implementation of A* search using Manhattan distance as the heuristic by default, or any other Heuristic such as the true distance
+ * from ReverseResumableAStar. The search runs on the int cell IDs of the map's GridGraph
+ * rather than on Node objects, so the g and f values, the closed set and the table of where each search node came from (i.e. which node
+ * led to it) are all plain arrays indexed by cell ID. These arrays live in a SearchContext borrowed from the map's pool for the duration of
+ * each query, so nothing needs to be reset or allocated per query. The open set is an OpenList (an indexed heap or a bucket queue) with the
+ * priority being the f value of the search node (f(x) = g(x) + h(x) where h(x) is the heuristic value of x to the goal), ties going to the
+ * higher g value. Because the open list supports decrease-key, a node that is already open is updated when a cheaper way to it is found.
+ * <p>
+ * The map's graph and Nodes are only ever read, so any number of searches can run on the same map at once from different threads, as long
+ * as each thread has its own instance. The graph is fetched from the map at the start of every search, so an instance kept across updates
+ * to the map always searches the latest version.
  * @author Sam
  */
 public class AStar implements SearchStrategy {
 	
-	private WorldMap map;
-	private Hashtable<Node, Node> cameFrom;
-	private Set<Node> closed;
-	private PriorityQueue<Node> open;
+	private final WorldMap map;
+	private GridGraph graph;
+	private final OpenList.Kind openKind;
+	private final Heuristic heuristic;
+	private SearchContext ctx;
+	private OpenList open;
+	private IntUnaryOperator h;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	private SearchListener listener = SearchListener.NONE;
 	
 	/**
-	 * Create a new instance of A* search using the given map data. Initialise the data structures and set the comparator for the open set
-	 * (queue) to the f value.
+	 * Create a new instance of A* search using the given map data, with a bucket queue as the open set since the map has unit costs
 	 * @param map
 	 */
 	public AStar(WorldMap map) {
+		this(map, OpenList.Kind.BUCKETS);
+	}
+	
+	/**
+	 * Create a new instance of A* search using the given map data and kind of open set
+	 * @param map
+	 *            map data
+	 * @param openKind
+	 *            kind of open list to use
+	 */
+	public AStar(WorldMap map, OpenList.Kind openKind) {
+		this(map, openKind, new ManhattanHeuristic(map.getGraph()));
+	}
+	
+	/**
+	 * Create a new instance of A* search using the given map data, kind of open set and heuristic
+	 * @param map
+	 *            map data
+	 * @param openKind
+	 *            kind of open list to use
+	 * @param heuristic
+	 *            heuristic to the goal
+	 */
+	public AStar(WorldMap map, OpenList.Kind openKind, Heuristic heuristic) {
 		this.map = map;
-		cameFrom = new Hashtable<>();
-		closed = new HashSet<>();
-		
-		open = new PriorityQueue<>(map.getNodes().size(), new Comparator<Node>() {
-			@Override
-			public int compare(Node n1, Node n2) {
-				if (n1.getF() > n2.getF()) {
-					return 1;
-				} else if (n1.getF() < n2.getF()) {
-					return -1;
-				} else {
-					return 0;
-				}
-			}
-		});
+		this.openKind = openKind;
+		this.heuristic = heuristic;
+		graph = map.getGraph();
+	}
+	
+	/**
+	 * Set the listener told about the events of the following searches, for tracing them
+	 * @param listener
+	 *            listener, or SearchListener.NONE to stop tracing
+	 */
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
 	}
 	
 	@Override
 	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
-		// Iterate through the search nodes of the map and set initial g values for undiscovered nodes to infinity and set the g value of
-		// the start node to 0
-		for (Node n : map.getNodes()) {
-			n.setG((int) Double.POSITIVE_INFINITY);
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		graph = map.getGraph();
+		// Borrow scratch space from the map's pool, in which every node starts off with g and f values of infinity
+		rec.reset();
+		ctx = map.getContextPool().acquire();
+		open = ctx.open(openKind);
+		h = heuristic.toGoal(goal);
+		listener.searchStarted(start, goal);
+		try {
+			ArrayList<SpacetimePoint> path = search(start, goal);
+			listener.searchFinished(goal, path == null ? -1 : path.size() - 1);
+			return path;
+		} finally {
+			map.getContextPool().release(ctx);
+			ctx = null;
+			open = null;
+			h = null;
+			stats = rec.stop();
 		}
-		start.setG(0);
+	}
+	
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * The search itself, run with a freshly reset context
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	private ArrayList<SpacetimePoint> search(int start, int goal) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
 		
-		// Iterate through the search nodes of the map and set initial f values for undiscovered nodes to infinity and set the f value of
-		// the start node to the heuristic (Manhattan) distance from the start to the goal
-		for (Node n : map.getNodes()) {
-			n.setF((int) Double.POSITIVE_INFINITY);
+		// Set the g value of the start node to 0 and its f value to the heuristic distance from the start to the goal
+		int startF = h.applyAsInt(start);
+		if (startF == Heuristic.UNREACHABLE) {
+			return null;
 		}
-		start.setF(WorldMap.mDist(start, goal));
+		ctx.set(start, 0, startF, -1);
 		
 		// Add the start node to the open queue
-		open.add(start);
+		open.push(start, startF, 0);
+		rec.generated(open.size());
+		listener.generated(start, 0, startF);
 		
 		// The main loop of the search, keep searching while the open set contains nodes
 		while (!open.isEmpty()) {
 			// Take the front of the open queue
-			Node current = open.poll();
+			int current = open.poll();
 			
 			// If the front of the open queue is the goal node then reconstruct the path from the start to the goal and return it
-			if (current.getX() == goal.getX() && current.getY() == goal.getY()) {
+			if (current == goal) {
 				return reconstructPath(goal);
 			}
 			
 			// Add the current node to the closed set
-			closed.add(current);
+			ctx.close(current);
+			rec.expanded();
+			listener.expanded(current, ctx.g(current), ctx.f(current));
 			
 			// Iterate through the neighbours of the current node
-			for (Node neighbour : current.getNeighbours()) {
+			for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+				int neighbour = targets[e];
+				
 				// If the neighbour is in the closed set then ignore it
-				if (closed.contains(neighbour)) {
+				if (ctx.isClosed(neighbour)) {
 					continue;
 				}
 				
 				// Set a tentativeG value of the neighbour but don't assign it
-				int tentativeG = current.getG() + 1;
+				int tentativeG = ctx.g(current) + 1;
 				
 				// If the new g value of the neighbour would be greater than the one it's already got then ignore this neighbour
-				if (tentativeG >= neighbour.getG()) {
+				if (tentativeG >= ctx.g(neighbour)) {
 					continue;
 				}
-				// Otherwise, add the neighbour to the open queue if its not already there after assigning its g value, f value and creating
-				// the relevant entry in the cameFrom table
-				else if (!open.contains(neighbour)) {
-					neighbour.setG(tentativeG);
-					neighbour.setF(neighbour.getG() + WorldMap.mDist(neighbour, goal));
-					cameFrom.put(neighbour, current);
-					open.add(neighbour);
+				
+				// Ignore the neighbour if the heuristic knows the goal can't be reached from it
+				int neighbourH = h.applyAsInt(neighbour);
+				if (neighbourH == Heuristic.UNREACHABLE) {
+					continue;
 				}
+				
+				// Otherwise, assign its g value, f value and create the relevant entry in the cameFrom table, then add the neighbour to the
+				// open queue or, if it's already there, move it up the queue to its new f value
+				int neighbourF = tentativeG + neighbourH;
+				ctx.set(neighbour, tentativeG, neighbourF, current);
+				open.push(neighbour, neighbourF, tentativeG);
+				rec.generated(open.size());
+				listener.generated(neighbour, tentativeG, neighbourF);
 			}
 		}
 		// If this point is reached then the search has failed so return null
 		return null;
 	}
 	
-	@Override
-	public ArrayList<SpacetimePoint> reconstructPath(Node current) {
-		ArrayList<Node> backwardsPath = new ArrayList<>();
-		System.out.println("recons");
-		backwardsPath.add(current);
-		System.out.println("cur: " + current + " cf " + cameFrom.get(current));
-		while (cameFrom.get(current) != null) {
-			current = cameFrom.get(current);
-			backwardsPath.add(current);
-		}
-		ArrayList<SpacetimePoint> path = new ArrayList<>(backwardsPath.size());
-		for (int i = 0; i < backwardsPath.size(); i++) {
-			int bi = backwardsPath.size() - 1 - i;
-			path.add(new SpacetimePoint(backwardsPath.get(bi), i));
-		}
-		System.out.println(path);
-		return path;
-	}
-	
 	/**
-	 * Helper method for debugging that prints the state of the search map, including the node currently being considered, the obstacles,
-	 * the closed set, the open set and the goal
-	 * @param goal
-	 *            goal node
+	 * Trace through the cameFrom table from a cell and reconstruct the path. Only valid while a search is running.
+	 * @param current
+	 *            cell ID to trace back from
+	 * @return path from start to current
 	 */
-	public void printSearchMap(Node goal) {
-		for (int y = map.getHeight() - 1; y >= 0; y--) {
-			for (int x = 0; x < map.getWidth(); x++) {
-				Node n = null;
-				try {
-					n = map.nodeAt(x, y);
-				} catch (InvalidCoordinateException e) {
-					// Unreachable since for loops bounded by map dimensions
-					e.printStackTrace();
-				}
-				
-				if (n.isObstacle() && (open.contains(n) || closed.contains(n))) {
-					throw new RuntimeException("ERROR IN A*, OBSTACLE IN FRONTIER OR EXPLORED");
-				} else if (n.getX() == open.peek().getX() && n.getY() == open.peek().getY()) {
-					System.out.print(" O");
-				} else if (closed.contains(n)) {
-					System.out.print(" .");
-				} else if (open.contains(n)) {
-					System.out.print(" +");
-				} else if (n.isObstacle()) {
-					System.out.print(" X");
-				} else if (n.getX() == goal.getX() && n.getY() == goal.getY()) {
-					System.out.print(" @");
-				} else {
-					System.out.print(" -");
-				}
-			}
-			System.out.println();
+	public ArrayList<SpacetimePoint> reconstructPath(int current) {
+		int length = ctx.g(current) + 1;
+		SpacetimePoint[] points = new SpacetimePoint[length];
+		for (int i = length - 1; i >= 0; i--) {
+			points[i] = new SpacetimePoint(graph.x(current), graph.y(current), i);
+			current = ctx.parent(current);
 		}
-		System.out.println();
+		return new ArrayList<>(Arrays.asList(points));
 	}
 	
 }
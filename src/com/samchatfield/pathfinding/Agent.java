@@ -83,10 +83,14 @@ public class Agent {
 	}
 	
 	/**
-	 * Clear the agent's path
+	 * Clear the agent's path, which may have been set to null by a planner that couldn't find one
 	 */
 	public void clearPath() {
-		path.clear();
+		if (path == null) {
+			path = new ArrayList<>();
+		} else {
+			path.clear();
+		}
 	}
 	
 	/**
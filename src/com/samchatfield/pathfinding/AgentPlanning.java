@@ -2,6 +2,8 @@ package com.samchatfield.pathfinding;
 
 import java.util.ArrayList;
 
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
 /**
  * Abstract route planning type which has instances SingleAgentPlanning and MultiAgentPlanning
  * @author Sam
@@ -16,4 +18,11 @@ public interface AgentPlanning {
 	 */
 	void computePlan(ArrayList<Agent> as);
 	
+	/**
+	 * Get the statistics of the last call to computePlan(): the expansions, generated nodes, reservation probes and allocation of all of its
+	 * searches added up, the peak open size of the biggest one and the wall time of the whole plan
+	 * @return statistics, or SearchStats.EMPTY before the first plan
+	 */
+	SearchStats getStats();
+	
 }
@@ -0,0 +1,203 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.PathCache;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Route planning for many independent single agent queries at once. A batch of (start, goal) pairs is split into chunks that run on an
+ * Executor, which can be a ForkJoinPool, a fixed pool of platform threads or (on a JDK that has them) a virtual thread per task executor.
+ * Each query is searched for with Jump Point Search like in SingleAgentPlanning, optionally through a PathCache. The search scratch space
+ * comes from the map's SearchContextPool, so once it has warmed up there is a context for each thread and none are allocated per query,
+ * even with a new virtual thread for every task. The queries don't share anything else, so a batch scales with the number of cores.
+ * @author Sam
+ */
+public class BatchPlanner {
+	
+	/**
+	 * Default number of queries run one after the other by each task, enough that handing out tasks costs little next to the searches
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16;
+	
+	private final WorldMap map;
+	private final Executor executor;
+	private final PathCache cache;
+	private final int chunkSize;
+	
+	/**
+	 * Create a batch planner on the given map data that runs on the common ForkJoinPool, without a cache
+	 * @param map
+	 */
+	public BatchPlanner(WorldMap map) {
+		this(map, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Create a batch planner on the given map data that runs on the given executor, without a cache
+	 * @param map
+	 *            map data
+	 * @param executor
+	 *            runs the chunks of each batch
+	 */
+	public BatchPlanner(WorldMap map, Executor executor) {
+		this(map, executor, null, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Create a batch planner on the given map data that runs on the given executor
+	 * @param map
+	 *            map data
+	 * @param executor
+	 *            runs the chunks of each batch
+	 * @param cache
+	 *            cache of paths on the map, which can be shared with other planners, or null to always search
+	 * @param chunkSize
+	 *            number of queries run one after the other by each task
+	 */
+	public BatchPlanner(WorldMap map, Executor executor, PathCache cache, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunks must have at least one query: " + chunkSize);
+		}
+		this.map = map;
+		this.executor = executor;
+		this.cache = cache;
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Plan a batch of queries given as cells, waiting until all of them are done
+	 * @param starts
+	 *            start cell ID of each query
+	 * @param goals
+	 *            goal cell ID of each query
+	 * @return the result of each query, in the same order
+	 * @throws IllegalArgumentException
+	 *             if there aren't as many goals as starts
+	 */
+	public List<Result> plan(int[] starts, int[] goals) {
+		if (starts.length != goals.length) {
+			throw new IllegalArgumentException(starts.length + " starts but " + goals.length + " goals");
+		}
+		ArrayList<Node> nodes = map.getNodes();
+		Node[] s = new Node[starts.length];
+		Node[] g = new Node[goals.length];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = nodes.get(starts[i]);
+			g[i] = nodes.get(goals[i]);
+		}
+		return plan(Arrays.asList(s), Arrays.asList(g));
+	}
+	
+	/**
+	 * Plan a batch of queries, waiting until all of them are done
+	 * @param starts
+	 *            start node of each query
+	 * @param goals
+	 *            goal node of each query
+	 * @return the result of each query, in the same order
+	 * @throws IllegalArgumentException
+	 *             if there aren't as many goals as starts
+	 */
+	public List<Result> plan(List<Node> starts, List<Node> goals) {
+		int n = starts.size();
+		if (goals.size() != n) {
+			throw new IllegalArgumentException(n + " starts but " + goals.size() + " goals");
+		}
+		Result[] results = new Result[n];
+		List<CompletableFuture<Void>> chunks = new ArrayList<>((n + chunkSize - 1) / chunkSize);
+		for (int from = 0; from < n; from += chunkSize) {
+			int first = from;
+			int last = Math.min(n, from + chunkSize);
+			// Each chunk has a search and a Recorder that all of its queries reuse
+			chunks.add(CompletableFuture.runAsync(() -> {
+				JumpPointSearch search = new JumpPointSearch(map);
+				SearchStats.Recorder rec = SearchStats.Recorder.aggregate();
+				for (int i = first; i < last; i++) {
+					results[i] = query(search, rec, starts.get(i), goals.get(i));
+				}
+			}, executor));
+		}
+		// Waiting on every chunk also makes the results they wrote visible to this thread
+		CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * Run a single query. The Recorder takes its allocation from the search, which only measures it when that's turned on, so a query
+	 * answered from the cache has none.
+	 * @param search
+	 *            search to use
+	 * @param rec
+	 *            Recorder to reset for the query
+	 * @param start
+	 *            start node
+	 * @param goal
+	 *            goal node
+	 * @return its result
+	 */
+	private Result query(JumpPointSearch search, SearchStats.Recorder rec, Node start, Node goal) {
+		rec.reset();
+		ArrayList<SpacetimePoint> path;
+		if (cache == null) {
+			path = search(search, rec, start, goal);
+		} else {
+			path = cache.path(start, goal, () -> search(search, rec, start, goal));
+		}
+		return new Result(path, rec.stop());
+	}
+	
+	private static ArrayList<SpacetimePoint> search(JumpPointSearch search, SearchStats.Recorder rec, Node start, Node goal) {
+		ArrayList<SpacetimePoint> path = search.pathfind(start, goal);
+		rec.add(search.getStats());
+		return path;
+	}
+	
+	/**
+	 * The path found by one query of a batch and the statistics of finding it
+	 */
+	public static class Result {
+		
+		private final ArrayList<SpacetimePoint> path;
+		private final SearchStats stats;
+		
+		Result(ArrayList<SpacetimePoint> path, SearchStats stats) {
+			this.path = path;
+			this.stats = stats;
+		}
+		
+		/**
+		 * Get the path found
+		 * @return path, or null if there is none
+		 */
+		public ArrayList<SpacetimePoint> getPath() {
+			return path;
+		}
+		
+		/**
+		 * Get how long the query took to run, not counting the time it spent waiting for a thread
+		 * @return time in nanoseconds
+		 */
+		public long getNanos() {
+			return stats.getWallNanos();
+		}
+		
+		/**
+		 * Get the statistics of the query, with no expansions at all if its path came from the cache
+		 * @return statistics
+		 */
+		public SearchStats getStats() {
+			return stats;
+		}
+		
+	}
+	
+}
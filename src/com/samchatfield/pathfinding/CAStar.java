@@ -1,35 +1,58 @@
 package com.samchatfield.pathfinding;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.LongIntHashMap;
 import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SearchContext;
 import com.samchatfield.pathfinding.data.SpacetimePoint;
 import com.samchatfield.pathfinding.data.WorldMap;
-import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+import com.samchatfield.pathfinding.trace.SearchListener;
 
 /**
- * My implementation of Cooperative A* search using Manhattan distance as the heuristic and a hash table for the reservation table storing
- * points with a time dimension and the Agent that is there. The open set is implemented as a priority queue with the priority being the f
- * value of the search node (f(x) = g(x) + h(x) where h(x) is the heuristic value of x to the goal). The closed set is simply a hash set and
- * a hash table is used to store where each search node came from (i.e. which node led to it).
+ * My implementation of Cooperative A* search using Manhattan distance (or any other Heuristic, normally the true distance from
+ * ReverseResumableAStar) as the heuristic and a ReservationTable recording which agent is at
+ * each point in space-time. The search is over space-time states, i.e. (cell, time) pairs, where every
+ * action (moving to a neighbour or waiting where it is) takes the agent one time step further on, so the g value of a state is also its
+ * time. Waiting is an ordinary action, so a state and the state it waited in are simply two states on the same cell at consecutive times.
+ * <p>
+ * States are created in a SearchContext borrowed from the map's pool and are found again through a packed long (time, cell) key, so the
+ * closed set and open set are both keyed on space-time rather than on the cell. After the last reservation in the table nothing changes
+ * any more, so all times past that horizon share one key per cell, which keeps the search finite when the goal can't be reached. The open
+ * set is an OpenList with the priority being the f value of the search node (f(x) = g(x) + h(x) where h(x) is the heuristic value of x to
+ * the goal), ties going to the higher g value.
+ * <p>
+ * As with AStar any number of instances can search the same map at once from different threads. The reservation table and heuristic can be
+ * shared between them too, as long as nothing is writing to the table at the time.
  * @author Sam
  */
 public class CAStar implements SearchStrategy {
 	
 	private final WorldMap map;
+	private GridGraph graph;
 	private final Agent agent;
-	private Hashtable<Node, Node> cameFrom;
-	private HashSet<Node> closed;
-	private PriorityQueue<Node> open;
-	private Hashtable<SpacetimePoint, Agent> resTable;
+	private final OpenList.Kind openKind;
+	private final Heuristic heuristic;
+	private int window, startTime;
+	private boolean holdGoal;
+	private SearchContext ctx;
+	private OpenList open;
+	private IntUnaryOperator h;
+	private LongIntHashMap stateIndex;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	private SearchListener listener = SearchListener.NONE;
+	private final ReservationTable resTable;
 	
 	/**
-	 * Create a new instance of this search strategy with the given map data, Agent, and reservation table. Initialise the data structures
-	 * including the priority queue and its comparator
+	 * Create a new instance of this search strategy with the given map data, Agent, and reservation table, using a bucket queue as the open
+	 * set
 	 * @param map
 	 *            map data
 	 * @param agent
@@ -37,171 +60,291 @@ public class CAStar implements SearchStrategy {
 	 * @param resTable
 	 *            reservation table
 	 */
-	public CAStar(WorldMap map, Agent agent, Hashtable<SpacetimePoint, Agent> resTable) {
+	public CAStar(WorldMap map, Agent agent, ReservationTable resTable) {
+		this(map, agent, resTable, OpenList.Kind.BUCKETS);
+	}
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data, Agent, reservation table and kind of open set
+	 * @param map
+	 *            map data
+	 * @param agent
+	 *            Agent to search on
+	 * @param resTable
+	 *            reservation table
+	 * @param openKind
+	 *            kind of open list to use
+	 */
+	public CAStar(WorldMap map, Agent agent, ReservationTable resTable, OpenList.Kind openKind) {
+		this(map, agent, resTable, openKind, new ManhattanHeuristic(map.getGraph()));
+	}
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data, Agent, reservation table, kind of open set and heuristic
+	 * @param map
+	 *            map data
+	 * @param agent
+	 *            Agent to search on
+	 * @param resTable
+	 *            reservation table
+	 * @param openKind
+	 *            kind of open list to use
+	 * @param heuristic
+	 *            heuristic to the goal, which can be shared with the searches of other agents
+	 */
+	public CAStar(WorldMap map, Agent agent, ReservationTable resTable, OpenList.Kind openKind, Heuristic heuristic) {
 		this.map = map;
+		this.heuristic = heuristic;
 		this.agent = agent;
 		this.resTable = resTable;
-		cameFrom = new Hashtable<>();
-		closed = new HashSet<>();
-		
-		open = new PriorityQueue<>(map.getNodes().size(), new Comparator<Node>() {
-			@Override
-			public int compare(Node n1, Node n2) {
-				if (n1.getF() > n2.getF()) {
-					return 1;
-				} else if (n1.getF() < n2.getF()) {
-					return -1;
-				} else {
-					return 0;
-				}
-			}
-		});
+		this.openKind = openKind;
+		graph = map.getGraph();
 	}
 	
 	/**
-	 * Much of the functionality for this is identical to that for A* so see the comments in there and I will add in the things that are
-	 * different.
+	 * Limit the search to a window of time steps, as in Windowed Hierarchical Cooperative A*. The first state reached at the edge of the
+	 * window with the lowest f value ends the search, so the path returned either reaches the goal within the window (somewhere it can stay
+	 * until the end of the window) or stops at the end of it wherever the heuristic says is closest to the goal. The heuristic should then
+	 * be the true distance rather than Manhattan distance.
+	 * @param window
+	 *            number of time steps to search, or 0 for no limit
+	 */
+	public void setWindow(int window) {
+		if (window < 0) {
+			throw new IllegalArgumentException("Window must not be negative: " + window);
+		}
+		this.window = window;
+	}
+	
+	/**
+	 * Start the following searches at the given time step of the reservation table rather than at 0, for planners that keep reservations
+	 * in absolute time and plan agents at different times, such as LifelongPlanner. The g values of the states are still the number of
+	 * steps from the start, as are the window and the returned path's length, but the times of the path's points are absolute.
+	 * @param startTime
+	 *            time step of the start
+	 */
+	public void setStartTime(int startTime) {
+		if (startTime < 0) {
+			throw new IllegalArgumentException("Start time must not be negative: " + startTime);
+		}
+		this.startTime = startTime;
+	}
+	
+	/**
+	 * Only finish at the goal at a time from which nobody else has reserved it ever again, so the agent can stay there for as long as it
+	 * likes once it's arrived. Without this the goal only has to be free when the agent gets there.
+	 * @param holdGoal
+	 *            whether the agent must be able to stay at its goal
+	 */
+	public void setHoldGoal(boolean holdGoal) {
+		this.holdGoal = holdGoal;
+	}
+	
+	/**
+	 * Set the listener told about the events of the following searches, for tracing them
+	 * @param listener
+	 *            listener, or SearchListener.NONE to stop tracing
 	 */
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+	
 	@Override
 	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
-		for (Node n : map.getNodes()) {
-			n.setG((int) Double.POSITIVE_INFINITY);
-		}
-		start.setG(0);
-		
-		for (Node n : map.getNodes()) {
-			n.setF((int) Double.POSITIVE_INFINITY);
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map that avoids the reservations of the other agents
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		graph = map.getGraph();
+		rec.reset();
+		ctx = map.getContextPool().acquire();
+		open = ctx.open(openKind);
+		stateIndex = ctx.stateIndex();
+		h = heuristic.toGoal(goal);
+		listener.searchStarted(start, goal);
+		try {
+			ArrayList<SpacetimePoint> path = search(start, goal);
+			listener.searchFinished(goal, path == null ? -1 : path.size() - 1);
+			return path;
+		} finally {
+			map.getContextPool().release(ctx);
+			ctx = null;
+			open = null;
+			stateIndex = null;
+			h = null;
+			stats = rec.stop();
 		}
-		start.setF(WorldMap.mDist(start, goal));
+	}
+	
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Much of the functionality for this is identical to that for A* so see the comments in there and I will add in the things that are
+	 * different.
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	private ArrayList<SpacetimePoint> search(int start, int goal) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int horizon = reservationHorizon();
 		
-		open.add(start);
+		discover(start, 0, -1, horizon);
 		
 		while (!open.isEmpty()) {
-			Node current = open.poll();
-			
-			int timestep = computeTimestep(current);
+			int current = open.poll();
+			int cell = ctx.stateCell(current);
+			int timestep = ctx.g(current);
 			
 			// Is the current node the goal? If so get the path and terminate
-			if (current.getX() == goal.getX() && current.getY() == goal.getY()) {
-				return reconstructPath(goal);
+			if (cell == goal && (window == 0 || canStay(cell, timestep, window)) && (!holdGoal || canStay(cell, timestep, horizon))) {
+				return reconstructPath(current);
 			}
-			closed.add(current);
 			
-			// A new boolean that checks that something as been added in this step, this is part of the wait functionality of the robot
-			boolean somethingAdded = false;
+			// States at the edge of the window aren't expanded, the heuristic stands in for the rest of the path
+			if (window > 0 && timestep >= window) {
+				return reconstructPath(current);
+			}
+			ctx.close(current);
+			rec.expanded();
+			listener.expanded(cell, timestep, ctx.f(current));
 			
-			for (Node neighbour : current.getNeighbours()) {
-				int nx = neighbour.getX();
-				int ny = neighbour.getY();
+			for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+				int neighbour = targets[e];
 				
-				// In addition to skipping a neighbour if its already in the closed set, we also skip a neighbour if another agent has
-				// reserved it for the next time step, to avoid a collision occurring on the next time step. We also skip a neighbour if
-				// another agent has reserved it for this time step (the step before the step where the collision we are trying to avoid
-				// would occur) to stop agents both moving towards each other at the same time from skipping through each other out to the
-				// other side.
-				if (closed.contains(neighbour)
-						|| (resTable.containsKey(new SpacetimePoint(nx, ny, timestep + 1)) && !resTable.get(
-								new SpacetimePoint(nx, ny, timestep + 1)).equals(agent))
-						|| (resTable.containsKey(new SpacetimePoint(nx, ny, timestep)) && !resTable.get(
-								new SpacetimePoint(nx, ny, timestep)).equals(agent))) {
+				// We skip a neighbour if another agent has reserved it for the next time step, to avoid a collision occurring on the next
+				// time step. We also skip a neighbour if another agent has reserved it for this time step (the step before the step where
+				// the collision we are trying to avoid would occur) to stop agents both moving towards each other at the same time from
+				// skipping through each other out to the other side.
+				if (reservedByOther(neighbour, timestep + 1) || reservedByOther(neighbour, timestep)) {
 					continue;
 				}
-				
-				int tentativeG = current.getG() + 1;
-				
-				if (tentativeG >= neighbour.getG()) {
-					continue;
-				} else if (!open.contains(neighbour)) {
-					neighbour.setG(tentativeG);
-					neighbour.setF(neighbour.getG() + WorldMap.mDist(neighbour, goal));
-					cameFrom.put(neighbour, current);
-					open.add(neighbour);
-					somethingAdded = true;
-				}
+				discover(neighbour, timestep + 1, current, horizon);
 			}
 			
-			// If nothing was added then add a new 'wait node'. A wait node is just a new node with identical position and neighbours but
-			// has an increased cost from start (g)
-			if (!somethingAdded) {
-				Node wait = new Node(current.getX(), current.getY(), false, current.getNeighbours(), true);
-				wait.setG(current.getG() + 1);
-				wait.setF(wait.getG() + WorldMap.mDist(wait, goal));
-				open.add(wait);
-				cameFrom.put(wait, current);
+			// Waiting where we are is allowed as long as nobody else is due to arrive here on the next time step
+			if (!reservedByOther(cell, timestep + 1)) {
+				discover(cell, timestep + 1, current, horizon);
 			}
 		}
 		return null;
 	}
 	
-	@Override
-	public ArrayList<SpacetimePoint> reconstructPath(Node current) {
-		ArrayList<Node> backwardsPath = new ArrayList<>();
-		
-		backwardsPath.add(current);
-		while (cameFrom.get(current) != null) {
-			current = cameFrom.get(current);
-			backwardsPath.add(current);
+	/**
+	 * Reach the space-time state (cell, time) from another state, creating it if it hasn't been seen before and adding it to the open set
+	 * unless it's closed, has already been reached at least as early or can't reach the goal
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step of arrival, which is also the g value
+	 * @param from
+	 *            state arrived from, or -1 for the start
+	 * @param horizon
+	 *            time after which the reservations no longer change
+	 */
+	private void discover(int cell, int time, int from, int horizon) {
+		int estimate = h.applyAsInt(cell);
+		if (estimate == Heuristic.UNREACHABLE) {
+			return;
 		}
-		
-		ArrayList<SpacetimePoint> path = new ArrayList<>(backwardsPath.size());
-		for (int i = 0; i < backwardsPath.size(); i++) {
-			int bi = backwardsPath.size() - 1 - i;
-			path.add(new SpacetimePoint(backwardsPath.get(bi), i));
+		long key = stateKey(cell, Math.min(time, horizon));
+		int s = stateIndex.get(key);
+		if (s == LongIntHashMap.MISSING) {
+			s = ctx.newState(cell);
+			stateIndex.put(key, s);
+		} else if (ctx.isClosed(s) || time >= ctx.g(s)) {
+			return;
 		}
-		return path;
+		int f = time + estimate;
+		ctx.set(s, time, f, from);
+		open.push(s, f, time);
+		rec.generated(open.size());
+		listener.generated(cell, time, f);
 	}
 	
 	/**
-	 * Compute the current time step the agent would be at if it was on the current node, we do this by tracing back through the cameFrom
-	 * table
-	 * @param current
-	 *            Node to get time step of
-	 * @return time step number
+	 * Return whether the agent could wait in a cell from the given time step to a later one, which it must be able to do until the end of
+	 * the window to finish a windowed search at its goal, or until the reservation horizon to hold its goal
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step of arrival
+	 * @param until
+	 *            last time step to wait for
+	 * @return nobody else has reserved the cell in between
 	 */
-	private int computeTimestep(Node current) {
-		int ts = 0;
-		while (cameFrom.get(current) != null) {
-			current = cameFrom.get(current);
-			ts++;
+	private boolean canStay(int cell, int time, int until) {
+		for (int t = time + 1; t <= until; t++) {
+			if (reservedByOther(cell, t)) {
+				return false;
+			}
 		}
-		return ts;
+		return true;
 	}
 	
 	/**
-	 * Helper method to debug search in the early stages before I had the GUI
-	 * @param goal
-	 *            goal node
+	 * Pack a space-time state into a single long key
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step
+	 * @return key
 	 */
-	public void printSearchMap(Node goal) {
-		for (int y = map.getHeight() - 1; y >= 0; y--) {
-			for (int x = 0; x < map.getWidth(); x++) {
-				Node n = null;
-				try {
-					n = map.nodeAt(x, y);
-				} catch (InvalidCoordinateException e) {
-					// Unreachable since for loops bounded by map dimensions
-					e.printStackTrace();
-				}
-				
-				if (n.isObstacle() && (open.contains(n) || closed.contains(n))) {
-					throw new RuntimeException("ERROR IN A*, OBSTACLE IN FRONTIER OR EXPLORED");
-				} else if (n.getX() == open.peek().getX() && n.getY() == open.peek().getY()) {
-					System.out.print(" O");
-				} else if (closed.contains(n)) {
-					System.out.print(" .");
-				} else if (open.contains(n)) {
-					System.out.print(" +");
-				} else if (n.isObstacle()) {
-					System.out.print(" X");
-				} else if (n.getX() == goal.getX() && n.getY() == goal.getY()) {
-					System.out.print(" @");
-				} else {
-					System.out.print(" -");
-				}
-			}
-			System.out.println();
+	private static long stateKey(int cell, int time) {
+		return ((long) time << 32) | cell;
+	}
+	
+	/**
+	 * Return whether another agent has reserved the given cell at the given time
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step after the start
+	 * @return is reserved by another agent
+	 */
+	private boolean reservedByOther(int cell, int time) {
+		rec.probed();
+		return resTable.isReservedByOther(graph.x(cell), graph.y(cell), startTime + time, agent.getIndex());
+	}
+	
+	/**
+	 * Find the first time step after every reservation in the table, from which point on waiting in a cell leads to the same situation as
+	 * waiting one step less
+	 * @return horizon time step after the start
+	 */
+	private int reservationHorizon() {
+		return Math.max(0, resTable.getMaxTime() + 1 - startTime);
+	}
+	
+	/**
+	 * Trace through the parents of a search state and reconstruct the path. Only valid while a search is running.
+	 * @param current
+	 *            search state to trace back from
+	 * @return path from start to current
+	 */
+	public ArrayList<SpacetimePoint> reconstructPath(int current) {
+		int length = ctx.g(current) + 1;
+		SpacetimePoint[] points = new SpacetimePoint[length];
+		for (int i = length - 1; i >= 0; i--) {
+			int cell = ctx.stateCell(current);
+			points[i] = new SpacetimePoint(graph.x(cell), graph.y(cell), startTime + i);
+			current = ctx.parent(current);
 		}
-		System.out.println();
+		return new ArrayList<>(Arrays.asList(points));
 	}
 	
 }
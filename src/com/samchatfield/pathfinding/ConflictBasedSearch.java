@@ -0,0 +1,556 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.samchatfield.pathfinding.data.Constraint;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Route planning method for multiple agents using Conflict-Based Search (CBS), which finds plans with the lowest sum of costs (the total
+ * number of time steps until each agent is at its goal for good). Each agent plans on its own with ConstrainedAStar, and whenever two of
+ * the paths conflict (being in the same cell at the same time or swapping cells) the constraint tree is split into two branches, each of
+ * which forbids one way of the conflict happening, and the cheapest branch is searched next. An agent stays at its goal once it's there,
+ * and agents without a goal (or that can't reach theirs) don't move and so are treated as obstacles.
+ * <p>
+ * On top of the basic algorithm:
+ * <ul>
+ * <li>Conflicts are prioritised: cardinal conflicts, where both agents' paths must get longer to avoid it, are split on first, then
+ * semi-cardinal and then the rest. This is found from the width of each agent's MDD (the cells it can be in at each time step on a
+ * shortest path) at the time of the conflict.</li>
+ * <li>Bypassing: if one branch finds a path of the same cost with fewer conflicts, that path is taken in place of splitting.</li>
+ * <li>Disjoint splitting: the two branches are that one of the agents must be at the conflict (which forbids every other agent from being
+ * there) and that it must not be, so no plan is in both branches.</li>
+ * <li>The low level search breaks ties towards paths that conflict less with the other agents' paths.</li>
+ * </ul>
+ * CBS can take exponentially long when there are many agents in a small space, so the search is limited to a number of constraint tree
+ * nodes and a time limit. If it can't find a plan within them the plan is left to a fallback route planning method, by default WHCA*. Only
+ * the fallback's paths that end at their agent's goal are kept, the other agents get no path.
+ * @author Sam
+ */
+public class ConflictBasedSearch implements AgentPlanning {
+	
+	/**
+	 * Number of constraint tree nodes expanded by default before giving up
+	 */
+	public static final int DEFAULT_MAX_NODES = 100000;
+	
+	/**
+	 * Time limit of a plan in milliseconds by default before giving up
+	 */
+	public static final long DEFAULT_TIME_LIMIT_MS = 10000;
+	
+	private static final int CARDINAL = 0, SEMI_CARDINAL = 1, NON_CARDINAL = 2;
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private final Heuristic heuristic;
+	private final ConstrainedAStar lowLevel;
+	private final int maxNodes;
+	private final long timeLimitMs;
+	private final AgentPlanning fallback;
+	
+	private int[] starts, goals;
+	private int[] occAgent0, occStamp0, occAgent1, occStamp1;
+	private int occStamp;
+	
+	private boolean solved;
+	private int expanded, generated, sumOfCosts;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * A conflict between agents a and b at a time step. For a vertex conflict they're both at cell aTo, for an edge conflict a moves from
+	 * aFrom to aTo while b moves from aTo to aFrom.
+	 */
+	private static class Conflict {
+		final int a, b, aFrom, aTo, time;
+		
+		Conflict(int a, int b, int aFrom, int aTo, int time) {
+			this.a = a;
+			this.b = b;
+			this.aFrom = aFrom;
+			this.aTo = aTo;
+			this.time = time;
+		}
+		
+		Constraint constraint(boolean positive) {
+			return aFrom < 0 ? Constraint.vertex(a, aTo, time, positive) : Constraint.edge(a, aFrom, aTo, time, positive);
+		}
+	}
+	
+	/**
+	 * A node of the constraint tree. Each node adds one constraint to those of its parent, and has the paths of all agents under those
+	 * constraints (shared with the parent for the agents that didn't have to replan).
+	 */
+	private static class CTNode {
+		final CTNode parent;
+		final Constraint constraint;
+		int[][] paths;
+		final int[][][] mdds;
+		int cost;
+		ArrayList<Conflict> conflicts;
+		
+		CTNode(CTNode parent, Constraint constraint, int[][] paths, int[][][] mdds) {
+			this.parent = parent;
+			this.constraint = constraint;
+			this.paths = paths;
+			this.mdds = mdds;
+		}
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data with the default limits and fallback
+	 * @param map
+	 *            map data
+	 */
+	public ConflictBasedSearch(WorldMap map) {
+		this(map, new ReverseResumableAStar(map));
+	}
+	
+	private ConflictBasedSearch(WorldMap map, Heuristic heuristic) {
+		this(map, DEFAULT_MAX_NODES, DEFAULT_TIME_LIMIT_MS, new WindowedMultiAgentPlanning(map, WindowedMultiAgentPlanning.DEFAULT_WINDOW,
+				WindowedMultiAgentPlanning.DEFAULT_WINDOW / 2, Math.max(1000, 4 * (map.getWidth() + map.getHeight())), heuristic), heuristic);
+	}
+	
+	/**
+	 * Create a new instance of this route planning method
+	 * @param map
+	 *            map data
+	 * @param maxNodes
+	 *            number of constraint tree nodes to expand before giving up
+	 * @param timeLimitMs
+	 *            time to search for in milliseconds before giving up
+	 * @param fallback
+	 *            route planning method to use if no plan is found within the limits, or null to leave the agents without paths
+	 */
+	public ConflictBasedSearch(WorldMap map, int maxNodes, long timeLimitMs, AgentPlanning fallback) {
+		this(map, maxNodes, timeLimitMs, fallback, new ReverseResumableAStar(map));
+	}
+	
+	/**
+	 * Create a new instance of this route planning method
+	 * @param map
+	 *            map data
+	 * @param maxNodes
+	 *            number of constraint tree nodes to expand before giving up
+	 * @param timeLimitMs
+	 *            time to search for in milliseconds before giving up
+	 * @param fallback
+	 *            route planning method to use if no plan is found within the limits, or null to leave the agents without paths
+	 * @param heuristic
+	 *            heuristic for the low level searches, which must be consistent for the plans to be optimal
+	 */
+	public ConflictBasedSearch(WorldMap map, int maxNodes, long timeLimitMs, AgentPlanning fallback, Heuristic heuristic) {
+		this.maxNodes = maxNodes;
+		this.timeLimitMs = timeLimitMs;
+		this.fallback = fallback;
+		this.heuristic = heuristic;
+		this.map = map;
+		graph = map.getGraph();
+		lowLevel = new ConstrainedAStar(map, heuristic);
+	}
+	
+	@Override
+	public void computePlan(ArrayList<Agent> as) {
+		rec.reset();
+		try {
+			plan(as);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private void plan(ArrayList<Agent> as) {
+		graph = map.getGraph();
+		long deadline = System.nanoTime() + timeLimitMs * 1000000L;
+		solved = false;
+		expanded = 0;
+		generated = 0;
+		sumOfCosts = -1;
+		
+		// Agents without a goal stay where they are for the whole plan
+		boolean[] blocked = new boolean[graph.size()];
+		for (Agent a : as) {
+			if (a.getGoal() == null) {
+				blocked[graph.id(a.getStart())] = true;
+			}
+		}
+		
+		ArrayList<Agent> planned = new ArrayList<>();
+		for (Agent a : as) {
+			if (a.getGoal() != null) {
+				a.clearPath();
+				if (heuristic.estimate(graph.id(a.getStart()), graph.id(a.getGoal())) == Heuristic.UNREACHABLE) {
+					// An agent that can't get to its goal doesn't go anywhere either
+					a.setPath(null);
+					blocked[graph.id(a.getStart())] = true;
+				} else {
+					planned.add(a);
+				}
+			}
+		}
+		int n = planned.size();
+		starts = new int[n];
+		goals = new int[n];
+		for (int i = 0; i < n; i++) {
+			starts[i] = graph.id(planned.get(i).getStart());
+			goals[i] = graph.id(planned.get(i).getGoal());
+		}
+		heuristic.expectGoals(n);
+		lowLevel.setBlocked(blocked);
+		
+		CTNode solution = search(n, deadline);
+		if (solution != null) {
+			solved = true;
+			sumOfCosts = solution.cost;
+			for (int i = 0; i < n; i++) {
+				planned.get(i).setPath(toPath(solution.paths[i]));
+			}
+		} else if (fallback != null) {
+			fallback.computePlan(as);
+			rec.add(fallback.getStats());
+			for (Agent a : as) {
+				if (a.getGoal() != null && !endsAtGoal(a)) {
+					a.setPath(null);
+				}
+			}
+		} else {
+			for (Agent a : planned) {
+				a.setPath(null);
+			}
+		}
+	}
+	
+	/**
+	 * The high level search over the constraint tree
+	 * @param n
+	 *            number of agents
+	 * @param deadline
+	 *            System.nanoTime() to give up at
+	 * @return the first node without conflicts, or null if there is none within the limits
+	 */
+	private CTNode search(int n, long deadline) {
+		CTNode root = new CTNode(null, null, new int[n][], new int[n][][]);
+		for (int i = 0; i < n; i++) {
+			if (!replan(root, i)) {
+				return null;
+			}
+		}
+		finish(root);
+		
+		// Cheapest first, then the node with the fewest conflicts left to resolve
+		PriorityQueue<CTNode> open = new PriorityQueue<>((x, y) -> x.cost != y.cost ? Integer.compare(x.cost, y.cost)
+				: Integer.compare(x.conflicts.size(), y.conflicts.size()));
+		open.add(root);
+		generated++;
+		
+		while (!open.isEmpty() && expanded < maxNodes && System.nanoTime() < deadline) {
+			CTNode node = open.poll();
+			if (node.conflicts.isEmpty()) {
+				return node;
+			}
+			expanded++;
+			
+			Conflict conflict = choose(node);
+			CTNode[] children = { child(node, conflict.constraint(true)), child(node, conflict.constraint(false)) };
+			
+			// Bypass: take a child's paths instead of splitting if they cost the same and conflict less
+			boolean bypassed = false;
+			for (CTNode child : children) {
+				if (child != null && child.cost == node.cost && child.conflicts.size() < node.conflicts.size()) {
+					node.paths = child.paths;
+					node.conflicts = child.conflicts;
+					bypassed = true;
+					break;
+				}
+			}
+			if (bypassed) {
+				open.add(node);
+				continue;
+			}
+			for (CTNode child : children) {
+				if (child != null) {
+					open.add(child);
+					generated++;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Create the child of a node with one more constraint, replanning the agents whose paths break it
+	 * @param node
+	 *            parent node
+	 * @param constraint
+	 *            constraint to add
+	 * @return the child, or null if an agent has no path under the new constraints
+	 */
+	private CTNode child(CTNode node, Constraint constraint) {
+		CTNode child = new CTNode(node, constraint, node.paths.clone(), node.mdds.clone());
+		int a = constraint.getAgent();
+		
+		if (!constraint.isPositive()) {
+			child.mdds[a] = null;
+			if (!replan(child, a)) {
+				return null;
+			}
+		} else {
+			// The positive constraint narrows down every agent's options, not just those that have to replan
+			Arrays.fill(child.mdds, null);
+			for (int j = 0; j < child.paths.length; j++) {
+				if (j != a && violates(child.paths[j], constraint) && !replan(child, j)) {
+					return null;
+				}
+			}
+		}
+		finish(child);
+		return child;
+	}
+	
+	/**
+	 * Return whether a path is stopped by a positive constraint on another agent
+	 */
+	private static boolean violates(int[] path, Constraint c) {
+		int t = c.getTime();
+		if (!c.isEdge()) {
+			return at(path, t) == c.getCell();
+		}
+		int before = at(path, t - 1);
+		int after = at(path, t);
+		return before == c.getFrom() || after == c.getCell() || (before == c.getCell() && after == c.getFrom());
+	}
+	
+	/**
+	 * Plan one agent's path under the constraints of a node
+	 * @return whether there is a path
+	 */
+	private boolean replan(CTNode node, int agent) {
+		lowLevel.setConstraints(constraints(node, agent));
+		lowLevel.setAvoid(node.paths, agent);
+		int[] path = lowLevel.search(starts[agent], goals[agent]);
+		rec.add(lowLevel.getStats());
+		if (path == null) {
+			return false;
+		}
+		node.paths[agent] = path;
+		return true;
+	}
+	
+	/**
+	 * Collect the constraints on one agent from a node and its ancestors, turning positive constraints on other agents into the negative
+	 * constraints they imply
+	 */
+	private static List<Constraint> constraints(CTNode node, int agent) {
+		ArrayList<Constraint> list = new ArrayList<>();
+		for (CTNode c = node; c.constraint != null; c = c.parent) {
+			Constraint con = c.constraint;
+			int t = con.getTime();
+			if (con.getAgent() == agent) {
+				list.add(con);
+			} else if (con.isPositive()) {
+				list.add(Constraint.vertex(agent, con.getCell(), t, false));
+				if (con.isEdge()) {
+					list.add(Constraint.vertex(agent, con.getFrom(), t - 1, false));
+					list.add(Constraint.edge(agent, con.getCell(), con.getFrom(), t, false));
+				}
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Work out the cost and conflicts of a node once all of its paths are planned
+	 */
+	private void finish(CTNode node) {
+		int cost = 0;
+		for (int[] p : node.paths) {
+			cost += p.length - 1;
+		}
+		node.cost = cost;
+		node.conflicts = findConflicts(node.paths);
+	}
+	
+	/**
+	 * Choose the conflict to split on, the earliest cardinal conflict if there is one and otherwise the earliest semi-cardinal one
+	 */
+	private Conflict choose(CTNode node) {
+		Conflict best = null;
+		int bestType = Integer.MAX_VALUE;
+		for (Conflict c : node.conflicts) {
+			int type = classify(node, c);
+			if (type < bestType) {
+				best = c;
+				bestType = type;
+				if (type == CARDINAL) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+	
+	private int classify(CTNode node, Conflict c) {
+		boolean a = unavoidable(node, c.a, c);
+		boolean b = unavoidable(node, c.b, c);
+		return a && b ? CARDINAL : a || b ? SEMI_CARDINAL : NON_CARDINAL;
+	}
+	
+	/**
+	 * Return whether every shortest path of an agent under the node's constraints has its part in a conflict, which is when its MDD has a
+	 * width of one at the time (or both times, for an edge conflict) of the conflict
+	 */
+	private boolean unavoidable(CTNode node, int agent, Conflict c) {
+		int[][] mdd = node.mdds[agent];
+		if (mdd == null) {
+			lowLevel.setConstraints(constraints(node, agent));
+			mdd = lowLevel.mdd(starts[agent], goals[agent], node.paths[agent].length - 1);
+			rec.add(lowLevel.getStats());
+			if (mdd == null) {
+				return false;
+			}
+			node.mdds[agent] = mdd;
+		}
+		if (width(mdd, c.time) != 1) {
+			return false;
+		}
+		return c.aFrom < 0 || width(mdd, c.time - 1) == 1;
+	}
+	
+	private static int width(int[][] mdd, int t) {
+		return t < mdd.length ? mdd[t].length : 1;
+	}
+	
+	/**
+	 * Find every vertex and edge conflict between a set of paths in order of time, with a pass over each time step recording which agent is
+	 * in each cell
+	 */
+	private ArrayList<Conflict> findConflicts(int[][] paths) {
+		if (occAgent0 == null) {
+			occAgent0 = new int[graph.size()];
+			occStamp0 = new int[graph.size()];
+			occAgent1 = new int[graph.size()];
+			occStamp1 = new int[graph.size()];
+		}
+		int length = 0;
+		for (int[] p : paths) {
+			length = Math.max(length, p.length);
+		}
+		if (occStamp > Integer.MAX_VALUE - length - 2) {
+			Arrays.fill(occStamp0, 0);
+			Arrays.fill(occStamp1, 0);
+			occStamp = 0;
+		}
+		
+		ArrayList<Conflict> conflicts = new ArrayList<>();
+		for (int t = 0; t < length; t++) {
+			int stamp = ++occStamp;
+			int[] agentNow = (t & 1) == 0 ? occAgent0 : occAgent1;
+			int[] stampNow = (t & 1) == 0 ? occStamp0 : occStamp1;
+			int[] agentBefore = (t & 1) == 0 ? occAgent1 : occAgent0;
+			int[] stampBefore = (t & 1) == 0 ? occStamp1 : occStamp0;
+			
+			for (int i = 0; i < paths.length; i++) {
+				int v = at(paths[i], t);
+				if (stampNow[v] == stamp) {
+					conflicts.add(new Conflict(agentNow[v], i, -1, v, t));
+				} else {
+					stampNow[v] = stamp;
+					agentNow[v] = i;
+				}
+			}
+			if (t == 0) {
+				continue;
+			}
+			for (int i = 0; i < paths.length; i++) {
+				int u = at(paths[i], t - 1);
+				int v = at(paths[i], t);
+				if (u == v || stampBefore[v] != stamp - 1) {
+					continue;
+				}
+				// The agent that was where this one is going, if it went where this one came from they swapped
+				int j = agentBefore[v];
+				if (j < i && at(paths[j], t) == u) {
+					conflicts.add(new Conflict(j, i, v, u, t));
+				}
+			}
+		}
+		return conflicts;
+	}
+	
+	/**
+	 * Cell of a path at a time step, staying at the end once the path is over
+	 */
+	private static int at(int[] path, int t) {
+		return path[Math.min(t, path.length - 1)];
+	}
+	
+	/**
+	 * Return whether an Agent has a path that finishes at its goal
+	 */
+	private static boolean endsAtGoal(Agent a) {
+		ArrayList<SpacetimePoint> path = a.getPath();
+		if (path == null || path.isEmpty()) {
+			return false;
+		}
+		SpacetimePoint last = path.get(path.size() - 1);
+		return last.getX() == a.getGoal().getX() && last.getY() == a.getGoal().getY();
+	}
+	
+	private ArrayList<SpacetimePoint> toPath(int[] cells) {
+		ArrayList<SpacetimePoint> path = new ArrayList<>(cells.length);
+		for (int t = 0; t < cells.length; t++) {
+			path.add(new SpacetimePoint(graph.x(cells[t]), graph.y(cells[t]), t));
+		}
+		return path;
+	}
+	
+	/**
+	 * Return whether the last plan was found by CBS itself rather than the fallback
+	 * @return was solved
+	 */
+	public boolean isSolved() {
+		return solved;
+	}
+	
+	/**
+	 * Get the statistics of the last plan, which are those of the low level searches and MDDs (plus the fallback's, if it was used) rather
+	 * than of the constraint tree
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the number of constraint tree nodes expanded by the last plan
+	 * @return nodes expanded
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+	
+	/**
+	 * Get the number of constraint tree nodes generated by the last plan
+	 * @return nodes generated
+	 */
+	public int getGenerated() {
+		return generated;
+	}
+	
+	/**
+	 * Get the sum of costs of the last plan if CBS solved it
+	 * @return sum of costs, or -1
+	 */
+	public int getSumOfCosts() {
+		return sumOfCosts;
+	}
+	
+}
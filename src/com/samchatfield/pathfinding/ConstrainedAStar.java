@@ -0,0 +1,443 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import com.samchatfield.pathfinding.data.Constraint;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.IndexedHeap;
+import com.samchatfield.pathfinding.data.LongIntHashMap;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.SearchContext;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+import com.samchatfield.pathfinding.trace.SearchListener;
+
+/**
+ * The low level search of Conflict-Based Search: A* over space-time states, like Cooperative A*, but avoiding a set of Constraints on the
+ * agent rather than a reservation table. An agent stays at its goal once its path ends, so a path only ends at the goal once no later
+ * constraint stops the agent from staying there. Between paths of the same length the one with the fewest conflicts with the other agents'
+ * paths (the conflict avoidance table) is returned, which leaves the high level fewer conflicts to resolve.
+ * <p>
+ * The constraints and the other agents' paths are set before each search. Times after the last constraint and the end of the longest other
+ * path are all the same to the search, so they share one state per cell and the search always terminates.
+ * @author Sam
+ */
+public class ConstrainedAStar implements SearchStrategy {
+	
+	// Largest conflict count and g value that fit into their parts of a heap key
+	private static final int MAX_KEY_CONFLICTS = (1 << 11) - 1;
+	private static final int MAX_KEY_G = (1 << 20) - 1;
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private final Heuristic heuristic;
+	private final LongIntHashMap vertexBans, edgeBans, avoid;
+	private int[] mustBeAt;
+	private int lastConstraint, lastPositive;
+	private boolean[] blocked;
+	private int[] parkedFrom;
+	private int[] parkedCells;
+	private int parked, avoidHorizon;
+	private int[] mark;
+	private int markStamp;
+	private SearchContext ctx;
+	private IndexedHeap open;
+	private int[] conflicts;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	private SearchListener listener = SearchListener.NONE;
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data and heuristic
+	 * @param map
+	 *            map data
+	 * @param heuristic
+	 *            heuristic to the goal, which should be consistent
+	 */
+	public ConstrainedAStar(WorldMap map, Heuristic heuristic) {
+		this.map = map;
+		this.heuristic = heuristic;
+		graph = map.getGraph();
+		vertexBans = new LongIntHashMap(16);
+		edgeBans = new LongIntHashMap(16);
+		avoid = new LongIntHashMap(256);
+		mustBeAt = new int[0];
+		parkedFrom = new int[graph.size()];
+		parkedCells = new int[16];
+		mark = new int[graph.size()];
+		conflicts = new int[64];
+	}
+	
+	/**
+	 * Set the constraints on the agent for the following searches. Positive constraints are ones the agent itself must meet; positive
+	 * constraints on other agents should be given as the negative constraints they imply.
+	 * @param constraints
+	 *            constraints on the agent
+	 */
+	public void setConstraints(List<Constraint> constraints) {
+		vertexBans.clear();
+		edgeBans.clear();
+		lastConstraint = -1;
+		lastPositive = 0;
+		for (Constraint c : constraints) {
+			lastConstraint = Math.max(lastConstraint, c.getTime());
+		}
+		mustBeAt = new int[lastConstraint + 1];
+		Arrays.fill(mustBeAt, -1);
+		
+		for (Constraint c : constraints) {
+			int t = c.getTime();
+			if (!c.isPositive()) {
+				if (c.isEdge()) {
+					edgeBans.put(edgeKey(c.getFrom(), c.getCell(), t), 1);
+				} else {
+					vertexBans.put(vertexKey(c.getCell(), t), 1);
+				}
+			} else {
+				// A positive edge constraint means being at both of its cells at consecutive time steps
+				mustBeAt[t] = c.getCell();
+				if (c.isEdge()) {
+					mustBeAt[t - 1] = c.getFrom();
+				}
+				lastPositive = Math.max(lastPositive, t);
+			}
+		}
+	}
+	
+	/**
+	 * Set cells that are never available, e.g. ones where agents that aren't moving are
+	 * @param blocked
+	 *            flag for each cell, or null for none
+	 */
+	public void setBlocked(boolean[] blocked) {
+		this.blocked = blocked;
+	}
+	
+	/**
+	 * Set the paths of the other agents, so that between equally short paths the search returns the one that conflicts with them the least.
+	 * Each path is the cell at each time step, and an agent stays at its last cell once its path ends.
+	 * @param paths
+	 *            cell paths of the agents, with nulls for agents that don't have one
+	 * @param self
+	 *            index of the agent being searched for, whose own path is ignored
+	 */
+	public void setAvoid(int[][] paths, int self) {
+		avoid.clear();
+		for (int i = 0; i < parked; i++) {
+			parkedFrom[parkedCells[i]] = 0;
+		}
+		parked = 0;
+		avoidHorizon = 0;
+		
+		for (int i = 0; i < paths.length; i++) {
+			int[] p = paths[i];
+			if (i == self || p == null) {
+				continue;
+			}
+			for (int t = 0; t < p.length - 1; t++) {
+				long key = vertexKey(p[t], t);
+				int n = avoid.get(key);
+				avoid.put(key, n == LongIntHashMap.MISSING ? 1 : n + 1);
+			}
+			
+			// Where agents end up is kept per cell as the time the agent settles there plus one, so that zero means nobody
+			int last = p[p.length - 1];
+			if (parkedFrom[last] == 0) {
+				if (parked == parkedCells.length) {
+					parkedCells = Arrays.copyOf(parkedCells, 2 * parked);
+				}
+				parkedCells[parked++] = last;
+				parkedFrom[last] = p.length;
+			} else {
+				parkedFrom[last] = Math.min(parkedFrom[last], p.length);
+			}
+			avoidHorizon = Math.max(avoidHorizon, p.length);
+		}
+	}
+	
+	/**
+	 * Set the listener told about the events of the following searches, for tracing them. MDDs aren't traced.
+	 * @param listener
+	 *            listener, or SearchListener.NONE to stop tracing
+	 */
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		int[] cells = search(graph.id(start), graph.id(goal));
+		if (cells == null) {
+			return null;
+		}
+		ArrayList<SpacetimePoint> path = new ArrayList<>(cells.length);
+		for (int t = 0; t < cells.length; t++) {
+			path.add(new SpacetimePoint(graph.x(cells[t]), graph.y(cells[t]), t));
+		}
+		return path;
+	}
+	
+	/**
+	 * Find the shortest path from start to goal that meets the constraints and that the agent can then stay at the end of
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return the cell at each time step, or null if there is no such path
+	 */
+	public int[] search(int start, int goal) {
+		graph = map.getGraph();
+		rec.reset();
+		ctx = map.getContextPool().acquire();
+		open = ctx.heap();
+		listener.searchStarted(start, goal);
+		try {
+			int[] cells = search(start, goal, heuristic.toGoal(goal));
+			listener.searchFinished(goal, cells == null ? -1 : cells.length - 1);
+			return cells;
+		} finally {
+			map.getContextPool().release(ctx);
+			ctx = null;
+			open = null;
+			stats = rec.stop();
+		}
+	}
+	
+	/**
+	 * Get the statistics of the last search or MDD, where a reservation probe is a lookup in the constraints or the other agents' paths
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	private int[] search(int start, int goal, IntUnaryOperator h) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		LongIntHashMap stateIndex = ctx.stateIndex();
+		int horizon = Math.max(lastConstraint + 1, avoidHorizon);
+		
+		// The agent can't stop at its goal while there's still a constraint keeping it out later on
+		int goalFree = lastPositive;
+		for (int t = lastConstraint; t >= goalFree; t--) {
+			if (vertexBans.containsKey(vertexKey(goal, t))) {
+				goalFree = t + 1;
+				break;
+			}
+		}
+		
+		if (!allowed(start, start, 0)) {
+			return null;
+		}
+		discover(start, 0, -1, 0, h, horizon, stateIndex);
+		
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			int cell = ctx.stateCell(current);
+			int time = ctx.g(current);
+			
+			if (cell == goal && time >= goalFree) {
+				return reconstruct(current);
+			}
+			ctx.close(current);
+			rec.expanded();
+			listener.expanded(cell, time, ctx.f(current));
+			
+			int next = time + 1;
+			for (int e = offsets[cell]; e <= offsets[cell + 1]; e++) {
+				// The extra iteration at the end is waiting in the same cell
+				int neighbour = e < offsets[cell + 1] ? targets[e] : cell;
+				if (allowed(cell, neighbour, next)) {
+					discover(neighbour, next, current, conflicts[current] + conflictsAt(neighbour, next), h, horizon, stateIndex);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reach the space-time state (cell, time), unless it's closed, has already been reached at least as early with no more conflicts or
+	 * can't reach the goal
+	 */
+	private void discover(int cell, int time, int from, int c, IntUnaryOperator h, int horizon, LongIntHashMap stateIndex) {
+		int estimate = h.applyAsInt(cell);
+		if (estimate == Heuristic.UNREACHABLE) {
+			return;
+		}
+		long key = vertexKey(cell, Math.min(time, horizon));
+		int s = stateIndex.get(key);
+		if (s == LongIntHashMap.MISSING) {
+			s = ctx.newState(cell);
+			stateIndex.put(key, s);
+			if (s >= conflicts.length) {
+				conflicts = Arrays.copyOf(conflicts, Math.max(s + 1, 2 * conflicts.length));
+			}
+		} else if (ctx.isClosed(s) || time > ctx.g(s) || (time == ctx.g(s) && c >= conflicts[s])) {
+			return;
+		}
+		int f = time + estimate;
+		ctx.set(s, time, f, from);
+		conflicts[s] = c;
+		long heapKey = ((long) f << 32) | ((long) Math.min(c, MAX_KEY_CONFLICTS) << 20) | (MAX_KEY_G - Math.min(time, MAX_KEY_G));
+		open.push(s, heapKey);
+		rec.generated(open.size());
+		listener.generated(cell, time, f);
+	}
+	
+	/**
+	 * Return whether the agent may move from one cell to another (or wait, if they're the same), arriving at the given time step
+	 */
+	private boolean allowed(int from, int to, int time) {
+		if (blocked != null && blocked[to]) {
+			return false;
+		}
+		if (time <= lastConstraint) {
+			rec.probed();
+			if (mustBeAt[time] >= 0 && mustBeAt[time] != to) {
+				return false;
+			}
+			if (vertexBans.containsKey(vertexKey(to, time))) {
+				return false;
+			}
+			if (from != to && edgeBans.containsKey(edgeKey(from, to, time))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Count the other agents in a cell at a time step
+	 */
+	private int conflictsAt(int cell, int time) {
+		if (time < avoidHorizon) {
+			rec.probed();
+		}
+		int n = time >= avoidHorizon ? 0 : Math.max(0, avoid.get(vertexKey(cell, time)));
+		if (parkedFrom[cell] != 0 && time >= parkedFrom[cell] - 1) {
+			n++;
+		}
+		return n;
+	}
+	
+	private int[] reconstruct(int current) {
+		int[] cells = new int[ctx.g(current) + 1];
+		for (int t = cells.length - 1; t >= 0; t--) {
+			cells[t] = ctx.stateCell(current);
+			current = ctx.parent(current);
+		}
+		return cells;
+	}
+	
+	/**
+	 * Build the multi-valued decision diagram (MDD) of the agent's shortest paths under the current constraints: for each time step up to
+	 * the cost of a shortest path, the cells the agent is in at that time on at least one shortest path. A time step where there is only
+	 * one such cell is one the agent can't avoid being in that cell at without its path getting longer.
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @param cost
+	 *            cost of a shortest path
+	 * @return cells at each time step from 0 to cost, or null if there is no path of that cost
+	 */
+	public int[][] mdd(int start, int goal, int cost) {
+		graph = map.getGraph();
+		rec.reset();
+		try {
+			return mdd(start, goal, cost, heuristic.toGoal(goal));
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private int[][] mdd(int start, int goal, int cost, IntUnaryOperator h) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int[][] levels = new int[cost + 1][];
+		levels[0] = new int[] { start };
+		int[] buf = new int[16];
+		
+		// Forwards from the start, keeping only cells from which the goal can still be reached in time
+		for (int t = 1; t <= cost; t++) {
+			int stamp = nextMark();
+			int n = 0;
+			for (int cell : levels[t - 1]) {
+				rec.expanded();
+				for (int e = offsets[cell]; e <= offsets[cell + 1]; e++) {
+					int next = e < offsets[cell + 1] ? targets[e] : cell;
+					int estimate = h.applyAsInt(next);
+					if (mark[next] == stamp || estimate > cost - t || !allowed(cell, next, t)) {
+						continue;
+					}
+					mark[next] = stamp;
+					if (n == buf.length) {
+						buf = Arrays.copyOf(buf, 2 * n);
+					}
+					buf[n++] = next;
+				}
+			}
+			levels[t] = Arrays.copyOf(buf, n);
+		}
+		if (Arrays.stream(levels[cost]).noneMatch(c -> c == goal)) {
+			return null;
+		}
+		levels[cost] = new int[] { goal };
+		
+		// Backwards from the goal, keeping only cells that lead to a kept cell on the next level
+		for (int t = cost - 1; t >= 0; t--) {
+			int stamp = nextMark();
+			for (int cell : levels[t + 1]) {
+				mark[cell] = stamp;
+			}
+			int n = 0;
+			int[] level = levels[t];
+			for (int cell : level) {
+				for (int e = offsets[cell]; e <= offsets[cell + 1]; e++) {
+					int next = e < offsets[cell + 1] ? targets[e] : cell;
+					if (mark[next] == stamp && allowed(cell, next, t + 1)) {
+						level[n++] = cell;
+						break;
+					}
+				}
+			}
+			levels[t] = Arrays.copyOf(level, n);
+		}
+		return levels;
+	}
+	
+	private int nextMark() {
+		if (++markStamp == Integer.MAX_VALUE) {
+			Arrays.fill(mark, 0);
+			markStamp = 1;
+		}
+		return markStamp;
+	}
+	
+	private static long vertexKey(int cell, int time) {
+		return ((long) time << 32) | cell;
+	}
+	
+	/**
+	 * Key of a move between two adjacent cells, made from the cell moved from and the direction moved in
+	 */
+	private long edgeKey(int from, int to, int time) {
+		int dir;
+		if (graph.y(to) > graph.y(from)) {
+			dir = 0;
+		} else if (graph.y(to) < graph.y(from)) {
+			dir = 1;
+		} else if (graph.x(to) < graph.x(from)) {
+			dir = 2;
+		} else {
+			dir = 3;
+		}
+		return ((long) time << 34) | ((long) dir << 32) | from;
+	}
+	
+}
@@ -0,0 +1,274 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.IndexedHeap;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Incremental search with D* Lite, for an agent that replans to the same goal as it moves and as obstacles change. The search runs
+ * backwards from the goal, so the g value of a cell is its distance to the goal, and its state is kept between calls. When the agent has
+ * moved only the heuristic changes, which is made up for by adding how far it has moved to every key (km) rather than reordering the open
+ * set, and when obstacles have changed only the cells next to them are updated and the search repairs the part of its tree that depends on
+ * them. Either way replanning only touches a small part of the map compared to searching again from scratch.
+ * <p>
+ * Each cell also has an rhs value, the best distance to the goal through its neighbours' g values. A cell is consistent when the two agree,
+ * and the open set holds the inconsistent cells ordered by the key [min(g, rhs) + h(start, s) + km, min(g, rhs)]. The cells that have
+ * changed since the last plan come from the map's journal, and if the last plan is too old for the journal the search starts again. One
+ * instance plans for one agent, and a call with a different goal starts a new search.
+ * @author Sam
+ */
+public class DStarLite implements SearchStrategy {
+	
+	// Half of the largest int, so that adding an edge cost to it doesn't overflow
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private int[] g, rhs;
+	private IndexedHeap open;
+	private int start = -1, goal = -1, km;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a new instance of D* Lite search on the given map data. Nothing is allocated until the first search.
+	 * @param map
+	 */
+	public DStarLite(WorldMap map) {
+		this.map = map;
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		GridGraph graph = map.getGraph();
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map, reusing the last search if the goal is the same
+	 * @param start
+	 *            start cell ID, normally where the agent is now
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		rec.reset();
+		try {
+			return replan(start, goal);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private ArrayList<SpacetimePoint> replan(int start, int goal) {
+		GridGraph latest = map.getGraph();
+		if (latest.isObstacle(start) || latest.isObstacle(goal)) {
+			return null;
+		}
+		
+		int[] changed = null;
+		if (goal == this.goal && g != null && latest != graph) {
+			changed = map.changedCells(graph.getVersion(), latest.getVersion());
+		}
+		if (goal != this.goal || g == null || latest.size() != g.length || (latest != graph && changed == null)) {
+			initialise(latest, start, goal);
+		} else {
+			// The agent has moved, so every heuristic value has gone down by up to the distance moved
+			km += latest.mDist(this.start, start);
+			this.start = start;
+			if (changed != null) {
+				graph = latest;
+				obstaclesChanged(changed);
+			}
+		}
+		computeShortestPath();
+		// The start can be left overconsistent, in which case rhs rather than g is its distance
+		return rhs[start] >= INFINITY ? null : extractPath();
+	}
+	
+	/**
+	 * Start a new search to the given goal
+	 * @param graph
+	 *            graph of the map
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 */
+	private void initialise(GridGraph graph, int start, int goal) {
+		this.graph = graph;
+		this.start = start;
+		this.goal = goal;
+		km = 0;
+		int n = graph.size();
+		if (g == null || g.length != n) {
+			g = new int[n];
+			rhs = new int[n];
+			open = new IndexedHeap(n);
+		} else {
+			open.clear();
+		}
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		rhs[goal] = 0;
+		open.push(goal, key(goal));
+		rec.generated(open.size());
+	}
+	
+	/**
+	 * Update the cells that have changed between free and obstacle since the last plan and their neighbours, whose distances may go through
+	 * them
+	 * @param changed
+	 *            cells changed since the last plan
+	 */
+	private void obstaclesChanged(int[] changed) {
+		int width = graph.getWidth();
+		for (int c : changed) {
+			if (graph.isObstacle(c)) {
+				// Nothing can go through the cell any more
+				g[c] = INFINITY;
+			}
+			updateVertex(c);
+			int x = graph.x(c), y = graph.y(c);
+			if (y + 1 < graph.getHeight()) {
+				updateVertex(c + width);
+			}
+			if (y > 0) {
+				updateVertex(c - width);
+			}
+			if (x > 0) {
+				updateVertex(c - 1);
+			}
+			if (x + 1 < width) {
+				updateVertex(c + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Expand inconsistent cells until the start is consistent and nothing in the open set could change its distance
+	 */
+	private void computeShortestPath() {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		while (!open.isEmpty() && (open.peekKey() < key(start) || rhs[start] > g[start])) {
+			int u = open.peek();
+			long oldKey = open.peekKey();
+			long newKey = key(u);
+			rec.expanded();
+			if (oldKey < newKey) {
+				// Its key is out of date from before the agent moved
+				open.push(u, newKey);
+				rec.generated(open.size());
+			} else if (g[u] > rhs[u]) {
+				// Overconsistent, its distance has gone down: settle it and pass that on to its neighbours
+				g[u] = rhs[u];
+				open.remove(u);
+				for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+					int s = targets[e];
+					if (s != goal && g[u] + 1 < rhs[s]) {
+						rhs[s] = g[u] + 1;
+						updateVertex(s);
+					}
+				}
+			} else {
+				// Underconsistent, its distance has gone up: forget it and have it and its neighbours look again
+				int oldG = g[u];
+				g[u] = INFINITY;
+				updateVertex(u);
+				for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+					int s = targets[e];
+					if (rhs[s] == oldG + 1) {
+						updateVertex(s);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Recompute the rhs value of a cell from its neighbours and put it in or take it out of the open set depending on whether it's now
+	 * consistent
+	 * @param u
+	 *            cell ID
+	 */
+	private void updateVertex(int u) {
+		if (u != goal) {
+			int best = INFINITY;
+			if (!graph.isObstacle(u)) {
+				int[] offsets = graph.getOffsets();
+				int[] targets = graph.getTargets();
+				for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+					best = Math.min(best, g[targets[e]] + 1);
+				}
+			}
+			rhs[u] = Math.min(best, INFINITY);
+		}
+		if (g[u] != rhs[u]) {
+			open.push(u, key(u));
+			rec.generated(open.size());
+		} else {
+			open.remove(u);
+		}
+	}
+	
+	/**
+	 * Work out the key of a cell, packed into a long so the first part is compared first
+	 * @param s
+	 *            cell ID
+	 * @return key
+	 */
+	private long key(int s) {
+		int m = Math.min(g[s], rhs[s]);
+		int first = m >= INFINITY ? INFINITY : m + graph.mDist(start, s) + km;
+		return ((long) first << 32) | m;
+	}
+	
+	/**
+	 * Follow the g values down from the start to the goal
+	 * @return path from start to goal
+	 */
+	private ArrayList<SpacetimePoint> extractPath() {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		ArrayList<SpacetimePoint> path = new ArrayList<>(rhs[start] + 1);
+		int cell = start;
+		path.add(new SpacetimePoint(graph.x(cell), graph.y(cell), 0));
+		while (cell != goal) {
+			int next = -1;
+			for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+				if (next < 0 || g[targets[e]] < g[next]) {
+					next = targets[e];
+				}
+			}
+			cell = next;
+			path.add(new SpacetimePoint(graph.x(cell), graph.y(cell), path.size()));
+		}
+		return path;
+	}
+	
+	/**
+	 * Get the statistics of the last call, whose expansions are the cells taken off the open set, a measure of how much work replanning took
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the number of cells taken off the open set by the last call
+	 * @return cells expanded
+	 */
+	public int getExpanded() {
+		return (int) stats.getExpansions();
+	}
+	
+}
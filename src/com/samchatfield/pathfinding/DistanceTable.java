@@ -0,0 +1,284 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * True distances from every cell of a map to a set of goals, kept between calls. The distances to a goal are found with a breadth first
+ * search over the whole map, which is all it takes as every move costs the same. The searches for up to 64 goals are run together as one
+ * multi-source breadth first search, with a bit per goal in a long per cell marking which goals have reached the cell so far, so the goals
+ * share one pass over the map wherever their searches overlap. Goals are sorted by cell before they're put together so nearby goals, whose
+ * searches overlap the most, go in the same pass, and the passes run in parallel on an Executor.
+ * <p>
+ * The distances of each goal are cached, evicting the least recently used goal when the cache is full, so goals that come up again (such
+ * as the stations of a warehouse) cost nothing the next time. The cache is cleared if the map changes. This is also a Heuristic, the exact
+ * one, and can be shared between threads.
+ * @author Sam
+ */
+public class DistanceTable implements Heuristic {
+	
+	/**
+	 * Memory the cached goals may take up by default, in bytes
+	 */
+	public static final long DEFAULT_MEMORY = 256L << 20;
+	
+	/**
+	 * Memory taken up by the distances of one goal per cell of the map, in bytes
+	 */
+	private static final int BYTES_PER_CELL = 4;
+	
+	/**
+	 * Number of goals searched for in one pass over the map, one per bit of a long
+	 */
+	private static final int GOALS_PER_PASS = 64;
+	
+	private final WorldMap map;
+	private final Executor executor;
+	private final Map<Integer, int[]> cache;
+	private GridGraph graph;
+	private final int budgetGoals;
+	private int maxGoals;
+	
+	/**
+	 * Create a distance table for the given map caching as many goals as fit in DEFAULT_MEMORY, running on the common ForkJoinPool
+	 * @param map
+	 *            map data
+	 */
+	public DistanceTable(WorldMap map) {
+		this(map, goalsFitting(map, DEFAULT_MEMORY), ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Create a distance table for the given map. Each cached goal takes 4 bytes per cell of the map.
+	 * @param map
+	 *            map data
+	 * @param maxGoals
+	 *            number of goals to keep the distances of
+	 * @param executor
+	 *            runs the passes over the map
+	 */
+	public DistanceTable(WorldMap map, int maxGoals, Executor executor) {
+		this(map, maxGoals, executor, DEFAULT_MEMORY);
+	}
+	
+	/**
+	 * Create a distance table for the given map caching the given number of goals, which expectGoals() can raise as far as fits in the
+	 * given memory
+	 * @param map
+	 *            map data
+	 * @param maxGoals
+	 *            number of goals to keep the distances of
+	 * @param executor
+	 *            runs the passes over the map
+	 * @param memory
+	 *            memory the cached goals may take up when expectGoals() raises their number, in bytes
+	 */
+	public DistanceTable(WorldMap map, int maxGoals, Executor executor, long memory) {
+		if (maxGoals < 1) {
+			throw new IllegalArgumentException("Must cache at least one goal: " + maxGoals);
+		}
+		this.map = map;
+		this.executor = executor;
+		this.maxGoals = maxGoals;
+		budgetGoals = goalsFitting(map, memory);
+		graph = map.getGraph();
+		cache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > DistanceTable.this.maxGoals;
+			}
+		};
+	}
+	
+	/**
+	 * Get the distances to each of the given goals, searching for those that aren't cached, waiting until they've all been found
+	 * @param goals
+	 *            goal cell IDs, which may repeat
+	 * @return for each goal the distance to it from every cell, UNREACHABLE for cells that can't reach it. The arrays are shared and must
+	 *         not be changed.
+	 */
+	public int[][] distances(int[] goals) {
+		int[][] out = new int[goals.length][];
+		int[] missing = new int[goals.length];
+		int n = 0;
+		GridGraph g;
+		synchronized (this) {
+			if (graph != map.getGraph()) {
+				graph = map.getGraph();
+				cache.clear();
+			}
+			g = graph;
+			for (int i = 0; i < goals.length; i++) {
+				out[i] = cache.get(goals[i]);
+				if (out[i] == null) {
+					missing[n++] = goals[i];
+				}
+			}
+		}
+		if (n == 0) {
+			return out;
+		}
+		
+		// Nearby goals are searched for in the same pass, and each goal only once
+		missing = Arrays.stream(missing, 0, n).sorted().distinct().toArray();
+		int[][] found = new int[missing.length][];
+		List<CompletableFuture<Void>> passes = new ArrayList<>();
+		for (int from = 0; from < missing.length; from += GOALS_PER_PASS) {
+			int first = from;
+			int last = Math.min(missing.length, from + GOALS_PER_PASS);
+			int[] sources = missing;
+			passes.add(CompletableFuture.runAsync(() -> search(g, sources, first, last, found), executor));
+		}
+		CompletableFuture.allOf(passes.toArray(new CompletableFuture<?>[0])).join();
+		
+		synchronized (this) {
+			if (graph == g) {
+				for (int i = 0; i < missing.length; i++) {
+					cache.put(missing[i], found[i]);
+				}
+			}
+		}
+		for (int i = 0; i < goals.length; i++) {
+			if (out[i] == null) {
+				out[i] = found[Arrays.binarySearch(missing, goals[i])];
+			}
+		}
+		return out;
+	}
+	
+	/**
+	 * Get the distances to a goal, searching for it if it isn't cached
+	 * @param goal
+	 *            goal cell ID
+	 * @return the distance to the goal from every cell, UNREACHABLE for cells that can't reach it. The array is shared and must not be
+	 *         changed.
+	 */
+	public int[] distances(int goal) {
+		return distances(new int[] { goal })[0];
+	}
+	
+	/**
+	 * Breadth first search from up to 64 goals at once, bit b of each cell's long standing for goal first + b. A cell is in the frontier
+	 * while some of the goals have reached it in the last level, and passes those goals on to its neighbours that they haven't reached yet.
+	 * @param graph
+	 *            graph to search
+	 * @param goals
+	 *            goal cell IDs
+	 * @param first
+	 *            first goal of this pass
+	 * @param last
+	 *            one after the last goal of this pass
+	 * @param out
+	 *            distances of each goal, filled in for the goals of this pass
+	 */
+	private static void search(GridGraph graph, int[] goals, int first, int last, int[][] out) {
+		int n = graph.size();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		long[] seen = new long[n], visit = new long[n], next = new long[n];
+		int[] frontier = new int[n], touched = new int[n];
+		int size = 0;
+		
+		for (int i = first; i < last; i++) {
+			int[] field = new int[n];
+			Arrays.fill(field, UNREACHABLE);
+			out[i] = field;
+			int goal = goals[i];
+			if (graph.isObstacle(goal)) {
+				continue;
+			}
+			field[goal] = 0;
+			if (visit[goal] == 0) {
+				frontier[size++] = goal;
+			}
+			visit[goal] |= 1L << (i - first);
+			seen[goal] |= 1L << (i - first);
+		}
+		
+		for (int level = 1; size > 0; level++) {
+			int reached = 0;
+			for (int k = 0; k < size; k++) {
+				int cell = frontier[k];
+				long bits = visit[cell];
+				visit[cell] = 0;
+				for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+					int neighbour = targets[e];
+					long arriving = bits & ~seen[neighbour];
+					if (arriving != 0) {
+						if (next[neighbour] == 0) {
+							touched[reached++] = neighbour;
+						}
+						next[neighbour] |= arriving;
+					}
+				}
+			}
+			
+			size = 0;
+			for (int k = 0; k < reached; k++) {
+				int cell = touched[k];
+				long arriving = next[cell];
+				next[cell] = 0;
+				seen[cell] |= arriving;
+				visit[cell] = arriving;
+				frontier[size++] = cell;
+				for (long bits = arriving; bits != 0; bits &= bits - 1) {
+					out[first + Long.numberOfTrailingZeros(bits)][cell] = level;
+				}
+			}
+		}
+	}
+	
+	@Override
+	public int estimate(int cell, int goal) {
+		return distances(goal)[cell];
+	}
+	
+	@Override
+	public IntUnaryOperator toGoal(int goal) {
+		int[] field = distances(goal);
+		return cell -> field[cell];
+	}
+	
+	/**
+	 * Raise the number of goals cached to at least the given number, as far as the memory budget allows
+	 */
+	@Override
+	public synchronized void expectGoals(int goals) {
+		maxGoals = Math.max(maxGoals, Math.min(goals, budgetGoals));
+	}
+	
+	/**
+	 * Return the number of goals whose distances fit in the given memory on the given map, at least one
+	 */
+	private static int goalsFitting(WorldMap map, long memory) {
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, memory / ((long) BYTES_PER_CELL * map.getWidth() * map.getHeight())));
+	}
+	
+	/**
+	 * Forget every cached goal
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+	
+	/**
+	 * Get the number of goals currently cached
+	 * @return number of goals
+	 */
+	public synchronized int cachedGoals() {
+		return cache.size();
+	}
+	
+}
@@ -0,0 +1,98 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+
+import com.samchatfield.pathfinding.data.CompressedPathDatabase;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Search strategy that doesn't search: the path is read out of a CompressedPathDatabase one move at a time, each a lookup of the first
+ * move from the current cell to the goal. A query takes time proportional to the length of the path, with no open set or scratch space, so
+ * this is by far the fastest strategy for maps that don't change, at the cost of building the database offline. The paths are shortest
+ * paths, like those of A*. Once the map has been updated the database no longer fits it, and queries throw rather than follow it.
+ * @author Sam
+ */
+public class FirstMoveSearch implements SearchStrategy {
+	
+	private final WorldMap map;
+	private final GridGraph graph;
+	private final CompressedPathDatabase db;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data and the database built for it
+	 * @param map
+	 *            map data
+	 * @param db
+	 *            path database of the map
+	 */
+	public FirstMoveSearch(WorldMap map, CompressedPathDatabase db) {
+		if (!db.isFor(map)) {
+			throw new IllegalArgumentException("Path database was built for a different map");
+		}
+		this.map = map;
+		this.db = db;
+		graph = map.getGraph();
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map by following the first moves in the database
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 * @throws IllegalStateException
+	 *             if the map has changed since this was created
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		if (map.getGraph() != graph) {
+			throw new IllegalStateException("The map has changed since its path database was built");
+		}
+		rec.reset();
+		try {
+			return follow(start, goal);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private ArrayList<SpacetimePoint> follow(int start, int goal) {
+		if (graph.isObstacle(start) || graph.isObstacle(goal)) {
+			return null;
+		}
+		ArrayList<SpacetimePoint> path = new ArrayList<>();
+		int cell = start;
+		path.add(new SpacetimePoint(graph.x(cell), graph.y(cell), 0));
+		while (cell != goal) {
+			int move = db.firstMove(cell, goal);
+			rec.expanded();
+			if (move == CompressedPathDatabase.NONE) {
+				return null;
+			}
+			cell += db.step(move);
+			path.add(new SpacetimePoint(graph.x(cell), graph.y(cell), path.size()));
+		}
+		return path;
+	}
+	
+	/**
+	 * Get the statistics of the last query, where each lookup of a first move counts as an expansion and nothing is ever generated
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+}
@@ -0,0 +1,724 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SearchContext;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Hierarchical Path-Finding A* (HPA*). The map is split into square clusters and wherever two neighbouring clusters have a run of free
+ * cells facing each other along their border there are one or two transitions across it (one in the middle of a short run, one at each end
+ * of a long one). The cells either side of the transitions are the nodes of a much smaller abstract graph, whose edges are the transitions
+ * themselves (cost 1) and the distances between the nodes of the same cluster, found once with a breadth first search of the cluster.
+ * <p>
+ * A query links the start and goal to the nodes of their clusters, runs A* on the abstract graph and then refines each step of the
+ * abstract path into cells with AStar. Refining only needs a search within one cluster at a time, so a caller that only needs the next few
+ * steps of a long route can take the waypoints from abstractPath and refine the segments as it goes. The refined path between two nodes
+ * of a cluster is cached in the cluster the first time it's needed, up to a limit on the total number of cells cached, so the routes most
+ * used only have to be searched for once. Paths are close to, but not always exactly, the shortest.
+ * <p>
+ * When the map changes, the next query brings the abstract graph up to date by rebuilding only the clusters around the cells the map's
+ * journal says have changed. Queries can run in parallel with each other but not with a rebuild.
+ * @author Sam
+ */
+public class HPAStar implements SearchStrategy {
+	
+	/**
+	 * Default width and height of a cluster in cells
+	 */
+	public static final int DEFAULT_CLUSTER_SIZE = 32;
+	
+	/**
+	 * Runs of at least this many free cells along a border get a transition at each end rather than one in the middle
+	 */
+	private static final int LONG_RUN = 6;
+	
+	/**
+	 * Most cells of refined paths kept in the caches of all of the clusters together
+	 */
+	private static final long MAX_CACHED_CELLS = 1L << 24;
+	
+	private final WorldMap map;
+	private final int width, height, clusterSize, clustersX, clustersY;
+	// Transitions across the border on the right of / above each cluster, as pairs of (cell in this cluster, cell in the neighbour)
+	private final int[][] right, above;
+	private final Cluster[] clusters;
+	// Position of each cell among the nodes of its cluster, or -1 if it isn't a node
+	private final int[] nodeIndex;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final AtomicLong cachedCells = new AtomicLong();
+	// Version of the map the abstract graph is of
+	private volatile GridGraph graph;
+	private volatile SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a hierarchical planner for the given map with clusters of the default size
+	 * @param map
+	 */
+	public HPAStar(WorldMap map) {
+		this(map, DEFAULT_CLUSTER_SIZE);
+	}
+	
+	/**
+	 * Create a hierarchical planner for the given map, building the whole abstract graph
+	 * @param map
+	 *            map data
+	 * @param clusterSize
+	 *            width and height of a cluster in cells
+	 */
+	public HPAStar(WorldMap map, int clusterSize) {
+		if (clusterSize < 2) {
+			throw new IllegalArgumentException("Clusters must be at least 2 cells across: " + clusterSize);
+		}
+		this.map = map;
+		this.clusterSize = clusterSize;
+		width = map.getWidth();
+		height = map.getHeight();
+		clustersX = (width + clusterSize - 1) / clusterSize;
+		clustersY = (height + clusterSize - 1) / clusterSize;
+		right = new int[clustersX * clustersY][];
+		above = new int[clustersX * clustersY][];
+		clusters = new Cluster[clustersX * clustersY];
+		nodeIndex = new int[width * height];
+		Arrays.fill(nodeIndex, -1);
+		
+		graph = map.getGraph();
+		buildAll(graph);
+	}
+	
+	/**
+	 * Build the whole abstract graph
+	 * @param graph
+	 *            graph of the map
+	 */
+	private void buildAll(GridGraph graph) {
+		for (int k = 0; k < clusters.length; k++) {
+			findTransitions(graph, k);
+		}
+		for (int k = 0; k < clusters.length; k++) {
+			buildCluster(graph, k);
+		}
+	}
+	
+	/**
+	 * Bring the abstract graph up to the latest version of the map, if it has changed since it was last built
+	 */
+	private void catchUp() {
+		GridGraph latest = map.getGraph();
+		if (latest == graph) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			GridGraph built = graph;
+			if (built.getVersion() >= latest.getVersion()) {
+				// Another query has caught up already
+				return;
+			}
+			int[] changed = map.changedCells(built.getVersion(), latest.getVersion());
+			if (changed == null) {
+				buildAll(latest);
+			} else {
+				rebuild(latest, changed);
+			}
+			graph = latest;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Rebuild the part of the abstract graph around a cell after it has changed between free and obstacle: the transitions on the borders
+	 * of its cluster and the nodes and distances of that cluster and the clusters either side of those borders. Changes made through the map
+	 * are picked up by the next query on their own, so this only has to be called to force a rebuild. The abstract graph is brought up to
+	 * the latest version of the map first, so the rebuild is always against the map as it is now.
+	 * @param x
+	 *            x position of the cell
+	 * @param y
+	 *            y position of the cell
+	 */
+	public void cellChanged(int x, int y) {
+		catchUp();
+		lock.writeLock().lock();
+		try {
+			rebuild(graph, new int[] { y * width + x });
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Rebuild the part of the abstract graph around some cells, doing each cluster once however many of the cells are in or next to it.
+	 * Must be called holding the write lock.
+	 * @param graph
+	 *            graph of the map
+	 * @param cells
+	 *            cells that have changed
+	 */
+	private void rebuild(GridGraph graph, int[] cells) {
+		boolean[] changed = new boolean[clusters.length];
+		for (int cell : cells) {
+			changed[clusterOf(cell)] = true;
+		}
+		// The transitions of a border are kept by the cluster below or to the left of it
+		boolean[] borders = new boolean[clusters.length];
+		boolean[] rebuilt = new boolean[clusters.length];
+		for (int k = 0; k < clusters.length; k++) {
+			if (!changed[k]) {
+				continue;
+			}
+			int cx = k % clustersX, cy = k / clustersX;
+			borders[k] = true;
+			rebuilt[k] = true;
+			if (cx > 0) {
+				borders[k - 1] = true;
+				rebuilt[k - 1] = true;
+			}
+			if (cy > 0) {
+				borders[k - clustersX] = true;
+				rebuilt[k - clustersX] = true;
+			}
+			if (cx + 1 < clustersX) {
+				rebuilt[k + 1] = true;
+			}
+			if (cy + 1 < clustersY) {
+				rebuilt[k + clustersX] = true;
+			}
+		}
+		for (int k = 0; k < clusters.length; k++) {
+			if (borders[k]) {
+				findTransitions(graph, k);
+			}
+		}
+		for (int k = 0; k < clusters.length; k++) {
+			if (rebuilt[k]) {
+				buildCluster(graph, k);
+			}
+		}
+	}
+	
+	/**
+	 * Find the transitions across the borders on the right of and above a cluster
+	 * @param graph
+	 *            graph of the map
+	 * @param k
+	 *            cluster index
+	 */
+	private void findTransitions(GridGraph graph, int k) {
+		int cx = k % clustersX, cy = k / clustersX;
+		int x0 = cx * clusterSize, y0 = cy * clusterSize;
+		int w = Math.min(clusterSize, width - x0), h = Math.min(clusterSize, height - y0);
+		right[k] = cx + 1 < clustersX ? transitions(graph, graph.id(x0 + w - 1, y0), width, 1, h) : new int[0];
+		above[k] = cy + 1 < clustersY ? transitions(graph, graph.id(x0, y0 + h - 1), 1, width, w) : new int[0];
+	}
+	
+	/**
+	 * Find the transitions along one border
+	 * @param graph
+	 *            graph of the map
+	 * @param first
+	 *            first cell on the near side of the border
+	 * @param step
+	 *            step in cell ID along the border
+	 * @param across
+	 *            step in cell ID across the border
+	 * @param length
+	 *            number of cells along the border
+	 * @return pairs of (near cell, far cell)
+	 */
+	private static int[] transitions(GridGraph graph, int first, int step, int across, int length) {
+		int[] pairs = new int[4 * length];
+		int n = 0;
+		int run = -1;
+		for (int i = 0; i <= length; i++) {
+			int cell = first + i * step;
+			boolean open = i < length && !graph.isObstacle(cell) && !graph.isObstacle(cell + across);
+			if (open && run < 0) {
+				run = i;
+			} else if (!open && run >= 0) {
+				int last = i - 1;
+				if (last - run + 1 < LONG_RUN) {
+					int mid = first + (run + last) / 2 * step;
+					pairs[n++] = mid;
+					pairs[n++] = mid + across;
+				} else {
+					pairs[n++] = first + run * step;
+					pairs[n++] = first + run * step + across;
+					pairs[n++] = first + last * step;
+					pairs[n++] = first + last * step + across;
+				}
+				run = -1;
+			}
+		}
+		return Arrays.copyOf(pairs, n);
+	}
+	
+	/**
+	 * Collect the nodes of a cluster from the transitions on its four borders and find the distances between them
+	 * @param graph
+	 *            graph of the map
+	 * @param k
+	 *            cluster index
+	 */
+	private void buildCluster(GridGraph graph, int k) {
+		int cx = k % clustersX, cy = k / clustersX;
+		Cluster old = clusters[k];
+		if (old != null) {
+			for (int cell : old.nodes) {
+				nodeIndex[cell] = -1;
+			}
+			for (int[] path : old.paths.values()) {
+				cachedCells.addAndGet(-path.length);
+			}
+		}
+		Cluster c = new Cluster(cx * clusterSize, cy * clusterSize, Math.min(clusterSize, width - cx * clusterSize),
+				Math.min(clusterSize, height - cy * clusterSize));
+		
+		ArrayList<Integer> nodes = new ArrayList<>();
+		ArrayList<ArrayList<Integer>> partners = new ArrayList<>();
+		addTransitions(right[k], false, nodes, partners);
+		addTransitions(above[k], false, nodes, partners);
+		if (cx > 0) {
+			addTransitions(right[k - 1], true, nodes, partners);
+		}
+		if (cy > 0) {
+			addTransitions(above[k - clustersX], true, nodes, partners);
+		}
+		
+		int n = nodes.size();
+		c.nodes = new int[n];
+		for (int i = 0; i < n; i++) {
+			c.nodes[i] = nodes.get(i);
+		}
+		// Each node's edges are the transitions across the border and the other nodes of the cluster it can reach
+		c.edges = new int[n][];
+		for (int i = 0; i < n; i++) {
+			int[] d = c.distancesFrom(graph, c.nodes[i]);
+			int[] edges = new int[2 * (partners.get(i).size() + n)];
+			int e = 0;
+			for (int p : partners.get(i)) {
+				edges[e++] = p;
+				edges[e++] = 1;
+			}
+			for (int j = 0; j < n; j++) {
+				if (j != i && d[j] != Heuristic.UNREACHABLE) {
+					edges[e++] = c.nodes[j];
+					edges[e++] = d[j];
+				}
+			}
+			c.edges[i] = Arrays.copyOf(edges, e);
+		}
+		clusters[k] = c;
+	}
+	
+	/**
+	 * Add one side of the transitions of a border to the nodes of a cluster
+	 * @param pairs
+	 *            transitions of the border as (near cell, far cell) pairs
+	 * @param far
+	 *            whether the cluster is on the far side of the border
+	 * @param nodes
+	 *            cells of the cluster's nodes so far
+	 * @param partners
+	 *            cells across the borders from each node so far
+	 */
+	private void addTransitions(int[] pairs, boolean far, ArrayList<Integer> nodes, ArrayList<ArrayList<Integer>> partners) {
+		for (int i = 0; i < pairs.length; i += 2) {
+			int cell = far ? pairs[i + 1] : pairs[i];
+			int other = far ? pairs[i] : pairs[i + 1];
+			if (nodeIndex[cell] < 0) {
+				nodeIndex[cell] = nodes.size();
+				nodes.add(cell);
+				partners.add(new ArrayList<>(2));
+			}
+			partners.get(nodeIndex[cell]).add(other);
+		}
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		GridGraph graph = map.getGraph();
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find a path between two cells of the map, refining every segment of the abstract path
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		try {
+			return refinedPath(start, goal, rec);
+		} catch (IllegalStateException e) {
+			// The map changed between finding the abstract path and refining it, so the abstract path is searched for again
+			return refinedPath(start, goal, rec);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	/**
+	 * Get the statistics of the last call to pathfind() on any thread, including the searches that refined it and the expansions of the
+	 * abstract search (of nodes of the abstract graph rather than cells). Rebuilding clusters after the map changes isn't counted.
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Find the abstract path between two cells and refine every segment of it
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @param rec
+	 *            statistics of the query
+	 * @return path or null if there is none
+	 * @throws IllegalStateException
+	 *             if the map changes so that a segment can no longer be refined
+	 */
+	private ArrayList<SpacetimePoint> refinedPath(int start, int goal, SearchStats.Recorder rec) {
+		GridGraph graph = map.getGraph();
+		if (clusterOf(start) == clusterOf(goal)) {
+			// Start and goal in the same cluster are searched for directly, which is also the refinement
+			return graph.isObstacle(start) || graph.isObstacle(goal) ? null : aStar(start, goal, rec);
+		}
+		int[] waypoints = abstractPath(start, goal, rec);
+		if (waypoints == null) {
+			return null;
+		}
+		
+		ArrayList<SpacetimePoint> path = new ArrayList<>();
+		path.add(new SpacetimePoint(graph.x(start), graph.y(start), 0));
+		for (int i = 1; i < waypoints.length; i++) {
+			for (int cell : refine(waypoints[i - 1], waypoints[i], rec)) {
+				path.add(new SpacetimePoint(graph.x(cell), graph.y(cell), path.size()));
+			}
+		}
+		return path;
+	}
+	
+	/**
+	 * Refine one segment of an abstract path into cells
+	 * @param from
+	 *            cell the segment starts at
+	 * @param to
+	 *            cell the segment ends at
+	 * @return cells after from up to and including to
+	 */
+	public int[] refine(int from, int to) {
+		return refine(from, to, SearchStats.Recorder.aggregate());
+	}
+	
+	private int[] refine(int from, int to, SearchStats.Recorder rec) {
+		GridGraph graph = map.getGraph();
+		if (graph.mDist(from, to) == 1) {
+			return new int[] { to };
+		}
+		// Only segments between two nodes of the same cluster are cached, the ones to and from the start and goal change with every query
+		Cluster c = clusters[clusterOf(from)];
+		boolean cacheable = c == clusters[clusterOf(to)] && nodeIndex[from] >= 0 && nodeIndex[to] >= 0;
+		long key = ((long) from << 32) | to;
+		if (cacheable) {
+			int[] cells = c.paths.get(key);
+			if (cells != null) {
+				return cells.clone();
+			}
+		}
+		
+		ArrayList<SpacetimePoint> segment = aStar(from, to, rec);
+		if (segment == null) {
+			throw new IllegalStateException("Abstract graph is out of date between " + from + " and " + to);
+		}
+		int[] cells = new int[segment.size() - 1];
+		for (int i = 1; i < segment.size(); i++) {
+			cells[i - 1] = graph.id(segment.get(i).getX(), segment.get(i).getY());
+		}
+		if (cacheable && cachedCells.get() + cells.length <= MAX_CACHED_CELLS && c.paths.putIfAbsent(key, cells) == null) {
+			cachedCells.addAndGet(cells.length);
+		}
+		return cells.clone();
+	}
+	
+	/**
+	 * Find the abstract path between two cells: the start, the nodes of the abstract graph it passes through and the goal. Consecutive
+	 * waypoints are either next to each other or in the same cluster, and can be turned into cells with refine.
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return waypoints from start to goal or null if there is no path
+	 */
+	public int[] abstractPath(int start, int goal) {
+		return abstractPath(start, goal, SearchStats.Recorder.aggregate());
+	}
+	
+	private int[] abstractPath(int start, int goal, SearchStats.Recorder rec) {
+		catchUp();
+		lock.readLock().lock();
+		try {
+			GridGraph graph = this.graph;
+			if (graph.isObstacle(start) || graph.isObstacle(goal)) {
+				return null;
+			}
+			if (start == goal) {
+				return new int[] { start };
+			}
+			Cluster startCluster = clusters[clusterOf(start)];
+			Cluster goalCluster = clusters[clusterOf(goal)];
+			if (startCluster == goalCluster) {
+				// The shortest path may leave the cluster, so the whole map is searched. A* then refines it at the same time.
+				return aStar(start, goal, rec) != null ? new int[] { start, goal } : null;
+			}
+			return search(graph, start, goal, startCluster, goalCluster, rec);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * A* on the abstract graph, with the start and goal linked to the nodes of their clusters. The search runs on cell IDs in a
+	 * SearchContext from the map's pool, so only the cells of the nodes it reaches are touched.
+	 * @param graph
+	 *            graph of the map
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @param startCluster
+	 *            cluster of the start
+	 * @param goalCluster
+	 *            cluster of the goal
+	 * @param rec
+	 *            statistics of the query
+	 * @return waypoints from start to goal or null if there is no path
+	 */
+	private int[] search(GridGraph graph, int start, int goal, Cluster startCluster, Cluster goalCluster, SearchStats.Recorder rec) {
+		int[] fromStart = startCluster.distancesFrom(graph, start);
+		int[] toGoal = goalCluster.distancesFrom(graph, goal);
+		
+		SearchContext ctx = map.getContextPool().acquire();
+		try {
+			OpenList open = ctx.open(OpenList.Kind.BUCKETS);
+			ctx.set(start, 0, graph.mDist(start, goal), -1);
+			open.push(start, graph.mDist(start, goal), 0);
+			rec.generated(open.size());
+			
+			while (!open.isEmpty()) {
+				int current = open.poll();
+				if (current == goal) {
+					return waypoints(ctx, goal);
+				}
+				ctx.close(current);
+				rec.expanded();
+				
+				if (current == start) {
+					for (int j = 0; j < fromStart.length; j++) {
+						relax(ctx, open, graph, current, startCluster.nodes[j], fromStart[j], goal, rec);
+					}
+				}
+				int i = nodeIndex[current];
+				if (i < 0) {
+					continue;
+				}
+				Cluster c = clusters[clusterOf(current)];
+				int[] edges = c.edges[i];
+				for (int e = 0; e < edges.length; e += 2) {
+					relax(ctx, open, graph, current, edges[e], edges[e + 1], goal, rec);
+				}
+				if (c == goalCluster) {
+					relax(ctx, open, graph, current, goal, toGoal[i], goal, rec);
+				}
+			}
+			return null;
+		} finally {
+			map.getContextPool().release(ctx);
+		}
+	}
+	
+	/**
+	 * Follow an edge of the abstract graph, opening the cell at the end of it if this is the cheapest way there so far
+	 * @param ctx
+	 *            search context
+	 * @param open
+	 *            open set
+	 * @param graph
+	 *            graph of the map
+	 * @param from
+	 *            cell being expanded
+	 * @param to
+	 *            cell at the other end of the edge
+	 * @param cost
+	 *            cost of the edge, Heuristic.UNREACHABLE if it can't be followed
+	 * @param goal
+	 *            goal cell ID
+	 * @param rec
+	 *            statistics of the query
+	 */
+	private static void relax(SearchContext ctx, OpenList open, GridGraph graph, int from, int to, int cost, int goal, SearchStats.Recorder rec) {
+		if (cost == Heuristic.UNREACHABLE || to == from || ctx.isClosed(to)) {
+			return;
+		}
+		int g = ctx.g(from) + cost;
+		if (g >= ctx.g(to)) {
+			return;
+		}
+		int f = g + graph.mDist(to, goal);
+		ctx.set(to, g, f, from);
+		open.push(to, f, g);
+		rec.generated(open.size());
+	}
+	
+	/**
+	 * Search for the path between two cells with A*, adding its statistics to those of the query
+	 * @param from
+	 *            start cell ID
+	 * @param to
+	 *            goal cell ID
+	 * @param rec
+	 *            statistics of the query
+	 * @return path or null if there is none
+	 */
+	private ArrayList<SpacetimePoint> aStar(int from, int to, SearchStats.Recorder rec) {
+		AStar search = new AStar(map);
+		ArrayList<SpacetimePoint> path = search.pathfind(from, to);
+		rec.add(search.getStats());
+		return path;
+	}
+	
+	/**
+	 * Trace back through the abstract search from the goal
+	 * @param ctx
+	 *            search context
+	 * @param goal
+	 *            goal cell ID
+	 * @return waypoints from start to goal
+	 */
+	private static int[] waypoints(SearchContext ctx, int goal) {
+		int n = 0;
+		for (int c = goal; c != -1; c = ctx.parent(c)) {
+			n++;
+		}
+		int[] cells = new int[n];
+		for (int c = goal; c != -1; c = ctx.parent(c)) {
+			cells[--n] = c;
+		}
+		return cells;
+	}
+	
+	/**
+	 * Get the index of the cluster a cell is in
+	 * @param cell
+	 *            cell ID
+	 * @return cluster index
+	 */
+	private int clusterOf(int cell) {
+		return (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize;
+	}
+	
+	/**
+	 * Get the number of nodes in the abstract graph
+	 * @return number of nodes
+	 */
+	public int nodeCount() {
+		lock.readLock().lock();
+		try {
+			int n = 0;
+			for (Cluster c : clusters) {
+				n += c.nodes.length;
+			}
+			return n;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * One cluster of the map: its bounds, the nodes on its borders and the distances between them
+	 */
+	private static class Cluster {
+		
+		private final int x0, y0, w, h;
+		private int[] nodes;
+		// Edges of each node as pairs of (cell of the node at the other end, cost)
+		private int[][] edges;
+		// Refined paths between nodes, keyed on (from << 32 | to), as the cells after from up to and including to
+		private final ConcurrentHashMap<Long, int[]> paths = new ConcurrentHashMap<>();
+		
+		Cluster(int x0, int y0, int w, int h) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.w = w;
+			this.h = h;
+		}
+		
+		/**
+		 * Breadth first search from a cell without leaving the cluster
+		 * @param graph
+		 *            graph of the map
+		 * @param source
+		 *            cell ID in the cluster
+		 * @return distance to each node of the cluster, or Heuristic.UNREACHABLE
+		 */
+		int[] distancesFrom(GridGraph graph, int source) {
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			int[] dist = new int[w * h];
+			Arrays.fill(dist, -1);
+			int[] queue = new int[w * h];
+			int head = 0, tail = 0;
+			queue[tail++] = source;
+			dist[local(graph, source)] = 0;
+			while (head < tail) {
+				int cell = queue[head++];
+				int d = dist[local(graph, cell)];
+				for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+					int n = targets[e];
+					int x = graph.x(n), y = graph.y(n);
+					if (x < x0 || x >= x0 + w || y < y0 || y >= y0 + h || dist[local(graph, n)] >= 0) {
+						continue;
+					}
+					dist[local(graph, n)] = d + 1;
+					queue[tail++] = n;
+				}
+			}
+			
+			int[] toNodes = new int[nodes.length];
+			for (int j = 0; j < nodes.length; j++) {
+				int d = dist[local(graph, nodes[j])];
+				toNodes[j] = d >= 0 ? d : Heuristic.UNREACHABLE;
+			}
+			return toNodes;
+		}
+		
+		/**
+		 * Get the index of a cell within the cluster
+		 * @param graph
+		 *            graph of the map
+		 * @param cell
+		 *            cell ID
+		 * @return index from 0 to w * h - 1
+		 */
+		private int local(GridGraph graph, int cell) {
+			return (graph.y(cell) - y0) * w + graph.x(cell) - x0;
+		}
+		
+	}
+	
+}
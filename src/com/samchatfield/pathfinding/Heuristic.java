@@ -0,0 +1,47 @@
+package com.samchatfield.pathfinding;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Estimate of the distance between two cells of a map, used as the h value of the searches. Estimates must never be more than the true
+ * distance (admissible) and must be consistent for the searches to return shortest paths.
+ * @author Sam
+ */
+public interface Heuristic {
+	
+	/**
+	 * Estimate returned for a cell from which the goal can't be reached at all
+	 */
+	int UNREACHABLE = Integer.MAX_VALUE;
+	
+	/**
+	 * Estimate the distance from a cell to a goal
+	 * @param cell
+	 *            cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return estimate, or UNREACHABLE
+	 */
+	int estimate(int cell, int goal);
+	
+	/**
+	 * Get the estimates to a single goal as a function of the cell. A search calls this once and then uses the function for every node it
+	 * meets, so implementations can do any per-goal work (such as finding a cached table) here rather than on every estimate.
+	 * @param goal
+	 *            goal cell ID
+	 * @return function from cell ID to estimate
+	 */
+	default IntUnaryOperator toGoal(int goal) {
+		return cell -> estimate(cell, goal);
+	}
+	
+	/**
+	 * Let the heuristic know that estimates to up to the given number of different goals will be asked for in turn, e.g. by planners that
+	 * search for every agent over and over, so that any per-goal work it keeps can be kept for that many goals
+	 * @param goals
+	 *            number of goals
+	 */
+	default void expectGoals(int goals) {
+	}
+	
+}
@@ -0,0 +1,344 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.JumpTable;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SearchContext;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+import com.samchatfield.pathfinding.trace.SearchListener;
+
+/**
+ * Jump Point Search on the 4-connected grid. The map has unit costs, so there are usually many shortest paths between two cells that only
+ * differ in the order of their moves, and A* expands the cells of all of them. Jump Point Search only follows the canonical one, which goes
+ * vertically before horizontally: a horizontal move carries on in a straight line until it reaches a cell with a forced neighbour (a cell
+ * above or below it that can't be reached by turning earlier because of an obstacle), and a vertical move carries on until it reaches a
+ * cell from which a horizontal jump finds a jump point. Only these jump points go in the open set, so on open aisles a search expands a
+ * handful of cells rather than every cell of the aisle.
+ * <p>
+ * The jumps are either scanned while searching or, by default, looked up in the JPS+ JumpTable of the map, which is shared by every search
+ * and patched around the changed cells when the map changes. The table (or graph) is fetched from the map at the start of every search, so
+ * an instance kept across updates to the map always searches the latest version. The path returned has every cell between the jump points
+ * filled in, one time step apart, so it's the same as a path from A* (though it may be a different path of the same length).
+ * @author Sam
+ */
+public class JumpPointSearch implements SearchStrategy {
+	
+	private final WorldMap map;
+	private final boolean precomputed;
+	private GridGraph graph;
+	private JumpTable table;
+	private final Heuristic heuristic;
+	private SearchContext ctx;
+	private OpenList open;
+	private IntUnaryOperator h;
+	private int goal;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	private SearchListener listener = SearchListener.NONE;
+	
+	/**
+	 * Create a new instance of Jump Point Search using the given map data and its precomputed jump table
+	 * @param map
+	 */
+	public JumpPointSearch(WorldMap map) {
+		this(map, true);
+	}
+	
+	/**
+	 * Create a new instance of Jump Point Search using the given map data
+	 * @param map
+	 *            map data
+	 * @param precomputed
+	 *            whether to look the jumps up in the map's jump table (JPS+) rather than scanning the grid
+	 */
+	public JumpPointSearch(WorldMap map, boolean precomputed) {
+		this(map, precomputed, new ManhattanHeuristic(map.getGraph()));
+	}
+	
+	/**
+	 * Create a new instance of Jump Point Search using the given map data and heuristic
+	 * @param map
+	 *            map data
+	 * @param precomputed
+	 *            whether to look the jumps up in the map's jump table (JPS+) rather than scanning the grid
+	 * @param heuristic
+	 *            heuristic to the goal
+	 */
+	public JumpPointSearch(WorldMap map, boolean precomputed, Heuristic heuristic) {
+		this.map = map;
+		this.heuristic = heuristic;
+		this.precomputed = precomputed;
+		graph = map.getGraph();
+	}
+	
+	/**
+	 * Set the listener told about the events of the following searches, for tracing them. Only jump points are generated and expanded.
+	 * @param listener
+	 *            listener, or SearchListener.NONE to stop tracing
+	 */
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		// The graph comes from the table so the two are always of the same version of the map
+		table = precomputed ? map.getJumpTable() : null;
+		graph = table != null ? table.getGraph() : map.getGraph();
+		rec.reset();
+		ctx = map.getContextPool().acquire();
+		open = ctx.open(OpenList.Kind.BUCKETS);
+		h = heuristic.toGoal(goal);
+		this.goal = goal;
+		listener.searchStarted(start, goal);
+		try {
+			ArrayList<SpacetimePoint> path = search(start);
+			listener.searchFinished(goal, path == null ? -1 : path.size() - 1);
+			return path;
+		} finally {
+			map.getContextPool().release(ctx);
+			ctx = null;
+			open = null;
+			h = null;
+			stats = rec.stop();
+		}
+	}
+	
+	/**
+	 * Get the statistics of the last search, whose expansions are of jump points only
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * A* over the jump points, the g value of a jump point being its distance along the path from the start
+	 * @param start
+	 *            start cell ID
+	 * @return path or null if there is none
+	 */
+	private ArrayList<SpacetimePoint> search(int start) {
+		int startF = h.applyAsInt(start);
+		if (startF == Heuristic.UNREACHABLE || graph.isObstacle(goal)) {
+			return null;
+		}
+		ctx.set(start, 0, startF, -1);
+		open.push(start, startF, 0);
+		rec.generated(open.size());
+		listener.generated(start, 0, startF);
+		
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			if (current == goal) {
+				return reconstructPath(goal);
+			}
+			ctx.close(current);
+			rec.expanded();
+			listener.expanded(current, ctx.g(current), ctx.f(current));
+			
+			int parent = ctx.parent(current);
+			if (parent == -1) {
+				// The start can go any way
+				for (int dir = 0; dir < 4; dir++) {
+					discover(current, jump(current, dir));
+				}
+			} else if (graph.y(parent) == graph.y(current)) {
+				// Arrived horizontally, so carry on the same way and only turn towards forced neighbours
+				int dir = current > parent ? JumpTable.RIGHT : JumpTable.LEFT;
+				int dx = step(dir);
+				discover(current, jump(current, dir));
+				int width = graph.getWidth();
+				if (graph.y(current) + 1 < graph.getHeight() && isForced(current + width, current + width - dx)) {
+					discover(current, jump(current, JumpTable.UP));
+				}
+				if (graph.y(current) > 0 && isForced(current - width, current - width - dx)) {
+					discover(current, jump(current, JumpTable.DOWN));
+				}
+			} else {
+				// Arrived vertically, so carry on the same way and try both ways horizontally
+				discover(current, jump(current, current > parent ? JumpTable.UP : JumpTable.DOWN));
+				discover(current, jump(current, JumpTable.LEFT));
+				discover(current, jump(current, JumpTable.RIGHT));
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reach a jump point in a straight line from the jump point being expanded, adding it to the open set unless it's closed or already
+	 * reached at least as cheaply
+	 * @param from
+	 *            jump point being expanded
+	 * @param cell
+	 *            jump point reached, or -1 for none
+	 */
+	private void discover(int from, int cell) {
+		if (cell < 0 || ctx.isClosed(cell)) {
+			return;
+		}
+		int g = ctx.g(from) + graph.mDist(from, cell);
+		if (g >= ctx.g(cell)) {
+			return;
+		}
+		int estimate = h.applyAsInt(cell);
+		if (estimate == Heuristic.UNREACHABLE) {
+			return;
+		}
+		ctx.set(cell, g, g + estimate, from);
+		open.push(cell, g + estimate, g);
+		rec.generated(open.size());
+		listener.generated(cell, g, g + estimate);
+	}
+	
+	/**
+	 * Find the next jump point from a cell in a direction
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            JumpTable direction
+	 * @return jump point or -1 if there is none
+	 */
+	private int jump(int cell, int dir) {
+		return table != null ? lookUp(cell, dir) : scan(cell, dir);
+	}
+	
+	/**
+	 * Find the next jump point from a cell in a direction with the jump table. The table knows every jump point but the goal, so a jump
+	 * stops short at the goal if it's on the way, and a vertical jump stops at the goal's row since a horizontal jump from there might find
+	 * it.
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            JumpTable direction
+	 * @return jump point or -1 if there is none
+	 */
+	private int lookUp(int cell, int dir) {
+		int d = table.distance(cell, dir);
+		int reach = d > 0 ? d : -d;
+		boolean horizontal = dir == JumpTable.LEFT || dir == JumpTable.RIGHT;
+		int along = horizontal ? graph.x(goal) - graph.x(cell) : graph.y(goal) - graph.y(cell);
+		if (dir == JumpTable.DOWN || dir == JumpTable.LEFT) {
+			along = -along;
+		}
+		
+		boolean inLine = !horizontal || graph.y(goal) == graph.y(cell);
+		if (inLine && along > 0 && along <= reach) {
+			return cell + along * step(dir);
+		}
+		return d > 0 ? cell + d * step(dir) : -1;
+	}
+	
+	/**
+	 * Find the next jump point from a cell in a direction by stepping along the grid
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            JumpTable direction
+	 * @return jump point or -1 if there is none
+	 */
+	private int scan(int cell, int dir) {
+		int width = graph.getWidth();
+		int step = step(dir);
+		boolean horizontal = dir == JumpTable.LEFT || dir == JumpTable.RIGHT;
+		while (true) {
+			int x = graph.x(cell), y = graph.y(cell);
+			boolean inBounds = dir == JumpTable.UP ? y + 1 < graph.getHeight()
+					: dir == JumpTable.DOWN ? y > 0 : dir == JumpTable.LEFT ? x > 0 : x + 1 < width;
+			if (!inBounds || graph.isObstacle(cell + step)) {
+				return -1;
+			}
+			cell += step;
+			if (cell == goal) {
+				return cell;
+			}
+			if (horizontal) {
+				boolean up = graph.y(cell) + 1 < graph.getHeight() && isForced(cell + width, cell + width - step);
+				boolean down = graph.y(cell) > 0 && isForced(cell - width, cell - width - step);
+				if (up || down) {
+					return cell;
+				}
+			} else if (scan(cell, JumpTable.LEFT) >= 0 || scan(cell, JumpTable.RIGHT) >= 0) {
+				return cell;
+			}
+		}
+	}
+	
+	/**
+	 * Return whether a neighbour above or below a cell reached horizontally is forced, i.e. it's free but the cell one step back from it
+	 * isn't, so it can't be reached by turning earlier
+	 * @param neighbour
+	 *            cell above or below
+	 * @param behind
+	 *            cell one step back from the neighbour
+	 * @return is forced
+	 */
+	private boolean isForced(int neighbour, int behind) {
+		return !graph.isObstacle(neighbour) && graph.isObstacle(behind);
+	}
+	
+	/**
+	 * Get the change in cell ID of one step in a direction
+	 * @param dir
+	 *            JumpTable direction
+	 * @return step in cell ID
+	 */
+	private int step(int dir) {
+		switch (dir) {
+			case JumpTable.UP:
+				return graph.getWidth();
+			case JumpTable.DOWN:
+				return -graph.getWidth();
+			case JumpTable.LEFT:
+				return -1;
+			default:
+				return 1;
+		}
+	}
+	
+	/**
+	 * Trace back through the jump points from a cell and reconstruct the path, filling in the cells between each pair of jump points. Only
+	 * valid while a search is running.
+	 * @param current
+	 *            cell ID to trace back from
+	 * @return path from start to current
+	 */
+	public ArrayList<SpacetimePoint> reconstructPath(int current) {
+		int length = ctx.g(current) + 1;
+		SpacetimePoint[] points = new SpacetimePoint[length];
+		int i = length - 1;
+		while (i >= 0) {
+			int parent = ctx.parent(current);
+			// Walk back from the jump point towards its parent (or just the start itself)
+			int step = parent < 0 ? 0 : Integer.signum(parent - current) * (graph.y(parent) == graph.y(current) ? 1 : graph.getWidth());
+			int cells = parent < 0 ? 1 : graph.mDist(current, parent);
+			for (int k = 0; k < cells; k++, i--) {
+				points[i] = new SpacetimePoint(graph.x(current), graph.y(current), i);
+				current += step;
+			}
+			current = parent;
+		}
+		return new ArrayList<>(Arrays.asList(points));
+	}
+	
+}
@@ -0,0 +1,513 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.Task;
+import com.samchatfield.pathfinding.data.TaskQueue;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Lifelong route planning for agents that never stop. Whenever an agent gets to its goal it finishes its task and takes the next one from
+ * a TaskQueue, and only the agents that have just taken a task are planned, with Cooperative A* around the paths the other agents have
+ * already committed to. Reservations are kept for the whole run rather than being cleared for every plan, so a step costs the searches of
+ * the agents with new tasks however many other agents there are. Inside the planner time is counted from an epoch that moves up to the
+ * present whenever the past is cleared out of the table, so the times it reserves stay small however long it runs.
+ * <p>
+ * An agent at the end of its path stays there for as long as it has to, so it holds that cell from when it arrives until it has a new path,
+ * and new paths only end at goals nobody else is going to pass through later. To begin with every agent holds its start. An agent only takes
+ * a task whose goal no other agent is holding or heading to, and one that can't find a path (because others are in the way) keeps its task
+ * and tries again on the next step.
+ * <p>
+ * The map can change between steps. Agents whose paths run into cells that have become obstacles stop where they are and are planned again,
+ * and tasks whose goals can no longer be reached are dropped.
+ * <p>
+ * By default each agent without a task takes the first one in the queue it can. With a TaskAssigner the agents without a task are instead
+ * given as many tasks from the front of the queue as there are of them, matched up so they have as little distance to travel as possible
+ * between them, and tasks none of them can reach go back to the front of the queue.
+ * <p>
+ * step() moves every agent one time step along its path and plans those that got to their goals. The Agents are kept up to date: the start
+ * of each is the cell it's in, its goal is that of its task (null while it has none) and its path is the one it's following, in absolute
+ * time. A planner is meant to be stepped by one thread, but tasks can be added to its queue from any.
+ * @author Sam
+ */
+public class LifelongPlanner {
+	
+	/**
+	 * Number of time steps between clearing the reservations of the past out of the table
+	 */
+	private static final int COMPACT_EVERY = 64;
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private final List<Agent> agents;
+	private final TaskQueue queue;
+	private final Heuristic heuristic;
+	private TaskAssigner assigner;
+	private final HashReservationTable reserved;
+	private final ReservationTable table;
+	// Per agent: the cells of its path from time departs on, the cell it's in, its task and whether it still has to be planned for it
+	private final int[][] routes;
+	private final int[] departs, cells;
+	private final Task[] tasks;
+	private final boolean[] waiting;
+	// Per cell: the index of the agent holding it for good from time heldFrom on, and of the agent whose task goal it is
+	private final int[] holder, heldFrom, claimant;
+	// The current time and the latest time a hold begins, counted from the absolute time epoch
+	private int epoch, time, maxHeld;
+	private long completed, dropped, failed, taskSteps;
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a new lifelong planner for the given agents, which start out in their current cells without tasks, using the true distance
+	 * from Reverse Resumable A* as the heuristic
+	 * @param map
+	 *            map data
+	 * @param agents
+	 *            Agents, in different free cells and with different indexes
+	 * @param queue
+	 *            queue the agents take their tasks from
+	 */
+	public LifelongPlanner(WorldMap map, List<Agent> agents, TaskQueue queue) {
+		this(map, agents, queue, new ReverseResumableAStar(map));
+	}
+	
+	/**
+	 * Create a new lifelong planner for the given agents, which start out in their current cells without tasks
+	 * @param map
+	 *            map data
+	 * @param agents
+	 *            Agents, in different free cells and with different indexes
+	 * @param queue
+	 *            queue the agents take their tasks from
+	 * @param heuristic
+	 *            heuristic shared by the searches of all of the agents, which is told to expect as many goals as there are agents
+	 */
+	public LifelongPlanner(WorldMap map, List<Agent> agents, TaskQueue queue, Heuristic heuristic) {
+		this.map = map;
+		this.agents = agents;
+		this.queue = queue;
+		this.heuristic = heuristic;
+		graph = map.getGraph();
+		int n = agents.size();
+		reserved = new HashReservationTable(64 * n);
+		table = new Reservations();
+		routes = new int[n][];
+		departs = new int[n];
+		cells = new int[n];
+		tasks = new Task[n];
+		waiting = new boolean[n];
+		holder = new int[graph.size()];
+		heldFrom = new int[graph.size()];
+		claimant = new int[graph.size()];
+		Arrays.fill(holder, ReservationTable.NONE);
+		Arrays.fill(claimant, ReservationTable.NONE);
+		maxHeld = 0;
+		heuristic.expectGoals(n);
+		
+		for (int i = 0; i < n; i++) {
+			Agent a = agents.get(i);
+			int cell = graph.id(a.getStart());
+			if (graph.isObstacle(cell) || holder[cell] != ReservationTable.NONE) {
+				throw new IllegalArgumentException("Agents must start in different free cells: " + a);
+			}
+			routes[i] = new int[] { cell };
+			cells[i] = cell;
+			holder[cell] = a.getIndex();
+			a.setGoal(null);
+			a.clearPath();
+		}
+	}
+	
+	/**
+	 * Move every agent one time step along its path, finish the tasks of those that get to their goals, give the agents without a task the
+	 * next ones in the queue that they can take and plan the agents with new tasks
+	 */
+	public void step() {
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		try {
+			// Paths into cells that have just become obstacles are cut short before anyone moves along them
+			GridGraph latest = map.getGraph();
+			if (latest != graph) {
+				graph = latest;
+				stopBlocked();
+			}
+			time++;
+			if (time % COMPACT_EVERY == 0) {
+				compact();
+			}
+			for (int i = 0; i < agents.size(); i++) {
+				move(i);
+			}
+			if (assigner != null) {
+				assignAll();
+			} else {
+				for (int i = 0; i < agents.size(); i++) {
+					if (tasks[i] == null) {
+						assign(i);
+					}
+				}
+			}
+			for (int i = 0; i < agents.size(); i++) {
+				if (waiting[i]) {
+					plan(i, rec);
+				}
+			}
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	/**
+	 * Move an agent to where its path has it at the current time, finishing its task if that's the end of the path
+	 */
+	private void move(int i) {
+		Agent a = agents.get(i);
+		int[] route = routes[i];
+		int k = Math.min(time - departs[i], route.length - 1);
+		if (route[k] != cells[i]) {
+			cells[i] = route[k];
+			a.setStart(node(cells[i]));
+		}
+		if (tasks[i] != null && !waiting[i] && k == route.length - 1) {
+			completed++;
+			taskSteps += epoch + time - tasks[i].getReleased();
+			claimant[tasks[i].getGoal()] = ReservationTable.NONE;
+			tasks[i] = null;
+			a.setGoal(null);
+			a.clearPath();
+		}
+	}
+	
+	/**
+	 * Stop the agents whose paths run into cells that have become obstacles where they are, so they're planned again from there, and take
+	 * the reservations of the rest of their paths back. A stopped agent holds its cell from now on, so the agents whose paths run through
+	 * the cells of stopped agents are stopped too, and so on until nobody's path runs into anything.
+	 */
+	private void stopBlocked() {
+		int n = agents.size();
+		boolean[] stop = new boolean[n];
+		boolean[] taken = new boolean[graph.size()];
+		boolean stopped = false;
+		for (boolean changed = true; changed;) {
+			changed = false;
+			for (int i = 0; i < n; i++) {
+				if (stop[i]) {
+					continue;
+				}
+				int[] route = routes[i];
+				for (int j = Math.min(time - departs[i], route.length - 1) + 1; j < route.length; j++) {
+					if (graph.isObstacle(route[j]) || taken[route[j]]) {
+						stop[i] = true;
+						taken[cells[i]] = true;
+						changed = true;
+						stopped = true;
+						break;
+					}
+				}
+			}
+		}
+		if (!stopped) {
+			return;
+		}
+		
+		for (int i = 0; i < n; i++) {
+			if (!stop[i]) {
+				continue;
+			}
+			int[] route = routes[i];
+			int index = agents.get(i).getIndex();
+			int end = route[route.length - 1];
+			if (holder[end] == index) {
+				holder[end] = ReservationTable.NONE;
+			}
+			routes[i] = new int[] { cells[i] };
+			departs[i] = time;
+			holder[cells[i]] = index;
+			heldFrom[cells[i]] = time;
+			waiting[i] = tasks[i] != null;
+			agents.get(i).clearPath();
+		}
+		compact();
+	}
+	
+	/**
+	 * Give an agent the first task in the queue whose goal is free, i.e. nobody else is holding it or heading to it
+	 */
+	private void assign(int i) {
+		Agent a = agents.get(i);
+		Task task = queue.poll(goal -> claimant[goal] == ReservationTable.NONE
+				&& (holder[goal] == ReservationTable.NONE || holder[goal] == a.getIndex()));
+		if (task == null) {
+			return;
+		}
+		if (heuristic.estimate(cells[i], task.getGoal()) == Heuristic.UNREACHABLE) {
+			dropped++;
+			return;
+		}
+		give(i, task);
+	}
+	
+	/**
+	 * Match the agents without a task to the tasks at the front of the queue whose goals are free, one task per goal, with the assigner
+	 */
+	private void assignAll() {
+		int[] idle = new int[agents.size()];
+		int n = 0;
+		for (int i = 0; i < agents.size(); i++) {
+			if (tasks[i] == null) {
+				idle[n++] = i;
+			}
+		}
+		if (n == 0) {
+			return;
+		}
+		int[] cells = new int[n];
+		for (int k = 0; k < n; k++) {
+			cells[k] = this.cells[idle[k]];
+		}
+		
+		// A goal taken for one task stands in for the claim of its agent until the tasks are given out
+		List<Task> taken = queue.take(n, goal -> {
+			if (claimant[goal] != ReservationTable.NONE || holder[goal] != ReservationTable.NONE) {
+				return false;
+			}
+			claimant[goal] = Integer.MAX_VALUE;
+			return true;
+		});
+		int[] goals = new int[taken.size()];
+		for (int j = 0; j < goals.length; j++) {
+			goals[j] = taken.get(j).getGoal();
+			claimant[goals[j]] = ReservationTable.NONE;
+		}
+		
+		int[] chosen = assigner.assign(cells, goals);
+		List<Task> left = new ArrayList<>();
+		for (int j = 0; j < goals.length; j++) {
+			if (chosen[j] >= 0) {
+				give(idle[chosen[j]], taken.get(j));
+			} else {
+				left.add(taken.get(j));
+			}
+		}
+		queue.putBack(left);
+	}
+	
+	private void give(int i, Task task) {
+		tasks[i] = task;
+		waiting[i] = true;
+		claimant[task.getGoal()] = agents.get(i).getIndex();
+		agents.get(i).setGoal(node(task.getGoal()));
+	}
+	
+	/**
+	 * Plan an agent from where it is to the goal of its task around everyone else's paths. If there's no way through it stays where it is,
+	 * still holding its cell, and tries again on the next step.
+	 */
+	private void plan(int i, SearchStats.Recorder rec) {
+		Agent a = agents.get(i);
+		int cell = cells[i];
+		int goal = tasks[i].getGoal();
+		
+		// A goal that the map has since cut off is dropped
+		if (heuristic.estimate(cell, goal) == Heuristic.UNREACHABLE) {
+			dropped++;
+			claimant[goal] = ReservationTable.NONE;
+			tasks[i] = null;
+			waiting[i] = false;
+			a.setGoal(null);
+			return;
+		}
+		
+		// The agent's own hold on its cell mustn't stop it from planning to wait there
+		int from = heldFrom[cell];
+		holder[cell] = ReservationTable.NONE;
+		CAStar strat = new CAStar(map, a, table, OpenList.Kind.BUCKETS, heuristic);
+		strat.setStartTime(time);
+		strat.setHoldGoal(true);
+		ArrayList<SpacetimePoint> path = strat.pathfind(cell, goal);
+		rec.add(strat.getStats());
+		if (path == null) {
+			failed++;
+			holder[cell] = a.getIndex();
+			heldFrom[cell] = from;
+			return;
+		}
+		
+		// The agent is given its path in absolute time
+		int[] route = new int[path.size()];
+		ArrayList<SpacetimePoint> timed = new ArrayList<>(route.length);
+		for (int k = 0; k < route.length; k++) {
+			SpacetimePoint p = path.get(k);
+			route[k] = graph.id(p.getX(), p.getY());
+			reserved.reserve(p, a.getIndex());
+			timed.add(new SpacetimePoint(p.getX(), p.getY(), epoch + p.getTime()));
+		}
+		routes[i] = route;
+		departs[i] = time;
+		waiting[i] = false;
+		holder[goal] = a.getIndex();
+		heldFrom[goal] = time + route.length - 1;
+		maxHeld = Math.max(maxHeld, heldFrom[goal]);
+		a.setPath(timed);
+	}
+	
+	/**
+	 * Move the epoch up to the present and rebuild the reservations from the parts of the agents' paths that are still to come, so the
+	 * table doesn't keep growing with the past and the times in it don't keep growing with the length of the run
+	 */
+	private void compact() {
+		int past = time;
+		epoch += past;
+		time = 0;
+		reserved.clear();
+		maxHeld = 0;
+		for (int i = 0; i < agents.size(); i++) {
+			int index = agents.get(i).getIndex();
+			int[] route = routes[i];
+			int k = Math.min(past - departs[i], route.length - 1);
+			if (k > 0) {
+				route = Arrays.copyOfRange(route, k, route.length);
+				routes[i] = route;
+			}
+			departs[i] = 0;
+			for (int j = 0; j < route.length; j++) {
+				reserved.reserve(graph.x(route[j]), graph.y(route[j]), j, index);
+			}
+			maxHeld = Math.max(maxHeld, route.length - 1);
+		}
+		// A hold that began in the past may as well begin now
+		for (int cell = 0; cell < heldFrom.length; cell++) {
+			heldFrom[cell] = Math.max(heldFrom[cell] - past, 0);
+		}
+	}
+	
+	private Node node(int cell) {
+		return map.getNodes().get(cell);
+	}
+	
+	/**
+	 * Give the agents without a task their tasks with an assigner from now on, rather than each taking the first it can
+	 * @param assigner
+	 *            assigner, or null for each agent to take the first task it can
+	 */
+	public void setAssigner(TaskAssigner assigner) {
+		this.assigner = assigner;
+	}
+	
+	/**
+	 * Get the current time step, which is the number of steps taken
+	 * @return time step
+	 */
+	public int getTime() {
+		return epoch + time;
+	}
+	
+	/**
+	 * Get the number of tasks finished
+	 * @return tasks completed
+	 */
+	public long getCompleted() {
+		return completed;
+	}
+	
+	/**
+	 * Get the number of tasks thrown away because the agent that took them couldn't reach the goal at all
+	 * @return tasks dropped
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * Get the number of searches that found no path, each of which is tried again on the next step
+	 * @return failed searches
+	 */
+	public long getFailed() {
+		return failed;
+	}
+	
+	/**
+	 * Get the number of tasks finished per hour so far
+	 * @param secondsPerStep
+	 *            length of a time step in seconds
+	 * @return tasks per hour, or 0 before the first step
+	 */
+	public double getThroughput(double secondsPerStep) {
+		return getTime() == 0 ? 0 : completed * 3600.0 / (getTime() * secondsPerStep);
+	}
+	
+	/**
+	 * Get the average number of time steps from a task being added to the queue to it being finished, over the tasks finished so far
+	 * @return mean time steps per task, or 0 if none have been finished
+	 */
+	public double getMeanTaskTime() {
+		return completed == 0 ? 0 : (double) taskSteps / completed;
+	}
+	
+	/**
+	 * Get the statistics of the searches of the last step
+	 * @return statistics, or SearchStats.EMPTY before the first step
+	 */
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the Agents being planned
+	 * @return Agents
+	 */
+	public List<Agent> getAgents() {
+		return agents;
+	}
+	
+	/**
+	 * The committed paths of the agents together with the cells they hold for good, as seen by the searches. Clearing it takes back the holds
+	 * as well as the reservations.
+	 */
+	private class Reservations implements ReservationTable {
+		
+		@Override
+		public void reserve(int x, int y, int t, int agent) {
+			reserved.reserve(x, y, t, agent);
+		}
+		
+		@Override
+		public int agentAt(int x, int y, int t) {
+			int owner = reserved.agentAt(x, y, t);
+			if (owner != NONE) {
+				return owner;
+			}
+			int cell = graph.id(x, y);
+			return t >= heldFrom[cell] ? holder[cell] : NONE;
+		}
+		
+		@Override
+		public void clear() {
+			reserved.clear();
+			Arrays.fill(holder, NONE);
+			maxHeld = 0;
+		}
+		
+		@Override
+		public int getMaxTime() {
+			// Nothing changes after the last hold begins either
+			return Math.max(reserved.getMaxTime(), maxHeld);
+		}
+		
+		@Override
+		public int size() {
+			return reserved.size();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,27 @@
+package com.samchatfield.pathfinding;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+
+/**
+ * The Manhattan distance heuristic, which is exact on an open grid but knows nothing about obstacles
+ * @author Sam
+ */
+public class ManhattanHeuristic implements Heuristic {
+	
+	private final GridGraph graph;
+	
+	/**
+	 * Create a Manhattan distance heuristic for cells of the given graph
+	 * @param graph
+	 *            graph of the map
+	 */
+	public ManhattanHeuristic(GridGraph graph) {
+		this.graph = graph;
+	}
+	
+	@Override
+	public int estimate(int cell, int goal) {
+		return graph.mDist(cell, goal);
+	}
+	
+}
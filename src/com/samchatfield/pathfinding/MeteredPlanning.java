@@ -0,0 +1,53 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+
+import com.samchatfield.pathfinding.metrics.MetricsRegistry;
+import com.samchatfield.pathfinding.metrics.SearchMetrics;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Route planning method that wraps another and records the statistics of every plan it computes in a MetricsRegistry, under a prefix of
+ * its own so that several planners can share one registry. The metrics are looked up once when it's created, so recording a plan is only a
+ * few LongAdder increments and a histogram update.
+ * @author Sam
+ */
+public class MeteredPlanning implements AgentPlanning {
+	
+	private final AgentPlanning planner;
+	private final SearchMetrics metrics;
+	
+	/**
+	 * Create a new metered route planning method
+	 * @param planner
+	 *            route planning method to record the plans of
+	 * @param registry
+	 *            registry to record them in
+	 * @param prefix
+	 *            prefix of the names of the metrics, e.g. "whca"
+	 */
+	public MeteredPlanning(AgentPlanning planner, MetricsRegistry registry, String prefix) {
+		this.planner = planner;
+		metrics = registry.searchMetrics(prefix);
+	}
+	
+	@Override
+	public void computePlan(ArrayList<Agent> as) {
+		planner.computePlan(as);
+		metrics.record(planner.getStats());
+	}
+	
+	@Override
+	public SearchStats getStats() {
+		return planner.getStats();
+	}
+	
+	/**
+	 * Get the route planning method whose plans are recorded
+	 * @return route planning method
+	 */
+	public AgentPlanning getPlanner() {
+		return planner;
+	}
+	
+}
@@ -1,76 +1,203 @@
 package com.samchatfield.pathfinding;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntSupplier;
 
+import com.samchatfield.pathfinding.data.IntervalReservationTable;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
 import com.samchatfield.pathfinding.data.SpacetimePoint;
 import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
 
 /**
- * Route planning method for multiple agents using Cooperative A* with the reservation table implemented as a hash table of points (with
- * time dimension) and Agents, and using Manhattan distance as the heuristic.
+ * Route planning method for multiple agents using Cooperative A* with a ReservationTable of points (with time dimension) and the IDs of
+ * the Agents there, and using the true distance to each goal from Reverse Resumable A* as the heuristic. The heuristic is kept between
+ * plans, so goals that come up again don't need to be searched from again.
+ * <p>
+ * By default the table is an IntervalReservationTable and each agent is planned with SIPP, which only has a state for each safe interval of
+ * a cell rather than each time step, and the cells of agents that aren't moving are reserved for good, as are the goals from the time their
+ * agents arrive. With a table of points each agent is planned with CAStar, and those cells are only reserved for ReservationTable.POINT_HOLD
+ * time steps.
+ * <p>
+ * The paths of agents that aren't planned again are kept, and are reserved along with their goals before anyone is planned. An agent that
+ * can't find a path stays where it is, so its start is reserved from time 0 on for the agents planned after it, apart from the time steps
+ * the agents before it have already reserved.
  * 
  * @author Sam
  */
 public class MultiAgentPlanning implements AgentPlanning {
 	
 	private final WorldMap map;
-	private final Hashtable<SpacetimePoint, Agent> resTable;
+	private final ReservationTable resTable;
+	private final Heuristic heuristic;
+	private SearchStats stats = SearchStats.EMPTY;
 	
 	/**
 	 * Create a new instance of this route planning method using the given map data and initialise the reservation table
 	 * @param map
 	 */
 	public MultiAgentPlanning(WorldMap map) {
+		this(map, new IntervalReservationTable(map.getWidth(), map.getHeight()));
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data and reservation table, e.g. a BitsetReservationTable
+	 * when there are enough agents that most of the map is reserved, or a HashReservationTable to plan with CAStar
+	 * @param map
+	 *            map data
+	 * @param resTable
+	 *            reservation table, cleared at the start of every plan
+	 */
+	public MultiAgentPlanning(WorldMap map, ReservationTable resTable) {
+		this(map, resTable, new ReverseResumableAStar(map));
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, reservation table and heuristic
+	 * @param map
+	 *            map data
+	 * @param resTable
+	 *            reservation table, cleared at the start of every plan
+	 * @param heuristic
+	 *            heuristic shared by the searches of all of the agents
+	 */
+	public MultiAgentPlanning(WorldMap map, ReservationTable resTable, Heuristic heuristic) {
 		this.map = map;
-		resTable = new Hashtable<>();
+		this.resTable = resTable;
+		this.heuristic = heuristic;
 	}
 	
 	@Override
 	public void computePlan(ArrayList<Agent> as) {
+		// Only the Agents that have a goal and whose path is either empty or null are planned, in the order they are in the list
+		int[] order = new int[as.size()];
+		int n = 0;
+		for (int i = 0; i < as.size(); i++) {
+			Agent a = as.get(i);
+			if (a.getGoal() != null && (a.getPath() == null || a.getPath().isEmpty())) {
+				order[n++] = i;
+			}
+		}
+		order = Arrays.copyOf(order, n);
+		
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		List<ArrayList<SpacetimePoint>> paths = plan(as, order, resTable, () -> Integer.MAX_VALUE, rec);
+		for (int i : order) {
+			as.get(i).setPath(paths.get(i));
+		}
+		stats = rec.stop();
+	}
+	
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Plan the given agents in the given priority order with the given reservation table, without changing the Agents themselves, so that
+	 * several orderings can be planned at the same time with a table each. The map and heuristic are only read, so this is safe to call
+	 * from several threads as long as each has its own table.
+	 * @param as
+	 *            all of the Agents of the system
+	 * @param order
+	 *            positions in the list of the Agents to plan, highest priority first
+	 * @param table
+	 *            reservation table to plan with, which is cleared first
+	 * @param costBound
+	 *            planning stops as soon as the total length of the paths found so far reaches this, which can change while planning
+	 * @param rec
+	 *            statistics the searches are added to
+	 * @return the path of each Agent by position in the list, with nulls for Agents that weren't planned or for which no path was found,
+	 *         or null if planning was stopped by the cost bound
+	 */
+	List<ArrayList<SpacetimePoint>> plan(List<Agent> as, int[] order, ReservationTable table, IntSupplier costBound, SearchStats.Recorder rec) {
 		// Clear the reservation table of any leftover reservations from the last computation
-		resTable.clear();
+		table.clear();
+		heuristic.expectGoals(order.length);
 		
-		// Reserve the spaces where a stationary agent is
+		// If an agent doesn't have a goal (i.e. it isn't going to move) reserve its position for good
 		for (Agent a : as) {
-			// An estimate of the maximum number of time steps a route will take.
-			int estMaxTime = 100;
-			
-			// If an agent doesn't have a goal (i.e. it isn't going to move) reserve its position for estMaxTime (100) time steps
 			if (a.getGoal() == null) {
-				for (int i = 0; i < estMaxTime; i++) {
-					resTable.put(new SpacetimePoint(a.getStart(), i), a);
-				}
+				table.reserveFrom(a.getStart().getX(), a.getStart().getY(), 0, a.getIndex());
 			}
-			// Otherwise if an agent does have a goal, reserve its goal for estMaxTime (100) time steps.
-			// This is not ideal as it's non-optimal fix for getting agents to not crash into a agent that's
-			// finished its route and is sitting at its goal.
-			//
-			// It has the poor side effect of also meaning that even if the agent hasn't reached its goal yet other agents would still avoid it
-			// this is an instance of somewhere where using A* as the heuristic would help because I could then have a better estimate than just
-			// 100 time steps of when the agent will reach its goal and only reserve a few time steps after this (or I might even know when it's
-			// likely that the other agents will be done if I know their heuristic A* route length too and thus for how long to reserve the goal)
-			else {
-				for (int i = 0; i < estMaxTime; i++) {
-					resTable.put(new SpacetimePoint(a.getGoal(), i), a);
+		}
+		
+		// The agents with a goal that aren't being planned keep their paths, so everyone else has to keep out of their way
+		boolean[] planning = new boolean[as.size()];
+		for (int i : order) {
+			planning[i] = true;
+		}
+		for (int i = 0; i < as.size(); i++) {
+			Agent a = as.get(i);
+			ArrayList<SpacetimePoint> kept = a.getPath();
+			if (!planning[i] && a.getGoal() != null && kept != null && !kept.isEmpty()) {
+				for (SpacetimePoint p : kept) {
+					reserveFree(table, p.getX(), p.getY(), p.getTime(), a.getIndex());
 				}
+				SpacetimePoint last = kept.get(kept.size() - 1);
+				holdFree(table, last.getX(), last.getY(), last.getTime(), a.getIndex());
 			}
 		}
 		
-		// Iterate through the Agents.
-		// If they have a goal and their path is either empty or null then create a new object of Cooperative A* and pathfind for this Agent
-		// from its start to its goal, setting its path to the result of this. Also add all of the points (with time dimension) of this
-		// path to the reservation table.
-		for (Agent a : as) {
-			// System.out.println(a);
-			if (a.getGoal() != null && (a.getPath().isEmpty() || a.getPath() == null)) {
-				a.clearPath();
-				SearchStrategy strat = new CAStar(map, a, resTable);
-				a.setPath(strat.pathfind(a.getStart(), a.getGoal()));
-				for (SpacetimePoint p : a.getPath()) {
-					resTable.put(p, a);
+		// Iterate through the Agents in priority order, creating a new object of Cooperative A* and pathfinding for each Agent from its start
+		// to its goal. Also add all of the points (with time dimension) of each path to the reservation table, and the goal for good from
+		// the time the agent gets there, so nobody crashes into it once it's finished its route and is sitting at its goal. Each agent only
+		// finishes at its goal at a time from which the agents before it have all passed through it.
+		List<ArrayList<SpacetimePoint>> paths = new ArrayList<>(Collections.nCopies(as.size(), (ArrayList<SpacetimePoint>) null));
+		int cost = 0;
+		for (int i : order) {
+			if (cost >= costBound.getAsInt()) {
+				return null;
+			}
+			Agent a = as.get(i);
+			SearchStrategy strat;
+			if (table instanceof IntervalReservationTable) {
+				strat = new SIPP(map, a, (IntervalReservationTable) table, OpenList.Kind.BUCKETS, heuristic);
+			} else {
+				CAStar castar = new CAStar(map, a, table, OpenList.Kind.BUCKETS, heuristic);
+				castar.setHoldGoal(true);
+				strat = castar;
+			}
+			ArrayList<SpacetimePoint> path = strat.pathfind(a.getStart(), a.getGoal());
+			rec.add(strat.getStats());
+			// A null path means the agent couldn't find a way to its goal, so it stays where it is
+			if (path != null) {
+				for (SpacetimePoint p : path) {
+					table.reserve(p, a.getIndex());
 				}
+				table.reserveFrom(a.getGoal().getX(), a.getGoal().getY(), path.size() - 1, a.getIndex());
+				cost += path.size() - 1;
+			} else {
+				holdFree(table, a.getStart().getX(), a.getStart().getY(), 0, a.getIndex());
 			}
+			paths.set(i, path);
+		}
+		return paths;
+	}
+	
+	/**
+	 * Reserve a point for an agent unless another agent already has it, as an IntervalReservationTable won't replace a reservation
+	 */
+	private static void reserveFree(ReservationTable table, int x, int y, int t, int agent) {
+		if (table.agentAt(x, y, t) == ReservationTable.NONE) {
+			table.reserve(x, y, t, agent);
+		}
+	}
+	
+	/**
+	 * Reserve a cell for an agent for good from the given time step, apart from the time steps other agents already have it for
+	 */
+	private static void holdFree(ReservationTable table, int x, int y, int from, int agent) {
+		int end = Math.max(from, table.getMaxTime() + 1);
+		for (int t = from; t < end; t++) {
+			reserveFree(table, x, y, t, agent);
+		}
+		if (table.agentAt(x, y, end) == ReservationTable.NONE) {
+			table.reserveFrom(x, y, end, agent);
 		}
 	}
 	
@@ -0,0 +1,321 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Route planning method for multiple agents that runs prioritised Cooperative A* (as in MultiAgentPlanning) for many different priority
+ * orderings of the agents at once on a ForkJoinPool, each with its own reservation table. Which ordering is planned makes a big difference
+ * to whether every agent gets a path and to how long the paths are, and the orderings are independent of each other, so they can all be
+ * tried in parallel. The first ordering is the order of the list and the others are random shuffles of it from a fixed seed, so the same
+ * agents always give the same plan in BEST mode.
+ * <p>
+ * In FIRST mode the first ordering to plan every agent wins and the others are cancelled. In BEST mode every ordering runs, but the lowest
+ * sum of costs of the complete plans found so far is shared between them and an ordering stops as soon as it can no longer beat it. If no
+ * ordering plans every agent, the plan with the most agents planned is kept. Unlike MultiAgentPlanning every agent with a goal is replanned,
+ * whatever its path was before.
+ * 
+ * @author Sam
+ */
+public class ParallelMultiAgentPlanning implements AgentPlanning {
+	
+	/**
+	 * Which of the plans of the orderings to keep
+	 */
+	public enum Mode {
+		/**
+		 * The first complete plan to be found, cancelling the rest
+		 */
+		FIRST,
+		/**
+		 * The complete plan with the lowest sum of costs
+		 */
+		BEST
+	}
+	
+	/**
+	 * Default number of priority orderings tried per plan
+	 */
+	public static final int DEFAULT_ORDERINGS = 32;
+	
+	private final MultiAgentPlanning planner;
+	private final ForkJoinPool pool;
+	private final int orderings;
+	private final Mode mode;
+	private final long seed;
+	
+	private boolean complete;
+	private int tried, completed, sumOfCosts;
+	private int[] winningOrder;
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, trying the default number of orderings on the common
+	 * pool and keeping the best plan
+	 * @param map
+	 *            map data
+	 */
+	public ParallelMultiAgentPlanning(WorldMap map) {
+		this(map, ForkJoinPool.commonPool(), DEFAULT_ORDERINGS, Mode.BEST);
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, pool, number of orderings and mode
+	 * @param map
+	 *            map data
+	 * @param pool
+	 *            pool to plan the orderings on
+	 * @param orderings
+	 *            number of priority orderings to try per plan
+	 * @param mode
+	 *            which plan to keep
+	 */
+	public ParallelMultiAgentPlanning(WorldMap map, ForkJoinPool pool, int orderings, Mode mode) {
+		this(map, pool, orderings, mode, 0);
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, pool, number of orderings, mode and seed for the random
+	 * orderings
+	 * @param map
+	 *            map data
+	 * @param pool
+	 *            pool to plan the orderings on
+	 * @param orderings
+	 *            number of priority orderings to try per plan
+	 * @param mode
+	 *            which plan to keep
+	 * @param seed
+	 *            random seed of the orderings after the first
+	 */
+	public ParallelMultiAgentPlanning(WorldMap map, ForkJoinPool pool, int orderings, Mode mode, long seed) {
+		if (orderings < 1) {
+			throw new IllegalArgumentException("At least one ordering must be tried: " + orderings);
+		}
+		// The heuristic is shared by every ordering, which is why Reverse Resumable A* can be read from several threads at once
+		planner = new MultiAgentPlanning(map, new HashReservationTable());
+		this.pool = pool;
+		this.orderings = orderings;
+		this.mode = mode;
+		this.seed = seed;
+	}
+	
+	@Override
+	public void computePlan(ArrayList<Agent> as) {
+		SearchStats.Recorder rec = SearchStats.Recorder.aggregate();
+		int[] base = new int[as.size()];
+		int n = 0;
+		for (int i = 0; i < as.size(); i++) {
+			if (as.get(i).getGoal() != null) {
+				base[n++] = i;
+			}
+		}
+		base = Arrays.copyOf(base, n);
+		
+		// Lowest sum of costs of a complete plan so far, which every ordering still running has to beat. In FIRST mode it drops to 0 as soon
+		// as there is a complete plan, which stops all of the others.
+		AtomicInteger bound = new AtomicInteger(Integer.MAX_VALUE);
+		AtomicReference<Attempt> first = new AtomicReference<>();
+		// The work of every ordering, whichever plan is kept
+		AtomicReference<SearchStats> work = new AtomicReference<>(SearchStats.EMPTY);
+		
+		Random r = new Random(seed);
+		List<ForkJoinTask<Attempt>> tasks = new ArrayList<>(orderings);
+		for (int k = 0; k < orderings; k++) {
+			int[] order = k == 0 ? base : shuffle(base, r);
+			tasks.add(pool.submit(() -> attempt(as, order, bound, first, work)));
+		}
+		
+		Attempt best = null;
+		completed = 0;
+		for (ForkJoinTask<Attempt> task : tasks) {
+			Attempt a;
+			try {
+				a = task.join();
+			} catch (CancellationException e) {
+				continue;
+			}
+			if (a == null) {
+				continue;
+			}
+			if (a.planned == n) {
+				completed++;
+				if (mode == Mode.FIRST) {
+					// Nothing else can finish now, so don't wait for the orderings that haven't started
+					for (ForkJoinTask<Attempt> t : tasks) {
+						t.cancel(false);
+					}
+				}
+			}
+			if (best == null || a.isBetterThan(best)) {
+				best = a;
+			}
+		}
+		if (mode == Mode.FIRST && first.get() != null) {
+			best = first.get();
+		}
+		tried = tasks.size();
+		rec.add(work.get());
+		stats = rec.stop();
+		
+		if (best == null) {
+			// Every ordering was stopped, which can only happen to orderings that can't finish with a better plan than one that's complete
+			throw new IllegalStateException("No ordering finished");
+		}
+		for (int i : base) {
+			as.get(i).setPath(best.paths.get(i));
+		}
+		complete = best.planned == n;
+		sumOfCosts = best.cost;
+		winningOrder = best.order;
+	}
+	
+	/**
+	 * Plan one ordering with a reservation table of its own
+	 * @param as
+	 *            all of the Agents of the system
+	 * @param order
+	 *            positions in the list of the Agents to plan, highest priority first
+	 * @param bound
+	 *            shared lowest sum of costs of a complete plan
+	 * @param first
+	 *            the first complete plan to be found, set here if this is it
+	 * @param work
+	 *            statistics of all of the orderings, which this one's are added to
+	 * @return the plan, or null if it was stopped by the bound
+	 */
+	private Attempt attempt(List<Agent> as, int[] order, AtomicInteger bound, AtomicReference<Attempt> first, AtomicReference<SearchStats> work) {
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		List<ArrayList<SpacetimePoint>> paths = planner.plan(as, order, new HashReservationTable(), bound::get, rec);
+		work.accumulateAndGet(rec.stop(), SearchStats::plus);
+		if (paths == null) {
+			return null;
+		}
+		Attempt a = new Attempt(order, paths);
+		if (a.planned == order.length) {
+			if (mode == Mode.FIRST) {
+				if (first.compareAndSet(null, a)) {
+					bound.set(0);
+				}
+			} else {
+				bound.accumulateAndGet(a.cost, Math::min);
+			}
+		}
+		return a;
+	}
+	
+	/**
+	 * Return a shuffled copy of an ordering
+	 * @param order
+	 *            ordering
+	 * @param r
+	 *            random source
+	 * @return shuffled copy
+	 */
+	private static int[] shuffle(int[] order, Random r) {
+		int[] copy = order.clone();
+		for (int i = copy.length - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			int tmp = copy[i];
+			copy[i] = copy[j];
+			copy[j] = tmp;
+		}
+		return copy;
+	}
+	
+	/**
+	 * Return whether the last plan found a path for every agent with a goal
+	 * @return is complete
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+	
+	/**
+	 * Get the number of orderings submitted by the last plan
+	 * @return number of orderings
+	 */
+	public int getTried() {
+		return tried;
+	}
+	
+	/**
+	 * Get the number of orderings of the last plan that found a path for every agent before being stopped. In FIRST mode this is normally 1.
+	 * @return number of complete orderings
+	 */
+	public int getCompleted() {
+		return completed;
+	}
+	
+	/**
+	 * Get the sum of the path lengths of the last plan
+	 * @return sum of costs
+	 */
+	public int getSumOfCosts() {
+		return sumOfCosts;
+	}
+	
+	/**
+	 * Get the statistics of the last plan: the searches of every ordering that ran added up, with the allocation of the threads that ran them.
+	 * In FIRST mode an ordering still running when it's cancelled may finish after the statistics are taken and not be counted.
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the priority ordering of the last plan, as positions in the list of agents
+	 * @return ordering, highest priority first
+	 */
+	public int[] getWinningOrder() {
+		return winningOrder.clone();
+	}
+	
+	/**
+	 * The plan of one priority ordering
+	 */
+	private static class Attempt {
+		
+		private final int[] order;
+		private final List<ArrayList<SpacetimePoint>> paths;
+		private int planned, cost;
+		
+		Attempt(int[] order, List<ArrayList<SpacetimePoint>> paths) {
+			this.order = order;
+			this.paths = paths;
+			for (int i : order) {
+				ArrayList<SpacetimePoint> path = paths.get(i);
+				if (path != null) {
+					planned++;
+					cost += path.size() - 1;
+				}
+			}
+		}
+		
+		/**
+		 * More agents planned is better, then a lower sum of costs
+		 * @param other
+		 *            plan to compare with
+		 * @return is better
+		 */
+		boolean isBetterThan(Attempt other) {
+			return planned != other.planned ? planned > other.planned : cost < other.cost;
+		}
+		
+	}
+	
+}
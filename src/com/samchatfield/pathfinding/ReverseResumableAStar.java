@@ -0,0 +1,246 @@
+package com.samchatfield.pathfinding;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.IndexedHeap;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * True distance heuristic using Reverse Resumable A* (RRA*), as used by Silver for Cooperative A*. For each goal an A* search is run
+ * backwards from the goal towards the cell of the first estimate asked for (normally the agent's start), using Manhattan distance to that
+ * cell as its own heuristic. Because Manhattan distance is consistent, every cell the backward search has closed has its exact distance to
+ * the goal. When an estimate is asked for a cell that isn't closed yet the search is resumed, with its open set as it was left, until that
+ * cell is closed, so only as much of the map is searched as the agents' searches actually touch.
+ * <p>
+ * The backward searches are kept in a cache of a limited number of goals, evicting the least recently used goal when it's full, so one
+ * instance can be shared by all of the agents heading to the same goal and across plans. The cache and each search are synchronized so an
+ * instance can be shared between threads, but the distance of a cell that has already been closed is read without taking the lock, so
+ * searches running in parallel towards the same goal only contend when the backward search has to be resumed.
+ * <p>
+ * Each backward search remembers the version of the map's graph it's searching. When the map changes the search of a goal is started
+ * again on the new graph the next time the goal is asked about, so a goal that has been cut off or opened up is seen as such.
+ * @author Sam
+ */
+public class ReverseResumableAStar implements Heuristic {
+	
+	/**
+	 * Memory the cached goals may take up by default, in bytes
+	 */
+	public static final long DEFAULT_MEMORY = 256L << 20;
+	
+	/**
+	 * Approximate memory used by the search of one goal per cell of the map, in bytes (g value, final distance and heap position)
+	 */
+	private static final int BYTES_PER_CELL = 12;
+	
+	private final WorldMap map;
+	private final Map<Integer, GoalSearch> searches;
+	private final int budgetGoals;
+	private int maxGoals;
+	
+	/**
+	 * Create a true distance heuristic for the given map caching as many goals as fit in DEFAULT_MEMORY (at most 4096). The cache should
+	 * hold at least as many goals as there are agents, otherwise the goals are evicted before they're used again.
+	 * @param map
+	 *            map data
+	 */
+	public ReverseResumableAStar(WorldMap map) {
+		this(map, Math.min(4096, goalsFitting(map, DEFAULT_MEMORY)));
+	}
+	
+	/**
+	 * Create a true distance heuristic for the given map caching the given number of goals. Each cached goal takes about 12 bytes per cell
+	 * of the map, plus its open set.
+	 * @param map
+	 *            map data
+	 * @param maxGoals
+	 *            number of goals to keep the searches of
+	 */
+	public ReverseResumableAStar(WorldMap map, int maxGoals) {
+		this(map, maxGoals, DEFAULT_MEMORY);
+	}
+	
+	/**
+	 * Create a true distance heuristic for the given map caching the given number of goals, which expectGoals() can raise as far as fits in
+	 * the given memory
+	 * @param map
+	 *            map data
+	 * @param maxGoals
+	 *            number of goals to keep the searches of
+	 * @param memory
+	 *            memory the cached goals may take up when expectGoals() raises their number, in bytes
+	 */
+	public ReverseResumableAStar(WorldMap map, int maxGoals, long memory) {
+		if (maxGoals < 1) {
+			throw new IllegalArgumentException("Must cache at least one goal: " + maxGoals);
+		}
+		this.maxGoals = maxGoals;
+		this.map = map;
+		budgetGoals = goalsFitting(map, memory);
+		searches = new LinkedHashMap<Integer, GoalSearch>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, GoalSearch> eldest) {
+				return size() > ReverseResumableAStar.this.maxGoals;
+			}
+		};
+	}
+	
+	@Override
+	public int estimate(int cell, int goal) {
+		return search(goal, cell).applyAsInt(cell);
+	}
+	
+	@Override
+	public IntUnaryOperator toGoal(int goal) {
+		return search(goal, -1);
+	}
+	
+	/**
+	 * Get the backward search from a goal, starting it if it isn't cached or was of an older version of the map
+	 * @param goal
+	 *            goal cell ID
+	 * @param origin
+	 *            cell to aim the search at if it's new, or -1 to aim it at the first cell asked for
+	 * @return the search
+	 */
+	private synchronized GoalSearch search(int goal, int origin) {
+		GridGraph graph = map.getGraph();
+		GoalSearch s = searches.get(goal);
+		if (s == null || s.graph != graph) {
+			s = new GoalSearch(graph, goal, origin);
+			searches.put(goal, s);
+		}
+		return s;
+	}
+	
+	/**
+	 * Raise the number of goals cached to at least the given number, as far as the memory budget allows. A planner that cycles through more
+	 * goals than are cached gets no use out of the cache at all, as each goal is evicted just before it's needed again, but every cached
+	 * goal holds arrays the size of the whole map, so thousands of agents mustn't be allowed to grow it without limit.
+	 */
+	@Override
+	public synchronized void expectGoals(int goals) {
+		maxGoals = Math.max(maxGoals, Math.min(goals, budgetGoals));
+	}
+	
+	/**
+	 * Return the number of goals whose searches fit in the given memory on the given map, at least one
+	 */
+	private static int goalsFitting(WorldMap map, long memory) {
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, memory / ((long) BYTES_PER_CELL * map.getWidth() * map.getHeight())));
+	}
+	
+	/**
+	 * Forget every cached goal
+	 */
+	public synchronized void clear() {
+		searches.clear();
+	}
+	
+	/**
+	 * Get the number of goals currently cached
+	 * @return number of goals
+	 */
+	public synchronized int cachedGoals() {
+		return searches.size();
+	}
+	
+	/**
+	 * The resumable backward search from one goal
+	 */
+	private class GoalSearch implements IntUnaryOperator {
+		
+		private final GridGraph graph;
+		private final int goal;
+		private int origin;
+		private final int[] g;
+		// Final distance plus one of each closed cell, zero until it's closed. Each entry is written once, so can be read without the lock.
+		private final int[] known;
+		private final IndexedHeap open;
+		private volatile boolean exhausted;
+		
+		GoalSearch(GridGraph graph, int goal, int origin) {
+			this.graph = graph;
+			this.goal = goal;
+			this.origin = origin;
+			g = new int[graph.size()];
+			Arrays.fill(g, UNREACHABLE);
+			known = new int[graph.size()];
+			open = new IndexedHeap(graph.size());
+			
+			if (!graph.isObstacle(goal)) {
+				g[goal] = 0;
+				if (origin >= 0) {
+					open.push(goal, graph.mDist(goal, origin), 0);
+				}
+			}
+		}
+		
+		/**
+		 * Get the true distance from a cell to the goal, resuming the search if it hasn't reached the cell yet
+		 */
+		@Override
+		public int applyAsInt(int cell) {
+			int k = known[cell];
+			if (k != 0) {
+				return k - 1;
+			}
+			if (exhausted) {
+				// Reading the flag makes every distance written before it visible, so the cell is either closed now or unreachable
+				k = known[cell];
+				return k != 0 ? k - 1 : UNREACHABLE;
+			}
+			synchronized (this) {
+				if (known[cell] == 0) {
+					resume(cell);
+				}
+				return known[cell] != 0 ? known[cell] - 1 : UNREACHABLE;
+			}
+		}
+		
+		/**
+		 * Carry on searching until the target cell is closed or there is nothing left to search
+		 * @param target
+		 *            cell ID
+		 */
+		private void resume(int target) {
+			if (origin < 0) {
+				// Nothing has been searched yet, so aim the search at the first cell asked about
+				origin = target;
+				if (g[goal] == 0) {
+					open.push(goal, graph.mDist(goal, origin), 0);
+				}
+			}
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			
+			while (!open.isEmpty()) {
+				int current = open.poll();
+				known[current] = g[current] + 1;
+				
+				for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+					int neighbour = targets[e];
+					int tentativeG = g[current] + 1;
+					if (known[neighbour] != 0 || tentativeG >= g[neighbour]) {
+						continue;
+					}
+					g[neighbour] = tentativeG;
+					open.push(neighbour, tentativeG + graph.mDist(neighbour, origin), tentativeG);
+				}
+				
+				if (current == target) {
+					return;
+				}
+			}
+			exhausted = true;
+		}
+		
+	}
+	
+}
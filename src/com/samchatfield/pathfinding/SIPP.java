@@ -0,0 +1,259 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.IntervalReservationTable;
+import com.samchatfield.pathfinding.data.LongIntHashMap;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SearchContext;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+import com.samchatfield.pathfinding.trace.SearchListener;
+
+/**
+ * Safe Interval Path Planning (Phillips and Likhachev), a drop in for CAStar that finds the same paths with far fewer states. CA* has a
+ * state for every cell at every time step, and has to expand a state for each step an agent waits. The time steps of a cell that no other
+ * agent has reserved fall into a few safe intervals though, between the reservations of the agents passing through it, and arriving in an
+ * interval earlier is never worse than arriving later, as the agent can wait for the rest of it. So the states here are (cell, safe
+ * interval) pairs, with the earliest time the agent can get into the interval as the g value, and each expansion goes straight to the
+ * earliest time the agent can move into each safe interval of each neighbour, waiting where it is for as long as it takes. The safe
+ * intervals come from an IntervalReservationTable, and the moves allowed are the same as CAStar's: a cell can only be entered at a time
+ * step when nobody else has reserved it for that step or the one before.
+ * <p>
+ * The search ends when the agent reaches its goal in a safe interval that never ends, so it can stay there once it's arrived, which is
+ * what the reservations for good of IntervalReservationTable are for. The path returned has a point for every time step, waits included,
+ * as with CAStar. Any number of instances can search the same map and table at once from different threads, as long as nothing is writing
+ * to the table at the time.
+ * @author Sam
+ */
+public class SIPP implements SearchStrategy {
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private final Agent agent;
+	private final OpenList.Kind openKind;
+	private final Heuristic heuristic;
+	private final IntervalReservationTable resTable;
+	private SearchContext ctx;
+	private OpenList open;
+	private IntUnaryOperator h;
+	private LongIntHashMap stateIndex;
+	private final SearchStats.Recorder rec = new SearchStats.Recorder();
+	private SearchStats stats = SearchStats.EMPTY;
+	private SearchListener listener = SearchListener.NONE;
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data, Agent and reservation table, using a bucket queue as the open
+	 * set and Manhattan distance as the heuristic
+	 * @param map
+	 *            map data
+	 * @param agent
+	 *            Agent to search on
+	 * @param resTable
+	 *            reservation table
+	 */
+	public SIPP(WorldMap map, Agent agent, IntervalReservationTable resTable) {
+		this(map, agent, resTable, OpenList.Kind.BUCKETS, new ManhattanHeuristic(map.getGraph()));
+	}
+	
+	/**
+	 * Create a new instance of this search strategy with the given map data, Agent, reservation table, kind of open set and heuristic
+	 * @param map
+	 *            map data
+	 * @param agent
+	 *            Agent to search on
+	 * @param resTable
+	 *            reservation table
+	 * @param openKind
+	 *            kind of open list to use
+	 * @param heuristic
+	 *            heuristic to the goal, which can be shared with the searches of other agents
+	 */
+	public SIPP(WorldMap map, Agent agent, IntervalReservationTable resTable, OpenList.Kind openKind, Heuristic heuristic) {
+		this.map = map;
+		this.agent = agent;
+		this.resTable = resTable;
+		this.openKind = openKind;
+		this.heuristic = heuristic;
+		graph = map.getGraph();
+	}
+	
+	/**
+	 * Set the listener told about the events of the following searches, for tracing them. Each state expanded or generated is reported at
+	 * the time the agent gets into its safe interval.
+	 * @param listener
+	 *            listener, or SearchListener.NONE to stop tracing
+	 */
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+	
+	@Override
+	public ArrayList<SpacetimePoint> pathfind(Node start, Node goal) {
+		return pathfind(graph.id(start), graph.id(goal));
+	}
+	
+	/**
+	 * Find the path between two cells of the map that avoids the reservations of the other agents and ends somewhere the agent can stay
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> pathfind(int start, int goal) {
+		graph = map.getGraph();
+		rec.reset();
+		ctx = map.getContextPool().acquire();
+		open = ctx.open(openKind);
+		stateIndex = ctx.stateIndex();
+		h = heuristic.toGoal(goal);
+		listener.searchStarted(start, goal);
+		try {
+			ArrayList<SpacetimePoint> path = search(start, goal);
+			listener.searchFinished(goal, path == null ? -1 : path.size() - 1);
+			return path;
+		} finally {
+			map.getContextPool().release(ctx);
+			ctx = null;
+			open = null;
+			stateIndex = null;
+			h = null;
+			stats = rec.stop();
+		}
+	}
+	
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * A* over (cell, safe interval) states. The interval of a state is identified by its last time step, which is unique among the
+	 * intervals of a cell, and is found again from the cell and the g value whenever the state is expanded.
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 * @return path or null if there is none
+	 */
+	private ArrayList<SpacetimePoint> search(int start, int goal) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		
+		// If somebody else has the start cell at time 0 the agent can't stay there, only leave straight away
+		int startUntil = reservedByOther(start, 0) ? 0 : safeUntil(start, 0);
+		discover(start, 0, startUntil, -1);
+		
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			int cell = ctx.stateCell(current);
+			int time = ctx.g(current);
+			int until = reservedByOther(cell, time) ? time : safeUntil(cell, time);
+			
+			// The goal is only reached in an interval that never ends, so that the agent can stay there
+			if (cell == goal && until == IntervalReservationTable.FOREVER) {
+				return reconstructPath(current);
+			}
+			ctx.close(current);
+			rec.expanded();
+			listener.expanded(cell, time, ctx.f(current));
+			
+			// The agent can leave at any time until the end of its interval, arriving one step later
+			int latest = until == IntervalReservationTable.FOREVER ? until : until + 1;
+			for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+				int neighbour = targets[e];
+				// The neighbour has to be free both at the time of arrival and the step before, so two agents can't swap through each other.
+				// Each safe interval of the neighbour is entered as early as it can be.
+				int free = nextFree(neighbour, time);
+				while (free != IntervalReservationTable.FOREVER && free < latest) {
+					int end = safeUntil(neighbour, free);
+					if (end > free) {
+						discover(neighbour, free + 1, end, current);
+					}
+					if (end == IntervalReservationTable.FOREVER || end >= latest) {
+						break;
+					}
+					free = nextFree(neighbour, end + 1);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reach the state of a safe interval of a cell from another state, creating it if it hasn't been seen before and adding it to the open
+	 * set unless it's closed, has already been reached at least as early or can't reach the goal
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step of arrival, which is also the g value
+	 * @param until
+	 *            last time step of the safe interval
+	 * @param from
+	 *            state arrived from, or -1 for the start
+	 */
+	private void discover(int cell, int time, int until, int from) {
+		int estimate = h.applyAsInt(cell);
+		if (estimate == Heuristic.UNREACHABLE) {
+			return;
+		}
+		long key = ((long) until << 32) | cell;
+		int s = stateIndex.get(key);
+		if (s == LongIntHashMap.MISSING) {
+			s = ctx.newState(cell);
+			stateIndex.put(key, s);
+		} else if (ctx.isClosed(s) || time >= ctx.g(s)) {
+			return;
+		}
+		int f = time + estimate;
+		ctx.set(s, time, f, from);
+		open.push(s, f, time);
+		rec.generated(open.size());
+		listener.generated(cell, time, f);
+	}
+	
+	private boolean reservedByOther(int cell, int time) {
+		rec.probed();
+		return resTable.isReservedByOther(graph.x(cell), graph.y(cell), time, agent.getIndex());
+	}
+	
+	private int nextFree(int cell, int time) {
+		rec.probed();
+		return resTable.nextFree(graph.x(cell), graph.y(cell), time, agent.getIndex());
+	}
+	
+	private int safeUntil(int cell, int time) {
+		rec.probed();
+		return resTable.safeUntil(graph.x(cell), graph.y(cell), time, agent.getIndex());
+	}
+	
+	/**
+	 * Trace through the parents of a search state and reconstruct the path, filling in the time steps the agent waits before each move.
+	 * Only valid while a search is running.
+	 * @param current
+	 *            search state to trace back from
+	 * @return path from start to current
+	 */
+	public ArrayList<SpacetimePoint> reconstructPath(int current) {
+		SpacetimePoint[] points = new SpacetimePoint[ctx.g(current) + 1];
+		int t = points.length - 1;
+		while (current != -1) {
+			int cell = ctx.stateCell(current);
+			int parent = ctx.parent(current);
+			// The agent is in this cell from when it arrived until it moved on, i.e. from its g value up to the time of the next point
+			int arrived = ctx.g(current);
+			for (; t >= arrived; t--) {
+				points[t] = new SpacetimePoint(graph.x(cell), graph.y(cell), t);
+			}
+			current = parent;
+		}
+		return new ArrayList<>(Arrays.asList(points));
+	}
+	
+}
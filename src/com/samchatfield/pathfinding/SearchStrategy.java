@@ -4,9 +4,14 @@ import java.util.ArrayList;
 
 import com.samchatfield.pathfinding.data.Node;
 import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.metrics.SearchStats;
 
 /**
  * Abstract search strategy data type which will have implementations A* and Cooperative A*
+ * <p>
+ * This used to have reconstructPath(Node) as well, for tracing back through a cameFrom table after a search. The searches now keep their
+ * parents in a SearchContext that goes back to the map's pool as soon as the search is over, so there is nothing left to trace back through
+ * afterwards, and the path is only ever returned by pathfind().
  * @author Sam
  */
 public interface SearchStrategy {
@@ -22,11 +27,10 @@ public interface SearchStrategy {
 	public abstract ArrayList<SpacetimePoint> pathfind(Node start, Node goal);
 	
 	/**
-	 * Trace through the cameFrom table and reconstruct the path
-	 * @param current
-	 *            the node to trace back from
-	 * @return path from start to current
+	 * Get the statistics of the last call to pathfind() by this thread, or of the last call on any thread for a strategy that's shared
+	 * between threads
+	 * @return statistics, or SearchStats.EMPTY before the first search
 	 */
-	public ArrayList<SpacetimePoint> reconstructPath(Node current);
+	public SearchStats getStats();
 	
 }
@@ -4,31 +4,74 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 
+import com.samchatfield.pathfinding.data.PathCache;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
 import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
 
 /**
  * Class to perform route planning for a single agent within the warehouse. For now this returns a route in the form of a list of grid
- * poses. Subject to change based on requirements.
+ * poses. Subject to change based on requirements. The route is found with Jump Point Search using the map's precomputed jump table, which
+ * gives a shortest path like A* but expands far fewer cells in open aisles. Routes are kept in a PathCache, so a trip that has been made
+ * before on the same version of the map doesn't need searching for again.
  * @author Sam
  */
 public class SingleAgentPlanning implements AgentPlanning {
 	
 	private WorldMap map;
+	private final PathCache cache;
+	private SearchStats stats = SearchStats.EMPTY;
 	
 	/**
-	 * Create a new instance of this route planning method on the given map data
+	 * Create a new instance of this route planning method on the given map data, with a cache of its own
 	 * @param map
 	 */
 	public SingleAgentPlanning(WorldMap map) {
+		this(map, new PathCache(map));
+	}
+	
+	/**
+	 * Create a new instance of this route planning method on the given map data and cache, which can be shared with other planners on the
+	 * same map
+	 * @param map
+	 *            map data
+	 * @param cache
+	 *            cache of paths on the map
+	 */
+	public SingleAgentPlanning(WorldMap map, PathCache cache) {
 		this.map = map;
+		this.cache = cache;
 	}
 	
 	@Override
 	public void computePlan(ArrayList<Agent> as) {
+		SearchStats.Recorder rec = new SearchStats.Recorder();
 		Agent a = as.get(0);
 		a.clearPath();
-		SearchStrategy strat = new AStar(map);
-		a.setPath(strat.pathfind(a.getStart(), a.getGoal()));
+		a.setPath(cache.path(a.getStart(), a.getGoal(), () -> {
+			JumpPointSearch search = new JumpPointSearch(map);
+			ArrayList<SpacetimePoint> path = search.pathfind(a.getStart(), a.getGoal());
+			rec.add(search.getStats());
+			return path;
+		}));
+		stats = rec.stop();
+	}
+	
+	/**
+	 * Get the statistics of the last plan, which has no expansions at all if its path came from the cache
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	/**
+	 * Get the cache of paths the planner uses, for its hit and miss counts
+	 * @return path cache
+	 */
+	public PathCache getCache() {
+		return cache;
 	}
 	
 	/**
@@ -0,0 +1,450 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Assignment of tasks to idle agents, giving each goal one agent (and each agent at most one goal) so that as many goals as possible get an
+ * agent and the total distance the agents have to travel is as small as possible. The distance is the true distance over the map, with
+ * agents that can't reach a goal at all never given it. There are three methods:
+ * <ul>
+ * <li>HUNGARIAN finds the assignment with the lowest total distance, from the distances of every agent to every goal. These come from a
+ * DistanceTable, so goals that come up round after round are only searched for once, but the method takes time cubic in the number of
+ * goals, so it suits up to a few thousand.</li>
+ * <li>GREEDY takes the closest agent and goal that are both still free over and over.</li>
+ * <li>AUCTION has the goals bid for agents in an auction (Bertsekas), which gives a total distance within a step per goal of the lowest
+ * among the agents each goal is offered.</li>
+ * </ul>
+ * GREEDY and AUCTION don't look at every pair: each goal is only offered the few agents closest to it, found with a breadth first search out
+ * from the goal that stops as soon as it has met that many, so they scale to fleets of ten thousand or more. The searches of the goals run
+ * in parallel on an Executor. Goals left without an agent because all of theirs were taken are offered more agents, twice as many each
+ * time, until every goal has an agent or none of the agents left can reach them.
+ * @author Sam
+ */
+public class TaskAssigner {
+	
+	/**
+	 * Methods of assignment
+	 */
+	public enum Method {
+		HUNGARIAN, GREEDY, AUCTION
+	}
+	
+	/**
+	 * Number of agents each goal is offered at first by GREEDY and AUCTION
+	 */
+	public static final int DEFAULT_CANDIDATES = 8;
+	
+	/**
+	 * Number of goals whose agents are searched for one after the other by each task
+	 */
+	private static final int CHUNK_SIZE = 64;
+	
+	private final WorldMap map;
+	private final Method method;
+	private final DistanceTable distances;
+	private final Executor executor;
+	private final int candidates;
+	private long cost;
+	
+	/**
+	 * Create an assigner on the given map using the given method, with its own DistanceTable and running on the common ForkJoinPool
+	 * @param map
+	 *            map data
+	 * @param method
+	 *            method of assignment
+	 */
+	public TaskAssigner(WorldMap map, Method method) {
+		this(map, method, new DistanceTable(map), ForkJoinPool.commonPool(), DEFAULT_CANDIDATES);
+	}
+	
+	/**
+	 * Create an assigner on the given map
+	 * @param map
+	 *            map data
+	 * @param method
+	 *            method of assignment
+	 * @param distances
+	 *            distances for HUNGARIAN, which can be shared with other users of the map
+	 * @param executor
+	 *            runs the searches for the closest agents of GREEDY and AUCTION
+	 * @param candidates
+	 *            number of agents each goal is offered at first by GREEDY and AUCTION
+	 */
+	public TaskAssigner(WorldMap map, Method method, DistanceTable distances, Executor executor, int candidates) {
+		if (candidates < 1) {
+			throw new IllegalArgumentException("Goals must be offered at least one agent: " + candidates);
+		}
+		this.map = map;
+		this.method = method;
+		this.distances = distances;
+		this.executor = executor;
+		this.candidates = candidates;
+	}
+	
+	/**
+	 * Assign agents to goals
+	 * @param agents
+	 *            cell ID of each idle agent, all different
+	 * @param goals
+	 *            goal cell ID of each task, all different
+	 * @return for each goal the position in agents of the agent it's given, or -1 if it has none
+	 */
+	public int[] assign(int[] agents, int[] goals) {
+		cost = 0;
+		int[] result = new int[goals.length];
+		Arrays.fill(result, -1);
+		if (agents.length == 0 || goals.length == 0) {
+			return result;
+		}
+		if (method == Method.HUNGARIAN) {
+			hungarian(agents, goals, result);
+		} else {
+			offer(agents, goals, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the total distance the agents have to travel to their goals in the last assignment
+	 * @return sum of distances
+	 */
+	public long getCost() {
+		return cost;
+	}
+	
+	/**
+	 * Get the method of assignment
+	 * @return method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	/**
+	 * The Hungarian method with potentials, as shortest augmenting paths (Jonker and Volgenant), in O(rows^2 columns) time. The rows are
+	 * whichever of the goals and agents there are fewer of, so every row is matched, to a column it can't reach if need be.
+	 */
+	private void hungarian(int[] agents, int[] goals, int[] result) {
+		int[][] field = distances.distances(goals);
+		boolean byGoal = goals.length <= agents.length;
+		int rows = byGoal ? goals.length : agents.length;
+		int cols = byGoal ? agents.length : goals.length;
+		// Cost of a pair that can't be assigned, more than the total of any assignment of pairs that can
+		long never = (long) map.getGraph().size() * (rows + 1);
+		
+		// Rows and columns are numbered from 1, with column 0 standing for the row being added
+		long[] u = new long[rows + 1], v = new long[cols + 1], minv = new long[cols + 1];
+		int[] match = new int[cols + 1], way = new int[cols + 1];
+		boolean[] used = new boolean[cols + 1];
+		for (int i = 1; i <= rows; i++) {
+			match[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, Long.MAX_VALUE);
+			Arrays.fill(used, false);
+			do {
+				used[j0] = true;
+				int i0 = match[j0], j1 = 0;
+				long delta = Long.MAX_VALUE;
+				for (int j = 1; j <= cols; j++) {
+					if (!used[j]) {
+						int d = byGoal ? field[i0 - 1][agents[j - 1]] : field[j - 1][agents[i0 - 1]];
+						long c = (d == Heuristic.UNREACHABLE ? never : d) - u[i0] - v[j];
+						if (c < minv[j]) {
+							minv[j] = c;
+							way[j] = j0;
+						}
+						if (minv[j] < delta) {
+							delta = minv[j];
+							j1 = j;
+						}
+					}
+				}
+				for (int j = 0; j <= cols; j++) {
+					if (used[j]) {
+						u[match[j]] += delta;
+						v[j] -= delta;
+					} else {
+						minv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			} while (match[j0] != 0);
+			do {
+				int j1 = way[j0];
+				match[j0] = match[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}
+		
+		for (int j = 1; j <= cols; j++) {
+			if (match[j] == 0) {
+				continue;
+			}
+			int goal = byGoal ? match[j] - 1 : j - 1;
+			int agent = byGoal ? j - 1 : match[j] - 1;
+			int d = field[goal][agents[agent]];
+			if (d != Heuristic.UNREACHABLE) {
+				result[goal] = agent;
+				cost += d;
+			}
+		}
+	}
+	
+	/**
+	 * Offer each goal without an agent its closest free agents and assign from those offers, offering twice as many agents each round to
+	 * the goals left over, until there are none left over or none of them can reach any more free agents
+	 */
+	private void offer(int[] agents, int[] goals, int[] result) {
+		GridGraph graph = map.getGraph();
+		int[] agentAt = new int[graph.size()];
+		Arrays.fill(agentAt, -1);
+		for (int a = 0; a < agents.length; a++) {
+			agentAt[agents[a]] = a;
+		}
+		int[] open = new int[goals.length];
+		for (int i = 0; i < open.length; i++) {
+			open[i] = i;
+		}
+		
+		for (int k = candidates; open.length > 0; k *= 2) {
+			Offers offers = closest(graph, agentAt, goals, open, k);
+			if (offers.isEmpty()) {
+				break;
+			}
+			int[] taken = method == Method.AUCTION ? auction(offers, agents.length) : greedy(offers, agents.length);
+			int left = 0;
+			for (int i = 0; i < open.length; i++) {
+				int a = taken[i];
+				if (a >= 0) {
+					result[open[i]] = a;
+					agentAt[agents[a]] = -1;
+					cost += offers.distanceTo(i, a);
+				} else if (offers.count(i) > 0) {
+					// Goals that had no agents offered can't reach any of those left
+					open[left++] = open[i];
+				}
+			}
+			if (left == open.length || left == 0 || k >= agents.length) {
+				break;
+			}
+			open = Arrays.copyOf(open, left);
+		}
+	}
+	
+	/**
+	 * Find the k closest free agents of each open goal, in parallel
+	 */
+	private Offers closest(GridGraph graph, int[] agentAt, int[] goals, int[] open, int k) {
+		Offers offers = new Offers(open.length, k);
+		List<CompletableFuture<Void>> chunks = new ArrayList<>((open.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		for (int from = 0; from < open.length; from += CHUNK_SIZE) {
+			int first = from;
+			int last = Math.min(open.length, from + CHUNK_SIZE);
+			chunks.add(CompletableFuture.runAsync(() -> {
+				int[] mark = new int[graph.size()];
+				int[] queue = new int[graph.size()];
+				for (int i = first; i < last; i++) {
+					offers.search(graph, agentAt, goals[open[i]], i, mark, i - first + 1, queue);
+				}
+			}, executor));
+		}
+		CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+		return offers;
+	}
+	
+	/**
+	 * Take the offers from shortest to longest distance whenever the goal and the agent are both still free
+	 * @return for each open goal the agent taken, or -1
+	 */
+	private static int[] greedy(Offers offers, int agentCount) {
+		int goals = offers.goals();
+		long[] pairs = new long[offers.total()];
+		int n = 0;
+		for (int i = 0; i < goals; i++) {
+			for (int c = 0; c < offers.count(i); c++) {
+				// Distance in the top bits so sorting the pairs sorts them by distance
+				pairs[n++] = (long) offers.distance(i, c) << 40 | (long) i << 20 | c;
+			}
+		}
+		Arrays.sort(pairs);
+		int[] taken = new int[goals];
+		Arrays.fill(taken, -1);
+		boolean[] busy = new boolean[agentCount];
+		for (long pair : pairs) {
+			int i = (int) (pair >>> 20 & 0xFFFFF);
+			int a = offers.agent(i, (int) (pair & 0xFFFFF));
+			if (taken[i] < 0 && !busy[a]) {
+				taken[i] = a;
+				busy[a] = true;
+			}
+		}
+		return taken;
+	}
+	
+	/**
+	 * Forward auction (Bertsekas), the goals bidding for agents. A goal bids for the agent whose distance plus price is lowest, raising its
+	 * price by how much better it is than the next best plus one, and takes it from whoever had it, who bids again. Each goal can also go
+	 * without an agent at a cost of twice the longest offer, so there's always somewhere else to bid and the auction ends even when there
+	 * aren't agents enough to go round; goals that end up without are left for the next round of offers. Bidding one more than needed keeps
+	 * bidding wars short, and leaves the total distance at most one step per goal more than the lowest among the offers.
+	 * @return for each open goal the agent taken, or -1
+	 */
+	private static int[] auction(Offers offers, int agentCount) {
+		int goals = offers.goals();
+		long none = 2L * (offers.maxDistance() + 1);
+		long[] price = new long[agentCount];
+		int[] owner = new int[agentCount];
+		int[] taken = new int[goals];
+		int[] queue = new int[goals];
+		Arrays.fill(owner, -1);
+		Arrays.fill(taken, -1);
+		
+		// Goals waiting to bid, in a ring as each is in it at most once
+		int head = 0, waiting = goals;
+		for (int i = 0; i < goals; i++) {
+			queue[i] = i;
+		}
+		while (waiting > 0) {
+			int i = queue[head];
+			head = head + 1 == goals ? 0 : head + 1;
+			waiting--;
+			
+			// Best and second best value on offer, going without an agent being one of the choices
+			long best = -none, second = Long.MIN_VALUE;
+			int bestAgent = -1;
+			for (int c = 0; c < offers.count(i); c++) {
+				int a = offers.agent(i, c);
+				long value = -offers.distance(i, c) - price[a];
+				if (value > best) {
+					second = best;
+					best = value;
+					bestAgent = a;
+				} else if (value > second) {
+					second = value;
+				}
+			}
+			if (bestAgent < 0) {
+				continue;
+			}
+			price[bestAgent] += best - second + 1;
+			int outbid = owner[bestAgent];
+			owner[bestAgent] = i;
+			taken[i] = bestAgent;
+			if (outbid >= 0) {
+				taken[outbid] = -1;
+				queue[(head + waiting++) % goals] = outbid;
+			}
+		}
+		return taken;
+	}
+	
+	/**
+	 * The closest free agents of each open goal with their distances, k slots per goal
+	 */
+	private static final class Offers {
+		
+		private final int k;
+		private final int[] counts, agents, distances;
+		
+		Offers(int goals, int k) {
+			this.k = k;
+			counts = new int[goals];
+			agents = new int[goals * k];
+			distances = new int[goals * k];
+		}
+		
+		/**
+		 * Breadth first search out from a goal until k free agents have been met. The cells seen are marked with the stamp, which is
+		 * different for every search using the same marks.
+		 */
+		void search(GridGraph graph, int[] agentAt, int goal, int i, int[] mark, int stamp, int[] queue) {
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			int head = 0, tail = 0, found = 0;
+			queue[tail++] = goal;
+			mark[goal] = stamp;
+			// Cells of each distance from the goal are queued together, the next distance starting at levelEnd
+			int distance = 0, levelEnd = 1;
+			while (head < tail && found < k) {
+				if (head == levelEnd) {
+					distance++;
+					levelEnd = tail;
+				}
+				int cell = queue[head++];
+				if (agentAt[cell] >= 0) {
+					agents[i * k + found] = agentAt[cell];
+					distances[i * k + found] = distance;
+					found++;
+				}
+				for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+					int neighbour = targets[e];
+					if (mark[neighbour] != stamp) {
+						mark[neighbour] = stamp;
+						queue[tail++] = neighbour;
+					}
+				}
+			}
+			counts[i] = found;
+		}
+		
+		int goals() {
+			return counts.length;
+		}
+		
+		int count(int i) {
+			return counts[i];
+		}
+		
+		int agent(int i, int c) {
+			return agents[i * k + c];
+		}
+		
+		int distance(int i, int c) {
+			return distances[i * k + c];
+		}
+		
+		/**
+		 * Distance from goal i to an agent it was offered
+		 */
+		int distanceTo(int i, int agent) {
+			for (int c = 0; c < counts[i]; c++) {
+				if (agents[i * k + c] == agent) {
+					return distances[i * k + c];
+				}
+			}
+			throw new IllegalStateException("Agent " + agent + " wasn't offered to goal " + i);
+		}
+		
+		int total() {
+			int total = 0;
+			for (int c : counts) {
+				total += c;
+			}
+			return total;
+		}
+		
+		int maxDistance() {
+			int max = 0;
+			for (int i = 0; i < counts.length; i++) {
+				for (int c = 0; c < counts[i]; c++) {
+					max = Math.max(max, distances[i * k + c]);
+				}
+			}
+			return max;
+		}
+		
+		boolean isEmpty() {
+			return total() == 0;
+		}
+		
+	}
+	
+}
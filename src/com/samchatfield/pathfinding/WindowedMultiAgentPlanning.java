@@ -0,0 +1,348 @@
+package com.samchatfield.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * Route planning method for multiple agents using Windowed Hierarchical Cooperative A* (WHCA*). Rather than planning every agent's whole
+ * route against reservations covering the whole plan, each agent plans only the next window of W time steps with Cooperative A*, using
+ * the true distance from Reverse Resumable A* to guide it beyond the window. The agents follow the first few (commit) steps of their
+ * windowed paths and then everything is planned again from where they have got to, so the cost of planning one window depends on the
+ * window size and the number of agents but not on how big the map is or how far the agents have to go.
+ * <p>
+ * An agent that can't find any way through a window without running into the agents before it is moved to the front of the priority order
+ * and the window is planned again, at most once for each agent. If some agent is still stuck after that it waits where it is for as long as
+ * nobody else has the cell, and isBlocked() says so, as the window then has agents meeting.
+ * <p>
+ * planWindow() plans a single window from the agents' current cells, for a simulation that replans as it goes. computePlan() runs the
+ * rolling replanning itself until every agent has reached its goal and gives each Agent its whole path, so this can be used anywhere the
+ * other AgentPlannings are. It gives up at the first blocked window, and agents still short of their goal when it gives up get no path, as
+ * if they had no way there, and are counted by getUnfinished().
+ * @author Sam
+ */
+public class WindowedMultiAgentPlanning implements AgentPlanning {
+	
+	/**
+	 * Window size used by default
+	 */
+	public static final int DEFAULT_WINDOW = 16;
+	
+	
+	private final WorldMap map;
+	private GridGraph graph;
+	private final int window, commit, maxSteps;
+	private final ReservationTable resTable;
+	private final Heuristic heuristic;
+	private int unfinished;
+	private boolean blocked;
+	private SearchStats stats = SearchStats.EMPTY;
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, a window of DEFAULT_WINDOW steps and committing to half
+	 * of each window
+	 * @param map
+	 *            map data
+	 */
+	public WindowedMultiAgentPlanning(WorldMap map) {
+		this(map, DEFAULT_WINDOW, DEFAULT_WINDOW / 2);
+	}
+	
+	/**
+	 * Create a new instance of this route planning method using the given map data, window size and number of steps to commit to.
+	 * computePlan() gives up on agents that haven't got to their goals after 4 * (width + height) time steps, or 1000 on small maps.
+	 * @param map
+	 *            map data
+	 * @param window
+	 *            number of time steps each agent plans ahead
+	 * @param commit
+	 *            number of time steps followed before replanning, from 1 to window
+	 */
+	public WindowedMultiAgentPlanning(WorldMap map, int window, int commit) {
+		this(map, window, commit, Math.max(1000, 4 * (map.getWidth() + map.getHeight())), new ReverseResumableAStar(map));
+	}
+	
+	/**
+	 * Create a new instance of this route planning method
+	 * @param map
+	 *            map data
+	 * @param window
+	 *            number of time steps each agent plans ahead
+	 * @param commit
+	 *            number of time steps followed before replanning, from 1 to window
+	 * @param maxSteps
+	 *            number of time steps computePlan() simulates at most
+	 * @param heuristic
+	 *            heuristic shared by the searches of all of the agents, which should be the true distance and is told to expect as many
+	 *            goals as there are agents
+	 */
+	public WindowedMultiAgentPlanning(WorldMap map, int window, int commit, int maxSteps, Heuristic heuristic) {
+		if (window < 1 || commit < 1 || commit > window) {
+			throw new IllegalArgumentException("Need 1 <= commit <= window, got window " + window + " and commit " + commit);
+		}
+		this.map = map;
+		this.window = window;
+		this.commit = commit;
+		this.maxSteps = maxSteps;
+		this.heuristic = heuristic;
+		graph = map.getGraph();
+		resTable = new HashReservationTable(64 * (window + 1));
+	}
+	
+	@Override
+	public void computePlan(ArrayList<Agent> as) {
+		graph = map.getGraph();
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		try {
+			plan(as, rec);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private void plan(ArrayList<Agent> as, SearchStats.Recorder rec) {
+		int n = as.size();
+		int[] cells = new int[n];
+		int[] goals = new int[n];
+		ArrayList<ArrayList<SpacetimePoint>> paths = new ArrayList<>(n);
+		
+		for (int i = 0; i < n; i++) {
+			Agent a = as.get(i);
+			cells[i] = graph.id(a.getStart());
+			goals[i] = a.getGoal() == null ? -1 : graph.id(a.getGoal());
+			
+			// Agents that can't reach their goal at all get no path, the same as with Cooperative A*
+			if (goals[i] >= 0 && heuristic.estimate(cells[i], goals[i]) == Heuristic.UNREACHABLE) {
+				goals[i] = -1;
+				paths.add(null);
+			} else {
+				ArrayList<SpacetimePoint> path = new ArrayList<>();
+				path.add(new SpacetimePoint(a.getStart(), 0));
+				paths.add(path);
+			}
+		}
+		
+		// Follow the first commit steps of every window until everybody is at their goal
+		int time = 0;
+		while (time < maxSteps && !allArrived(cells, goals)) {
+			int[][] plan = planWindow(as, cells, rec);
+			if (blocked) {
+				break;
+			}
+			for (int k = 1; k <= commit; k++) {
+				for (int i = 0; i < n; i++) {
+					if (paths.get(i) != null) {
+						int c = plan[i][k];
+						paths.get(i).add(new SpacetimePoint(graph.x(c), graph.y(c), time + k));
+					}
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				cells[i] = plan[i][commit];
+			}
+			time += commit;
+		}
+		
+		// A path that doesn't end at the goal isn't a plan for the agent, so it gets none
+		unfinished = 0;
+		for (int i = 0; i < n; i++) {
+			Agent a = as.get(i);
+			if (a.getGoal() != null) {
+				ArrayList<SpacetimePoint> path = paths.get(i);
+				if (path != null && cells[i] != goals[i]) {
+					path = null;
+				}
+				if (path != null) {
+					trimWaitAtGoal(path, goals[i]);
+				} else {
+					unfinished++;
+				}
+				a.setPath(path);
+			}
+		}
+	}
+	
+	/**
+	 * Plan one window for every agent from the given cells, in priority order. Agents without a goal stay where they are and the others
+	 * each plan their next window with Cooperative A* around the reservations of the agents before them. Agents that can't are moved to
+	 * the front of the order and the window is planned again.
+	 * @param as
+	 *            Agents of the system, in priority order
+	 * @param cells
+	 *            current cell of each Agent
+	 * @return for each Agent the cell it is in at each of the time steps 0 to window
+	 */
+	public int[][] planWindow(ArrayList<Agent> as, int[] cells) {
+		graph = map.getGraph();
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		try {
+			return planWindow(as, cells, rec);
+		} finally {
+			stats = rec.stop();
+		}
+	}
+	
+	private int[][] planWindow(ArrayList<Agent> as, int[] cells, SearchStats.Recorder rec) {
+		int n = as.size();
+		int[][] plan = new int[n][window + 1];
+		heuristic.expectGoals(n);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		boolean[] moved = new boolean[n];
+		
+		// Each time an agent gets stuck it goes first and everyone is planned again, until nobody is stuck or the stuck agent has already
+		// been moved once
+		int stuck;
+		do {
+			stuck = planWindow(as, cells, order, plan, moved, rec);
+			if (stuck > 0) {
+				int i = order[stuck];
+				System.arraycopy(order, 0, order, 1, stuck);
+				order[0] = i;
+				moved[i] = true;
+			}
+		} while (stuck > 0);
+		return plan;
+	}
+	
+	/**
+	 * Plan one window for every agent in the given order, stopping at the first agent that can't find a way through the window unless it
+	 * has already been moved to the front, in which case it waits where it is for as long as nobody else has the cell
+	 * @return position in the order of the agent that stopped the planning, or -1 if everyone was planned
+	 */
+	private int planWindow(ArrayList<Agent> as, int[] cells, int[] order, int[][] plan, boolean[] moved, SearchStats.Recorder rec) {
+		int n = as.size();
+		resTable.clear();
+		blocked = false;
+		
+		// Agents that aren't going anywhere have priority over their cells for the whole window, and every other agent's current cell is
+		// reserved for the first time step so nobody plans to move into it before it has had the chance to move out
+		for (int i = 0; i < n; i++) {
+			Agent a = as.get(i);
+			if (a.getGoal() == null) {
+				Arrays.fill(plan[i], cells[i]);
+				reserveFrom(a, cells[i], 0);
+			} else {
+				resTable.reserve(graph.x(cells[i]), graph.y(cells[i]), 0, a.getIndex());
+			}
+		}
+		
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			Agent a = as.get(i);
+			if (a.getGoal() == null) {
+				continue;
+			}
+			CAStar strat = new CAStar(map, a, resTable, OpenList.Kind.BUCKETS, heuristic);
+			strat.setWindow(window);
+			ArrayList<SpacetimePoint> path = strat.pathfind(cells[i], graph.id(a.getGoal()));
+			rec.add(strat.getStats());
+			
+			if (path == null) {
+				if (k > 0 && !moved[i]) {
+					return k;
+				}
+				// Waiting isn't a way through either, so somebody else is going to come into the cell and the window has agents meeting
+				Arrays.fill(plan[i], cells[i]);
+				for (int t = 1; t <= window && !resTable.isReservedByOther(graph.x(cells[i]), graph.y(cells[i]), t, a.getIndex()); t++) {
+					resTable.reserve(graph.x(cells[i]), graph.y(cells[i]), t, a.getIndex());
+				}
+				blocked = true;
+				continue;
+			}
+			int t = 0;
+			for (SpacetimePoint p : path) {
+				plan[i][t] = graph.id(p.getX(), p.getY());
+				resTable.reserve(p, a.getIndex());
+				t++;
+			}
+			
+			// An agent that gets to its goal before the end of the window stays there, which the search has made sure nobody minds
+			reserveFrom(a, plan[i][t - 1], t);
+			Arrays.fill(plan[i], t, window + 1, plan[i][t - 1]);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Reserve a cell for an Agent from the given time step to the end of the window
+	 */
+	private void reserveFrom(Agent a, int cell, int from) {
+		for (int t = from; t <= window; t++) {
+			resTable.reserve(graph.x(cell), graph.y(cell), t, a.getIndex());
+		}
+	}
+	
+	/**
+	 * Return whether every agent with a goal is at it
+	 */
+	private static boolean allArrived(int[] cells, int[] goals) {
+		for (int i = 0; i < cells.length; i++) {
+			if (goals[i] >= 0 && cells[i] != goals[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove the steps of a path spent waiting at the goal after the agent's last arrival there
+	 */
+	private void trimWaitAtGoal(ArrayList<SpacetimePoint> path, int goal) {
+		int x = graph.x(goal);
+		int y = graph.y(goal);
+		while (path.size() > 1) {
+			SpacetimePoint last = path.get(path.size() - 1);
+			SpacetimePoint before = path.get(path.size() - 2);
+			if (last.getX() != x || last.getY() != y || before.getX() != x || before.getY() != y) {
+				break;
+			}
+			path.remove(path.size() - 1);
+		}
+	}
+	
+	/**
+	 * Get the number of agents with a goal that the last call to computePlan() gave no path, because they can't reach their goal or hadn't
+	 * got there by the time it gave up
+	 * @return number of agents without a path
+	 */
+	public int getUnfinished() {
+		return unfinished;
+	}
+	
+	/**
+	 * Get whether some agent in the last window planned couldn't find a way through it even at the front of the priority order, so that it
+	 * was left waiting in a cell somebody else is going to come into
+	 * @return whether the last window was blocked
+	 */
+	public boolean isBlocked() {
+		return blocked;
+	}
+	
+	/**
+	 * Get the statistics of the last call to computePlan(), or of planWindow() if that was called since
+	 * @return statistics
+	 */
+	@Override
+	public SearchStats getStats() {
+		return stats;
+	}
+	
+	public int getWindow() {
+		return window;
+	}
+	
+	public int getCommit() {
+		return commit;
+	}
+	
+}
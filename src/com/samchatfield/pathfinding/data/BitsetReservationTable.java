@@ -0,0 +1,154 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * ReservationTable for dense horizons, where many agents reserve most of the time steps up to some horizon. Every time step has a bitset
+ * over the cells of the map marking which are reserved at that time, so the common case of asking about a point nobody has reserved is a
+ * single bit test. Who holds a reservation is only needed once the bit is set, and is looked up in a HashReservationTable kept alongside.
+ * The slices are allocated as time steps are first reserved and kept across clear(), so a table reused for plans of similar length stops
+ * allocating after the first one.
+ * @author Sam
+ */
+public class BitsetReservationTable implements ReservationTable {
+	
+	private final int width, height;
+	private final int words;
+	private long[][] slices;
+	private final HashReservationTable owners;
+	private int maxTime;
+	
+	/**
+	 * Create a table for a map of the given size with slices for the first horizon time steps allocated up front
+	 * @param width
+	 *            width of the map
+	 * @param height
+	 *            height of the map
+	 * @param horizon
+	 *            number of time steps to allocate slices for
+	 * @param expected
+	 *            expected number of reservations
+	 */
+	public BitsetReservationTable(int width, int height, int horizon, int expected) {
+		this.width = width;
+		this.height = height;
+		words = (int) (((long) width * height + 63) >>> 6);
+		slices = new long[Math.max(1, horizon)][];
+		for (int t = 0; t < horizon; t++) {
+			slices[t] = new long[words];
+		}
+		owners = new HashReservationTable(expected);
+		maxTime = -1;
+	}
+	
+	/**
+	 * Create a table for the given map with slices for the first horizon time steps allocated up front
+	 * @param map
+	 *            the map
+	 * @param horizon
+	 *            number of time steps to allocate slices for
+	 */
+	public BitsetReservationTable(WorldMap map, int horizon) {
+		this(map.getWidth(), map.getHeight(), horizon, 1024);
+	}
+	
+	@Override
+	public void reserve(int x, int y, int t, int agent) {
+		if (x < 0 || x >= width || y < 0 || y >= height || t < 0) {
+			throw new IllegalArgumentException("Point (" + x + "," + y + "," + t + ") is outside the table");
+		}
+		owners.reserve(x, y, t, agent);
+		int cell = y * width + x;
+		slice(t)[cell >>> 6] |= 1L << cell;
+		maxTime = Math.max(maxTime, t);
+	}
+	
+	@Override
+	public int agentAt(int x, int y, int t) {
+		if (!isReserved(x, y, t)) {
+			return NONE;
+		}
+		return owners.agentAt(x, y, t);
+	}
+	
+	@Override
+	public boolean isReservedByOther(int x, int y, int t, int agent) {
+		if (!isReserved(x, y, t)) {
+			return false;
+		}
+		int owner = owners.agentAt(x, y, t);
+		return owner != NONE && owner != agent;
+	}
+	
+	/**
+	 * Return whether anybody has reserved a point in space-time
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step
+	 * @return is reserved
+	 */
+	public boolean isReserved(int x, int y, int t) {
+		if (t < 0 || t > maxTime || x < 0 || x >= width || y < 0 || y >= height) {
+			return false;
+		}
+		int cell = y * width + x;
+		return (slices[t][cell >>> 6] & (1L << cell)) != 0;
+	}
+	
+	/**
+	 * Get the bitset of a time step, allocating it (and any before it) if it hasn't been used before
+	 * @param t
+	 *            time step
+	 * @return bitset of reserved cells at time t
+	 */
+	private long[] slice(int t) {
+		if (t >= slices.length) {
+			slices = Arrays.copyOf(slices, Math.max(t + 1, slices.length + (slices.length >> 1)));
+		}
+		if (slices[t] == null) {
+			for (int i = 0; i <= t; i++) {
+				if (slices[i] == null) {
+					slices[i] = new long[words];
+				}
+			}
+		}
+		return slices[t];
+	}
+	
+	@Override
+	public void clear() {
+		for (int t = 0; t <= maxTime; t++) {
+			Arrays.fill(slices[t], 0L);
+		}
+		owners.clear();
+		maxTime = -1;
+	}
+	
+	@Override
+	public int getMaxTime() {
+		return maxTime;
+	}
+	
+	@Override
+	public int size() {
+		return owners.size();
+	}
+	
+	/**
+	 * Approximate heap footprint of the table, its slices and the owners table
+	 * @return bytes
+	 */
+	public long memoryBytes() {
+		long bytes = owners.memoryBytes();
+		for (long[] s : slices) {
+			if (s != null) {
+				bytes += 8L * s.length;
+			}
+		}
+		return bytes;
+	}
+	
+}
@@ -0,0 +1,158 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * Bucket (Dial) queue of int state IDs for non-negative integer f values. There is one bucket per f value, each an intrusive doubly linked
+ * list threaded through arrays indexed by state ID, so pushing, removing and changing the f value of a state are all O(1) with no
+ * comparisons. Polling scans forward from the smallest non-empty bucket, which on a unit-cost grid with a consistent heuristic only ever
+ * moves forward by a handful of buckets over a whole search.
+ * <p>
+ * Each bucket is last in, first out. Among states with the same f value, the most recently pushed one is a child of the most recently
+ * expanded state and so is the deepest, which gives the same preference for higher g values as the heap without having to store g.
+ * @author Sam
+ */
+public class BucketQueue implements OpenList {
+	
+	// Per state: the bucket it's in plus one (zero means not queued) and its neighbours in that bucket's list
+	private int[] bucketOf, next, prev;
+	// Per f value: the first state in that bucket or -1
+	private int[] head;
+	private int min, max, size;
+	
+	/**
+	 * Create an empty queue for state IDs below the given capacity
+	 * @param capacity
+	 *            number of state IDs
+	 */
+	public BucketQueue(int capacity) {
+		bucketOf = new int[capacity];
+		next = new int[capacity];
+		prev = new int[capacity];
+		head = new int[64];
+		Arrays.fill(head, -1);
+		min = Integer.MAX_VALUE;
+		max = -1;
+	}
+	
+	@Override
+	public void push(int id, int f, int g) {
+		if (f < 0) {
+			throw new IllegalArgumentException("Bucket queue f values must be non-negative: " + f);
+		}
+		// A state that is already queued is taken out and put back at the front of its new bucket, even if the bucket is unchanged, as it
+		// now counts as the most recent push
+		int current = bucketOf[id] - 1;
+		if (current >= 0) {
+			unlink(id, current);
+		} else {
+			size++;
+		}
+		if (f >= head.length) {
+			int old = head.length;
+			head = Arrays.copyOf(head, Math.max(f + 1, 2 * old));
+			Arrays.fill(head, old, head.length, -1);
+		}
+		int first = head[f];
+		next[id] = first;
+		prev[id] = -1;
+		if (first >= 0) {
+			prev[first] = id;
+		}
+		head[f] = id;
+		bucketOf[id] = f + 1;
+		if (f < min) {
+			min = f;
+		}
+		if (f > max) {
+			max = f;
+		}
+	}
+	
+	@Override
+	public int poll() {
+		int id = peek();
+		unlink(id, min);
+		bucketOf[id] = 0;
+		size--;
+		return id;
+	}
+	
+	@Override
+	public int peek() {
+		if (size == 0) {
+			return -1;
+		}
+		while (head[min] < 0) {
+			min++;
+		}
+		return head[min];
+	}
+	
+	@Override
+	public boolean contains(int id) {
+		return bucketOf[id] != 0;
+	}
+	
+	@Override
+	public void remove(int id) {
+		int current = bucketOf[id] - 1;
+		if (current >= 0) {
+			unlink(id, current);
+			bucketOf[id] = 0;
+			size--;
+		}
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		if (size > 0) {
+			for (int b = min; b <= max; b++) {
+				for (int id = head[b]; id >= 0; id = next[id]) {
+					bucketOf[id] = 0;
+				}
+				head[b] = -1;
+			}
+		}
+		size = 0;
+		min = Integer.MAX_VALUE;
+		max = -1;
+	}
+	
+	@Override
+	public void ensureCapacity(int capacity) {
+		if (capacity > bucketOf.length) {
+			int length = Math.max(capacity, bucketOf.length + (bucketOf.length >> 1));
+			bucketOf = Arrays.copyOf(bucketOf, length);
+			next = Arrays.copyOf(next, length);
+			prev = Arrays.copyOf(prev, length);
+		}
+	}
+	
+	/**
+	 * Take a state out of the list of the given bucket
+	 */
+	private void unlink(int id, int bucket) {
+		int n = next[id];
+		int p = prev[id];
+		if (p >= 0) {
+			next[p] = n;
+		} else {
+			head[bucket] = n;
+		}
+		if (n >= 0) {
+			prev[n] = p;
+		}
+	}
+	
+}
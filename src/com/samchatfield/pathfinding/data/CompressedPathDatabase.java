@@ -0,0 +1,416 @@
+package com.samchatfield.pathfinding.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.samchatfield.pathfinding.exception.InvalidDatabaseException;
+
+/**
+ * Compressed Path Database (CPD): for every pair of free cells of a map, the first move of a shortest path from one to the other. With the
+ * table a path is found with no search at all, by looking up the first move from the start, making it, and repeating from the cell it
+ * leads to until the goal is reached. Building the table takes a breadth first search from every cell, so it's meant to be done offline
+ * (see main) for maps that rarely change and then loaded when needed.
+ * <p>
+ * The first moves from one source cell to all of the targets, in row-major order of the target, form a row of the table. Neighbouring
+ * targets are usually reached the same way, so each row is stored run-length encoded as the target each run starts at and its move, and
+ * obstacles and the source itself count as part of whichever run they're in. A lookup is a binary search of the runs of one row.
+ * <p>
+ * The file format is the magic bytes "PFCP", a format version, the width and height of the map, a 64-bit hash of its obstacles, the
+ * number of runs and a reserved int, then the offset of each source's runs (one more than the number of cells) and the runs themselves,
+ * each a target cell ID shifted left by 3 with the move in the low bits, all little-endian. Files are memory-mapped rather than read, so
+ * opening one is almost instant and its pages are shared by every process using it, and little-endian so that on most machines the mapped
+ * ints are read without swapping their bytes.
+ * @author Sam
+ */
+public class CompressedPathDatabase {
+	
+	/**
+	 * Moves, in the same up, down, left, right order as the neighbours of the GridGraph
+	 */
+	public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+	
+	/**
+	 * Move returned when the target can't be reached from the source
+	 */
+	public static final int NONE = 4;
+	
+	private static final byte[] MAGIC = { 'P', 'F', 'C', 'P' };
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final int MOVE_BITS = 3;
+	// Sources per fork-join task when building
+	private static final int SOURCES_PER_TASK = 64;
+	
+	private final int width, height;
+	private final long mapHash;
+	// Offsets of each source's runs (cells + 1 of them) followed by the runs
+	private final IntBuffer data;
+	private final int cells;
+	
+	private CompressedPathDatabase(int width, int height, long mapHash, IntBuffer data) {
+		this.width = width;
+		this.height = height;
+		this.mapHash = mapHash;
+		this.data = data;
+		cells = width * height;
+	}
+	
+	/**
+	 * Build the database of a map on the common fork-join pool
+	 * @param map
+	 *            map data
+	 * @return the database
+	 */
+	public static CompressedPathDatabase build(WorldMap map) {
+		return build(map, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Build the database of a map, running the searches from the source cells in parallel on the given pool
+	 * @param map
+	 *            map data
+	 * @param pool
+	 *            pool to build on
+	 * @return the database
+	 */
+	public static CompressedPathDatabase build(WorldMap map, ForkJoinPool pool) {
+		GridGraph graph = map.getGraph();
+		int cells = graph.size();
+		int[][] rows = new int[cells][];
+		pool.invoke(new BuildTask(graph, rows, 0, cells));
+		
+		long runs = 0;
+		for (int[] row : rows) {
+			runs += row.length;
+		}
+		if (cells + 1 + runs > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Map is too large for a path database: " + runs + " runs");
+		}
+		int[] data = new int[(int) (cells + 1 + runs)];
+		int offset = 0;
+		for (int s = 0; s < cells; s++) {
+			data[s] = offset;
+			System.arraycopy(rows[s], 0, data, cells + 1 + offset, rows[s].length);
+			offset += rows[s].length;
+		}
+		data[cells] = offset;
+		return new CompressedPathDatabase(map.getWidth(), map.getHeight(), hash(map), IntBuffer.wrap(data));
+	}
+	
+	/**
+	 * Builds the rows of a range of source cells, splitting the range in half until it's small enough
+	 */
+	@SuppressWarnings("serial")
+	private static class BuildTask extends RecursiveAction {
+		
+		private final GridGraph graph;
+		private final int[][] rows;
+		private final int from, to;
+		
+		BuildTask(GridGraph graph, int[][] rows, int from, int to) {
+			this.graph = graph;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > SOURCES_PER_TASK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BuildTask(graph, rows, from, mid), new BuildTask(graph, rows, mid, to));
+				return;
+			}
+			int[] first = new int[graph.size()];
+			int[] queue = new int[graph.size()];
+			int[] runs = new int[16];
+			for (int s = from; s < to; s++) {
+				if (graph.isObstacle(s)) {
+					rows[s] = new int[0];
+					continue;
+				}
+				firstMoves(graph, s, first, queue);
+				
+				int n = 0, current = -1;
+				for (int t = 0; t < first.length; t++) {
+					if (graph.isObstacle(t) || t == s || first[t] == current) {
+						continue;
+					}
+					if (n == runs.length) {
+						runs = Arrays.copyOf(runs, 2 * n);
+					}
+					// The first run starts at 0 so every target falls into a run
+					int start = n == 0 ? 0 : t;
+					runs[n++] = start << MOVE_BITS | first[t];
+					current = first[t];
+				}
+				rows[s] = n == 0 ? new int[] { NONE } : Arrays.copyOf(runs, n);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Breadth first search from a source cell, recording for each cell the move out of the source that the search first reached it by
+	 * @param graph
+	 *            graph of the map
+	 * @param source
+	 *            source cell ID
+	 * @param first
+	 *            first move to each cell, filled in here, NONE for cells not reached
+	 * @param queue
+	 *            scratch space of one int per cell
+	 */
+	private static void firstMoves(GridGraph graph, int source, int[] first, int[] queue) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int width = graph.getWidth();
+		Arrays.fill(first, NONE);
+		int head = 0, tail = 0;
+		
+		for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+			int n = targets[e];
+			first[n] = move(source, n, width);
+			queue[tail++] = n;
+		}
+		first[source] = NONE;
+		while (head < tail) {
+			int cell = queue[head++];
+			for (int e = offsets[cell]; e < offsets[cell + 1]; e++) {
+				int n = targets[e];
+				if (first[n] == NONE && n != source) {
+					first[n] = first[cell];
+					queue[tail++] = n;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the move from a cell to the neighbouring cell
+	 * @param from
+	 *            cell ID
+	 * @param to
+	 *            neighbouring cell ID
+	 * @param width
+	 *            width of the map
+	 * @return UP, DOWN, LEFT or RIGHT
+	 */
+	private static int move(int from, int to, int width) {
+		int d = to - from;
+		return d == width ? UP : d == -width ? DOWN : d == -1 ? LEFT : RIGHT;
+	}
+	
+	/**
+	 * Get the change in cell ID of a move
+	 * @param move
+	 *            UP, DOWN, LEFT or RIGHT
+	 * @return step in cell ID
+	 */
+	public int step(int move) {
+		switch (move) {
+			case UP:
+				return width;
+			case DOWN:
+				return -width;
+			case LEFT:
+				return -1;
+			default:
+				return 1;
+		}
+	}
+	
+	/**
+	 * Look up the first move of a shortest path between two cells
+	 * @param source
+	 *            cell ID to move from
+	 * @param target
+	 *            cell ID to get to, different from the source
+	 * @return UP, DOWN, LEFT or RIGHT, or NONE if the target can't be reached or either cell is an obstacle
+	 */
+	public int firstMove(int source, int target) {
+		int lo = cells + 1 + data.get(source);
+		int hi = cells + 1 + data.get(source + 1) - 1;
+		if (hi < lo) {
+			return NONE;
+		}
+		// The last run that starts at or before the target
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (data.get(mid) >>> MOVE_BITS <= target) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return data.get(lo) & ((1 << MOVE_BITS) - 1);
+	}
+	
+	/**
+	 * Write the database out to a file
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void write(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buf.put(MAGIC).putInt(VERSION).putInt(width).putInt(height).putLong(mapHash).putInt(runCount()).putInt(0);
+			for (int i = 0; i < data.limit(); i++) {
+				if (buf.remaining() < 4) {
+					drain(ch, buf);
+				}
+				buf.putInt(data.get(i));
+			}
+			drain(ch, buf);
+		}
+	}
+	
+	/**
+	 * Write out everything in a buffer and empty it
+	 * @param ch
+	 *            channel to write to
+	 * @param buf
+	 *            buffer to write
+	 * @throws IOException
+	 *             if the channel can't be written
+	 */
+	private static void drain(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			ch.write(buf);
+		}
+		buf.clear();
+	}
+	
+	/**
+	 * Memory-map a database file, checking that it was built for the given map
+	 * @param file
+	 *            database file
+	 * @param map
+	 *            map the database is for
+	 * @return the database
+	 * @throws IOException
+	 *             if the file can't be read, isn't a valid database or was built for a different map
+	 */
+	public static CompressedPathDatabase open(Path file, WorldMap map) throws IOException {
+		MappedByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE) {
+				throw new InvalidDatabaseException(file + " is too large to be a path database");
+			}
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (buf.remaining() < HEADER_BYTES) {
+			throw new InvalidDatabaseException("Truncated path database header");
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buf.get(i) != MAGIC[i]) {
+				throw new InvalidDatabaseException(file + " is not a path database");
+			}
+		}
+		buf.position(MAGIC.length);
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new InvalidDatabaseException("Unsupported path database version " + version);
+		}
+		int width = buf.getInt();
+		int height = buf.getInt();
+		long mapHash = buf.getLong();
+		int runs = buf.getInt();
+		if (width != map.getWidth() || height != map.getHeight() || mapHash != hash(map)) {
+			throw new InvalidDatabaseException(file + " was built for a different map");
+		}
+		long ints = (long) width * height + 1 + runs;
+		if (buf.capacity() - HEADER_BYTES < 4 * ints) {
+			throw new InvalidDatabaseException("Truncated path database");
+		}
+		
+		buf.position(HEADER_BYTES);
+		IntBuffer data = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		data.limit((int) ints);
+		return new CompressedPathDatabase(width, height, mapHash, data);
+	}
+	
+	/**
+	 * Return whether the database was built for the given map, i.e. one of the same size with the same obstacles
+	 * @param map
+	 *            map data
+	 * @return is for the map
+	 */
+	public boolean isFor(WorldMap map) {
+		return map.getWidth() == width && map.getHeight() == height && hash(map) == mapHash;
+	}
+	
+	/**
+	 * FNV-1a hash of the size and obstacles of a map
+	 * @param map
+	 *            map data
+	 * @return hash
+	 */
+	private static long hash(WorldMap map) {
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ map.getWidth()) * 0x100000001b3L;
+		h = (h ^ map.getHeight()) * 0x100000001b3L;
+		int cells = map.getWidth() * map.getHeight();
+		for (int i = 0; i < cells; i++) {
+			h = (h ^ (map.isObstacle(i) ? 1 : 0)) * 0x100000001b3L;
+		}
+		return h;
+	}
+	
+	/**
+	 * Get the total number of runs in the table
+	 * @return number of runs
+	 */
+	public int runCount() {
+		return data.get(cells);
+	}
+	
+	/**
+	 * Size of the table, which is also the size of the file less its header
+	 * @return bytes
+	 */
+	public long sizeBytes() {
+		return 4L * data.limit();
+	}
+	
+	/**
+	 * Build the database of a map file offline and write it out.
+	 * <p>
+	 * Usage: CompressedPathDatabase [map file] [database file] [threads, default all]
+	 * @param args
+	 * @throws IOException
+	 *             if the map can't be read or the database can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: CompressedPathDatabase <map file> <database file> [threads]");
+			System.exit(1);
+		}
+		WorldMap map = MapLoader.load(Paths.get(args[0]));
+		ForkJoinPool pool = args.length > 2 ? new ForkJoinPool(Integer.parseInt(args[2])) : ForkJoinPool.commonPool();
+		
+		long t0 = System.nanoTime();
+		CompressedPathDatabase db = build(map, pool);
+		long t1 = System.nanoTime();
+		db.write(Paths.get(args[1]));
+		System.out.printf("%dx%d map, %d runs (%.1f per source), %.1f MB, built in %.1f s%n", map.getWidth(), map.getHeight(),
+				db.runCount(), (double) db.runCount() / (map.getWidth() * map.getHeight()), db.sizeBytes() / 1e6, (t1 - t0) / 1e9);
+	}
+	
+}
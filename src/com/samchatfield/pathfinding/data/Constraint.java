@@ -0,0 +1,97 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * A constraint on where one agent may be in space-time, as used by Conflict-Based Search. A vertex constraint is on the agent being in a
+ * cell at a time step and an edge constraint is on the agent moving from one cell to another arriving at a time step. Negative constraints
+ * forbid that, positive constraints (from disjoint splitting) require it, which also forbids every other agent from being there.
+ * @author Sam
+ */
+public final class Constraint {
+	
+	private final int agent, from, cell, time;
+	private final boolean positive;
+	
+	private Constraint(int agent, int from, int cell, int time, boolean positive) {
+		this.agent = agent;
+		this.from = from;
+		this.cell = cell;
+		this.time = time;
+		this.positive = positive;
+	}
+	
+	/**
+	 * Create a constraint on an agent being in a cell at a time step
+	 * @param agent
+	 *            agent number
+	 * @param cell
+	 *            cell ID
+	 * @param time
+	 *            time step
+	 * @param positive
+	 *            whether the agent must be there rather than must not
+	 * @return the constraint
+	 */
+	public static Constraint vertex(int agent, int cell, int time, boolean positive) {
+		return new Constraint(agent, -1, cell, time, positive);
+	}
+	
+	/**
+	 * Create a constraint on an agent moving between two adjacent cells, arriving at a time step
+	 * @param agent
+	 *            agent number
+	 * @param from
+	 *            cell ID moved from
+	 * @param to
+	 *            cell ID moved to
+	 * @param time
+	 *            time step of arrival
+	 * @param positive
+	 *            whether the agent must make the move rather than must not
+	 * @return the constraint
+	 */
+	public static Constraint edge(int agent, int from, int to, int time, boolean positive) {
+		return new Constraint(agent, from, to, time, positive);
+	}
+	
+	/**
+	 * Get the agent this constraint is on
+	 * @return agent number
+	 */
+	public int getAgent() {
+		return agent;
+	}
+	
+	/**
+	 * Get the cell moved from by an edge constraint
+	 * @return cell ID, or -1 for a vertex constraint
+	 */
+	public int getFrom() {
+		return from;
+	}
+	
+	/**
+	 * Get the cell of a vertex constraint or the cell moved to by an edge constraint
+	 * @return cell ID
+	 */
+	public int getCell() {
+		return cell;
+	}
+	
+	public int getTime() {
+		return time;
+	}
+	
+	public boolean isPositive() {
+		return positive;
+	}
+	
+	public boolean isEdge() {
+		return from >= 0;
+	}
+	
+	@Override
+	public String toString() {
+		return (positive ? "+" : "-") + "<" + agent + ", " + (isEdge() ? from + "->" : "") + cell + ", " + time + ">";
+	}
+	
+}
@@ -0,0 +1,277 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * Compressed sparse row (CSR) view of the search graph of a WorldMap. Every cell of the map has a dense int ID equal to its row-major index
+ * (y * width + x), and the non-obstacle neighbours of cell i are targets[offsets[i]] to targets[offsets[i + 1] - 1]. Obstacles have no
+ * neighbours. The whole graph is two int arrays, so the searches can walk it without touching any Node objects.
+ * <p>
+ * A graph never changes once built. When obstacles change the map publishes a new graph with the next version number, patched from the
+ * last one around the cells that changed, so a search that started on the old graph carries on with a consistent view of the map.
+ * @author Sam
+ */
+public class GridGraph {
+	
+	private final int width, height;
+	private final long version;
+	private final boolean[] obstacles;
+	private final int[] offsets;
+	private final int[] targets;
+	
+	/**
+	 * Build the graph of a row-major obstacle grid. Neighbours are stored up, down, left, right, which is not the order of the Node
+	 * neighbour lists (left, down, right, up), so a search over the graph can break ties differently from one over the Nodes.
+	 * @param width
+	 *            width of the grid
+	 * @param height
+	 *            height of the grid
+	 * @param obstacles
+	 *            obstacle flag of each cell
+	 */
+	GridGraph(int width, int height, boolean[] obstacles) {
+		this.width = width;
+		this.height = height;
+		this.obstacles = obstacles;
+		version = 0;
+		
+		int n = width * height;
+		offsets = new int[n + 1];
+		
+		// First pass counts the edges so the targets array can be allocated exactly
+		int edges = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = edges;
+			if (!obstacles[i]) {
+				edges += degree(i);
+			}
+		}
+		offsets[n] = edges;
+		
+		targets = new int[edges];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			if (!obstacles[i]) {
+				e = writeNeighbours(i, e);
+			}
+		}
+	}
+	
+	/**
+	 * Build the next version of a graph after some cells have changed. Only the neighbours of the cells in affected are worked out again,
+	 * the edges of every other cell are copied across in runs and their offsets shifted. Both arrays are still allocated and copied in full,
+	 * so this takes time linear in the size of the map, but the copy is what leaves the previous graph intact for the searches using it.
+	 * @param previous
+	 *            graph before the change
+	 * @param obstacles
+	 *            obstacle flag of each cell after the change
+	 * @param affected
+	 *            cells whose neighbours may have changed (the changed cells and the cells next to them), in ascending order without repeats
+	 */
+	GridGraph(GridGraph previous, boolean[] obstacles, int[] affected) {
+		width = previous.width;
+		height = previous.height;
+		version = previous.version + 1;
+		this.obstacles = obstacles;
+		
+		int n = width * height;
+		int edges = previous.targets.length;
+		for (int a : affected) {
+			edges += (obstacles[a] ? 0 : degree(a)) - (previous.offsets[a + 1] - previous.offsets[a]);
+		}
+		offsets = new int[n + 1];
+		targets = new int[edges];
+		
+		int e = 0;
+		int next = 0;
+		for (int a : affected) {
+			e = copyRun(previous, next, a, e);
+			offsets[a] = e;
+			if (!obstacles[a]) {
+				e = writeNeighbours(a, e);
+			}
+			next = a + 1;
+		}
+		e = copyRun(previous, next, n, e);
+		offsets[n] = e;
+	}
+	
+	/**
+	 * Copy the edges of a run of unchanged cells from the previous version of the graph
+	 * @param previous
+	 *            graph before the change
+	 * @param from
+	 *            first cell of the run
+	 * @param to
+	 *            cell after the last of the run
+	 * @param e
+	 *            position in targets to copy to
+	 * @return position in targets after the run
+	 */
+	private int copyRun(GridGraph previous, int from, int to, int e) {
+		int start = previous.offsets[from];
+		int length = previous.offsets[to] - start;
+		System.arraycopy(previous.targets, start, targets, e, length);
+		int shift = e - start;
+		for (int i = from; i < to; i++) {
+			offsets[i] = previous.offsets[i] + shift;
+		}
+		return e + length;
+	}
+	
+	/**
+	 * Write the non-obstacle neighbours of a free cell into targets
+	 * @param i
+	 *            cell ID
+	 * @param e
+	 *            position in targets of its first neighbour
+	 * @return position in targets after its last neighbour
+	 */
+	private int writeNeighbours(int i, int e) {
+		int x = i % width;
+		int y = i / width;
+		if (y + 1 < height && !obstacles[i + width]) { targets[e++] = i + width; }
+		if (y > 0 && !obstacles[i - width])          { targets[e++] = i - width; }
+		if (x > 0 && !obstacles[i - 1])              { targets[e++] = i - 1; }
+		if (x + 1 < width && !obstacles[i + 1])      { targets[e++] = i + 1; }
+		return e;
+	}
+	
+	/**
+	 * Count the non-obstacle neighbours of a cell
+	 * @param i
+	 *            cell ID
+	 * @return number of neighbours
+	 */
+	private int degree(int i) {
+		int x = i % width;
+		int y = i / width;
+		int d = 0;
+		if (y + 1 < height && !obstacles[i + width]) { d++; }
+		if (y > 0 && !obstacles[i - width])          { d++; }
+		if (x > 0 && !obstacles[i - 1])              { d++; }
+		if (x + 1 < width && !obstacles[i + 1])      { d++; }
+		return d;
+	}
+	
+	/**
+	 * Get the ID of the cell at x,y (the coordinates aren't bounds checked)
+	 * @param x x position
+	 * @param y y position
+	 * @return cell ID
+	 */
+	public int id(int x, int y) {
+		return y * width + x;
+	}
+	
+	/**
+	 * Get the ID of the cell of a Node of this graph's map
+	 * @param n Node
+	 * @return cell ID
+	 */
+	public int id(Node n) {
+		return n.getY() * width + n.getX();
+	}
+	
+	/**
+	 * Get the x position of a cell
+	 * @param id cell ID
+	 * @return x pos
+	 */
+	public int x(int id) {
+		return id % width;
+	}
+	
+	/**
+	 * Get the y position of a cell
+	 * @param id cell ID
+	 * @return y pos
+	 */
+	public int y(int id) {
+		return id / width;
+	}
+	
+	/**
+	 * Compute the Manhattan distance between two cells
+	 * @param a
+	 *            cell 1
+	 * @param b
+	 *            cell 2
+	 * @return Manhattan distance from cell 1 to cell 2
+	 */
+	public int mDist(int a, int b) {
+		return Math.abs(a % width - b % width) + Math.abs(a / width - b / width);
+	}
+	
+	/**
+	 * Return whether a cell is an obstacle
+	 * @param id cell ID
+	 * @return is obstacle
+	 */
+	public boolean isObstacle(int id) {
+		return obstacles[id];
+	}
+	
+	/**
+	 * Get the obstacle flag of every cell. The array is shared so must not be modified.
+	 * @return obstacle flags
+	 */
+	boolean[] getObstacles() {
+		return obstacles;
+	}
+	
+	/**
+	 * Get the number of cells (and so IDs) in the graph
+	 * @return number of cells
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+	
+	/**
+	 * Get the number of directed edges in the graph
+	 * @return number of edges
+	 */
+	public int edgeCount() {
+		return targets.length;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Get the version of the map this graph is of, which goes up by one with every update to the map
+	 * @return version, starting from 0
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Get the CSR row offsets, of length size() + 1. The array is shared so must not be modified.
+	 * @return offsets
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+	
+	/**
+	 * Get the CSR edge targets, of length edgeCount(). The array is shared so must not be modified.
+	 * @return targets
+	 */
+	public int[] getTargets() {
+		return targets;
+	}
+	
+	/**
+	 * Approximate heap footprint of the adjacency arrays
+	 * @return bytes used by offsets and targets
+	 */
+	public long memoryBytes() {
+		return 4L * (offsets.length + targets.length);
+	}
+	
+}
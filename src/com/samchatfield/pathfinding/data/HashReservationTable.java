@@ -0,0 +1,139 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * ReservationTable backed by an open addressing hash table from packed (x, y, t) longs (see SpacetimePoint.pack) to agent IDs, using linear
+ * probing. Empty slots are marked with a key of -1, which no packed point can be, so each slot is just a long and an int and a table sized
+ * up front for its reservations never allocates again. The table keeps up to 3/4 of its slots filled before it doubles.
+ * @author Sam
+ */
+public class HashReservationTable implements ReservationTable {
+	
+	private static final long EMPTY = -1L;
+	
+	private long[] keys;
+	private int[] agents;
+	private int size, shift, maxTime;
+	
+	/**
+	 * Create a table with a small initial capacity
+	 */
+	public HashReservationTable() {
+		this(1024);
+	}
+	
+	/**
+	 * Create a table with room for the given number of reservations before it needs to grow, e.g. the number of agents times the length
+	 * of their paths
+	 * @param expected
+	 *            expected number of reservations
+	 */
+	public HashReservationTable(int expected) {
+		long wanted = Math.max(16, (4L * expected + 2) / 3);
+		if (wanted > 1 << 30) {
+			throw new IllegalArgumentException("Too many reservations for one table: " + expected);
+		}
+		allocate(Integer.highestOneBit((int) wanted - 1) << 1);
+		maxTime = -1;
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		agents = new int[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+	}
+	
+	/**
+	 * Fibonacci hash of a key to its home slot
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+	
+	@Override
+	public void reserve(int x, int y, int t, int agent) {
+		if (agent < 0) {
+			throw new IllegalArgumentException("Agent IDs must not be negative: " + agent);
+		}
+		if (4 * (size + 1) > 3 * keys.length) {
+			grow();
+		}
+		insert(SpacetimePoint.pack(x, y, t), agent);
+		maxTime = Math.max(maxTime, t);
+	}
+	
+	private void insert(long key, int agent) {
+		int mask = keys.length - 1;
+		int i = slot(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key) {
+				agents[i] = agent;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		agents[i] = agent;
+		size++;
+	}
+	
+	@Override
+	public int agentAt(int x, int y, int t) {
+		if (t > maxTime || t < 0) {
+			return NONE;
+		}
+		long key = SpacetimePoint.pack(x, y, t);
+		int mask = keys.length - 1;
+		for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return agents[i];
+			}
+		}
+		return NONE;
+	}
+	
+	@Override
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, EMPTY);
+		}
+		size = 0;
+		maxTime = -1;
+	}
+	
+	@Override
+	public int getMaxTime() {
+		return maxTime;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Approximate heap footprint of the table's arrays
+	 * @return bytes
+	 */
+	public long memoryBytes() {
+		return 12L * keys.length;
+	}
+	
+	private void grow() {
+		if (keys.length == 1 << 30) {
+			throw new IllegalStateException("Reservation table is full");
+		}
+		long[] oldKeys = keys;
+		int[] oldAgents = agents;
+		allocate(2 * oldKeys.length);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				insert(oldKeys[i], oldAgents[i]);
+			}
+		}
+	}
+	
+}
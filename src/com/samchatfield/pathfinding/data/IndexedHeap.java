@@ -0,0 +1,217 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min-heap of int state IDs with long keys. The position of every state in the heap is kept in an array indexed by ID, which
+ * gives O(1) membership tests and lets a key be changed in place. A wider heap (the default arity is 4) is shallower than a binary heap and
+ * its children sit next to each other in memory, which suits the many inserts and decrease-keys of A*.
+ * <p>
+ * push(id, f, g) combines the f and g values into one key so that equal f values come out highest g first; searches that need a different
+ * order (e.g. two-part D* Lite keys) can use the long key methods directly.
+ * @author Sam
+ */
+public class IndexedHeap implements OpenList {
+	
+	private final int arity;
+	private int[] heap;
+	private long[] keys;
+	// Position in the heap plus one of each state, so that zero (the default) means not in the heap
+	private int[] pos;
+	private int size;
+	
+	/**
+	 * Create a 4-ary heap for state IDs below the given capacity
+	 * @param capacity
+	 *            number of state IDs
+	 */
+	public IndexedHeap(int capacity) {
+		this(capacity, 4);
+	}
+	
+	/**
+	 * Create a heap of the given arity for state IDs below the given capacity
+	 * @param capacity
+	 *            number of state IDs
+	 * @param arity
+	 *            number of children of each heap node, at least 2
+	 */
+	public IndexedHeap(int capacity, int arity) {
+		if (arity < 2) {
+			throw new IllegalArgumentException("Heap arity must be at least 2: " + arity);
+		}
+		this.arity = arity;
+		heap = new int[16];
+		keys = new long[16];
+		pos = new int[capacity];
+	}
+	
+	/**
+	 * Combine an f and g value into one heap key ordered by f and then by higher g
+	 * @param f
+	 *            f value
+	 * @param g
+	 *            g value, non-negative
+	 * @return key
+	 */
+	public static long key(int f, int g) {
+		return ((long) f << 32) | (Integer.MAX_VALUE - g);
+	}
+	
+	@Override
+	public void push(int id, int f, int g) {
+		push(id, key(f, g));
+	}
+	
+	/**
+	 * Add a state with the given key or, if it's already in the heap, change its key
+	 * @param id
+	 *            state ID
+	 * @param key
+	 *            key, lowest first
+	 */
+	public void push(int id, long key) {
+		int p = pos[id] - 1;
+		if (p < 0) {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, 2 * size);
+				keys = Arrays.copyOf(keys, 2 * size);
+			}
+			siftUp(size++, id, key);
+		} else if (key < keys[p]) {
+			siftUp(p, id, key);
+		} else {
+			siftDown(p, id, key);
+		}
+	}
+	
+	@Override
+	public int poll() {
+		int top = heap[0];
+		pos[top] = 0;
+		size--;
+		if (size > 0) {
+			siftDown(0, heap[size], keys[size]);
+		}
+		return top;
+	}
+	
+	@Override
+	public int peek() {
+		return size > 0 ? heap[0] : -1;
+	}
+	
+	/**
+	 * Get the smallest key in the heap
+	 * @return key of peek()
+	 */
+	public long peekKey() {
+		return keys[0];
+	}
+	
+	/**
+	 * Get the key of a state in the heap
+	 * @param id
+	 *            state ID, which must be in the heap
+	 * @return key
+	 */
+	public long keyOf(int id) {
+		return keys[pos[id] - 1];
+	}
+	
+	@Override
+	public boolean contains(int id) {
+		return pos[id] != 0;
+	}
+	
+	@Override
+	public void remove(int id) {
+		int p = pos[id] - 1;
+		if (p < 0) {
+			return;
+		}
+		pos[id] = 0;
+		size--;
+		if (p < size) {
+			int last = heap[size];
+			long lastKey = keys[size];
+			if (lastKey < keys[p]) {
+				siftUp(p, last, lastKey);
+			} else {
+				siftDown(p, last, lastKey);
+			}
+		}
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			pos[heap[i]] = 0;
+		}
+		size = 0;
+	}
+	
+	@Override
+	public void ensureCapacity(int capacity) {
+		if (capacity > pos.length) {
+			pos = Arrays.copyOf(pos, Math.max(capacity, pos.length + (pos.length >> 1)));
+		}
+	}
+	
+	/**
+	 * Move a state up from position p until its parent's key is no bigger
+	 */
+	private void siftUp(int p, int id, long key) {
+		while (p > 0) {
+			int parent = (p - 1) / arity;
+			if (keys[parent] <= key) {
+				break;
+			}
+			place(p, heap[parent], keys[parent]);
+			p = parent;
+		}
+		place(p, id, key);
+	}
+	
+	/**
+	 * Move a state down from position p until none of its children have a smaller key
+	 */
+	private void siftDown(int p, int id, long key) {
+		while (true) {
+			int first = p * arity + 1;
+			if (first >= size) {
+				break;
+			}
+			int last = Math.min(first + arity, size);
+			int best = first;
+			for (int c = first + 1; c < last; c++) {
+				if (keys[c] < keys[best]) {
+					best = c;
+				}
+			}
+			if (keys[best] >= key) {
+				break;
+			}
+			place(p, heap[best], keys[best]);
+			p = best;
+		}
+		place(p, id, key);
+	}
+	
+	private void place(int p, int id, long key) {
+		heap[p] = id;
+		keys[p] = key;
+		pos[id] = p + 1;
+	}
+	
+}
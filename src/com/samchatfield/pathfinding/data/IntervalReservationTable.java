@@ -0,0 +1,272 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * ReservationTable that stores intervals of time rather than single points: each cell has a list of the intervals of time steps it's
+ * reserved for and the agent each is reserved by, sorted by time. Points reserved one after the other by the same agent join up into one
+ * interval, so an agent waiting somewhere for a long time costs the same as one passing through, and reserveFrom() reserves a cell for good
+ * with an interval that never ends. The gaps between the intervals of the other agents are the safe intervals an agent can be in the cell
+ * for, which nextFree() and safeUntil() find for Safe Interval Path Planning (SIPP).
+ * <p>
+ * Unlike the tables of points, a reservation never replaces another agent's: reserving a time step some other agent already has is an
+ * error, as it would mean the plan has two agents in the same place. A reservation for good counts as reserving its first time step as far
+ * as getMaxTime() is concerned, since nothing changes after that, and size() is the number of intervals stored.
+ * @author Sam
+ */
+public class IntervalReservationTable implements ReservationTable {
+	
+	/**
+	 * Time step standing for never: the end of an interval that never ends, and what nextFree() returns for a cell that never becomes free
+	 */
+	public static final int FOREVER = Integer.MAX_VALUE;
+	
+	// Per cell: the intervals as (from, to, agent) triples sorted by from, and how many there are
+	private final int width, height;
+	private final int[][] spans;
+	private final int[] counts;
+	private int[] scratch = new int[48];
+	private int size, maxTime;
+	
+	/**
+	 * Create an empty table for a map of the given size
+	 * @param width
+	 *            width of the map
+	 * @param height
+	 *            height of the map
+	 */
+	public IntervalReservationTable(int width, int height) {
+		this.width = width;
+		this.height = height;
+		spans = new int[width * height][];
+		counts = new int[width * height];
+		maxTime = -1;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalStateException
+	 *             if another agent has already reserved the point
+	 */
+	@Override
+	public void reserve(int x, int y, int t, int agent) {
+		reserve(x, y, t, t, agent);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws IllegalStateException
+	 *             if another agent has already reserved the cell at any of those time steps
+	 */
+	@Override
+	public void reserveFrom(int x, int y, int from, int agent) {
+		reserve(x, y, from, FOREVER, agent);
+	}
+	
+	/**
+	 * Reserve a cell for an agent from one time step to another, joining the interval up with any of the same agent's that it overlaps or
+	 * runs on from
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param from
+	 *            first time step
+	 * @param to
+	 *            last time step, or FOREVER
+	 * @param agent
+	 *            agent ID, must not be negative
+	 * @throws IllegalStateException
+	 *             if another agent has already reserved the cell at any of those time steps
+	 */
+	public void reserve(int x, int y, int from, int to, int agent) {
+		if (agent < 0) {
+			throw new IllegalArgumentException("Agent IDs must not be negative: " + agent);
+		}
+		if (from < 0 || to < from) {
+			throw new IllegalArgumentException("Bad interval: " + from + " to " + to);
+		}
+		int cell = cell(x, y);
+		int[] old = spans[cell];
+		int n = counts[cell];
+		for (int i = Math.max(0, find(cell, from)); i < 3 * n && old[i] <= to; i += 3) {
+			if (old[i + 1] >= from && old[i + 2] != agent) {
+				throw new IllegalStateException("Agent " + agent + " can't reserve (" + x + ", " + y + ") from " + from + " to " + to
+						+ " as agent " + old[i + 2] + " has it from " + old[i] + " to " + old[i + 1]);
+			}
+		}
+		// The new list is built in a scratch array, with room for the new interval and for one old one to be split in two around it
+		if (scratch.length < 3 * (n + 2)) {
+			scratch = new int[6 * (n + 2)];
+		}
+		int[] out = scratch;
+		int m = 0;
+		boolean placed = false;
+		for (int i = 0; i < 3 * n; i += 3) {
+			int f = old[i], l = old[i + 1], a = old[i + 2];
+			if (!placed && f >= from) {
+				m = append(out, m, from, to, agent);
+				placed = true;
+			}
+			if (l < from || f > to) {
+				m = append(out, m, f, l, a);
+				continue;
+			}
+			if (f < from) {
+				m = append(out, m, f, from - 1, a);
+			}
+			if (l > to) {
+				if (!placed) {
+					m = append(out, m, from, to, agent);
+					placed = true;
+				}
+				m = append(out, m, to + 1, l, a);
+			}
+		}
+		if (!placed) {
+			m = append(out, m, from, to, agent);
+		}
+		if (old == null || old.length < m) {
+			old = new int[Math.max(12, 2 * m)];
+			spans[cell] = old;
+		}
+		System.arraycopy(out, 0, old, 0, m);
+		size += m / 3 - n;
+		counts[cell] = m / 3;
+		maxTime = Math.max(maxTime, to == FOREVER ? from : to);
+	}
+	
+	/**
+	 * Add an interval to the end of a list, joining it onto the last one if that's the same agent's and ends just before it
+	 * @return new length of the list
+	 */
+	private static int append(int[] list, int length, int from, int to, int agent) {
+		if (length > 0 && list[length - 1] == agent && list[length - 2] != FOREVER && list[length - 2] + 1 == from) {
+			list[length - 2] = to;
+			return length;
+		}
+		list[length] = from;
+		list[length + 1] = to;
+		list[length + 2] = agent;
+		return length + 3;
+	}
+	
+	@Override
+	public int agentAt(int x, int y, int t) {
+		int cell = cell(x, y);
+		int i = find(cell, t);
+		return i >= 0 && spans[cell][i + 1] >= t ? spans[cell][i + 2] : NONE;
+	}
+	
+	/**
+	 * Find the earliest time step from the given one on at which a cell isn't reserved by an agent other than the given one
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step
+	 * @param agent
+	 *            agent ID asking
+	 * @return time step, or FOREVER if another agent has reserved the cell for good
+	 */
+	public int nextFree(int x, int y, int t, int agent) {
+		int cell = cell(x, y);
+		int[] list = spans[cell];
+		int end = 3 * counts[cell];
+		for (int i = Math.max(0, find(cell, t)); i < end && list[i] <= t; i += 3) {
+			if (list[i + 1] >= t && list[i + 2] != agent) {
+				if (list[i + 1] == FOREVER) {
+					return FOREVER;
+				}
+				t = list[i + 1] + 1;
+			}
+		}
+		return t;
+	}
+	
+	/**
+	 * Find the last time step of the safe interval of a cell that contains the given time step, i.e. the step before the next one that an
+	 * agent other than the given one has reserved it for
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step, which the cell must not be reserved for by another agent
+	 * @param agent
+	 *            agent ID asking
+	 * @return last safe time step, or FOREVER if nobody else reserves the cell again
+	 */
+	public int safeUntil(int x, int y, int t, int agent) {
+		int cell = cell(x, y);
+		int[] list = spans[cell];
+		int end = 3 * counts[cell];
+		for (int i = Math.max(0, find(cell, t)); i < end; i += 3) {
+			if (list[i + 1] >= t && list[i + 2] != agent) {
+				return list[i] - 1;
+			}
+		}
+		return FOREVER;
+	}
+	
+	/**
+	 * Find the last interval of a cell starting at or before the given time step by binary search
+	 * @return position of the interval's triple, or -1 if they all start later
+	 */
+	private int find(int cell, int t) {
+		int[] list = spans[cell];
+		int lo = 0, hi = counts[cell] - 1, found = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (list[3 * mid] <= t) {
+				found = 3 * mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return found;
+	}
+	
+	private int cell(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			throw new IndexOutOfBoundsException("Point (" + x + ", " + y + ") is off the map");
+		}
+		return y * width + x;
+	}
+	
+	@Override
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(counts, 0);
+		}
+		size = 0;
+		maxTime = -1;
+	}
+	
+	@Override
+	public int getMaxTime() {
+		return maxTime;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Approximate heap footprint of the table's arrays
+	 * @return bytes
+	 */
+	public long memoryBytes() {
+		long bytes = 4L * counts.length + 4L * spans.length;
+		for (int[] list : spans) {
+			if (list != null) {
+				bytes += 4L * list.length + 16;
+			}
+		}
+		return bytes;
+	}
+	
+}
@@ -0,0 +1,229 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed jump distances of a map for Jump Point Search (JPS+) on the 4-connected grid. For every free cell and each of the four
+ * directions the table holds how far a jump in that direction goes: a positive distance is the number of steps to the next jump point, and
+ * zero or a negative distance is minus the number of free steps before the next obstacle or the edge of the map, i.e. there is no jump
+ * point that way. The only jump point the table can't know about is the goal, so the search checks for that itself.
+ * <p>
+ * Paths are made canonical by going vertically before horizontally, so a horizontal jump only stops at a cell with a forced neighbour (a
+ * free cell above or below it whose counterpart one step back is an obstacle, so it can't be reached by turning earlier), and a vertical
+ * jump stops at any cell from which a horizontal jump would find a jump point.
+ * @author Sam
+ */
+public class JumpTable {
+	
+	/**
+	 * Directions, in the same up, down, left, right order as the neighbours of the GridGraph
+	 */
+	public static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+	
+	private final GridGraph graph;
+	private final int[] distances;
+	
+	/**
+	 * Build the table of a graph, in time proportional to the number of cells
+	 * @param graph
+	 *            graph of the map
+	 */
+	JumpTable(GridGraph graph) {
+		this.graph = graph;
+		int width = graph.getWidth();
+		int height = graph.getHeight();
+		distances = new int[4 * graph.size()];
+		
+		// Horizontal jumps first, sweeping against the direction of the jump so the cell ahead is always done already
+		for (int y = 0; y < height; y++) {
+			for (int x = width - 1; x >= 0; x--) {
+				horizontal(graph.id(x, y), RIGHT, 1, x + 1 < width);
+			}
+			for (int x = 0; x < width; x++) {
+				horizontal(graph.id(x, y), LEFT, -1, x > 0);
+			}
+		}
+		
+		// Vertical jumps depend on the horizontal ones of the cells they pass through
+		for (int x = 0; x < width; x++) {
+			for (int y = height - 1; y >= 0; y--) {
+				vertical(graph.id(x, y), UP, width, y + 1 < height);
+			}
+			for (int y = 0; y < height; y++) {
+				vertical(graph.id(x, y), DOWN, -width, y > 0);
+			}
+		}
+	}
+	
+	/**
+	 * Bring the table of an older version of the map up to date. A horizontal jump only depends on its own row and the rows either side, so
+	 * only those rows around the changed cells are worked out again. A vertical jump depends on its own column and on which cells of it are
+	 * horizontal jump points, so only the columns of the changed cells and the columns where that has changed are worked out again.
+	 * @param previous
+	 *            table of an older version of the map
+	 * @param graph
+	 *            graph of the map now
+	 * @param changed
+	 *            cells changed since the older version, in ascending order
+	 */
+	JumpTable(JumpTable previous, GridGraph graph, int[] changed) {
+		this.graph = graph;
+		int width = graph.getWidth();
+		int height = graph.getHeight();
+		distances = previous.distances.clone();
+		
+		boolean[] rows = new boolean[height];
+		boolean[] columns = new boolean[width];
+		for (int c : changed) {
+			int x = graph.x(c), y = graph.y(c);
+			columns[x] = true;
+			for (int row = Math.max(0, y - 1); row <= Math.min(height - 1, y + 1); row++) {
+				rows[row] = true;
+			}
+			if (graph.isObstacle(c)) {
+				Arrays.fill(distances, 4 * c, 4 * c + 4, 0);
+			}
+		}
+		
+		for (int y = 0; y < height; y++) {
+			if (!rows[y]) {
+				continue;
+			}
+			for (int x = width - 1; x >= 0; x--) {
+				horizontal(graph.id(x, y), RIGHT, 1, x + 1 < width);
+			}
+			for (int x = 0; x < width; x++) {
+				horizontal(graph.id(x, y), LEFT, -1, x > 0);
+			}
+			for (int x = 0; x < width; x++) {
+				int c = graph.id(x, y);
+				if (isJumpPoint(previous.distances, c) != isJumpPoint(distances, c)) {
+					columns[x] = true;
+				}
+			}
+		}
+		
+		for (int x = 0; x < width; x++) {
+			if (!columns[x]) {
+				continue;
+			}
+			for (int y = height - 1; y >= 0; y--) {
+				vertical(graph.id(x, y), UP, width, y + 1 < height);
+			}
+			for (int y = 0; y < height; y++) {
+				vertical(graph.id(x, y), DOWN, -width, y > 0);
+			}
+		}
+	}
+	
+	/**
+	 * Return whether a horizontal jump from a cell finds a jump point, which is what a vertical jump through it stops for
+	 * @param distances
+	 *            jump distances
+	 * @param cell
+	 *            cell ID
+	 * @return has a horizontal jump point
+	 */
+	private static boolean isJumpPoint(int[] distances, int cell) {
+		return distances[4 * cell + LEFT] > 0 || distances[4 * cell + RIGHT] > 0;
+	}
+	
+	/**
+	 * Work out the horizontal jump distance of a cell from that of the next cell along
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            LEFT or RIGHT
+	 * @param dx
+	 *            step in cell ID
+	 * @param inBounds
+	 *            whether there is a next cell
+	 */
+	private void horizontal(int cell, int dir, int dx, boolean inBounds) {
+		if (graph.isObstacle(cell)) {
+			return;
+		}
+		int next = cell + dx;
+		if (!inBounds || graph.isObstacle(next)) {
+			distances[4 * cell + dir] = 0;
+		} else if (hasForcedNeighbour(next, dx)) {
+			distances[4 * cell + dir] = 1;
+		} else {
+			int d = distances[4 * next + dir];
+			distances[4 * cell + dir] = d > 0 ? d + 1 : d - 1;
+		}
+	}
+	
+	/**
+	 * Work out the vertical jump distance of a cell from that of the next cell along
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            UP or DOWN
+	 * @param dy
+	 *            step in cell ID
+	 * @param inBounds
+	 *            whether there is a next cell
+	 */
+	private void vertical(int cell, int dir, int dy, boolean inBounds) {
+		if (graph.isObstacle(cell)) {
+			return;
+		}
+		int next = cell + dy;
+		if (!inBounds || graph.isObstacle(next)) {
+			distances[4 * cell + dir] = 0;
+		} else if (isJumpPoint(distances, next)) {
+			distances[4 * cell + dir] = 1;
+		} else {
+			int d = distances[4 * next + dir];
+			distances[4 * cell + dir] = d > 0 ? d + 1 : d - 1;
+		}
+	}
+	
+	/**
+	 * Return whether a free cell reached by a horizontal move has a forced neighbour above or below it
+	 * @param cell
+	 *            cell ID
+	 * @param dx
+	 *            step in cell ID of the move
+	 * @return has a forced neighbour
+	 */
+	private boolean hasForcedNeighbour(int cell, int dx) {
+		int width = graph.getWidth();
+		int y = graph.y(cell);
+		int back = cell - dx;
+		if (y + 1 < graph.getHeight() && !graph.isObstacle(cell + width) && graph.isObstacle(back + width)) {
+			return true;
+		}
+		return y > 0 && !graph.isObstacle(cell - width) && graph.isObstacle(back - width);
+	}
+	
+	/**
+	 * Get the jump distance from a cell in a direction
+	 * @param cell
+	 *            cell ID
+	 * @param dir
+	 *            UP, DOWN, LEFT or RIGHT
+	 * @return steps to the next jump point if positive, otherwise minus the number of free steps
+	 */
+	public int distance(int cell, int dir) {
+		return distances[4 * cell + dir];
+	}
+	
+	/**
+	 * Get the graph the table was built for, which is out of date once the map has changed
+	 * @return graph of the map
+	 */
+	public GridGraph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * Approximate heap footprint of the table
+	 * @return bytes used by the distances
+	 */
+	public long memoryBytes() {
+		return 4L * distances.length;
+	}
+	
+}
@@ -0,0 +1,189 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to int values with linear probing, for keys such as packed space-time states that would
+ * otherwise need a boxed object per lookup. Like SearchContext, each slot is stamped with the generation it was written in, so clear() is
+ * O(1) and a map can be reused across searches without reallocating its arrays.
+ * @author Sam
+ */
+public class LongIntHashMap {
+	
+	/**
+	 * Value returned by get() for keys that aren't in the map
+	 */
+	public static final int MISSING = -1;
+	
+	private long[] keys;
+	private int[] values;
+	private int[] stamps;
+	private int generation;
+	private int size, shift;
+	
+	/**
+	 * Create an empty map with room for the given number of entries before it needs to grow
+	 * @param expected
+	 *            expected number of entries
+	 */
+	public LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+		allocate(capacity);
+		generation = 1;
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		stamps = new int[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+	}
+	
+	/**
+	 * Fibonacci hash of a key to its home slot
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+	
+	/**
+	 * Get the value of a key
+	 * @param key
+	 *            key
+	 * @return value, or MISSING if the key isn't in the map
+	 */
+	public int get(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key); stamps[i] == generation; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return MISSING;
+	}
+	
+	/**
+	 * Return whether a key is in the map
+	 * @param key
+	 *            key
+	 * @return is present
+	 */
+	public boolean containsKey(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key); stamps[i] == generation; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Set the value of a key, adding it if it isn't in the map
+	 * @param key
+	 *            key
+	 * @param value
+	 *            value
+	 */
+	public void put(long key, int value) {
+		if (2 * (size + 1) > keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int i = slot(key);
+		while (stamps[i] == generation) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		stamps[i] = generation;
+		size++;
+	}
+	
+	/**
+	 * Remove a key from the map if it's there. The entries after it in its probe run are shifted back so lookups never need tombstones.
+	 * @param key
+	 *            key
+	 * @return the value it had, or MISSING
+	 */
+	public int remove(long key) {
+		int mask = keys.length - 1;
+		int i = slot(key);
+		while (stamps[i] == generation) {
+			if (keys[i] == key) {
+				int old = values[i];
+				shiftBack(i);
+				size--;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		return MISSING;
+	}
+	
+	/**
+	 * Fill the hole at slot i with a later entry of the same probe run, repeating until the run ends
+	 */
+	private void shiftBack(int hole) {
+		int mask = keys.length - 1;
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			if (stamps[i] != generation) {
+				break;
+			}
+			int home = slot(keys[i]);
+			// The entry at i can move into the hole only if its home slot isn't cyclically between the hole and i
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				hole = i;
+			}
+		}
+		stamps[hole] = 0;
+	}
+	
+	/**
+	 * Remove every entry
+	 */
+	public void clear() {
+		size = 0;
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Approximate heap footprint of the map's arrays
+	 * @return bytes
+	 */
+	public long memoryBytes() {
+		return 16L * keys.length;
+	}
+	
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		int[] oldStamps = stamps;
+		int oldGeneration = generation;
+		allocate(2 * oldKeys.length);
+		generation = 1;
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+	
+}
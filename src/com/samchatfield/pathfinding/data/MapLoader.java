@@ -0,0 +1,294 @@
+package com.samchatfield.pathfinding.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.samchatfield.pathfinding.exception.InvalidMapException;
+
+/**
+ * Factory for creating WorldMaps from map files. Two formats are supported:
+ * <ul>
+ * <li>The MovingAI benchmark format (.map), a short text header followed by one character per cell where '.', 'G' and 'S' are passable and
+ * anything else is an obstacle. The first row of the file is the top of the map.</li>
+ * <li>A compact binary format: the magic bytes "PFMP", a format version, the width and height, then one bit per cell (row-major from the
+ * bottom left, least significant bit first) set for obstacles.</li>
+ * </ul>
+ * Files are memory-mapped and parsed straight into the obstacle grid in one pass, so loading a map of a million cells is dominated by
+ * building the nodes themselves.
+ * @author Sam
+ */
+public final class MapLoader {
+	
+	private static final byte[] MAGIC = { 'P', 'F', 'M', 'P' };
+	private static final int VERSION = 1;
+	
+	private MapLoader() {
+	}
+	
+	/**
+	 * Load a map file, detecting whether it is in the binary or MovingAI format from its first bytes
+	 * @param file
+	 *            map file
+	 * @return the map
+	 * @throws IOException
+	 *             if the file can't be read or isn't a valid map
+	 */
+	public static WorldMap load(Path file) throws IOException {
+		MappedByteBuffer buf = map(file);
+		if (hasMagic(buf)) {
+			return parseBinary(buf);
+		}
+		return parseMovingAI(buf);
+	}
+	
+	/**
+	 * Load a map file in the MovingAI (.map) format
+	 * @param file
+	 *            map file
+	 * @return the map
+	 * @throws IOException
+	 *             if the file can't be read or isn't a valid map
+	 */
+	public static WorldMap loadMovingAI(Path file) throws IOException {
+		return parseMovingAI(map(file));
+	}
+	
+	/**
+	 * Load a map file in the binary format
+	 * @param file
+	 *            map file
+	 * @return the map
+	 * @throws IOException
+	 *             if the file can't be read or isn't a valid map
+	 */
+	public static WorldMap loadBinary(Path file) throws IOException {
+		MappedByteBuffer buf = map(file);
+		if (!hasMagic(buf)) {
+			throw new InvalidMapException(file + " is not a binary map file");
+		}
+		return parseBinary(buf);
+	}
+	
+	/**
+	 * Write a map out in the binary format
+	 * @param map
+	 *            the map
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public static void writeBinary(WorldMap map, Path file) throws IOException {
+		int cells = map.getWidth() * map.getHeight();
+		byte[] bits = new byte[(cells + 7) >>> 3];
+		for (int i = 0; i < cells; i++) {
+			if (map.isObstacle(i)) {
+				bits[i >>> 3] |= 1 << (i & 7);
+			}
+		}
+		
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(map.getWidth());
+			out.writeInt(map.getHeight());
+			out.write(bits);
+		}
+	}
+	
+	/**
+	 * Write a map out in the MovingAI (.map) format
+	 * @param map
+	 *            the map
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public static void writeMovingAI(WorldMap map, Path file) throws IOException {
+		int width = map.getWidth();
+		byte[] row = new byte[width + 1];
+		row[width] = '\n';
+		
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			String header = "type octile\nheight " + map.getHeight() + "\nwidth " + width + "\nmap\n";
+			out.write(header.getBytes(StandardCharsets.US_ASCII));
+			for (int y = map.getHeight() - 1; y >= 0; y--) {
+				for (int x = 0; x < width; x++) {
+					row[x] = (byte) (map.isObstacle(y * width + x) ? '@' : '.');
+				}
+				out.write(row);
+			}
+		}
+	}
+	
+	/**
+	 * Memory-map the whole of a file for reading
+	 * @param file
+	 *            file to map
+	 * @return read-only buffer over the file
+	 * @throws IOException
+	 *             if the file can't be read or is too large to map
+	 */
+	private static MappedByteBuffer map(Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE) {
+				throw new InvalidMapException(file + " is too large to be a map file");
+			}
+			return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+	}
+	
+	private static boolean hasMagic(MappedByteBuffer buf) {
+		if (buf.remaining() < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buf.get(i) != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Parse a binary map whose magic bytes have already been checked
+	 * @param buf
+	 *            file contents
+	 * @return the map
+	 * @throws InvalidMapException
+	 *             if the header or grid is malformed
+	 */
+	private static WorldMap parseBinary(MappedByteBuffer buf) throws InvalidMapException {
+		if (buf.remaining() < MAGIC.length + 12) {
+			throw new InvalidMapException("Truncated binary map header");
+		}
+		buf.position(MAGIC.length);
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new InvalidMapException("Unsupported binary map version " + version);
+		}
+		int width = buf.getInt();
+		int height = buf.getInt();
+		long cells = checkDimensions(width, height);
+		if (buf.remaining() < (cells + 7) >>> 3) {
+			throw new InvalidMapException("Truncated binary map grid");
+		}
+		
+		boolean[] obstacles = new boolean[(int) cells];
+		int i = 0;
+		while (i < cells) {
+			int b = buf.get();
+			for (int bit = 0; bit < 8 && i < cells; bit++, i++) {
+				obstacles[i] = (b & (1 << bit)) != 0;
+			}
+		}
+		return new WorldMap(width, height, obstacles);
+	}
+	
+	/**
+	 * Parse a MovingAI map. The header is a sequence of "key value" lines ending with the line "map"; only the height and width are used.
+	 * @param buf
+	 *            file contents
+	 * @return the map
+	 * @throws InvalidMapException
+	 *             if the header or grid is malformed
+	 */
+	private static WorldMap parseMovingAI(MappedByteBuffer buf) throws InvalidMapException {
+		int width = -1;
+		int height = -1;
+		
+		while (true) {
+			String line = readLine(buf);
+			if (line == null) {
+				throw new InvalidMapException("MovingAI map has no 'map' line");
+			}
+			String[] parts = line.trim().split("\\s+");
+			if (parts[0].equals("map")) {
+				break;
+			}
+			try {
+				if (parts[0].equals("width") && parts.length == 2) {
+					width = Integer.parseInt(parts[1]);
+				} else if (parts[0].equals("height") && parts.length == 2) {
+					height = Integer.parseInt(parts[1]);
+				}
+			} catch (NumberFormatException e) {
+				throw new InvalidMapException("Bad MovingAI header line: " + line, e);
+			}
+		}
+		long cells = checkDimensions(width, height);
+		
+		// Rows are stored top first, whereas (0,0) is the bottom left of a WorldMap
+		boolean[] obstacles = new boolean[(int) cells];
+		for (int row = 0; row < height; row++) {
+			int base = (height - 1 - row) * width;
+			if (buf.remaining() < width) {
+				throw new InvalidMapException("MovingAI map ends at row " + row + " of " + height);
+			}
+			for (int x = 0; x < width; x++) {
+				byte c = buf.get();
+				obstacles[base + x] = c != '.' && c != 'G' && c != 'S';
+			}
+			skipLineEnd(buf);
+		}
+		return new WorldMap(width, height, obstacles);
+	}
+	
+	/**
+	 * Read one ASCII line from the buffer without its line terminator
+	 * @param buf
+	 *            buffer positioned at the start of a line
+	 * @return the line or null at the end of the buffer
+	 */
+	private static String readLine(MappedByteBuffer buf) {
+		if (!buf.hasRemaining()) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		while (buf.hasRemaining()) {
+			byte c = buf.get();
+			if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				sb.append((char) c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Skip the "\n" or "\r\n" at the end of a grid row (the last row doesn't need one)
+	 * @param buf
+	 *            buffer positioned at the end of a row
+	 * @throws InvalidMapException
+	 *             if the row is longer than the map width
+	 */
+	private static void skipLineEnd(MappedByteBuffer buf) throws InvalidMapException {
+		if (buf.hasRemaining() && buf.get(buf.position()) == '\r') {
+			buf.get();
+		}
+		if (buf.hasRemaining()) {
+			if (buf.get() != '\n') {
+				throw new InvalidMapException("MovingAI map row longer than its width");
+			}
+		}
+	}
+	
+	private static long checkDimensions(int width, int height) throws InvalidMapException {
+		long cells = (long) width * height;
+		if (width <= 0 || height <= 0 || cells > Integer.MAX_VALUE - 8) {
+			throw new InvalidMapException("Invalid map dimensions " + width + "x" + height);
+		}
+		return cells;
+	}
+	
+}
@@ -0,0 +1,118 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * A batch of changes to the obstacles of a WorldMap, applied all at once with WorldMap.apply so that the map only publishes one new
+ * version of its graph for the lot. Changes are applied in the order they were added, so a later change to a cell wins over an earlier one.
+ * @author Sam
+ */
+public class MapUpdate {
+	
+	private final WorldMap map;
+	private int[] cells = new int[8];
+	private boolean[] obstacles = new boolean[8];
+	private int size;
+	
+	/**
+	 * Create an empty batch of changes to the given map
+	 * @param map
+	 *            map the changes are for
+	 */
+	public MapUpdate(WorldMap map) {
+		this.map = map;
+	}
+	
+	/**
+	 * Make a cell an obstacle
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return this batch
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public MapUpdate block(int x, int y) throws InvalidCoordinateException {
+		return set(x, y, true);
+	}
+	
+	/**
+	 * Free a cell that was an obstacle
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @return this batch
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public MapUpdate unblock(int x, int y) throws InvalidCoordinateException {
+		return set(x, y, false);
+	}
+	
+	/**
+	 * Make a cell an obstacle or free it
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @param obstacle
+	 *            whether the cell is to be an obstacle
+	 * @return this batch
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public MapUpdate set(int x, int y, boolean obstacle) throws InvalidCoordinateException {
+		if (!map.inBounds(x, y)) {
+			throw new InvalidCoordinateException("Specified coordinates out of bounds");
+		}
+		if (size == cells.length) {
+			cells = Arrays.copyOf(cells, 2 * size);
+			obstacles = Arrays.copyOf(obstacles, 2 * size);
+		}
+		cells[size] = y * map.getWidth() + x;
+		obstacles[size] = obstacle;
+		size++;
+		return this;
+	}
+	
+	/**
+	 * Get the number of changes in the batch, counting repeated changes to the same cell
+	 * @return number of changes
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get the map the changes are for
+	 * @return map
+	 */
+	WorldMap getMap() {
+		return map;
+	}
+	
+	/**
+	 * Get the cell of a change
+	 * @param i
+	 *            position of the change in the batch
+	 * @return cell ID
+	 */
+	int cell(int i) {
+		return cells[i];
+	}
+	
+	/**
+	 * Get whether a change makes its cell an obstacle
+	 * @param i
+	 *            position of the change in the batch
+	 * @return is obstacle
+	 */
+	boolean isObstacle(int i) {
+		return obstacles[i];
+	}
+	
+}
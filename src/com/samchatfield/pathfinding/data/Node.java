@@ -3,19 +3,21 @@ package com.samchatfield.pathfinding.data;
 import java.util.ArrayList;
 
 /**
- * Map / search Node representation used in route planning. Contains an x,y position, an obstacle flag and a list of the node's non-obstacle
- * neighbours, and a flag indicating whether this node is a 'wait Node'. Override Object's hashcode and equals methods to define equality of
- * Nodes so that A* search using these Nodes works correctly. Has implications for uses of contains() on the HashSets and Hashtables etc. in
- * the search classes.
+ * Map Node representation used in route planning. Contains an x,y position, an obstacle flag and a list of the node's non-obstacle
+ * neighbours, and a flag indicating whether this node is a 'wait Node'. A Node holds no search state, the searches keep theirs in a
+ * SearchContext of their own, so the Nodes of a map can be shared by any number of searches running at once. Equality is on the position
+ * and wait flag only, so a Node's hash code never changes while it's in a HashSet or HashMap.
+ * <p>
+ * When the map changes the obstacle flag is updated and the neighbour list is replaced by a new one rather than changed, so a list got from
+ * getNeighbours is never modified under whoever is reading it.
  * @author Sam
  */
 public class Node {
 	
 	private final int x, y;
-	private boolean obstacle;
-	private ArrayList<Node> neighbours;
-	private int gScore, fScore;
-	private boolean waitNode;
+	private volatile boolean obstacle;
+	private volatile ArrayList<Node> neighbours;
+	private final boolean waitNode;
 	
 	/**
 	 * Create a new node at given x,y position, obstacle value, list of neighbours and a default waitNode flag of false.
@@ -78,53 +80,37 @@ public class Node {
 	}
 	
 	/**
-	 * Get the list of non-obstacle neighbours
-	 * @return neighbours
-	 */
-	public ArrayList<Node> getNeighbours() {
-		return neighbours;
-	}
-	
-	/**
-	 * Get the Node's g score. I.e. the cost from start to current.
-	 * @return g score
-	 */
-	public int getG() {
-		return gScore;
-	}
-	
-	/**
-	 * Get the Node's f score. I.e. the g cost + heuristic cost to goal
-	 * @return f score
+	 * Set whether the Node is an obstacle, when the map changes
+	 * @param obstacle
+	 *            is obstacle?
 	 */
-	public int getF() {
-		return fScore;
+	void setObstacle(boolean obstacle) {
+		this.obstacle = obstacle;
 	}
 	
 	/**
-	 * Set the Node's g score
-	 * @param gScore
-	 *            new g score
+	 * Get the list of non-obstacle neighbours
+	 * @return neighbours
 	 */
-	public void setG(int gScore) {
-		this.gScore = gScore;
+	public ArrayList<Node> getNeighbours() {
+		return neighbours;
 	}
 	
 	/**
-	 * Set the Node's f score
-	 * @param fScore
-	 *            new f score
+	 * Replace the list of non-obstacle neighbours, when the map changes
+	 * @param neighbours
+	 *            new list of neighbours, which mustn't be changed afterwards
 	 */
-	public void setF(int fScore) {
-		this.fScore = fScore;
+	void setNeighbours(ArrayList<Node> neighbours) {
+		this.neighbours = neighbours;
 	}
 	
 	@Override
 	public String toString() {
 		if (waitNode) {
-			return fScore + "w(" + x + ", " + y + ")";
+			return "w(" + x + ", " + y + ")";
 		}
-		return fScore + "(" + x + ", " + y + ")";
+		return "(" + x + ", " + y + ")";
 	}
 	
 	@Override
@@ -140,8 +126,6 @@ public class Node {
 			return false;
 		if (y != node.y)
 			return false;
-		if (fScore != node.fScore)
-			return false;
 		if (waitNode != node.waitNode)
 			return false;
 		
@@ -150,11 +134,9 @@ public class Node {
 	
 	@Override
 	public int hashCode() {
-		// Hash on all the ways that a Node could be different that have implications on search. The x position, y position, f score, and if
-		// it's a 'wait Node'
+		// Hash on the same fields as equals, none of which change: the x position, y position and if it's a 'wait Node'
 		int result = x;
 		result = 31 * result + y;
-		result = 31 * result + fScore;
 		result = 31 * result + (waitNode ? 1 : 0);
 		return result;
 	}
@@ -0,0 +1,79 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * The open set of a search, keyed by int state ID. Membership is O(1) and pushing a state that is already open updates its priority in
+ * place (decrease-key), so a neighbour that is reached more cheaply later is never left with a stale g value. States with lower f values
+ * come out first and ties are broken in favour of the higher g value, i.e. the state closer to the goal.
+ * @author Sam
+ */
+public interface OpenList {
+	
+	/**
+	 * The implementations of OpenList
+	 */
+	enum Kind {
+		/**
+		 * Indexed d-ary heap, works for any keys
+		 */
+		HEAP,
+		/**
+		 * Bucket (Dial) queue, for non-negative integer f values with a small range such as unit-cost grids
+		 */
+		BUCKETS
+	}
+	
+	/**
+	 * Add a state or, if it's already open, change its priority
+	 * @param id
+	 *            state ID
+	 * @param f
+	 *            f value
+	 * @param g
+	 *            g value
+	 */
+	void push(int id, int f, int g);
+	
+	/**
+	 * Remove and return the state with the lowest f value
+	 * @return state ID
+	 */
+	int poll();
+	
+	/**
+	 * Return the state with the lowest f value without removing it
+	 * @return state ID, or -1 if empty
+	 */
+	int peek();
+	
+	/**
+	 * Return whether a state is in the open set
+	 * @param id
+	 *            state ID
+	 * @return is open
+	 */
+	boolean contains(int id);
+	
+	/**
+	 * Remove a state from the open set if it's there
+	 * @param id
+	 *            state ID
+	 */
+	void remove(int id);
+	
+	boolean isEmpty();
+	
+	int size();
+	
+	/**
+	 * Remove every state, in time proportional to the number of states left rather than to the capacity
+	 */
+	void clear();
+	
+	/**
+	 * Make sure state IDs below the given capacity can be stored
+	 * @param capacity
+	 *            number of state IDs
+	 */
+	void ensureCapacity(int capacity);
+	
+}
@@ -0,0 +1,333 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the paths found on one map, keyed on the start and goal cells. Agents keep making the same trips, so most queries can
+ * be answered without searching at all. Paths that don't exist are cached too.
+ * <p>
+ * The cache is split into stripes by the hash of the key, each a LinkedHashMap in access order with its own lock, so threads looking up
+ * different trips rarely wait for each other. Each stripe evicts its least recently used paths once it holds more than its share of either
+ * the maximum number of paths or the maximum total number of cells. Paths are stored as cell IDs and copied out as new lists, so callers
+ * are free to change the lists they get back.
+ * <p>
+ * Every entry belongs to the map version it was found in. The first time a stripe is used after the map's version has gone up it looks
+ * up the cells that changed in the map's journal and drops only the entries those cells affect: paths through cells that have become
+ * obstacles, paths that a freed cell could be a shortcut for (those that are longer than the Manhattan distance from their start to the
+ * cell and on to their goal) and, if any cell was freed, the missing paths. If the journal no longer goes back far enough the stripe
+ * drops everything. Either way a path is never returned once an obstacle change has made it wrong or longer than it needs to be.
+ * @author Sam
+ */
+public class PathCache {
+	
+	/**
+	 * Default maximum number of paths
+	 */
+	public static final int DEFAULT_MAX_PATHS = 4096;
+	
+	/**
+	 * Default maximum total number of cells of the paths, 16MB of cell IDs
+	 */
+	public static final long DEFAULT_MAX_CELLS = 1L << 22;
+	
+	private static final int STRIPES = 16;
+	// Stands in for a path that doesn't exist
+	private static final int[] NO_PATH = new int[0];
+	
+	private final WorldMap map;
+	private final Stripe[] stripes;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	
+	/**
+	 * Create an empty cache of paths on the given map with the default limits
+	 * @param map
+	 */
+	public PathCache(WorldMap map) {
+		this(map, DEFAULT_MAX_PATHS, DEFAULT_MAX_CELLS);
+	}
+	
+	/**
+	 * Create an empty cache of paths on the given map
+	 * @param map
+	 *            map data
+	 * @param maxPaths
+	 *            maximum number of paths
+	 * @param maxCells
+	 *            maximum total number of cells of the paths
+	 */
+	public PathCache(WorldMap map, int maxPaths, long maxCells) {
+		if (maxPaths < 1 || maxCells < 1) {
+			throw new IllegalArgumentException("Cache limits must be positive: " + maxPaths + " paths, " + maxCells + " cells");
+		}
+		this.map = map;
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe(Math.max(1, maxPaths / STRIPES), Math.max(1, maxCells / STRIPES));
+		}
+	}
+	
+	/**
+	 * Get the path between two nodes, searching for it with the given search only if it isn't already cached for the current version of
+	 * the map. The search runs without holding any lock.
+	 * @param start
+	 *            start node
+	 * @param goal
+	 *            goal node
+	 * @param search
+	 *            finds the path, or null if there is none
+	 * @return path, or null if there is none
+	 */
+	public ArrayList<SpacetimePoint> path(Node start, Node goal, Supplier<ArrayList<SpacetimePoint>> search) {
+		GridGraph graph = map.getGraph();
+		long key = ((long) graph.id(start) << 32) | graph.id(goal);
+		// The graph is read before searching, so a path found while the map changes is filed under the old version and never returned
+		Stripe stripe = stripes[stripe(key)];
+		
+		int[] cells = stripe.get(key, graph);
+		if (cells != null) {
+			hits.increment();
+			return cells == NO_PATH ? null : toPath(graph, cells);
+		}
+		misses.increment();
+		ArrayList<SpacetimePoint> path = search.get();
+		stripe.put(key, graph, path == null ? NO_PATH : toCells(graph, path));
+		return path;
+	}
+	
+	/**
+	 * Drop every cached path
+	 */
+	public void clear() {
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				s.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Pick the stripe of a key, mixing the bits of the start and goal first so neighbouring cells spread over the stripes
+	 * @param key
+	 *            packed start and goal
+	 * @return stripe index
+	 */
+	private static int stripe(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 60) & (STRIPES - 1);
+	}
+	
+	private static int[] toCells(GridGraph graph, ArrayList<SpacetimePoint> path) {
+		int[] cells = new int[path.size()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = graph.id(path.get(i).getX(), path.get(i).getY());
+		}
+		return cells;
+	}
+	
+	private static ArrayList<SpacetimePoint> toPath(GridGraph graph, int[] cells) {
+		ArrayList<SpacetimePoint> path = new ArrayList<>(cells.length);
+		for (int i = 0; i < cells.length; i++) {
+			path.add(new SpacetimePoint(graph.x(cells[i]), graph.y(cells[i]), i));
+		}
+		return path;
+	}
+	
+	/**
+	 * Get the number of lookups answered from the cache
+	 * @return hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * Get the number of lookups that had to search
+	 * @return misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Get the number of paths evicted to keep within the limits
+	 * @return evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	
+	/**
+	 * Return whether a cached path is still right on a graph where the given cells have changed
+	 * @param key
+	 *            packed start and goal
+	 * @param cells
+	 *            cells of the path, or NO_PATH
+	 * @param graph
+	 *            graph after the changes
+	 * @param changed
+	 *            changed cells, in ascending order
+	 * @param freed
+	 *            whether any of the changed cells is free in graph
+	 * @return whether the path can still be returned
+	 */
+	private static boolean stillValid(long key, int[] cells, GridGraph graph, int[] changed, boolean freed) {
+		if (cells == NO_PATH) {
+			return !freed;
+		}
+		int start = (int) (key >>> 32), goal = (int) key;
+		int moves = cells.length - 1;
+		for (int c : changed) {
+			if (graph.isObstacle(c)) {
+				if (contains(cells, c)) {
+					return false;
+				}
+			} else if (manhattan(graph, start, c) + manhattan(graph, c, goal) < moves) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Return whether a path goes through a cell
+	 */
+	private static boolean contains(int[] cells, int cell) {
+		for (int c : cells) {
+			if (c == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int manhattan(GridGraph graph, int a, int b) {
+		return Math.abs(graph.x(a) - graph.x(b)) + Math.abs(graph.y(a) - graph.y(b));
+	}
+	
+	/**
+	 * Get the number of paths dropped because the map changed
+	 * @return invalidations
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+	
+	/**
+	 * Get the number of paths cached
+	 * @return number of paths
+	 */
+	public int size() {
+		int n = 0;
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				n += s.size();
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * One stripe of the cache, locked on itself
+	 */
+	@SuppressWarnings("serial")
+	private class Stripe extends LinkedHashMap<Long, int[]> {
+		
+		private final int maxPaths;
+		private final long maxCells;
+		private long cells;
+		private GridGraph graph;
+		
+		Stripe(int maxPaths, long maxCells) {
+			super(16, 0.75f, true);
+			this.maxPaths = maxPaths;
+			this.maxCells = maxCells;
+		}
+		
+		synchronized int[] get(long key, GridGraph graph) {
+			if (!sameVersion(graph)) {
+				return null;
+			}
+			return get(key);
+		}
+		
+		synchronized void put(long key, GridGraph graph, int[] path) {
+			if (!sameVersion(graph)) {
+				return;
+			}
+			int[] old = put(key, path);
+			if (old != null) {
+				cells -= old.length;
+			}
+			cells += path.length;
+			
+			// Evict from the least recently used end, but always keep the path just added
+			Iterator<Map.Entry<Long, int[]>> it = entrySet().iterator();
+			while ((size() > maxPaths || cells > maxCells) && size() > 1) {
+				Map.Entry<Long, int[]> eldest = it.next();
+				cells -= eldest.getValue().length;
+				it.remove();
+				evictions.increment();
+			}
+		}
+		
+		/**
+		 * Check the version of a lookup's graph against the stripe's, dropping the entries the changes in between affect if the map has
+		 * moved on since the stripe was last used
+		 * @param graph
+		 *            graph of the lookup
+		 * @return whether the lookup is for the stripe's version, false for an older version
+		 */
+		private boolean sameVersion(GridGraph graph) {
+			if (this.graph == null) {
+				this.graph = graph;
+			}
+			long version = graph.getVersion();
+			if (version > this.graph.getVersion()) {
+				int[] changed = map.changedCells(this.graph.getVersion(), version);
+				if (changed == null) {
+					invalidations.add(size());
+					clear();
+				} else {
+					invalidate(graph, changed);
+				}
+				this.graph = graph;
+			}
+			return version == this.graph.getVersion();
+		}
+		
+		/**
+		 * Drop the entries that the given changes make wrong
+		 */
+		private void invalidate(GridGraph graph, int[] changed) {
+			boolean freed = false;
+			for (int c : changed) {
+				freed |= !graph.isObstacle(c);
+			}
+			Iterator<Map.Entry<Long, int[]>> it = entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Long, int[]> e = it.next();
+				if (!stillValid(e.getKey(), e.getValue(), graph, changed, freed)) {
+					cells -= e.getValue().length;
+					it.remove();
+					invalidations.increment();
+				}
+			}
+		}
+		
+		@Override
+		public void clear() {
+			super.clear();
+			cells = 0;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,111 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * Reservation table for cooperative planning, recording which agent is at each point in space-time. Agents are identified by int IDs (their
+ * index) rather than by object so the implementations can store reservations in primitive arrays, and lookups take the coordinates
+ * directly so none of them allocate.
+ * @author Sam
+ */
+public interface ReservationTable {
+	
+	/**
+	 * Agent ID returned by agentAt() for points nobody has reserved
+	 */
+	int NONE = -1;
+	
+	/**
+	 * Number of time steps reserveFrom() reserves in tables that store single points, which can't reserve a cell for good
+	 */
+	int POINT_HOLD = 100;
+	
+	/**
+	 * Reserve a point in space-time for an agent. What happens to a reservation already there depends on the table: the tables of points
+	 * replace it, while IntervalReservationTable throws an IllegalStateException if it belongs to another agent, so planners shouldn't rely
+	 * on either.
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step
+	 * @param agent
+	 *            agent ID, must not be negative
+	 */
+	void reserve(int x, int y, int t, int agent);
+	
+	/**
+	 * Reserve a point in space-time for an agent, see reserve(int, int, int, int)
+	 * @param p
+	 *            point to reserve
+	 * @param agent
+	 *            agent ID, must not be negative
+	 */
+	default void reserve(SpacetimePoint p, int agent) {
+		reserve(p.getX(), p.getY(), p.getTime(), agent);
+	}
+	
+	/**
+	 * Reserve a cell for an agent from the given time step on for good, e.g. the goal an agent stays at once it's arrived. Tables that
+	 * store single points only reserve it for the next POINT_HOLD time steps.
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param from
+	 *            first time step
+	 * @param agent
+	 *            agent ID, must not be negative
+	 */
+	default void reserveFrom(int x, int y, int from, int agent) {
+		for (int t = from; t < from + POINT_HOLD; t++) {
+			reserve(x, y, t, agent);
+		}
+	}
+	
+	/**
+	 * Get the agent that has reserved a point in space-time
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step
+	 * @return agent ID, or NONE
+	 */
+	int agentAt(int x, int y, int t);
+	
+	/**
+	 * Return whether a point in space-time is reserved by an agent other than the given one
+	 * @param x
+	 *            x pos
+	 * @param y
+	 *            y pos
+	 * @param t
+	 *            time step
+	 * @param agent
+	 *            agent ID asking
+	 * @return is reserved by another agent
+	 */
+	default boolean isReservedByOther(int x, int y, int t, int agent) {
+		int owner = agentAt(x, y, t);
+		return owner != NONE && owner != agent;
+	}
+	
+	/**
+	 * Remove every reservation
+	 */
+	void clear();
+	
+	/**
+	 * Get the latest time step that has ever been reserved since the table was last cleared
+	 * @return latest time step, or -1 if the table is empty
+	 */
+	int getMaxTime();
+	
+	/**
+	 * Get the number of reservations stored, which is the number of points reserved for tables that store single points
+	 * @return number of reservations
+	 */
+	int size();
+	
+}
@@ -0,0 +1,238 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for one search: the g and f values, the parent of each search state and the closed set, all as primitive arrays
+ * indexed by state ID. For plain grid searches the states are the cell IDs. Searches over a bigger state space, such as the space-time
+ * states of Cooperative A*, instead create their states one at a time with newState, which numbers them from zero, records the cell of
+ * each, and looks them up by a packed long key in stateIndex().
+ * <p>
+ * Rather than resetting every entry before each query, each state carries the generation in which it was last written. reset() just
+ * advances the generation, after which every state reads as undiscovered (g and f infinite, no parent, not closed) until it is written
+ * again, so the cost of a reset doesn't depend on the size of the map. Contexts are handed out by a SearchContextPool so that steady-state
+ * queries reuse them rather than allocating new arrays. The context also owns the open lists, which are created the first time a search
+ * asks for one of each kind and emptied by reset().
+ * @author Sam
+ */
+public class SearchContext {
+	
+	/**
+	 * Value of g and f for states that haven't been discovered in the current search
+	 */
+	public static final int INFINITY = Integer.MAX_VALUE;
+	
+	// The top bit of a stamp below the sign bit marks the state as closed, the rest is the generation it was written in
+	private static final int CLOSED = 1 << 30;
+	private static final int MAX_GENERATION = CLOSED - 1;
+	
+	private int[] stamp, g, f, parent, stateCell;
+	private int generation, states;
+	private LongIntHashMap stateIndex;
+	private IndexedHeap heap;
+	private BucketQueue buckets;
+	
+	/**
+	 * Create a new context with room for one state per cell
+	 * @param cells
+	 *            number of cells of the map
+	 */
+	public SearchContext(int cells) {
+		stamp = new int[cells];
+		g = new int[cells];
+		f = new int[cells];
+		parent = new int[cells];
+		stateCell = new int[0];
+		generation = 1;
+	}
+	
+	/**
+	 * Start a new search, forgetting everything about the previous one
+	 */
+	public void reset() {
+		generation++;
+		if (generation > MAX_GENERATION) {
+			// Only happens once every billion searches, so the full clear doesn't matter
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		if (heap != null) {
+			heap.clear();
+		}
+		if (buckets != null) {
+			buckets.clear();
+		}
+		if (stateIndex != null) {
+			stateIndex.clear();
+		}
+		states = 0;
+	}
+	
+	/**
+	 * Make sure the context has room for state IDs below the given capacity
+	 * @param capacity
+	 *            number of states needed
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > stamp.length) {
+			int size = Math.max(capacity, stamp.length + (stamp.length >> 1));
+			stamp = Arrays.copyOf(stamp, size);
+			g = Arrays.copyOf(g, size);
+			f = Arrays.copyOf(f, size);
+			parent = Arrays.copyOf(parent, size);
+			if (heap != null) {
+				heap.ensureCapacity(size);
+			}
+			if (buckets != null) {
+				buckets.ensureCapacity(size);
+			}
+		}
+	}
+	
+	/**
+	 * Get the g value of a state
+	 * @param s
+	 *            state ID
+	 * @return g value, or INFINITY if undiscovered
+	 */
+	public int g(int s) {
+		return (stamp[s] & MAX_GENERATION) == generation ? g[s] : INFINITY;
+	}
+	
+	/**
+	 * Get the f value of a state
+	 * @param s
+	 *            state ID
+	 * @return f value, or INFINITY if undiscovered
+	 */
+	public int f(int s) {
+		return (stamp[s] & MAX_GENERATION) == generation ? f[s] : INFINITY;
+	}
+	
+	/**
+	 * Get the state that led to a state
+	 * @param s
+	 *            state ID
+	 * @return parent state ID, or -1 for the start or undiscovered states
+	 */
+	public int parent(int s) {
+		return (stamp[s] & MAX_GENERATION) == generation ? parent[s] : -1;
+	}
+	
+	/**
+	 * Record the g value, f value and parent of a state, discovering it if necessary
+	 * @param s
+	 *            state ID
+	 * @param gScore
+	 *            g value
+	 * @param fScore
+	 *            f value
+	 * @param from
+	 *            parent state ID, or -1 for the start
+	 */
+	public void set(int s, int gScore, int fScore, int from) {
+		if ((stamp[s] & MAX_GENERATION) != generation) {
+			stamp[s] = generation;
+		}
+		g[s] = gScore;
+		f[s] = fScore;
+		parent[s] = from;
+	}
+	
+	/**
+	 * Return whether a state is in the closed set
+	 * @param s
+	 *            state ID
+	 * @return is closed
+	 */
+	public boolean isClosed(int s) {
+		return stamp[s] == (generation | CLOSED);
+	}
+	
+	/**
+	 * Add a state to the closed set. The state must already have been discovered with set().
+	 * @param s
+	 *            state ID
+	 */
+	public void close(int s) {
+		stamp[s] = generation | CLOSED;
+	}
+	
+	/**
+	 * Create a new undiscovered state on the given cell, for searches whose states aren't just the cells
+	 * @param c
+	 *            cell ID
+	 * @return state ID, numbered from zero in each search
+	 */
+	public int newState(int c) {
+		int s = states++;
+		ensureCapacity(states);
+		if (s == stateCell.length) {
+			stateCell = Arrays.copyOf(stateCell, Math.max(64, 2 * s));
+		}
+		stateCell[s] = c;
+		return s;
+	}
+	
+	/**
+	 * Get the cell of a state created with newState
+	 * @param s
+	 *            state ID
+	 * @return cell ID
+	 */
+	public int stateCell(int s) {
+		return stateCell[s];
+	}
+	
+	/**
+	 * Get the number of states created with newState in this search
+	 * @return number of states
+	 */
+	public int states() {
+		return states;
+	}
+	
+	/**
+	 * Get the map from packed state keys to the IDs made by newState, emptied by reset()
+	 * @return state index
+	 */
+	public LongIntHashMap stateIndex() {
+		if (stateIndex == null) {
+			stateIndex = new LongIntHashMap(1024);
+		}
+		return stateIndex;
+	}
+	
+	/**
+	 * Get the open set of the given kind, creating it if this context hasn't used one of that kind before
+	 * @param kind
+	 *            kind of open list
+	 * @return open set, empty at the start of a search
+	 */
+	public OpenList open(OpenList.Kind kind) {
+		return kind == OpenList.Kind.HEAP ? heap() : buckets();
+	}
+	
+	/**
+	 * Get the indexed heap open set, for searches that need its long keys
+	 * @return open set, empty at the start of a search
+	 */
+	public IndexedHeap heap() {
+		if (heap == null) {
+			heap = new IndexedHeap(stamp.length);
+		}
+		return heap;
+	}
+	
+	/**
+	 * Get the bucket queue open set
+	 * @return open set, empty at the start of a search
+	 */
+	public BucketQueue buckets() {
+		if (buckets == null) {
+			buckets = new BucketQueue(stamp.length);
+		}
+		return buckets;
+	}
+	
+}
@@ -0,0 +1,58 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * A pool of SearchContexts for the maps of one size. Searches acquire a context when they start and release it when they finish, so the
+ * number of contexts ever created is the most searches that have run at once rather than the number of queries. Acquiring and releasing
+ * don't allocate once the pool has warmed up.
+ * @author Sam
+ */
+public class SearchContextPool {
+	
+	private final int cells;
+	private SearchContext[] free;
+	private int size;
+	
+	/**
+	 * Create an empty pool of contexts for maps with the given number of cells
+	 * @param cells
+	 *            number of cells
+	 */
+	public SearchContextPool(int cells) {
+		this.cells = cells;
+		free = new SearchContext[4];
+	}
+	
+	/**
+	 * Take a context out of the pool, creating one if the pool is empty. The context has already been reset.
+	 * @return context for a new search
+	 */
+	public SearchContext acquire() {
+		SearchContext ctx;
+		synchronized (this) {
+			ctx = size > 0 ? free[--size] : null;
+			if (ctx != null) {
+				free[size] = null;
+			}
+		}
+		if (ctx == null) {
+			ctx = new SearchContext(cells);
+		}
+		ctx.reset();
+		return ctx;
+	}
+	
+	/**
+	 * Return a context to the pool once its search has finished with it
+	 * @param ctx
+	 *            context to return
+	 */
+	public synchronized void release(SearchContext ctx) {
+		if (size == free.length) {
+			SearchContext[] bigger = new SearchContext[2 * size];
+			System.arraycopy(free, 0, bigger, 0, size);
+			free = bigger;
+		}
+		free[size++] = ctx;
+	}
+	
+}
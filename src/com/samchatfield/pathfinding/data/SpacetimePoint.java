@@ -7,6 +7,12 @@ package com.samchatfield.pathfinding.data;
  */
 public class SpacetimePoint {
 	
+	/**
+	 * Number of bits given to each coordinate and to the time in a packed point
+	 */
+	private static final int COORD_BITS = 21, TIME_BITS = 22;
+	private static final long COORD_MASK = (1L << COORD_BITS) - 1, TIME_MASK = (1L << TIME_BITS) - 1;
+	
 	private final int x, y, time;
 	
 	/**
@@ -54,6 +60,67 @@ public class SpacetimePoint {
 		return time;
 	}
 	
+	/**
+	 * Pack this point into a single long, see pack(int, int, int)
+	 * @return packed point
+	 */
+	public long pack() {
+		return pack(x, y, time);
+	}
+	
+	/**
+	 * Pack a point into a single non-negative long (x in the low 21 bits, then y, then 22 bits of time) so it can be used as a key without
+	 * allocating an object
+	 * @param x x pos, from 0 to 2^21 - 1
+	 * @param y y pos, from 0 to 2^21 - 1
+	 * @param time time, from 0 to 2^22 - 1
+	 * @return packed point
+	 * @throws IllegalArgumentException
+	 *             if a value is out of range
+	 */
+	public static long pack(int x, int y, int time) {
+		if ((x & ~COORD_MASK) != 0 || (y & ~COORD_MASK) != 0 || (time & ~TIME_MASK) != 0) {
+			throw new IllegalArgumentException("Point (" + x + "," + y + "," + time + ") can't be packed");
+		}
+		return ((long) time << (2 * COORD_BITS)) | ((long) y << COORD_BITS) | x;
+	}
+	
+	/**
+	 * Get the x position of a packed point
+	 * @param packed packed point
+	 * @return x pos
+	 */
+	public static int unpackX(long packed) {
+		return (int) (packed & COORD_MASK);
+	}
+	
+	/**
+	 * Get the y position of a packed point
+	 * @param packed packed point
+	 * @return y pos
+	 */
+	public static int unpackY(long packed) {
+		return (int) ((packed >>> COORD_BITS) & COORD_MASK);
+	}
+	
+	/**
+	 * Get the time of a packed point
+	 * @param packed packed point
+	 * @return time
+	 */
+	public static int unpackTime(long packed) {
+		return (int) (packed >>> (2 * COORD_BITS));
+	}
+	
+	/**
+	 * Unpack a point packed by pack()
+	 * @param packed packed point
+	 * @return the point
+	 */
+	public static SpacetimePoint unpack(long packed) {
+		return new SpacetimePoint(unpackX(packed), unpackY(packed), unpackTime(packed));
+	}
+	
 	@Override
 	public String toString() {
 		return "(" + x + "," + y + "," + time + ")";
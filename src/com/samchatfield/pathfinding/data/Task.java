@@ -0,0 +1,56 @@
+package com.samchatfield.pathfinding.data;
+
+/**
+ * A job for an agent: go to a goal cell. Tasks are numbered in the order they were added to their TaskQueue and remember the time step they
+ * were added at, so how long each waited and took can be worked out once it's done.
+ * @author Sam
+ */
+public final class Task {
+	
+	private final int id, goal, released;
+	
+	/**
+	 * Create a new task
+	 * @param id
+	 *            number of the task
+	 * @param goal
+	 *            goal cell ID
+	 * @param released
+	 *            time step the task was added at
+	 */
+	public Task(int id, int goal, int released) {
+		this.id = id;
+		this.goal = goal;
+		this.released = released;
+	}
+	
+	/**
+	 * Get the number of this task
+	 * @return ID
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Get the cell the agent doing this task has to go to
+	 * @return goal cell ID
+	 */
+	public int getGoal() {
+		return goal;
+	}
+	
+	/**
+	 * Get the time step this task was added at
+	 * @return release time step
+	 */
+	public int getReleased() {
+		return released;
+	}
+	
+	@Override
+	public String toString() {
+		return "Task " + id + " to " + goal + " from t" + released;
+	}
+	
+}
@@ -0,0 +1,109 @@
+package com.samchatfield.pathfinding.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * First come first served queue of the tasks waiting for an agent. Tasks can be added from any thread while a planner is taking them off,
+ * so a stream of tasks can be fed in as they arrive.
+ * @author Sam
+ */
+public class TaskQueue {
+	
+	private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+	private int added;
+	
+	/**
+	 * Add a new task to the back of the queue
+	 * @param goal
+	 *            goal cell ID
+	 * @param released
+	 *            time step the task is added at
+	 * @return the task
+	 */
+	public synchronized Task add(int goal, int released) {
+		Task task = new Task(added++, goal, released);
+		tasks.add(task);
+		return task;
+	}
+	
+	/**
+	 * Take the task at the front of the queue
+	 * @return task, or null if the queue is empty
+	 */
+	public synchronized Task poll() {
+		return tasks.poll();
+	}
+	
+	/**
+	 * Take the task nearest the front of the queue whose goal is accepted, e.g. to pass over tasks whose goal another agent is already at
+	 * @param acceptable
+	 *            test of the goal cell ID
+	 * @return task, or null if no task is accepted
+	 */
+	public synchronized Task poll(IntPredicate acceptable) {
+		Iterator<Task> it = tasks.iterator();
+		while (it.hasNext()) {
+			Task task = it.next();
+			if (acceptable.test(task.getGoal())) {
+				it.remove();
+				return task;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Take up to the given number of tasks nearest the front of the queue whose goals are accepted. The goals are tested from the front of
+	 * the queue back and each one accepted is taken, so the test can keep track of the goals it has accepted, e.g. to take only one task
+	 * for each goal.
+	 * @param max
+	 *            number of tasks to take at most
+	 * @param acceptable
+	 *            test of the goal cell ID
+	 * @return the tasks taken, front first
+	 */
+	public synchronized List<Task> take(int max, IntPredicate acceptable) {
+		List<Task> taken = new ArrayList<>();
+		Iterator<Task> it = tasks.iterator();
+		while (it.hasNext() && taken.size() < max) {
+			Task task = it.next();
+			if (acceptable.test(task.getGoal())) {
+				it.remove();
+				taken.add(task);
+			}
+		}
+		return taken;
+	}
+	
+	/**
+	 * Put tasks that were taken but not done back at the front of the queue, in the given order
+	 * @param returned
+	 *            tasks to put back, front first
+	 */
+	public synchronized void putBack(List<Task> returned) {
+		for (int i = returned.size() - 1; i >= 0; i--) {
+			tasks.addFirst(returned.get(i));
+		}
+	}
+	
+	/**
+	 * Get the number of tasks waiting
+	 * @return size of the queue
+	 */
+	public synchronized int size() {
+		return tasks.size();
+	}
+	
+	/**
+	 * Get the number of tasks ever added
+	 * @return tasks added
+	 */
+	public synchronized int getAdded() {
+		return added;
+	}
+	
+}
@@ -1,55 +1,138 @@
 package com.samchatfield.pathfinding.data;
 
-import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Random;
 
 import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
 
 /**
- * Code representation of the map.
+ * Code representation of the map. Maps of any size can be created from a row-major obstacle grid, either directly or by loading a map
+ * file through MapLoader, and the no-argument constructor gives the original 12x8 warehouse.
+ * <p>
+ * Obstacles can be changed while the map is in use, one cell at a time or in batches with a MapUpdate. Each update publishes a new
+ * GridGraph with the next version number, patched from the last one around the cells that changed, so searches already running carry on
+ * with the graph they started with and new ones see the update. The Nodes are updated in place. The map keeps a journal of the cells
+ * changed by the last few updates, so anything built from an older graph (such as the jump table or a D* Lite search) can be brought up to
+ * date around just those cells.
  * NOTE: (0,0) is the bottom left of the map.
  * @author Sam
  */
 public class WorldMap {
 	
-	private final int width = 12;
-	private final int height = 8;
-	private ArrayList<Node> nodes;
+	/**
+	 * The shelves of the default warehouse as {x, y} pairs
+	 */
+	private static final int[][] DEFAULT_OBSTACLES = { { 2, 2 }, { 2, 3 }, { 2, 4 }, { 2, 5 },
+			{ 5, 3 }, { 5, 4 }, { 6, 3 }, { 6, 4 },
+			{ 9, 2 }, { 9, 3 }, { 9, 4 }, { 9, 5 } };
 	
-	private final Set<Point> obs;
+	/**
+	 * Number of updates whose changed cells are kept in the journal
+	 */
+	private static final int JOURNAL_LENGTH = 256;
 	
+	private final int width;
+	private final int height;
+	private final ArrayList<Node> nodes;
+	private volatile GridGraph graph;
+	private final SearchContextPool contexts;
+	private volatile JumpTable jumps;
+	// Cells changed by each of the last few updates, indexed by the version the update made modulo the length
+	private final int[][] journal = new int[JOURNAL_LENGTH][];
 	
 	/**
-	 * Create new map object
+	 * Create new map object of the default 12x8 warehouse
 	 */
 	public WorldMap() {
-		Point[] obstacles = { new Point(2, 2), new Point(2, 3), new Point(2, 4), new Point(2, 5),
-				new Point(5, 3), new Point(5, 4), new Point(6, 3), new Point(6, 4),
-				new Point(9, 2), new Point(9, 3), new Point(9, 4), new Point(9, 5)};
-		obs = new HashSet<>(Arrays.asList(obstacles));
+		this(12, 8, defaultObstacles(12, 8));
+	}
+	
+	/**
+	 * Create a new map of the given dimensions from a row-major obstacle grid, where the cell (x,y) is at index y * width + x. The grid is
+	 * used directly rather than copied so it shouldn't be modified afterwards.
+	 * @param width
+	 *            width of the map
+	 * @param height
+	 *            height of the map
+	 * @param obstacles
+	 *            obstacle flag of each cell
+	 */
+	public WorldMap(int width, int height, boolean[] obstacles) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Map dimensions must be positive: " + width + "x" + height);
+		}
+		if ((long) width * height != obstacles.length) {
+			throw new IllegalArgumentException("Obstacle grid has " + obstacles.length + " cells, expected " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
 		
-		nodes = createNodes();
-		addAdjacencies(nodes);
+		nodes = createNodes(obstacles);
+		graph = new GridGraph(width, height, obstacles);
+		contexts = new SearchContextPool(width * height);
+	}
+	
+	/**
+	 * Create a map with obstacles scattered at random, for benchmarks. The same seed always gives the same map. Nothing guarantees that
+	 * every free cell can be reached from every other.
+	 * @param width
+	 *            width of the map
+	 * @param height
+	 *            height of the map
+	 * @param density
+	 *            probability of each cell being an obstacle, from 0 to 1
+	 * @param seed
+	 *            random seed
+	 * @return the map
+	 */
+	public static WorldMap random(int width, int height, double density, long seed) {
+		Random r = new Random(seed);
+		boolean[] grid = new boolean[width * height];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = r.nextDouble() < density;
+		}
+		return new WorldMap(width, height, grid);
 	}
 	
 	/**
-	 * Create the nodes of the map
+	 * Build the obstacle grid of the default warehouse
+	 * @param width
+	 *            width of the warehouse
+	 * @param height
+	 *            height of the warehouse
+	 * @return row-major obstacle grid
+	 */
+	private static boolean[] defaultObstacles(int width, int height) {
+		boolean[] grid = new boolean[width * height];
+		for (int[] o : DEFAULT_OBSTACLES) {
+			grid[o[1] * width + o[0]] = true;
+		}
+		return grid;
+	}
+	
+	/**
+	 * Create the nodes of the map and their adjacencies in a single pass over the grid. Each new node is linked with the nodes to its left
+	 * and below it (which have already been created), so every node ends up with all of its non-obstacle neighbours.
+	 * @param obstacles
+	 *            obstacle flag of each cell
 	 * @return ArrayList of nodes representing the map
 	 */
-	private ArrayList<Node> createNodes() {
-		ArrayList<Node> list = new ArrayList<>();
+	private ArrayList<Node> createNodes(boolean[] obstacles) {
+		ArrayList<Node> list = new ArrayList<>(width * height);
 		
 		for (int y = 0; y < height; y++) {
 			for (int x = 0; x < width; x++) {
-				boolean obstacle = false;
-				System.out.println();
-				if (obs.contains(new Point(x, y))) {
-					obstacle = true;
+				int i = y * width + x;
+				Node n = new Node(x, y, obstacles[i], new ArrayList<>(4));
+				
+				if (x > 0) {
+					link(n, list.get(i - 1));
+				}
+				if (y > 0) {
+					link(n, list.get(i - width));
 				}
-				list.add(new Node(x, y, obstacle, new ArrayList<>()));
+				list.add(n);
 			}
 		}
 		
@@ -57,27 +140,18 @@ public class WorldMap {
 	}
 	
 	/**
-	 * Return an ArrayList of nodes with adjacent nodes added in
-	 * @param nodes ArrayList of nodes
-	 * @return ArrayList with adjacent nodes included
+	 * Add each of two adjacent nodes to the other's neighbours, as long as the node being added isn't an obstacle
+	 * @param a
+	 *            first node
+	 * @param b
+	 *            second node
 	 */
-	private void addAdjacencies(ArrayList<Node> nodes) {
-		for (int i = 0; i < nodes.size(); i++) {
-			ArrayList<Node> adj = nodes.get(i).getNeighbours();
-			
-			int x = i % 12;
-			int y = i / 12;
-			
-			Node up, down, left, right;
-			try { up = nodeAt(x, y + 1); }    catch (InvalidCoordinateException e) { up = null; }
-			try { down = nodeAt(x, y - 1); }  catch (InvalidCoordinateException e) { down = null; }
-			try { left = nodeAt(x - 1, y); }  catch (InvalidCoordinateException e) { left = null; }
-			try { right = nodeAt(x + 1, y); } catch (InvalidCoordinateException e) { right = null; }
-			
-			if (up != null && !up.isObstacle())       { adj.add(up); }
-			if (down != null && !down.isObstacle())   { adj.add(down); }
-			if (left != null && !left.isObstacle())   { adj.add(left); }
-			if (right != null && !right.isObstacle()) { adj.add(right); }
+	private static void link(Node a, Node b) {
+		if (!b.isObstacle()) {
+			a.getNeighbours().add(b);
+		}
+		if (!a.isObstacle()) {
+			b.getNeighbours().add(a);
 		}
 	}
 	
@@ -90,9 +164,9 @@ public class WorldMap {
 	 */
 	public Node nodeAt(int x, int y) throws InvalidCoordinateException {
 		// Check that the x and y produce a valid node
-		if (x >= 0 && x <= 11 && y >= 0 && y <= 7) {
+		if (inBounds(x, y)) {
 			// Convert the coordinates to a node
-			return nodes.get(y * 12 + x);
+			return nodes.get(y * width + x);
 		} else {
 			throw new InvalidCoordinateException("Specified coordinates out of bounds");
 		}
@@ -105,13 +179,17 @@ public class WorldMap {
 	 * @return is valid
 	 */
 	public boolean isValidNode(int x, int y) {
-		Node n;
-		try {
-			n = nodeAt(x, y);
-		} catch (InvalidCoordinateException e) {
-			return false;
-		}
-		return !n.isObstacle();
+		return inBounds(x, y) && !graph.isObstacle(y * width + x);
+	}
+	
+	/**
+	 * Determine if x,y lies within the map
+	 * @param x x position
+	 * @param y y position
+	 * @return is in bounds
+	 */
+	public boolean inBounds(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
 	}
 	
 	/**
@@ -138,26 +216,264 @@ public class WorldMap {
 		return nodes;
 	}
 	
+	/**
+	 * Get the compressed sparse row view of this map's search graph, used by the searches in place of the Nodes' neighbour lists
+	 * @return graph of the map
+	 */
+	public GridGraph getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * Get the pool of search scratch space shared by all searches on this map
+	 * @return pool of SearchContexts sized for this map
+	 */
+	public SearchContextPool getContextPool() {
+		return contexts;
+	}
+	
+	/**
+	 * Make a cell an obstacle
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public void block(int x, int y) throws InvalidCoordinateException {
+		setObstacle(x, y, true);
+	}
+	
+	/**
+	 * Free a cell that was an obstacle
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public void unblock(int x, int y) throws InvalidCoordinateException {
+		setObstacle(x, y, false);
+	}
+	
+	/**
+	 * Make a cell an obstacle or free it again. If that changes anything a new graph is published with the next version.
+	 * @param x
+	 *            x position
+	 * @param y
+	 *            y position
+	 * @param obstacle
+	 *            whether the cell is to be an obstacle
+	 * @throws InvalidCoordinateException
+	 *             if the cell is out of bounds
+	 */
+	public void setObstacle(int x, int y, boolean obstacle) throws InvalidCoordinateException {
+		apply(new MapUpdate(this).set(x, y, obstacle));
+	}
+	
+	/**
+	 * Apply a batch of changes to the obstacles as a single update. Only the adjacency of the cells that changed and the cells next to them
+	 * is worked out again, and a new graph with the next version is published unless nothing actually changed.
+	 * @param update
+	 *            changes to make
+	 * @return the graph after the update
+	 * @throws IllegalArgumentException
+	 *             if the update is for a different map
+	 */
+	public synchronized GridGraph apply(MapUpdate update) {
+		if (update.getMap() != this) {
+			throw new IllegalArgumentException("Update is for a different map");
+		}
+		GridGraph current = graph;
+		// The grid is copied rather than changed in place, as the current graph shares it and searches may still be using that
+		boolean[] obstacles = current.getObstacles().clone();
+		for (int i = 0; i < update.size(); i++) {
+			obstacles[update.cell(i)] = update.isObstacle(i);
+		}
+		
+		// A cell changed more than once may have ended up as it was
+		int[] changed = new int[update.size()];
+		int n = 0;
+		for (int i = 0; i < update.size(); i++) {
+			changed[n++] = update.cell(i);
+		}
+		changed = distinct(changed, n);
+		n = 0;
+		for (int c : changed) {
+			if (obstacles[c] != current.isObstacle(c)) {
+				changed[n++] = c;
+			}
+		}
+		if (n == 0) {
+			return current;
+		}
+		changed = Arrays.copyOf(changed, n);
+		
+		// Cells next to a changed one gain or lose it as a neighbour
+		int[] affected = new int[5 * n];
+		int a = 0;
+		for (int c : changed) {
+			int x = c % width, y = c / width;
+			affected[a++] = c;
+			if (y + 1 < height) {
+				affected[a++] = c + width;
+			}
+			if (y > 0) {
+				affected[a++] = c - width;
+			}
+			if (x > 0) {
+				affected[a++] = c - 1;
+			}
+			if (x + 1 < width) {
+				affected[a++] = c + 1;
+			}
+		}
+		affected = distinct(affected, a);
+		
+		GridGraph next = new GridGraph(current, obstacles, affected);
+		journal[(int) (next.getVersion() % JOURNAL_LENGTH)] = changed;
+		graph = next;
+		for (int c : affected) {
+			updateNode(c, obstacles);
+		}
+		return next;
+	}
+	
+	/**
+	 * Bring a Node up to date with the obstacle grid: its obstacle flag and its non-obstacle neighbours
+	 * @param i
+	 *            cell index
+	 * @param obstacles
+	 *            obstacle flag of each cell
+	 */
+	private void updateNode(int i, boolean[] obstacles) {
+		Node n = nodes.get(i);
+		n.setObstacle(obstacles[i]);
+		ArrayList<Node> neighbours = new ArrayList<>(4);
+		int x = i % width, y = i / width;
+		if (y + 1 < height && !obstacles[i + width]) {
+			neighbours.add(nodes.get(i + width));
+		}
+		if (y > 0 && !obstacles[i - width]) {
+			neighbours.add(nodes.get(i - width));
+		}
+		if (x > 0 && !obstacles[i - 1]) {
+			neighbours.add(nodes.get(i - 1));
+		}
+		if (x + 1 < width && !obstacles[i + 1]) {
+			neighbours.add(nodes.get(i + 1));
+		}
+		n.setNeighbours(neighbours);
+	}
+	
+	/**
+	 * Sort the first n values of an array and drop the repeats
+	 * @param values
+	 *            array of values
+	 * @param n
+	 *            number of values used
+	 * @return the distinct values in ascending order
+	 */
+	private static int[] distinct(int[] values, int n) {
+		Arrays.sort(values, 0, n);
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (k == 0 || values[i] != values[k - 1]) {
+				values[k++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, k);
+	}
+	
+	/**
+	 * Get the version of the map, which goes up every time an update changes an obstacle
+	 * @return version, starting from 0
+	 */
+	public long getVersion() {
+		return graph.getVersion();
+	}
+	
+	/**
+	 * Find the cells changed between two versions of the map, from the journal of the last few updates
+	 * @param from
+	 *            earlier version
+	 * @param to
+	 *            later version, no later than the current one
+	 * @return IDs of the cells changed by the updates after from up to and including to, in ascending order, or null if from is too old
+	 *         to still be in the journal
+	 * @throws IllegalArgumentException
+	 *             if the versions are the wrong way round or to is in the future
+	 */
+	public synchronized int[] changedCells(long from, long to) {
+		long current = graph.getVersion();
+		if (from > to || to > current) {
+			throw new IllegalArgumentException("Can't find changes from version " + from + " to " + to + " at version " + current);
+		}
+		if (current - from > JOURNAL_LENGTH) {
+			return null;
+		}
+		int total = 0;
+		for (long v = from + 1; v <= to; v++) {
+			total += journal[(int) (v % JOURNAL_LENGTH)].length;
+		}
+		int[] cells = new int[total];
+		int k = 0;
+		for (long v = from + 1; v <= to; v++) {
+			int[] changed = journal[(int) (v % JOURNAL_LENGTH)];
+			System.arraycopy(changed, 0, cells, k, changed.length);
+			k += changed.length;
+		}
+		return distinct(cells, total);
+	}
+	
+	/**
+	 * Get the table of jump distances of this map for Jump Point Search, building it the first time it's asked for as it takes 16 bytes per
+	 * cell
+	 * @return jump distances of the map
+	 */
+	public JumpTable getJumpTable() {
+		JumpTable table = jumps;
+		if (table == null || table.getGraph() != graph) {
+			synchronized (this) {
+				table = jumps;
+				GridGraph current = graph;
+				if (table == null) {
+					table = new JumpTable(current);
+					jumps = table;
+				} else if (table.getGraph() != current) {
+					// An out of date table only has to be worked out again around the cells that have changed since
+					int[] changed = changedCells(table.getGraph().getVersion(), current.getVersion());
+					table = changed == null ? new JumpTable(current) : new JumpTable(table, current, changed);
+					jumps = table;
+				}
+			}
+		}
+		return table;
+	}
+	
+	/**
+	 * Return whether the cell at the given row-major index is an obstacle
+	 * @param i cell index (y * width + x)
+	 * @return is obstacle
+	 */
+	public boolean isObstacle(int i) {
+		return graph.isObstacle(i);
+	}
+	
 	@Override
 	public String toString() {
-		String out = "";
+		StringBuilder out = new StringBuilder(height * (2 * width + 1));
+		GridGraph graph = this.graph;
 		
 		for (int y = height - 1; y >= 0; y--) {
 			for (int x = 0; x < width; x++) {
-				try {
-					if (nodeAt(x, y).isObstacle()) {
-						out += " X";
-					} else {
-						out += " _";
-					}
-				} catch (InvalidCoordinateException e) {
-					// Unreachable for a valid width due to limits of the for loop
-					e.printStackTrace();
-				}
+				out.append(graph.isObstacle(y * width + x) ? " X" : " _");
 			}
-			out += "\n";
+			out.append('\n');
 		}
-		return out;
+		return out.toString();
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.samchatfield.pathfinding.exception;
+
+import java.io.IOException;
+
+@SuppressWarnings("serial")
+public class InvalidDatabaseException extends IOException {
+	
+	public InvalidDatabaseException() {
+		super();
+	}
+	
+	public InvalidDatabaseException(String message) {
+		super(message);
+	}
+	
+	public InvalidDatabaseException(String message, Throwable cause) {
+		super(message, cause);
+	}
+	
+	public InvalidDatabaseException(Throwable cause) {
+		super(cause);
+	}
+	
+}
@@ -0,0 +1,24 @@
+package com.samchatfield.pathfinding.exception;
+
+import java.io.IOException;
+
+@SuppressWarnings("serial")
+public class InvalidMapException extends IOException {
+	
+	public InvalidMapException() {
+		super();
+	}
+	
+	public InvalidMapException(String message) {
+		super(message);
+	}
+	
+	public InvalidMapException(String message, Throwable cause) {
+		super(message, cause);
+	}
+	
+	public InvalidMapException(Throwable cause) {
+		super(cause);
+	}
+	
+}
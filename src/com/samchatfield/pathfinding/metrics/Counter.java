@@ -0,0 +1,59 @@
+package com.samchatfield.pathfinding.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, kept in a LongAdder so that many threads can add to it at once without fighting over one memory location
+ * @author Sam
+ */
+public final class Counter extends Metric {
+	
+	private final LongAdder value = new LongAdder();
+	
+	Counter(String name, String help) {
+		super(name, help);
+	}
+	
+	/**
+	 * Add one to the count
+	 */
+	public void increment() {
+		value.increment();
+	}
+	
+	/**
+	 * Add to the count
+	 * @param n
+	 *            amount to add, which mustn't be negative
+	 */
+	public void add(long n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Counters can't go down: " + n);
+		}
+		value.add(n);
+	}
+	
+	/**
+	 * Get the count
+	 * @return count
+	 */
+	public long get() {
+		return value.sum();
+	}
+	
+	@Override
+	void appendJson(StringBuilder out) {
+		out.append(get());
+	}
+	
+	@Override
+	void appendPrometheus(StringBuilder out) {
+		out.append(getName()).append(' ').append(get()).append('\n');
+	}
+	
+	@Override
+	String prometheusType() {
+		return "counter";
+	}
+	
+}
@@ -0,0 +1,164 @@
+package com.samchatfield.pathfinding.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with fixed log-linear buckets from 1 microsecond to a little over a minute: every doubling is split into four
+ * equal steps, so a percentile read from the histogram is never more than 25% above the true value. Recording is a binary search over the
+ * bucket bounds and an atomic increment, with no locks, so it can be called from every search thread. Latencies above the last bound only
+ * count towards the +Inf bucket, the sum and the maximum.
+ * @author Sam
+ */
+public final class LatencyHistogram extends Metric {
+	
+	/**
+	 * Upper bounds of the buckets in nanoseconds
+	 */
+	private static final long[] BOUNDS = bounds(1000, 26);
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+	private final LongAdder count = new LongAdder(), sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	LatencyHistogram(String name, String help) {
+		super(name, help);
+	}
+	
+	/**
+	 * Record a latency
+	 * @param nanos
+	 *            latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		int i = Arrays.binarySearch(BOUNDS, nanos);
+		counts.incrementAndGet(i >= 0 ? i : -i - 1);
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	/**
+	 * Get the number of latencies recorded
+	 * @return count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Get the total of the latencies recorded
+	 * @return sum in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Get the largest latency recorded
+	 * @return maximum in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Get a percentile of the latencies recorded, as the upper bound of the bucket it falls in (or the maximum, if that's lower)
+	 * @param q
+	 *            quantile between 0 and 1, e.g. 0.99 for the 99th percentile
+	 * @return latency in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long percentile(double q) {
+		if (q < 0 || q > 1) {
+			throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+		}
+		long[] snapshot = snapshot();
+		long total = 0;
+		for (long c : snapshot) {
+			total += c;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(q * total));
+		long seen = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(BOUNDS[i], getMax());
+			}
+		}
+		return getMax();
+	}
+	
+	private long[] snapshot() {
+		long[] snapshot = new long[counts.length()];
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+		}
+		return snapshot;
+	}
+	
+	@Override
+	void appendJson(StringBuilder out) {
+		out.append("{\"count\":").append(getCount());
+		out.append(",\"sumNanos\":").append(getSum());
+		out.append(",\"maxNanos\":").append(getMax());
+		out.append(",\"p50Nanos\":").append(percentile(0.5));
+		out.append(",\"p90Nanos\":").append(percentile(0.9));
+		out.append(",\"p99Nanos\":").append(percentile(0.99));
+		out.append(",\"p999Nanos\":").append(percentile(0.999));
+		out.append('}');
+	}
+	
+	@Override
+	void appendPrometheus(StringBuilder out) {
+		// Buckets are cumulative in the Prometheus format, and the +Inf bucket has to equal the count, so both come from the same snapshot
+		long[] snapshot = snapshot();
+		long cumulative = 0;
+		for (int i = 0; i < BOUNDS.length; i++) {
+			cumulative += snapshot[i];
+			out.append(getName()).append("_bucket{le=\"").append(seconds(BOUNDS[i])).append("\"} ").append(cumulative).append('\n');
+		}
+		cumulative += snapshot[BOUNDS.length];
+		out.append(getName()).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		out.append(getName()).append("_sum ").append(seconds(getSum())).append('\n');
+		out.append(getName()).append("_count ").append(cumulative).append('\n');
+	}
+	
+	@Override
+	String prometheusType() {
+		return "histogram";
+	}
+	
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+	
+	/**
+	 * Work out the bucket bounds, four to every doubling
+	 * @param first
+	 *            first bound in nanoseconds
+	 * @param doublings
+	 *            number of doublings to cover
+	 * @return bounds
+	 */
+	private static long[] bounds(long first, int doublings) {
+		long[] bounds = new long[doublings * 4 + 1];
+		long base = first;
+		for (int d = 0; d < doublings; d++) {
+			for (int step = 0; step < 4; step++) {
+				bounds[d * 4 + step] = base + base * step / 4;
+			}
+			base *= 2;
+		}
+		bounds[doublings * 4] = base;
+		return bounds;
+	}
+	
+}
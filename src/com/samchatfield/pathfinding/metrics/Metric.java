@@ -0,0 +1,52 @@
+package com.samchatfield.pathfinding.metrics;
+
+/**
+ * A named metric of a MetricsRegistry, which knows how to write itself out in each of the export formats
+ * @author Sam
+ */
+abstract class Metric {
+	
+	private final String name, help;
+	
+	Metric(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+	
+	/**
+	 * Get the name of this metric
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Get the description of this metric
+	 * @return help text
+	 */
+	public String getHelp() {
+		return help;
+	}
+	
+	/**
+	 * Append the value of this metric as a JSON value
+	 * @param out
+	 *            JSON being built
+	 */
+	abstract void appendJson(StringBuilder out);
+	
+	/**
+	 * Append the samples of this metric in the Prometheus text format, without the HELP and TYPE lines
+	 * @param out
+	 *            text being built
+	 */
+	abstract void appendPrometheus(StringBuilder out);
+	
+	/**
+	 * Get the Prometheus type of this metric
+	 * @return type
+	 */
+	abstract String prometheusType();
+	
+}
@@ -0,0 +1,104 @@
+package com.samchatfield.pathfinding.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A set of named counters and latency histograms shared by the planners and searches of an application, which can be exported as JSON or
+ * in the Prometheus text format. Looking a metric up by name is a ConcurrentHashMap read, so callers on a hot path should look their metrics
+ * up once and keep them. Names follow the Prometheus rules (letters, digits, underscores and colons, not starting with a digit), and asking
+ * for a name that already belongs to a metric of the other kind is an error.
+ * @author Sam
+ */
+public class MetricsRegistry {
+	
+	private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+	
+	private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+	
+	/**
+	 * Get the counter with the given name, creating it if it doesn't exist
+	 * @param name
+	 *            name, which by convention ends in _total
+	 * @param help
+	 *            description, which is ignored if the counter already exists
+	 * @return counter
+	 */
+	public Counter counter(String name, String help) {
+		return get(name, Counter.class, () -> new Counter(name, help));
+	}
+	
+	/**
+	 * Get the latency histogram with the given name, creating it if it doesn't exist
+	 * @param name
+	 *            name, which by convention ends in _seconds
+	 * @param help
+	 *            description, which is ignored if the histogram already exists
+	 * @return histogram
+	 */
+	public LatencyHistogram histogram(String name, String help) {
+		return get(name, LatencyHistogram.class, () -> new LatencyHistogram(name, help));
+	}
+	
+	/**
+	 * Get the metrics that record the statistics of a search or plan under a prefix: a count of calls, counts of expansions, generated
+	 * nodes, reservation probes and allocated bytes, and a histogram of the wall time
+	 * @param prefix
+	 *            prefix of the metric names, e.g. "jps"
+	 * @return metrics to record statistics in
+	 */
+	public SearchMetrics searchMetrics(String prefix) {
+		return new SearchMetrics(this, prefix);
+	}
+	
+	private <T extends Metric> T get(String name, Class<T> kind, Supplier<T> create) {
+		Metric m = metrics.get(name);
+		if (m == null) {
+			if (!NAME.matcher(name).matches()) {
+				throw new IllegalArgumentException("Invalid metric name: " + name);
+			}
+			m = metrics.computeIfAbsent(name, n -> create.get());
+		}
+		if (!kind.isInstance(m)) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + m.prometheusType() + ", not a " + kind.getSimpleName());
+		}
+		return kind.cast(m);
+	}
+	
+	/**
+	 * Export every metric as a JSON object of the form {"counters":{name:value,...},"histograms":{name:{"count":...,...},...}}, with
+	 * latencies in nanoseconds and the metrics sorted by name
+	 * @return JSON
+	 */
+	public String toJson() {
+		StringBuilder counters = new StringBuilder(), histograms = new StringBuilder();
+		for (Metric m : sorted().values()) {
+			StringBuilder out = m instanceof Counter ? counters : histograms;
+			out.append(out.length() == 0 ? "" : ",").append('"').append(m.getName()).append("\":");
+			m.appendJson(out);
+		}
+		return "{\"counters\":{" + counters + "},\"histograms\":{" + histograms + "}}";
+	}
+	
+	/**
+	 * Export every metric in the Prometheus text exposition format, with latencies in seconds and the metrics sorted by name
+	 * @return exposition text
+	 */
+	public String toPrometheus() {
+		StringBuilder out = new StringBuilder();
+		for (Metric m : sorted().values()) {
+			out.append("# HELP ").append(m.getName()).append(' ').append(m.getHelp().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(m.getName()).append(' ').append(m.prometheusType()).append('\n');
+			m.appendPrometheus(out);
+		}
+		return out.toString();
+	}
+	
+	private Map<String, Metric> sorted() {
+		return new TreeMap<>(metrics);
+	}
+	
+}
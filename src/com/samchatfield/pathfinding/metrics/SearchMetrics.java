@@ -0,0 +1,38 @@
+package com.samchatfield.pathfinding.metrics;
+
+/**
+ * The metrics of a MetricsRegistry that the SearchStats of one kind of search or plan are recorded in, looked up once so that recording
+ * doesn't touch the registry's map
+ * @author Sam
+ */
+public final class SearchMetrics {
+	
+	private final Counter calls, expansions, generated, probes, bytes;
+	private final LatencyHistogram wall;
+	
+	SearchMetrics(MetricsRegistry registry, String prefix) {
+		calls = registry.counter(prefix + "_calls_total", "Number of calls");
+		expansions = registry.counter(prefix + "_expansions_total", "Nodes expanded");
+		generated = registry.counter(prefix + "_generated_total", "Nodes pushed onto the open list");
+		probes = registry.counter(prefix + "_reservation_probes_total", "Reservation table lookups");
+		bytes = registry.counter(prefix + "_allocated_bytes_total", "Bytes allocated by the searching threads");
+		wall = registry.histogram(prefix + "_seconds", "Wall time");
+	}
+	
+	/**
+	 * Record the statistics of one call
+	 * @param stats
+	 *            statistics
+	 */
+	public void record(SearchStats stats) {
+		calls.increment();
+		expansions.add(stats.getExpansions());
+		generated.add(stats.getGenerated());
+		probes.add(stats.getReservationProbes());
+		if (stats.getAllocatedBytes() >= 0) {
+			bytes.add(stats.getAllocatedBytes());
+		}
+		wall.record(stats.getWallNanos());
+	}
+	
+}
@@ -0,0 +1,268 @@
+package com.samchatfield.pathfinding.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Immutable statistics of one search or one plan: how many nodes were expanded (taken off the open list and closed), how many were
+ * generated (pushed onto the open list, including decrease-keys), the peak size of the open list, how many times the reservation table was
+ * asked whether a cell was reserved, how many bytes the searching threads allocated and the wall time. Statistics of several searches are
+ * combined with plus(), which adds everything up except the peak open size, which is the largest of the two.
+ * <p>
+ * The statistics are gathered by a Recorder owned by the search and reset for each query, whose counts are plain fields so that counting
+ * costs next to nothing in the inner loop. Allocated bytes come from the JVM's per-thread allocation counter, which is only read once
+ * measuring allocation has been turned on with setAllocationMeasured() (or the pathfinding.measureAllocation system property), as reading
+ * it costs more than a short search. They are -1 when it's off or where the JVM doesn't support it.
+ * @author Sam
+ */
+public final class SearchStats {
+	
+	/**
+	 * Statistics of no work at all, for a strategy or planner that hasn't run yet
+	 */
+	public static final SearchStats EMPTY = new SearchStats(0, 0, 0, 0, 0, 0);
+	
+	private static volatile boolean allocationMeasured = Boolean.getBoolean("pathfinding.measureAllocation");
+	
+	private final long expansions, generated, reservationProbes, allocatedBytes, wallNanos;
+	private final int peakOpen;
+	
+	/**
+	 * Create a new set of statistics
+	 * @param expansions
+	 *            number of nodes expanded
+	 * @param generated
+	 *            number of nodes pushed onto the open list
+	 * @param peakOpen
+	 *            largest size of the open list
+	 * @param reservationProbes
+	 *            number of reservation table lookups
+	 * @param allocatedBytes
+	 *            bytes allocated, or -1 if unknown
+	 * @param wallNanos
+	 *            wall time in nanoseconds
+	 */
+	public SearchStats(long expansions, long generated, int peakOpen, long reservationProbes, long allocatedBytes, long wallNanos) {
+		this.expansions = expansions;
+		this.generated = generated;
+		this.peakOpen = peakOpen;
+		this.reservationProbes = reservationProbes;
+		this.allocatedBytes = allocatedBytes;
+		this.wallNanos = wallNanos;
+	}
+	
+	/**
+	 * Combine these statistics with those of another search, adding up everything except the peak open size, which is the larger of the two.
+	 * Allocated bytes are only known if they're known for both.
+	 * @param other
+	 *            statistics of the other search
+	 * @return combined statistics
+	 */
+	public SearchStats plus(SearchStats other) {
+		return new SearchStats(expansions + other.expansions, generated + other.generated, Math.max(peakOpen, other.peakOpen),
+				reservationProbes + other.reservationProbes, addBytes(allocatedBytes, other.allocatedBytes), wallNanos + other.wallNanos);
+	}
+	
+	/**
+	 * Get the number of nodes expanded
+	 * @return expansions
+	 */
+	public long getExpansions() {
+		return expansions;
+	}
+	
+	/**
+	 * Get the number of nodes pushed onto the open list, counting a decrease-key as a push
+	 * @return generated nodes
+	 */
+	public long getGenerated() {
+		return generated;
+	}
+	
+	/**
+	 * Get the largest size the open list reached
+	 * @return peak open size
+	 */
+	public int getPeakOpen() {
+		return peakOpen;
+	}
+	
+	/**
+	 * Get the number of times the reservation table (or constraint set) was asked whether a move was allowed
+	 * @return reservation probes
+	 */
+	public long getReservationProbes() {
+		return reservationProbes;
+	}
+	
+	/**
+	 * Get the number of bytes allocated by the threads doing the search
+	 * @return allocated bytes, or -1 if the JVM can't measure them
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	/**
+	 * Get the wall time taken
+	 * @return wall time in nanoseconds
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return "expansions=" + expansions + " generated=" + generated + " peakOpen=" + peakOpen + " probes=" + reservationProbes + " bytes="
+				+ allocatedBytes + " wall=" + wallNanos / 1000 + "us";
+	}
+	
+	/**
+	 * Turn measuring the bytes allocated by searches on or off, for the Recorders started or reset from then on
+	 * @param measured
+	 *            whether to read the JVM's per-thread allocation counter
+	 */
+	public static void setAllocationMeasured(boolean measured) {
+		allocationMeasured = measured;
+	}
+	
+	/**
+	 * Return whether the bytes allocated by searches are being measured
+	 * @return is measuring allocation
+	 */
+	public static boolean isAllocationMeasured() {
+		return allocationMeasured;
+	}
+	
+	private static long addBytes(long a, long b) {
+		return a < 0 || b < 0 ? -1 : a + b;
+	}
+	
+	/**
+	 * Mutable statistics gathered while a search or plan runs, which are only ever used by one thread at a time. A search keeps one Recorder
+	 * and calls reset() at the start of each query and stop() at the end. A Recorder made with Recorder() measures the allocation of the
+	 * thread it's reset and stopped on, which already includes that of any searches run inside it on the same thread. One made with
+	 * aggregate() doesn't, and instead adds up the allocation of the searches passed to add(), which is what a planner wants when its
+	 * searches run on other threads.
+	 */
+	public static final class Recorder {
+		
+		private static final com.sun.management.ThreadMXBean THREADS = threads();
+		
+		private final boolean measureAllocation;
+		private long expansions, generated, reservationProbes, allocatedBytes;
+		private int peakOpen;
+		private long startNanos, startBytes;
+		
+		/**
+		 * Create a new Recorder that measures the allocation of its own thread, started straight away
+		 */
+		public Recorder() {
+			this(true);
+		}
+		
+		private Recorder(boolean measureAllocation) {
+			this.measureAllocation = measureAllocation;
+			reset();
+		}
+		
+		/**
+		 * Clear the counts and start recording again from now, for the next query of the search that owns this Recorder
+		 */
+		public void reset() {
+			expansions = 0;
+			generated = 0;
+			reservationProbes = 0;
+			allocatedBytes = allocationMeasured ? 0 : -1;
+			peakOpen = 0;
+			startNanos = System.nanoTime();
+			startBytes = measureAllocation && allocationMeasured ? threadBytes() : -1;
+		}
+		
+		/**
+		 * Create a new Recorder for a plan, which takes its allocated bytes from the searches added to it
+		 * @return recorder
+		 */
+		public static Recorder aggregate() {
+			return new Recorder(false);
+		}
+		
+		/**
+		 * Count a node being expanded
+		 */
+		public void expanded() {
+			expansions++;
+		}
+		
+		/**
+		 * Count a node being pushed onto the open list
+		 * @param openSize
+		 *            size of the open list after the push
+		 */
+		public void generated(int openSize) {
+			generated++;
+			if (openSize > peakOpen) {
+				peakOpen = openSize;
+			}
+		}
+		
+		/**
+		 * Count a lookup in the reservation table
+		 */
+		public void probed() {
+			reservationProbes++;
+		}
+		
+		/**
+		 * Add the counts of a finished search to this Recorder, and its allocated bytes if this Recorder doesn't measure its own. The wall time
+		 * is always that of this Recorder.
+		 * @param stats
+		 *            statistics of the search
+		 */
+		public void add(SearchStats stats) {
+			expansions += stats.expansions;
+			generated += stats.generated;
+			reservationProbes += stats.reservationProbes;
+			if (!measureAllocation) {
+				allocatedBytes = addBytes(allocatedBytes, stats.allocatedBytes);
+			}
+			if (stats.peakOpen > peakOpen) {
+				peakOpen = stats.peakOpen;
+			}
+		}
+		
+		/**
+		 * Finish recording, taking the wall time (and allocation) since this Recorder was made or last reset
+		 * @return statistics
+		 */
+		public SearchStats stop() {
+			long bytes = allocatedBytes;
+			// The counter is only read again if it was read at the start, i.e. measuring was on and the JVM supports it
+			if (measureAllocation) {
+				long now = startBytes < 0 ? -1 : threadBytes();
+				bytes = now < 0 ? -1 : addBytes(bytes, now - startBytes);
+			}
+			return new SearchStats(expansions, generated, peakOpen, reservationProbes, bytes, System.nanoTime() - startNanos);
+		}
+		
+		private static long threadBytes() {
+			return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		
+		private static com.sun.management.ThreadMXBean threads() {
+			try {
+				ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+				if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+					com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+					threads.setThreadAllocatedMemoryEnabled(true);
+					return threads;
+				}
+			} catch (LinkageError | UnsupportedOperationException e) {
+				// Not a HotSpot-style JVM, so allocation can't be measured
+			}
+			return null;
+		}
+		
+	}
+	
+}
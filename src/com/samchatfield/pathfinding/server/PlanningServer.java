@@ -0,0 +1,457 @@
+package com.samchatfield.pathfinding.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.samchatfield.pathfinding.BatchPlanner;
+import com.samchatfield.pathfinding.data.MapLoader;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.metrics.Counter;
+import com.samchatfield.pathfinding.metrics.LatencyHistogram;
+import com.samchatfield.pathfinding.metrics.MetricsRegistry;
+import com.samchatfield.pathfinding.metrics.SearchMetrics;
+
+/**
+ * Headless route planning server for a single map, listening on the loopback interface and speaking the binary Protocol. Each connection
+ * has a thread that reads its requests into a bounded queue, and a single planning thread takes everything waiting in the queue (up to a
+ * limit) as one round and plans it with a BatchPlanner, so the more requests arrive at once the bigger the rounds get and the less each
+ * request costs. When the queue is full a request is answered straight away as BUSY rather than queued, so a client sending faster than the
+ * server can plan finds out at once and can back off. If planning a round fails, every request in it is answered as ERROR and the planning
+ * thread carries on with the next round.
+ * <p>
+ * Each connection also has a thread that writes its responses, taking them from a bounded outbox, so neither the planning thread nor a
+ * reading thread ever waits on a socket and a slow client only holds up itself. Responses that are waiting together go out in one flush. A
+ * connection can only have as many requests unanswered as its outbox holds: once it has that many, its reading thread stops reading until
+ * the writing thread has sent some of the responses, so a client that stops reading its responses is held back by TCP flow control rather
+ * than disconnected.
+ * <p>
+ * The server keeps its counts, the time requests spend queued, the time each round takes and the statistics of every query in a
+ * MetricsRegistry, which can be exported as JSON or Prometheus text.
+ * <p>
+ * Usage: PlanningServer &lt;map file&gt; [port, default 7070]
+ * @author Sam
+ */
+public class PlanningServer implements AutoCloseable {
+	
+	/**
+	 * Default port to listen on
+	 */
+	public static final int DEFAULT_PORT = 7070;
+	
+	/**
+	 * Default number of requests that can be waiting to be planned
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+	
+	/**
+	 * Default largest number of requests planned in one round
+	 */
+	public static final int DEFAULT_MAX_ROUND = 512;
+	
+	/**
+	 * Default number of requests each connection can have unanswered
+	 */
+	public static final int DEFAULT_OUTBOX_CAPACITY = 1024;
+	
+	private final WorldMap map;
+	private final BatchPlanner planner;
+	private final BlockingQueue<Request> queue;
+	private final int maxRound, outboxCapacity;
+	private final ServerSocket socket;
+	private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor, batcher;
+	private volatile boolean running;
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	private final Counter rounds = metrics.counter("server_rounds_total", "Rounds planned");
+	private final Counter planned = metrics.counter("server_planned_total", "Requests planned");
+	private final Counter rejected = metrics.counter("server_rejected_total", "Requests turned away as BUSY");
+	private final Counter failed = metrics.counter("server_failed_total", "Requests answered as ERROR because their round failed");
+	private final LatencyHistogram queueWait = metrics.histogram("server_queue_wait_seconds", "Time requests spend queued");
+	private final LatencyHistogram roundTime = metrics.histogram("server_round_seconds", "Time taken to plan a round");
+	private final SearchMetrics queries = metrics.searchMetrics("server_query");
+	
+	/**
+	 * Create a server for the given map on the given port, planning on the common ForkJoinPool
+	 * @param map
+	 *            map data
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 * @throws IOException
+	 *             if the port can't be listened on
+	 */
+	public PlanningServer(WorldMap map, int port) throws IOException {
+		this(map, port, new BatchPlanner(map, ForkJoinPool.commonPool()), DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_ROUND, DEFAULT_OUTBOX_CAPACITY);
+	}
+	
+	/**
+	 * Create a server for the given map on the given port
+	 * @param map
+	 *            map data
+	 * @param port
+	 *            port to listen on, or 0 for any free port
+	 * @param planner
+	 *            plans each round
+	 * @param queueCapacity
+	 *            number of requests that can be waiting to be planned before more are turned away
+	 * @param maxRound
+	 *            largest number of requests planned in one round
+	 * @param outboxCapacity
+	 *            number of requests a connection can have unanswered before the server stops reading from it
+	 * @throws IOException
+	 *             if the port can't be listened on
+	 */
+	public PlanningServer(WorldMap map, int port, BatchPlanner planner, int queueCapacity, int maxRound, int outboxCapacity)
+			throws IOException {
+		if (queueCapacity < 1 || maxRound < 1 || outboxCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity, round size and outbox capacity must be positive: " + queueCapacity + ", "
+					+ maxRound + ", " + outboxCapacity);
+		}
+		this.map = map;
+		this.planner = planner;
+		this.maxRound = maxRound;
+		this.outboxCapacity = outboxCapacity;
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		acceptor = new Thread(this::accept, "planning-server-accept");
+		batcher = new Thread(this::plan, "planning-server-plan");
+	}
+	
+	/**
+	 * Start accepting connections and planning
+	 */
+	public void start() {
+		running = true;
+		acceptor.start();
+		batcher.start();
+	}
+	
+	/**
+	 * Stop the server, closing every connection. Requests that haven't been planned yet get no response.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		socket.close();
+		for (Connection c : connections) {
+			c.close();
+		}
+		batcher.interrupt();
+		try {
+			acceptor.join();
+			batcher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Accept connections until the server is closed, starting threads to read each one's requests and write its responses
+	 */
+	private void accept() {
+		while (running) {
+			try {
+				Connection c = new Connection(socket.accept(), "planning-server-" + socket.getLocalPort() + "-" + (connections.size() + 1));
+				connections.add(c);
+				c.start();
+			} catch (IOException e) {
+				// Closing the server socket is the only way out of accept
+				if (running) {
+					System.err.println("Couldn't accept connection: " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Plan rounds of requests until the server is closed. A round is everything that is waiting when the last round finishes, so it doesn't
+	 * wait for more requests to turn up.
+	 */
+	private void plan() {
+		List<Request> round = new ArrayList<>(maxRound);
+		while (running) {
+			try {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				round.add(first);
+			} catch (InterruptedException e) {
+				break;
+			}
+			queue.drainTo(round, maxRound - 1);
+			planRound(round);
+			round.clear();
+		}
+	}
+	
+	/**
+	 * Plan one round of requests and hand the responses to the connections to send, answering them all as ERROR if planning fails
+	 * @param round
+	 *            requests of the round
+	 */
+	private void planRound(List<Request> round) {
+		List<BatchPlanner.Result> results;
+		try {
+			results = planResults(round);
+		} catch (RuntimeException e) {
+			System.err.println("Planning a round of " + round.size() + " requests failed: " + e);
+			failed.add(round.size());
+			for (Request r : round) {
+				r.connection.send(r.id, Protocol.ERROR, null);
+			}
+			return;
+		}
+		for (int i = 0; i < round.size(); i++) {
+			Request r = round.get(i);
+			ArrayList<SpacetimePoint> path = results.get(i).getPath();
+			r.connection.send(r.id, path == null ? Protocol.NO_PATH : Protocol.OK, path);
+		}
+	}
+	
+	/**
+	 * Plan one round of requests, recording its metrics
+	 * @param round
+	 *            requests of the round
+	 * @return results in the order of the requests
+	 */
+	private List<BatchPlanner.Result> planResults(List<Request> round) {
+		int n = round.size();
+		int[] starts = new int[n];
+		int[] goals = new int[n];
+		for (int i = 0; i < n; i++) {
+			starts[i] = round.get(i).start;
+			goals[i] = round.get(i).goal;
+		}
+		long t0 = System.nanoTime();
+		for (Request r : round) {
+			queueWait.record(t0 - r.received);
+		}
+		List<BatchPlanner.Result> results = planner.plan(starts, goals);
+		roundTime.record(System.nanoTime() - t0);
+		rounds.increment();
+		planned.add(n);
+		for (BatchPlanner.Result r : results) {
+			queries.record(r.getStats());
+		}
+		return results;
+	}
+	
+	/**
+	 * Get the port the server is listening on
+	 * @return port
+	 */
+	public int getPort() {
+		return socket.getLocalPort();
+	}
+	
+	/**
+	 * Get the number of rounds planned so far
+	 * @return rounds
+	 */
+	public long getRounds() {
+		return rounds.get();
+	}
+	
+	/**
+	 * Get the metrics of the server
+	 * @return metrics registry
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Get the number of requests planned so far
+	 * @return requests planned
+	 */
+	public long getPlanned() {
+		return planned.get();
+	}
+	
+	/**
+	 * Get the number of requests turned away as BUSY so far
+	 * @return requests turned away
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+	/**
+	 * Get the number of requests answered as ERROR so far
+	 * @return requests whose round failed
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+	
+	/**
+	 * A request waiting to be planned, with cell IDs in place of coordinates
+	 */
+	private static final class Request {
+		
+		final Connection connection;
+		final int id, start, goal;
+		final long received = System.nanoTime();
+		
+		Request(Connection connection, int id, int start, int goal) {
+			this.connection = connection;
+			this.id = id;
+			this.start = start;
+			this.goal = goal;
+		}
+		
+	}
+	
+	/**
+	 * A client connection, with a thread that reads its requests and one that writes the responses waiting in its outbox. Responses are
+	 * encoded by whichever thread sends them, so the writing thread only copies bytes to the socket. The reading thread takes a permit for
+	 * each request and the writing thread gives it back once the response is written, so every response has room in the outbox.
+	 */
+	private final class Connection {
+		
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		private final BlockingQueue<byte[]> outbox;
+		private final Semaphore unanswered;
+		private final Thread reader, writer;
+		
+		Connection(Socket socket, String name) throws IOException {
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			outbox = new ArrayBlockingQueue<>(outboxCapacity);
+			unanswered = new Semaphore(outboxCapacity);
+			reader = new Thread(this::read, name);
+			writer = new Thread(this::write, name + "-write");
+			reader.setDaemon(true);
+			writer.setDaemon(true);
+		}
+		
+		void start() {
+			writer.start();
+			reader.start();
+		}
+		
+		/**
+		 * Read requests until the client closes the connection, waiting while it has as many unanswered as its outbox holds
+		 */
+		void read() {
+			try {
+				while (running) {
+					unanswered.acquire();
+					int id = in.readInt();
+					int sx = in.readUnsignedShort(), sy = in.readUnsignedShort();
+					int gx = in.readUnsignedShort(), gy = in.readUnsignedShort();
+					if (!map.inBounds(sx, sy) || !map.inBounds(gx, gy)) {
+						send(id, Protocol.BAD_REQUEST, null);
+					} else if (!queue.offer(new Request(this, id, sy * map.getWidth() + sx, gy * map.getWidth() + gx))) {
+						rejected.increment();
+						send(id, Protocol.BUSY, null);
+					}
+				}
+			} catch (EOFException | SocketException | InterruptedException e) {
+				// The client has gone, or the server is closing
+			} catch (IOException e) {
+				System.err.println("Connection failed: " + e.getMessage());
+			} finally {
+				close();
+			}
+		}
+		
+		/**
+		 * Write responses from the outbox until the connection is closed, flushing whenever the outbox is empty
+		 */
+		void write() {
+			try {
+				while (true) {
+					out.write(outbox.take());
+					unanswered.release();
+					// Everything already waiting goes out in the same flush
+					byte[] next;
+					while ((next = outbox.poll()) != null) {
+						out.write(next);
+						unanswered.release();
+					}
+					out.flush();
+				}
+			} catch (InterruptedException | IOException e) {
+				// The connection is closing, or the client has gone
+			} finally {
+				close();
+			}
+		}
+		
+		/**
+		 * Put a response in the outbox, which always has room for it because every unanswered request holds a permit
+		 * @param id
+		 *            id of the request
+		 * @param status
+		 *            status of the response
+		 * @param path
+		 *            path for an OK response
+		 */
+		void send(int id, byte status, List<SpacetimePoint> path) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(9 + (path == null ? 0 : 4 * path.size()));
+			try {
+				Protocol.writeResponse(new DataOutputStream(bytes), id, status, path);
+			} catch (IOException e) {
+				// Writing to memory doesn't fail
+				throw new UncheckedIOException(e);
+			}
+			outbox.add(bytes.toByteArray());
+		}
+		
+		/**
+		 * Close the connection, if it isn't closed already
+		 */
+		void close() {
+			if (!connections.remove(this)) {
+				return;
+			}
+			reader.interrupt();
+			writer.interrupt();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing more can be done with it anyway
+			}
+		}
+		
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: PlanningServer <map file> [port]");
+			System.exit(2);
+		}
+		WorldMap map = MapLoader.load(Paths.get(args[0]));
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		PlanningServer server = new PlanningServer(map, port);
+		server.start();
+		System.out.println("Planning on a " + map.getWidth() + "x" + map.getHeight() + " map on port " + server.getPort());
+	}
+	
+}
@@ -0,0 +1,145 @@
+package com.samchatfield.pathfinding.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+
+/**
+ * The binary wire format of the PlanningServer. Everything is big-endian, as written by a DataOutputStream, and a connection carries any
+ * number of requests and responses back to back, so a client can send many requests before reading the responses.
+ * <p>
+ * A request is 12 bytes: a 4 byte id chosen by the client, then the x and y of the start and the x and y of the goal as unsigned 2 byte
+ * values. A response is the id of its request, a 1 byte status and a 4 byte count of the points of the path, followed by the x and y of each
+ * point from the start to the goal as unsigned 2 byte values. Only an OK response has any points. Responses come back in the order their
+ * requests were planned, which is the order they were sent except for those answered as soon as they arrive: requests turned away as BUSY
+ * and requests for cells outside the map, answered as BAD_REQUEST. A request whose planning failed on the server is answered as ERROR and
+ * can be sent again.
+ * @author Sam
+ */
+public final class Protocol {
+	
+	/**
+	 * Size of a request in bytes
+	 */
+	public static final int REQUEST_BYTES = 12;
+	
+	/**
+	 * Statuses of a response
+	 */
+	public static final byte OK = 0, NO_PATH = 1, BUSY = 2, BAD_REQUEST = 3, ERROR = 4;
+	
+	private Protocol() {
+	}
+	
+	/**
+	 * Write a request
+	 * @param out
+	 *            stream to write to
+	 * @param id
+	 *            id of the request
+	 * @param startX
+	 *            x position of the start
+	 * @param startY
+	 *            y position of the start
+	 * @param goalX
+	 *            x position of the goal
+	 * @param goalY
+	 *            y position of the goal
+	 * @throws IOException
+	 */
+	public static void writeRequest(DataOutputStream out, int id, int startX, int startY, int goalX, int goalY) throws IOException {
+		out.writeInt(id);
+		out.writeShort(startX);
+		out.writeShort(startY);
+		out.writeShort(goalX);
+		out.writeShort(goalY);
+	}
+	
+	/**
+	 * Write a response
+	 * @param out
+	 *            stream to write to
+	 * @param id
+	 *            id of the request
+	 * @param status
+	 *            OK, NO_PATH, BUSY, BAD_REQUEST or ERROR
+	 * @param path
+	 *            path for an OK response, otherwise null
+	 * @throws IOException
+	 */
+	public static void writeResponse(DataOutputStream out, int id, byte status, List<SpacetimePoint> path) throws IOException {
+		out.writeInt(id);
+		out.writeByte(status);
+		if (path == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(path.size());
+		for (SpacetimePoint p : path) {
+			out.writeShort(p.getX());
+			out.writeShort(p.getY());
+		}
+	}
+	
+	/**
+	 * Read a response, keeping the points of the path as packed (x, y) pairs
+	 * @param in
+	 *            stream to read from
+	 * @return the response
+	 * @throws IOException
+	 */
+	public static Response readResponse(DataInputStream in) throws IOException {
+		int id = in.readInt();
+		byte status = in.readByte();
+		int[] points = new int[2 * in.readInt()];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = in.readUnsignedShort();
+		}
+		return new Response(id, status, points);
+	}
+	
+	/**
+	 * A response as read by a client
+	 */
+	public static final class Response {
+		
+		private final int id;
+		private final byte status;
+		private final int[] points;
+		
+		Response(int id, byte status, int[] points) {
+			this.id = id;
+			this.status = status;
+			this.points = points;
+		}
+		
+		/**
+		 * Get the id of the request this answers
+		 * @return id chosen by the client
+		 */
+		public int getId() {
+			return id;
+		}
+		
+		/**
+		 * Get the status of the response
+		 * @return one of OK, NO_PATH, BUSY, BAD_REQUEST or ERROR
+		 */
+		public byte getStatus() {
+			return status;
+		}
+		
+		/**
+		 * Get the points of the path as x and y one after the other
+		 * @return x0, y0, x1, y1... from start to goal, empty unless the status is OK
+		 */
+		public int[] getPoints() {
+			return points;
+		}
+		
+	}
+	
+}
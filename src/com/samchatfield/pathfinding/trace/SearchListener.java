@@ -0,0 +1,63 @@
+package com.samchatfield.pathfinding.trace;
+
+/**
+ * Receives the events of a search as it runs, for tracing and debugging. Every method does nothing by default. Searches start off with
+ * NONE, whose methods are empty, so while nothing else is ever given to a search its calls are inlined by the JIT into nothing at all.
+ * <p>
+ * A listener can be given to searches on several threads at once, so it must be thread safe. States are reported by cell ID and time step,
+ * the time step being the g value of the state, which for searches that aren't over space-time is just the distance from the start.
+ * @author Sam
+ */
+public interface SearchListener {
+	
+	/**
+	 * Listener that ignores every event
+	 */
+	SearchListener NONE = new SearchListener() {
+	};
+	
+	/**
+	 * A search has started
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 */
+	default void searchStarted(int start, int goal) {
+	}
+	
+	/**
+	 * A state has been added to the open set, or moved up it
+	 * @param cell
+	 *            cell ID
+	 * @param g
+	 *            g value, the time step of the state
+	 * @param f
+	 *            f value
+	 */
+	default void generated(int cell, int g, int f) {
+	}
+	
+	/**
+	 * A state has been taken off the open set and expanded
+	 * @param cell
+	 *            cell ID
+	 * @param g
+	 *            g value, the time step of the state
+	 * @param f
+	 *            f value
+	 */
+	default void expanded(int cell, int g, int f) {
+	}
+	
+	/**
+	 * The search has finished
+	 * @param goal
+	 *            goal cell ID
+	 * @param length
+	 *            number of moves in the path found, or -1 if there is none
+	 */
+	default void searchFinished(int goal, int length) {
+	}
+	
+}
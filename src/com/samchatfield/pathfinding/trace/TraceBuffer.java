@@ -0,0 +1,224 @@
+package com.samchatfield.pathfinding.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+
+/**
+ * SearchListener that records every event into a fixed size ring buffer, overwriting the oldest events once it's full. Recording takes no
+ * locks and allocates nothing: a thread claims the next position with one atomic increment and writes the event into its slot, so searches
+ * on any number of threads can share one buffer. Each slot also holds the position of the event in it, which is cleared while the event is
+ * being written, so reading the buffer skips any slot that is half written or has been overwritten since.
+ * <p>
+ * The buffer can be dumped to a CSV file (one line per event, with the thread it came from) for offline analysis, or the last search in it
+ * can be drawn as a map of the cells it generated and expanded.
+ * @author Sam
+ */
+public class TraceBuffer implements SearchListener {
+	
+	/**
+	 * Kinds of event, as written in the dump
+	 */
+	private static final String[] KINDS = { "start", "generate", "expand", "finish" };
+	private static final int STARTED = 0, GENERATED = 1, EXPANDED = 2, FINISHED = 3;
+	
+	private final GridGraph graph;
+	private final int mask;
+	private final AtomicLong next = new AtomicLong();
+	// Per slot: position of the event in it (-1 while being written), kind, thread and cell packed together, then g and f
+	private final AtomicLongArray positions, events, values;
+	
+	/**
+	 * Create a new trace buffer for searches on the given graph
+	 * @param graph
+	 *            graph of the map, for the coordinates of the cells
+	 * @param capacity
+	 *            number of events kept, rounded up to a power of 2
+	 */
+	public TraceBuffer(GridGraph graph, int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+		}
+		this.graph = graph;
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		positions = new AtomicLongArray(size);
+		events = new AtomicLongArray(size);
+		values = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			positions.set(i, -1);
+		}
+	}
+	
+	@Override
+	public void searchStarted(int start, int goal) {
+		record(STARTED, start, goal, 0);
+	}
+	
+	@Override
+	public void generated(int cell, int g, int f) {
+		record(GENERATED, cell, g, f);
+	}
+	
+	@Override
+	public void expanded(int cell, int g, int f) {
+		record(EXPANDED, cell, g, f);
+	}
+	
+	@Override
+	public void searchFinished(int goal, int length) {
+		record(FINISHED, goal, length, 0);
+	}
+	
+	private void record(int kind, int cell, int a, int b) {
+		long position = next.getAndIncrement();
+		int slot = (int) position & mask;
+		long thread = Thread.currentThread().getId() & 0xFFFFFFFL;
+		// Clearing the position first means a reader never takes a mix of the old and new event for either of them. Each store is ordered
+		// after the ones before it, which is all that's needed, without the fence of a volatile store.
+		positions.lazySet(slot, -1);
+		events.lazySet(slot, (long) kind << 60 | thread << 32 | (cell & 0xFFFFFFFFL));
+		values.lazySet(slot, (long) a << 32 | (b & 0xFFFFFFFFL));
+		positions.lazySet(slot, position);
+	}
+	
+	/**
+	 * Get the number of events recorded so far, including those that have since been overwritten
+	 * @return events recorded
+	 */
+	public long getRecorded() {
+		return next.get();
+	}
+	
+	/**
+	 * Get the number of events that have been overwritten by newer ones
+	 * @return events lost
+	 */
+	public long getOverwritten() {
+		return Math.max(0, next.get() - (mask + 1));
+	}
+	
+	/**
+	 * Copy the events still in the buffer, oldest first, leaving out any being written or overwritten at the time
+	 * @return per event its position, packed kind, thread and cell, and packed g and f
+	 */
+	private long[][] snapshot() {
+		long end = next.get();
+		long first = Math.max(0, end - (mask + 1));
+		long[][] copy = new long[3][(int) (end - first)];
+		int n = 0;
+		for (long p = first; p < end; p++) {
+			int slot = (int) p & mask;
+			long before = positions.get(slot);
+			long event = events.get(slot);
+			long value = values.get(slot);
+			if (before == p && positions.get(slot) == p) {
+				copy[0][n] = p;
+				copy[1][n] = event;
+				copy[2][n] = value;
+				n++;
+			}
+		}
+		for (int i = 0; i < 3; i++) {
+			copy[i] = Arrays.copyOf(copy[i], n);
+		}
+		return copy;
+	}
+	
+	/**
+	 * Write the events in the buffer to a CSV file, oldest first, with the columns position, thread, event, x, y, g and f. For a start event
+	 * g is the goal cell ID and for a finish event it's the length of the path (-1 if none was found).
+	 * @param file
+	 *            file to write
+	 * @return number of events written
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public int dump(Path file) throws IOException {
+		long[][] copy = snapshot();
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("position,thread,event,x,y,g,f\n");
+			for (int i = 0; i < copy[0].length; i++) {
+				long event = copy[1][i];
+				int cell = (int) event;
+				out.write(copy[0][i] + "," + (event >>> 32 & 0xFFFFFFFL) + "," + KINDS[(int) (event >>> 60)] + "," + graph.x(cell) + ","
+						+ graph.y(cell) + "," + (int) (copy[2][i] >> 32) + "," + (int) copy[2][i] + "\n");
+			}
+		}
+		return copy[0].length;
+	}
+	
+	/**
+	 * Draw the map of the last search in the buffer, taking the events of the thread that started it: "X" for obstacles, "." for expanded
+	 * cells, "+" for cells generated but never expanded, "O" for the last cell expanded, "S" for the start and "@" for the goal. North is at
+	 * the top.
+	 * @return the map, one line per row, or null if there's no start of a search in the buffer
+	 */
+	public String searchMap() {
+		long[][] copy = snapshot();
+		int from = copy[0].length - 1;
+		while (from >= 0 && copy[1][from] >>> 60 != STARTED) {
+			from--;
+		}
+		if (from < 0) {
+			return null;
+		}
+		long thread = copy[1][from] >>> 32 & 0xFFFFFFFL;
+		int start = (int) copy[1][from];
+		int goal = (int) (copy[2][from] >> 32);
+		char[] marks = new char[graph.size()];
+		int last = -1;
+		for (int i = from + 1; i < copy[0].length; i++) {
+			long event = copy[1][i];
+			if ((event >>> 32 & 0xFFFFFFFL) != thread) {
+				continue;
+			}
+			int kind = (int) (event >>> 60);
+			if (kind == STARTED) {
+				break;
+			}
+			int cell = (int) event;
+			if (kind == EXPANDED) {
+				marks[cell] = '.';
+				last = cell;
+			} else if (kind == GENERATED && marks[cell] != '.') {
+				marks[cell] = '+';
+			}
+		}
+		
+		StringBuilder out = new StringBuilder();
+		for (int y = graph.getHeight() - 1; y >= 0; y--) {
+			for (int x = 0; x < graph.getWidth(); x++) {
+				int n = graph.id(x, y);
+				char c;
+				if (n == start) {
+					c = 'S';
+				} else if (n == goal) {
+					c = '@';
+				} else if (n == last) {
+					c = 'O';
+				} else if (marks[n] != 0) {
+					c = marks[n];
+				} else if (graph.isObstacle(n)) {
+					c = 'X';
+				} else {
+					c = '-';
+				}
+				out.append(' ').append(c);
+			}
+			out.append('\n');
+		}
+		return out.toString();
+	}
+	
+}
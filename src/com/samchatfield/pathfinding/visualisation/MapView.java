@@ -30,7 +30,6 @@ public class MapView extends JPanel implements Observer {
 	private final PathfindingModel model;
 	private final WorldMap map;
 	private Point2D topLeft, botLeft, topRight, botRight;
-	private ArrayList<Point2D> nodes;
 	private double sf;
 	private int w, h;
 	
@@ -44,7 +43,6 @@ public class MapView extends JPanel implements Observer {
 	public MapView(PathfindingModel model, WorldMap map) {
 		this.model = model;
 		this.map = map;
-		nodes = new ArrayList<>(map.getNodes().size());
 		
 		// Add a mouse listener to the view to handle mouse clicks and allow you to place goals using mouse clicks
 		addMouseListener(new MouseListener() {
@@ -56,7 +54,7 @@ public class MapView extends JPanel implements Observer {
 				
 				// The map x coordinates corresponding to these screen coordinates
 				int x = Math.round((float) ((int) sx / sf - 2));
-				int y = Math.round((float) (7 - ((int) sy / sf - 2)));
+				int y = Math.round((float) (map.getHeight() - 1 - ((int) sy / sf - 2)));
 				
 				// TODO fix this
 				// If this x and y constitute an illegal node (i.e. an obstacle or outside of the map) then ignore the click
@@ -95,15 +93,10 @@ public class MapView extends JPanel implements Observer {
 		});
 		
 		// Create the corners of the warehouse (not nodes/junctions just corners the corners of the warehouse)
-		topLeft = new Point2D.Double(1, 10);
+		topLeft = new Point2D.Double(1, map.getHeight() + 2);
 		botLeft = new Point2D.Double(1, 1);
-		topRight = new Point2D.Double(14, 10);
-		botRight = new Point2D.Double(14, 1);
-		
-		// Iterate through the search nodes and create a new awt Point based on this and add it to the ArrayList of them
-		for (Node n : map.getNodes()) {
-			nodes.add(new Point2D.Double(n.getX() + 2, n.getY() + 2));
-		}
+		topRight = new Point2D.Double(map.getWidth() + 2, map.getHeight() + 2);
+		botRight = new Point2D.Double(map.getWidth() + 2, 1);
 	}
 	
 	@Override
@@ -112,12 +105,13 @@ public class MapView extends JPanel implements Observer {
 		w = getWidth();
 		h = getHeight();
 		
-		// Create a scale factor for the view given its width and height in order to scale the map coordinates to pixel values
-		sf = Math.min(w / 15, h / 11);
+		// Create a scale factor for the view given its width and height in order to scale the map coordinates to pixel values. There are
+		// three extra columns and rows for the borders around the map
+		sf = Math.min((double) w / (map.getWidth() + 3), (double) h / (map.getHeight() + 3));
 		
 		// Draw warehouse white background
 		g2d.setColor(Color.WHITE);
-		g2d.fillRect((int) (sf), (int) (sf), (int) (13 * sf), (int) (9 * sf));
+		g2d.fillRect((int) (sf), (int) (sf), (int) ((map.getWidth() + 1) * sf), (int) ((map.getHeight() + 1) * sf));
 		
 		// Draw borders of warehouse
 		g2d.setColor(Color.BLACK);
@@ -127,16 +121,9 @@ public class MapView extends JPanel implements Observer {
 		g2d.draw(new Line2D.Double(topRight.getX() * sf, topRight.getY() * sf, botRight.getX() * sf, botRight.getY() * sf)); // right
 		
 		// Draw nodes
-		for (Point2D p : nodes) {
-			// Check that the node exists, otherwise there is a bug
-			Node current = null;
-			try {
-				current = map.nodeAt((int) (p.getX() - 2), (int) (p.getY() - 2));
-			} catch (InvalidCoordinateException e) {
-				// Should never be reached as iterating through nodes already created
-				e.printStackTrace();
-				System.err.println("Node at for drawing obstacles threw exception");
-			}
+		for (Node current : map.getNodes()) {
+			// The position of the node in the GUI, offset by two for the border rows and columns
+			Point2D p = new Point2D.Double(current.getX() + 2, current.getY() + 2);
 			
 			// Draw obstacle or normal node
 			if (current.isObstacle()) {
@@ -144,8 +131,11 @@ public class MapView extends JPanel implements Observer {
 				g2d.fillRect((int) ((p.getX() - 0.5) * sf), screenY(p.getY() + 0.5), (int) sf, (int) sf);
 			} else {
 				g2d.setColor(Color.BLACK);
-				String coordText = "(" + (int) (p.getX() - 2) + "," + (int) (p.getY() - 2) + ")";
-				g2d.drawString(coordText, (int) (p.getX() * sf - 25), screenY(p.getY()) + 25);
+				// Only label the coordinates when the nodes are big enough for the text to fit
+				if (sf >= 50) {
+					String coordText = "(" + current.getX() + "," + current.getY() + ")";
+					g2d.drawString(coordText, (int) (p.getX() * sf - 25), screenY(p.getY()) + 25);
+				}
 				int d = 7;
 				
 				g2d.fillOval((int) (p.getX() * sf - 0.5 * d), screenY(p.getY()) - (int) (0.5 * d), d, d);
@@ -243,7 +233,7 @@ public class MapView extends JPanel implements Observer {
 	 * @return pixel coordinate for this y
 	 */
 	public int screenY(double yCo) {
-		return (int) ((11 - yCo) * sf);
+		return (int) ((map.getHeight() + 3 - yCo) * sf);
 	}
 	
 	/**
@@ -1,10 +1,13 @@
 package com.samchatfield.pathfinding.visualisation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Observable;
 
 import com.samchatfield.pathfinding.Agent;
 import com.samchatfield.pathfinding.AgentPlanning;
+import com.samchatfield.pathfinding.TaskAssigner;
 import com.samchatfield.pathfinding.data.Node;
 import com.samchatfield.pathfinding.data.SpacetimePoint;
 import com.samchatfield.pathfinding.data.WorldMap;
@@ -20,6 +23,8 @@ public class PathfindingModel extends Observable {
 	private final WorldMap map;
 	private final int agentNumber;
 	private ArrayList<Agent> agents;
+	// The agent claiming each cell, as its goal or as where it's staying if it has no goal, or -1
+	private final int[] claims;
 	private Agent focusedAgent;
 	private boolean agentsMoving;
 	
@@ -43,6 +48,12 @@ public class PathfindingModel extends Observable {
 				System.err.println("Error placing agents on map");
 			}
 		}
+		claims = new int[map.getWidth() * map.getHeight()];
+		Arrays.fill(claims, -1);
+		for (Agent a : agents) {
+			claim(a);
+		}
+		
 		// Set the initially focused Agent to the highest priority one
 		focusedAgent = agents.get(0);
 		System.out.println(focusedAgent);
@@ -117,26 +128,98 @@ public class PathfindingModel extends Observable {
 	 *            the goal
 	 */
 	public void setGoal(Agent a, Node goal) {
-		boolean occupied = false;
-		
 		// Check that the proposed new goal isn't the goal of another agent
 		// or the current position of another agent that isn't going to move
 		// (you should be able to set a goal at the current position of a agent that IS going to move though)
-		for (Agent oa : agents) {
-			if (oa != a && goal != null && (goal.equals(oa.getGoal()) || (oa.getGoal() == null && goal.equals(oa.getStart())))) {
-				occupied = true;
-			}
-		}
+		boolean occupied = goal != null && claims[cell(goal)] != -1 && claims[cell(goal)] != a.getIndex();
 		
 		// As long as none of the above conditions are violated, change the goal, clear the path and update GUI
 		if (!occupied) {
+			release(a);
 			a.setGoal(goal);
+			claim(a);
 			a.clearPath();
 			setChanged();
 			notifyObservers();
 		}
 	}
 	
+	/**
+	 * Give each of the given goals to one of the agents without a goal, matching them up so the agents have as little distance to travel
+	 * as possible between them, and instruct the GUI to update. Goals that another agent has already claimed are left out.
+	 * @param goals
+	 *            the goals
+	 * @param assigner
+	 *            assigner to match them up with
+	 * @return number of goals given out
+	 */
+	public int assignGoals(List<Node> goals, TaskAssigner assigner) {
+		ArrayList<Agent> idle = new ArrayList<>();
+		for (Agent a : agents) {
+			if (a.getGoal() == null) {
+				idle.add(a);
+			}
+		}
+		int[] cells = new int[idle.size()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = cell(idle.get(i).getStart());
+		}
+		// Goals that are claimed already are left out, and so are repeats
+		ArrayList<Node> free = new ArrayList<>();
+		boolean[] seen = new boolean[claims.length];
+		for (Node goal : goals) {
+			int c = cell(goal);
+			if (claims[c] == -1 && !seen[c]) {
+				seen[c] = true;
+				free.add(goal);
+			}
+		}
+		int[] targets = new int[free.size()];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = cell(free.get(i));
+		}
+		
+		int[] chosen = assigner.assign(cells, targets);
+		int given = 0;
+		for (int i = 0; i < chosen.length; i++) {
+			if (chosen[i] >= 0) {
+				Agent a = idle.get(chosen[i]);
+				release(a);
+				a.setGoal(free.get(i));
+				claim(a);
+				a.clearPath();
+				given++;
+			}
+		}
+		setChanged();
+		notifyObservers();
+		return given;
+	}
+	
+	/**
+	 * Record the cell an agent is claiming, its goal or if it has none where it is
+	 */
+	private void claim(Agent a) {
+		Node n = a.getGoal() != null ? a.getGoal() : a.getStart();
+		if (n != null) {
+			claims[cell(n)] = a.getIndex();
+		}
+	}
+	
+	/**
+	 * Forget the claim of an agent, unless another agent has claimed the cell since
+	 */
+	private void release(Agent a) {
+		Node n = a.getGoal() != null ? a.getGoal() : a.getStart();
+		if (n != null && claims[cell(n)] == a.getIndex()) {
+			claims[cell(n)] = -1;
+		}
+	}
+	
+	private int cell(Node n) {
+		return n.getY() * map.getWidth() + n.getX();
+	}
+	
 	/**
 	 * Move one Agent to its goal
 	 * @param a
@@ -1,6 +1,8 @@
 package com.samchatfield.pathfinding.visualisation;
 
 import java.awt.BorderLayout;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -8,6 +10,7 @@ import javax.swing.JPanel;
 import com.samchatfield.pathfinding.AgentPlanning;
 import com.samchatfield.pathfinding.MultiAgentPlanning;
 import com.samchatfield.pathfinding.SingleAgentPlanning;
+import com.samchatfield.pathfinding.data.MapLoader;
 import com.samchatfield.pathfinding.data.WorldMap;
 
 /**
@@ -17,15 +20,22 @@ import com.samchatfield.pathfinding.data.WorldMap;
 @SuppressWarnings("serial")
 public class PathfindingSim extends JPanel {
 	
+	/**
+	 * Create the simulation on the default warehouse map
+	 */
 	public PathfindingSim() {
+		this(new WorldMap());
+	}
+	
+	/**
+	 * Create the simulation on the given map
+	 * @param map
+	 *            map data, e.g. loaded from a file by MapLoader
+	 */
+	public PathfindingSim(WorldMap map) {
 		super();
 		setLayout(new BorderLayout());
 		
-		// Create the GridMap instance to use for the warehouse and pass into helper class 'MapData'
-		// to build search nodes and other search-related functionality
-		
-		WorldMap map = new WorldMap();
-		
 		// NOTE number of agents must be manually set here as it stands
 		// Number of agents to use; 1 or more (only tested for up to 4 agents, should scale up to 6 though)
 		// beyond 6 agents exceptions will likely be thrown because agents will try and start outside the map
@@ -54,12 +64,21 @@ public class PathfindingSim extends JPanel {
 	// System.out.println(getWidth() + "x" + getHeight());
 	// }
 	
-	public static void main(String[] args) {
+	/**
+	 * Launch the GUI, optionally with the path of a map file (MovingAI or binary format) to use instead of the default warehouse
+	 * @param args
+	 *            optional map file path
+	 * @throws IOException
+	 *             if the map file can't be loaded
+	 */
+	public static void main(String[] args) throws IOException {
+		WorldMap map = args.length > 0 ? MapLoader.load(Paths.get(args[0])) : new WorldMap();
+		
 		JFrame frame = new JFrame("Pathfinding");
 		frame.setSize(1070, 765);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		
-		PathfindingSim sim = new PathfindingSim();
+		PathfindingSim sim = new PathfindingSim(map);
 		
 		frame.add(sim);
 		frame.setVisible(true);
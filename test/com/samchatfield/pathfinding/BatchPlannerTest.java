@@ -0,0 +1,96 @@
+package com.samchatfield.pathfinding;
+
+import static com.samchatfield.pathfinding.GridChecks.assertWalk;
+import static com.samchatfield.pathfinding.GridChecks.bfs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.PathCache;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Batches of queries split over threads, with and without a cache of paths
+ * @author Sam
+ */
+public class BatchPlannerTest {
+	
+	@Test
+	public void everyQueryGetsItsShortestPath() {
+		WorldMap map = WorldMap.random(40, 40, 0.3, 60);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			BatchPlanner planner = new BatchPlanner(map, pool, null, 7);
+			int[][] queries = queries(map, 500, new Random(61));
+			assertShortest(map, queries, planner.plan(queries[0], queries[1]));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void repeatedQueriesComeFromTheCache() {
+		WorldMap map = WorldMap.random(40, 40, 0.3, 62);
+		PathCache cache = new PathCache(map);
+		BatchPlanner planner = new BatchPlanner(map, ForkJoinPool.commonPool(), cache, BatchPlanner.DEFAULT_CHUNK_SIZE);
+		int[][] queries = queries(map, 300, new Random(63));
+		planner.plan(queries[0], queries[1]);
+		long misses = cache.getMisses();
+		
+		List<BatchPlanner.Result> again = planner.plan(queries[0], queries[1]);
+		assertShortest(map, queries, again);
+		assertEquals(misses, cache.getMisses());
+		for (BatchPlanner.Result r : again) {
+			assertEquals(0, r.getStats().getExpansions());
+		}
+	}
+	
+	@Test
+	public void startsAndGoalsMustPairUp() {
+		BatchPlanner planner = new BatchPlanner(WorldMap.random(4, 4, 0, 64));
+		assertThrows(IllegalArgumentException.class, () -> planner.plan(new int[2], new int[3]));
+	}
+	
+	/**
+	 * Pick random queries between free cells
+	 * @return starts and goals
+	 */
+	private static int[][] queries(WorldMap map, int n, Random r) {
+		GridGraph graph = map.getGraph();
+		int[][] queries = new int[2][n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < 2; k++) {
+				int cell;
+				do {
+					cell = r.nextInt(graph.size());
+				} while (graph.isObstacle(cell));
+				queries[k][i] = cell;
+			}
+		}
+		return queries;
+	}
+	
+	private static void assertShortest(WorldMap map, int[][] queries, List<BatchPlanner.Result> results) {
+		GridGraph graph = map.getGraph();
+		assertEquals(queries[0].length, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			int shortest = bfs(graph, queries[0][i])[queries[1][i]];
+			if (shortest < 0) {
+				assertNull(results.get(i).getPath());
+			} else {
+				assertWalk(graph, results.get(i).getPath(), queries[0][i], queries[1][i]);
+				assertEquals(shortest, results.get(i).getPath().size() - 1);
+			}
+		}
+	}
+	
+}
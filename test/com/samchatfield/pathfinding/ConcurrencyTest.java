@@ -0,0 +1,123 @@
+package com.samchatfield.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Many threads searching one map at once. A set of A*, Jump Point Search and Cooperative A* queries (the last against a reservation table
+ * holding another agent's path, with one Reverse Resumable A* heuristic shared by all of them) is run once on a single thread for the
+ * answers, then over and over from every thread in a different order each. Every path found concurrently has to be exactly the one found
+ * on its own, otherwise the searches are sharing state they shouldn't.
+ * @author Sam
+ */
+public class ConcurrencyTest {
+	
+	private static final int THREADS = 8, QUERIES = 300, ROUNDS = 3;
+	
+	@Test
+	public void concurrentSearchesFindTheSamePathsAsOneThread() throws Exception {
+		WorldMap map = WorldMap.random(96, 96, 0.25, 1);
+		ReverseResumableAStar heuristic = new ReverseResumableAStar(map);
+		Query[] qs = queries(map);
+		List<ArrayList<SpacetimePoint>> expected = new ArrayList<>(qs.length);
+		for (Query q : qs) {
+			expected.add(q.run(map, new ReverseResumableAStar(map)));
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> done = new ArrayList<>(THREADS);
+			for (int t = 0; t < THREADS; t++) {
+				long seed = t;
+				done.add(pool.submit(() -> {
+					Random r = new Random(seed);
+					int mismatches = 0;
+					for (int i = 0; i < ROUNDS * qs.length; i++) {
+						int k = r.nextInt(qs.length);
+						ArrayList<SpacetimePoint> path = qs[k].run(map, heuristic);
+						if (path == null ? expected.get(k) != null : !path.equals(expected.get(k))) {
+							mismatches++;
+						}
+					}
+					return mismatches;
+				}));
+			}
+			for (Future<Integer> f : done) {
+				assertEquals(0, (int) f.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Make random queries between cells of the largest connected area of the map, in turn A*, JPS and Cooperative A*
+	 */
+	private static Query[] queries(WorldMap map) {
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		Random r = new Random(2);
+		Query[] qs = new Query[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			int start = area[r.nextInt(area.length)];
+			int goal = area[r.nextInt(area.length)];
+			ReservationTable table = null;
+			if (i % 3 == 2) {
+				// Another agent's path crossing the area, which the query has to plan around
+				table = new HashReservationTable();
+				ArrayList<SpacetimePoint> other = new AStar(map).pathfind(area[r.nextInt(area.length)], area[r.nextInt(area.length)]);
+				for (SpacetimePoint p : other) {
+					table.reserve(p, 1);
+				}
+			}
+			qs[i] = new Query(i % 3, start, goal, table);
+		}
+		return qs;
+	}
+	
+	/**
+	 * A single search of one of the three kinds. The table is only read once the query has been made.
+	 */
+	private static class Query {
+		
+		private final int kind, start, goal;
+		private final ReservationTable table;
+		
+		Query(int kind, int start, int goal, ReservationTable table) {
+			this.kind = kind;
+			this.start = start;
+			this.goal = goal;
+			this.table = table;
+		}
+		
+		ArrayList<SpacetimePoint> run(WorldMap map, ReverseResumableAStar heuristic) {
+			switch (kind) {
+			case 0:
+				return new AStar(map).pathfind(start, goal);
+			case 1:
+				return new JumpPointSearch(map).pathfind(start, goal);
+			default:
+				Agent agent = new Agent(map.getNodes().get(start), map.getNodes().get(goal), 0);
+				return new CAStar(map, agent, table, OpenList.Kind.BUCKETS, heuristic).pathfind(start, goal);
+			}
+		}
+		
+	}
+	
+}
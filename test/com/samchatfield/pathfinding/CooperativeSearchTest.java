@@ -0,0 +1,132 @@
+package com.samchatfield.pathfinding;
+
+import static com.samchatfield.pathfinding.GridChecks.assertWalk;
+import static com.samchatfield.pathfinding.GridChecks.bfs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.IntervalReservationTable;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * The searches of one agent around the reservations of others: Cooperative A* over space-time states, SIPP over safe intervals and the
+ * Reverse Resumable A* distances that guide them
+ * @author Sam
+ */
+public class CooperativeSearchTest {
+	
+	@Test
+	public void reverseResumableDistancesAreTrueDistances() {
+		WorldMap map = WorldMap.random(30, 30, 0.3, 30);
+		GridGraph graph = map.getGraph();
+		ReverseResumableAStar rra = new ReverseResumableAStar(map, 2);
+		Random r = new Random(31);
+		for (int i = 0; i < 5; i++) {
+			int goal = r.nextInt(graph.size());
+			if (graph.isObstacle(goal)) {
+				continue;
+			}
+			int[] dist = bfs(graph, goal);
+			// In a random order, so the goal's search has to be resumed from wherever it got to
+			for (int k = 0; k < 300; k++) {
+				int cell = r.nextInt(graph.size());
+				if (!graph.isObstacle(cell)) {
+					assertEquals(dist[cell] < 0 ? Heuristic.UNREACHABLE : dist[cell], rra.estimate(cell, goal));
+				}
+			}
+		}
+		assertEquals(2, rra.cachedGoals());
+	}
+	
+	@Test
+	public void expectedGoalsAreCachedWithinTheMemoryBudget() {
+		// Each goal takes 12 bytes a cell, so 5 goals fit
+		WorldMap map = WorldMap.random(10, 10, 0, 36);
+		ReverseResumableAStar rra = new ReverseResumableAStar(map, 2, 5 * 12 * 100);
+		rra.expectGoals(3);
+		for (int goal = 0; goal < 20; goal++) {
+			rra.estimate(99 - goal, goal);
+		}
+		assertEquals(3, rra.cachedGoals());
+		rra.expectGoals(1000);
+		for (int goal = 0; goal < 20; goal++) {
+			rra.estimate(99 - goal, goal);
+		}
+		assertEquals(5, rra.cachedGoals());
+	}
+	
+	@Test
+	public void cooperativeSearchesKeepClearOfOtherAgents() {
+		WorldMap map = WorldMap.random(24, 24, 0.2, 32);
+		GridGraph graph = map.getGraph();
+		List<Agent> agents = Scenarios.random(map, 30, 33);
+		Heuristic heuristic = new ReverseResumableAStar(map);
+		IntervalReservationTable table = new IntervalReservationTable(24, 24);
+		for (Agent a : agents) {
+			SIPP sipp = new SIPP(map, a, table, OpenList.Kind.BUCKETS, heuristic);
+			CAStar castar = new CAStar(map, a, table, OpenList.Kind.BUCKETS, heuristic);
+			castar.setHoldGoal(true);
+			int start = graph.id(a.getStart()), goal = graph.id(a.getGoal());
+			ArrayList<SpacetimePoint> path = sipp.pathfind(start, goal);
+			ArrayList<SpacetimePoint> other = castar.pathfind(start, goal);
+			assertNotNull(path, "SIPP found no path for " + a);
+			assertNotNull(other, "CA* found no path for " + a);
+			// Both are optimal under the same rules, so they take as long as each other
+			assertEquals(other.size(), path.size(), "SIPP and CA* disagree for " + a);
+			assertWalk(graph, path, start, goal);
+			assertWalk(graph, other, start, goal);
+			assertKeepsClear(table, path, a.getIndex());
+			assertKeepsClear(table, other, a.getIndex());
+			
+			for (SpacetimePoint p : path) {
+				table.reserve(p, a.getIndex());
+			}
+			table.reserveFrom(a.getGoal().getX(), a.getGoal().getY(), path.size() - 1, a.getIndex());
+		}
+	}
+	
+	@Test
+	public void windowedSearchesStopAtTheEndOfTheWindow() {
+		WorldMap map = WorldMap.random(40, 10, 0.1, 34);
+		GridGraph graph = map.getGraph();
+		List<Agent> agents = Scenarios.random(map, 1, 35);
+		Agent a = agents.get(0);
+		int start = graph.id(a.getStart()), goal = graph.id(a.getGoal());
+		CAStar castar = new CAStar(map, a, new IntervalReservationTable(40, 10));
+		castar.setWindow(4);
+		ArrayList<SpacetimePoint> path = castar.pathfind(start, goal);
+		int distance = bfs(graph, start)[goal];
+		assertEquals(Math.min(distance, 4) + 1, path.size());
+	}
+	
+	/**
+	 * Check that a path never takes a cell at a time another agent has it, nor moves into a cell another agent has the step before
+	 */
+	private static void assertKeepsClear(ReservationTable table, List<SpacetimePoint> path, int agent) {
+		for (int t = 0; t < path.size(); t++) {
+			SpacetimePoint p = path.get(t);
+			assertFalse(table.isReservedByOther(p.getX(), p.getY(), t, agent), "agent " + agent + " runs into another at " + p);
+			SpacetimePoint before = path.get(Math.max(0, t - 1));
+			if (before.getX() != p.getX() || before.getY() != p.getY()) {
+				assertFalse(table.isReservedByOther(p.getX(), p.getY(), t - 1, agent), "agent " + agent + " follows another into " + p);
+			}
+		}
+		SpacetimePoint last = path.get(path.size() - 1);
+		for (int t = path.size(); t <= table.getMaxTime() + 1; t++) {
+			assertFalse(table.isReservedByOther(last.getX(), last.getY(), t, agent), "agent " + agent + " can't stay at its goal");
+		}
+	}
+	
+}
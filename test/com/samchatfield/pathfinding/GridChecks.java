@@ -0,0 +1,78 @@
+package com.samchatfield.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+
+/**
+ * What the tests check the searches against: distances from a plain breadth first search, and whether a path is a real walk over the map
+ * @author Sam
+ */
+public final class GridChecks {
+	
+	private GridChecks() {
+	}
+	
+	/**
+	 * Breadth first search from a cell
+	 * @param graph
+	 *            graph of the map
+	 * @param from
+	 *            cell ID
+	 * @return distance of every cell from it, or -1 for cells it can't reach
+	 */
+	public static int[] bfs(GridGraph graph, int from) {
+		int[] dist = new int[graph.size()];
+		Arrays.fill(dist, -1);
+		int[] queue = new int[graph.size()];
+		int head = 0, tail = 0;
+		dist[from] = 0;
+		queue[tail++] = from;
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		while (head < tail) {
+			int c = queue[head++];
+			for (int e = offsets[c]; e < offsets[c + 1]; e++) {
+				if (dist[targets[e]] < 0) {
+					dist[targets[e]] = dist[c] + 1;
+					queue[tail++] = targets[e];
+				}
+			}
+		}
+		return dist;
+	}
+	
+	/**
+	 * Check that a path goes from start to goal one time step at a time, each step a wait or a move to a free neighbour
+	 * @param graph
+	 *            graph of the map
+	 * @param path
+	 *            path to check
+	 * @param start
+	 *            start cell ID
+	 * @param goal
+	 *            goal cell ID
+	 */
+	public static void assertWalk(GridGraph graph, List<SpacetimePoint> path, int start, int goal) {
+		assertFalse(path.isEmpty(), "empty path");
+		assertEquals(start, graph.id(path.get(0).getX(), path.get(0).getY()), "path doesn't start at the start");
+		SpacetimePoint last = path.get(path.size() - 1);
+		assertEquals(goal, graph.id(last.getX(), last.getY()), "path doesn't end at the goal");
+		for (int i = 0; i < path.size(); i++) {
+			SpacetimePoint p = path.get(i);
+			assertEquals(path.get(0).getTime() + i, p.getTime(), "time steps aren't consecutive");
+			assertFalse(graph.isObstacle(graph.id(p.getX(), p.getY())), "path goes through an obstacle at " + p);
+			if (i > 0) {
+				SpacetimePoint q = path.get(i - 1);
+				assertTrue(Math.abs(p.getX() - q.getX()) + Math.abs(p.getY() - q.getY()) <= 1, "path jumps from " + q + " to " + p);
+			}
+		}
+	}
+	
+}
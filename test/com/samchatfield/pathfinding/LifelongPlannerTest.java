@@ -0,0 +1,128 @@
+package com.samchatfield.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.Node;
+import com.samchatfield.pathfinding.data.TaskQueue;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Lifelong planning over many steps: the agents keep finishing tasks and never run into each other, even as the map changes under them
+ * @author Sam
+ */
+public class LifelongPlannerTest {
+	
+	@ParameterizedTest(name = "assignment {0}")
+	@ValueSource(strings = { "FIRST", "GREEDY", "HUNGARIAN" })
+	public void agentsFinishTasksWithoutMeeting(String assignment) throws InvalidCoordinateException {
+		run(assignment, false);
+	}
+	
+	@ParameterizedTest(name = "assignment {0}")
+	@ValueSource(strings = { "FIRST", "AUCTION" })
+	public void agentsKeepClearOfNewObstacles(String assignment) throws InvalidCoordinateException {
+		run(assignment, true);
+	}
+	
+	@Test
+	public void agentsMustStartApart() {
+		WorldMap map = WorldMap.random(8, 8, 0, 80);
+		ArrayList<Agent> agents = Scenarios.random(map, 2, 81);
+		agents.get(1).setStart(agents.get(0).getStart());
+		assertThrows(IllegalArgumentException.class, () -> new LifelongPlanner(map, agents, new TaskQueue()));
+	}
+	
+	@Test
+	public void plannersKeepWorkingPastTheTimesAReservationCanHold() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(8, 8, 0, 84);
+		ArrayList<Agent> agents = Scenarios.random(map, 2, 85);
+		TaskQueue queue = new TaskQueue();
+		LifelongPlanner planner = new LifelongPlanner(map, agents, queue);
+		// Idle for longer than the 22 bits of time in a reservation go
+		int idle = 1 << 22;
+		for (int step = 0; step < idle; step++) {
+			planner.step();
+		}
+		GridGraph graph = map.getGraph();
+		queue.add(graph.id(7, 7), planner.getTime());
+		queue.add(graph.id(0, 0), planner.getTime());
+		for (int step = 0; step < 64 && planner.getCompleted() < 2; step++) {
+			planner.step();
+		}
+		assertEquals(2, planner.getCompleted());
+		assertTrue(planner.getTime() > idle);
+		assertTrue(planner.getMeanTaskTime() < 64);
+	}
+	
+	private static void run(String assignment, boolean changing) throws InvalidCoordinateException {
+		WorldMap map = Scenarios.warehouse(40, 32);
+		int[] area = Scenarios.largestArea(map.getGraph());
+		ArrayList<Agent> agents = Scenarios.random(map, 30, 82);
+		TaskQueue queue = new TaskQueue();
+		LifelongPlanner planner = new LifelongPlanner(map, agents, queue);
+		if (!assignment.equals("FIRST")) {
+			planner.setAssigner(new TaskAssigner(map, TaskAssigner.Method.valueOf(assignment)));
+		}
+		Random r = new Random(83);
+		int n = agents.size();
+		int[] before = new int[n];
+		for (int step = 0; step < 400; step++) {
+			while (queue.size() < n) {
+				queue.add(area[r.nextInt(area.length)], planner.getTime());
+			}
+			GridGraph graph = map.getGraph();
+			for (int i = 0; i < n; i++) {
+				before[i] = graph.id(agents.get(i).getStart());
+			}
+			if (changing && step % 5 == 0) {
+				// Block a cell nobody is in, and now and then free one up again
+				int cell = area[r.nextInt(area.length)];
+				if (!occupied(before, cell)) {
+					map.setObstacle(graph.x(cell), graph.y(cell), r.nextInt(4) != 0);
+				}
+			}
+			planner.step();
+			assertEquals(step + 1, planner.getTime());
+			graph = map.getGraph();
+			for (int i = 0; i < n; i++) {
+				Node at = agents.get(i).getStart();
+				int cell = graph.id(at);
+				assertFalse(graph.isObstacle(cell), "agent " + i + " is on an obstacle at time " + planner.getTime());
+				assertTrue(Math.abs(graph.x(cell) - graph.x(before[i])) + Math.abs(graph.y(cell) - graph.y(before[i])) <= 1,
+						"agent " + i + " jumped at time " + planner.getTime());
+				for (int j = 0; j < i; j++) {
+					int other = graph.id(agents.get(j).getStart());
+					assertNotEquals(other, cell, "agents " + j + " and " + i + " meet at time " + planner.getTime());
+					assertFalse(other == before[i] && cell == before[j],
+							"agents " + j + " and " + i + " swap at time " + planner.getTime());
+				}
+			}
+		}
+		assertTrue(planner.getCompleted() > n, "only " + planner.getCompleted() + " tasks finished");
+		assertTrue(planner.getMeanTaskTime() > 0);
+	}
+	
+	private static boolean occupied(int[] cells, int cell) {
+		for (int c : cells) {
+			if (c == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+}
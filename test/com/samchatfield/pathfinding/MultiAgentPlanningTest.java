@@ -0,0 +1,231 @@
+package com.samchatfield.pathfinding;
+
+import static com.samchatfield.pathfinding.GridChecks.assertWalk;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.samchatfield.pathfinding.benchmark.PlanChecker;
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.BitsetReservationTable;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.HashReservationTable;
+import com.samchatfield.pathfinding.data.IntervalReservationTable;
+import com.samchatfield.pathfinding.data.ReservationTable;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+import com.samchatfield.pathfinding.metrics.SearchStats;
+
+/**
+ * The planners for many agents at once: each has to give every agent a path from its start to its goal without any two agents meeting
+ * @author Sam
+ */
+public class MultiAgentPlanningTest {
+	
+	static Stream<Arguments> planners() {
+		Function<WorldMap, AgentPlanning> sipp = MultiAgentPlanning::new;
+		Function<WorldMap, AgentPlanning> hash = m -> new MultiAgentPlanning(m, new HashReservationTable());
+		Function<WorldMap, AgentPlanning> bitset = m -> new MultiAgentPlanning(m, new BitsetReservationTable(m, 64));
+		Function<WorldMap, AgentPlanning> whca = WindowedMultiAgentPlanning::new;
+		Function<WorldMap, AgentPlanning> parallel = m -> new ParallelMultiAgentPlanning(m, ForkJoinPool.commonPool(), 8,
+				ParallelMultiAgentPlanning.Mode.BEST, 1);
+		Function<WorldMap, AgentPlanning> cbs = ConflictBasedSearch::new;
+		return Stream.of(Arguments.of("SIPP", sipp), Arguments.of("CA* hash table", hash), Arguments.of("CA* bitset table", bitset),
+				Arguments.of("WHCA*", whca), Arguments.of("parallel", parallel), Arguments.of("CBS", cbs));
+	}
+	
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("planners")
+	public void plansAreCompleteAndConflictFree(String name, Function<WorldMap, AgentPlanning> make) {
+		WorldMap map = WorldMap.random(32, 24, 0.1, 40);
+		for (long seed = 0; seed < 3; seed++) {
+			ArrayList<Agent> agents = Scenarios.random(map, 12, seed);
+			make.apply(map).computePlan(agents);
+			assertPlan(map, agents);
+		}
+	}
+	
+	@Test
+	public void conflictBasedSearchIsNoWorseThanPrioritisedPlanning() {
+		WorldMap map = WorldMap.random(16, 16, 0.15, 40);
+		for (long seed = 0; seed < 5; seed++) {
+			ArrayList<Agent> prioritised = Scenarios.random(map, 8, seed);
+			new MultiAgentPlanning(map).computePlan(prioritised);
+			ArrayList<Agent> optimal = Scenarios.random(map, 8, seed);
+			ConflictBasedSearch cbs = new ConflictBasedSearch(map);
+			cbs.computePlan(optimal);
+			assertTrue(cbs.isSolved());
+			assertPlan(map, optimal);
+			assertEquals(cbs.getSumOfCosts(), PlanChecker.sumOfCosts(optimal));
+			if (PlanChecker.complete(prioritised)) {
+				assertTrue(cbs.getSumOfCosts() <= PlanChecker.sumOfCosts(prioritised));
+			}
+		}
+	}
+	
+	@Test
+	public void windowedPlanningFollowsEveryWindow() {
+		WorldMap map = WorldMap.random(32, 24, 0.1, 41);
+		ArrayList<Agent> agents = Scenarios.random(map, 12, 41);
+		WindowedMultiAgentPlanning whca = new WindowedMultiAgentPlanning(map, 8, 3);
+		whca.computePlan(agents);
+		assertEquals(0, whca.getUnfinished());
+		assertPlan(map, agents);
+		
+		GridGraph graph = map.getGraph();
+		int[] cells = new int[agents.size()];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = graph.id(agents.get(i).getStart());
+		}
+		int[][] window = whca.planWindow(agents, cells);
+		for (int i = 0; i < cells.length; i++) {
+			assertEquals(9, window[i].length);
+			assertEquals(cells[i], window[i][0]);
+		}
+	}
+	
+	@Test
+	public void windowedPlanningPutsStuckAgentsFirst() throws InvalidCoordinateException {
+		// A corridor with a pocket off it, where the second agent is stuck in the way of the first unless it goes first
+		WorldMap map = WorldMap.random(5, 2, 0, 45);
+		for (int x = 0; x < 5; x++) {
+			map.setObstacle(x, 1, x != 1);
+		}
+		ArrayList<Agent> agents = new ArrayList<>();
+		agents.add(new Agent(map.nodeAt(1, 0), map.nodeAt(4, 0), 0));
+		agents.add(new Agent(map.nodeAt(3, 0), map.nodeAt(0, 0), 1));
+		WindowedMultiAgentPlanning whca = new WindowedMultiAgentPlanning(map, 8, 4);
+		whca.computePlan(agents);
+		assertFalse(whca.isBlocked());
+		assertEquals(0, whca.getUnfinished());
+		assertPlan(map, agents);
+		
+		// Without the pocket neither can get past the other, whoever goes first
+		map.setObstacle(1, 1, true);
+		for (Agent a : agents) {
+			a.setPath(null);
+		}
+		whca.computePlan(agents);
+		assertTrue(whca.isBlocked());
+		assertEquals(2, whca.getUnfinished());
+		assertNull(agents.get(0).getPath());
+		assertNull(agents.get(1).getPath());
+	}
+	
+	@Test
+	public void parallelPlanningFindsTheBestOfItsOrderings() {
+		WorldMap map = WorldMap.random(32, 24, 0.1, 42);
+		ArrayList<Agent> agents = Scenarios.random(map, 16, 42);
+		ParallelMultiAgentPlanning parallel = new ParallelMultiAgentPlanning(map, ForkJoinPool.commonPool(), 16,
+				ParallelMultiAgentPlanning.Mode.BEST, 3);
+		parallel.computePlan(agents);
+		assertTrue(parallel.isComplete());
+		assertPlan(map, agents);
+		assertEquals(parallel.getSumOfCosts(), PlanChecker.sumOfCosts(agents));
+		assertEquals(agents.size(), parallel.getWinningOrder().length);
+		
+		// The given order is always one of those tried, so the best is no worse than it
+		ArrayList<Agent> inOrder = Scenarios.random(map, 16, 42);
+		new MultiAgentPlanning(map).computePlan(inOrder);
+		assertTrue(parallel.getSumOfCosts() <= PlanChecker.sumOfCosts(inOrder));
+	}
+	
+	@Test
+	public void goalsAreOnlyReservedFromWhenTheirAgentsArrive() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(7, 3, 0, 44);
+		// The first agent gets to its goal at time 4, long after the second has gone straight through it
+		AgentPlanning[] planners = { new MultiAgentPlanning(map), new MultiAgentPlanning(map, new HashReservationTable()) };
+		for (AgentPlanning planner : planners) {
+			ArrayList<Agent> agents = new ArrayList<>();
+			agents.add(new Agent(map.nodeAt(0, 0), map.nodeAt(3, 1), 0));
+			agents.add(new Agent(map.nodeAt(1, 1), map.nodeAt(5, 1), 1));
+			planner.computePlan(agents);
+			assertPlan(map, agents);
+			assertEquals(5, agents.get(0).getPath().size());
+			assertEquals(5, agents.get(1).getPath().size());
+		}
+	}
+	
+	@Test
+	public void keptPathsAndStuckAgentsAreReservedAround() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(7, 3, 0, 45);
+		// Nobody can get to the bottom left corner
+		map.block(0, 1);
+		map.block(1, 2);
+		ReservationTable[] tables = { new IntervalReservationTable(7, 3), new HashReservationTable() };
+		for (ReservationTable table : tables) {
+			MultiAgentPlanning planner = new MultiAgentPlanning(map, table);
+			ArrayList<Agent> agents = new ArrayList<>();
+			agents.add(new Agent(map.nodeAt(1, 1), map.nodeAt(6, 1), 0));
+			planner.computePlan(agents);
+			
+			// The first agent keeps its path, which goes through the goal of the second at time 4, so the second has to wait for it to pass
+			agents.add(new Agent(map.nodeAt(5, 0), map.nodeAt(5, 1), 1));
+			agents.add(new Agent(map.nodeAt(0, 0), map.nodeAt(0, 2), 2));
+			planner.computePlan(agents);
+			assertEquals(0, PlanChecker.conflicts(agents));
+			assertTrue(agents.get(1).getPath().size() > 5);
+			assertEquals(0, table.agentAt(6, 1, 50));
+			assertNull(agents.get(2).getPath());
+			assertEquals(2, table.agentAt(0, 0, 0));
+			assertEquals(2, table.agentAt(0, 0, 50));
+		}
+	}
+	
+	@Test
+	public void fallbackPathsThatStopShortAreDropped() {
+		WorldMap map = WorldMap.random(16, 16, 0.15, 43);
+		ArrayList<Agent> agents = Scenarios.random(map, 20, 43);
+		// A fallback that leaves the first agent where it is
+		AgentPlanning fallback = new AgentPlanning() {
+			
+			private final MultiAgentPlanning planner = new MultiAgentPlanning(map);
+			
+			@Override
+			public void computePlan(ArrayList<Agent> as) {
+				planner.computePlan(as);
+				ArrayList<SpacetimePoint> start = new ArrayList<>();
+				start.add(new SpacetimePoint(as.get(0).getStart(), 0));
+				as.get(0).setPath(start);
+			}
+			
+			@Override
+			public SearchStats getStats() {
+				return planner.getStats();
+			}
+			
+		};
+		ConflictBasedSearch cbs = new ConflictBasedSearch(map, 1, ConflictBasedSearch.DEFAULT_TIME_LIMIT_MS, fallback);
+		cbs.computePlan(agents);
+		assertFalse(cbs.isSolved());
+		assertNull(agents.get(0).getPath());
+		for (Agent a : agents.subList(1, agents.size())) {
+			if (a.getPath() != null) {
+				assertWalk(map.getGraph(), a.getPath(), map.getGraph().id(a.getStart()), map.getGraph().id(a.getGoal()));
+			}
+		}
+	}
+	
+	private static void assertPlan(WorldMap map, ArrayList<Agent> agents) {
+		GridGraph graph = map.getGraph();
+		assertTrue(PlanChecker.complete(agents), "not every agent has a path");
+		assertEquals(0, PlanChecker.conflicts(agents));
+		for (Agent a : agents) {
+			assertWalk(graph, a.getPath(), graph.id(a.getStart()), graph.id(a.getGoal()));
+			assertEquals(0, a.getPath().get(0).getTime());
+		}
+	}
+	
+}
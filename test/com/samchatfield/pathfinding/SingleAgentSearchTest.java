@@ -0,0 +1,175 @@
+package com.samchatfield.pathfinding;
+
+import static com.samchatfield.pathfinding.GridChecks.assertWalk;
+import static com.samchatfield.pathfinding.GridChecks.bfs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.samchatfield.pathfinding.data.CompressedPathDatabase;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.MapUpdate;
+import com.samchatfield.pathfinding.data.OpenList;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * The single agent searches against breadth first search, on a fixed map and on one that changes between queries
+ * @author Sam
+ */
+public class SingleAgentSearchTest {
+	
+	/**
+	 * A search strategy that finds shortest paths, made for a map, and a query on it
+	 */
+	interface Search {
+		ArrayList<SpacetimePoint> pathfind(int start, int goal);
+	}
+	
+	static Stream<Arguments> shortestPathSearches() {
+		Function<WorldMap, Search> heap = m -> new AStar(m, OpenList.Kind.HEAP)::pathfind;
+		Function<WorldMap, Search> buckets = m -> new AStar(m, OpenList.Kind.BUCKETS)::pathfind;
+		Function<WorldMap, Search> jps = m -> new JumpPointSearch(m, false)::pathfind;
+		Function<WorldMap, Search> jpsTable = m -> new JumpPointSearch(m, true)::pathfind;
+		Function<WorldMap, Search> rra = m -> new AStar(m, OpenList.Kind.BUCKETS, new ReverseResumableAStar(m))::pathfind;
+		Function<WorldMap, Search> dstar = m -> new DStarLite(m)::pathfind;
+		return Stream.of(Arguments.of("A* heap", heap), Arguments.of("A* buckets", buckets), Arguments.of("JPS", jps),
+				Arguments.of("JPS jump table", jpsTable), Arguments.of("A* with RRA*", rra), Arguments.of("D* Lite", dstar));
+	}
+	
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("shortestPathSearches")
+	public void pathsAreShortest(String name, Function<WorldMap, Search> make) {
+		WorldMap map = WorldMap.random(40, 30, 0.3, 11);
+		assertShortest(map, make.apply(map), new Random(12), 150);
+	}
+	
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("shortestPathSearches")
+	public void pathsStayShortestAsTheMapChanges(String name, Function<WorldMap, Search> make) throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(32, 32, 0.25, 13);
+		// The same instance is used throughout, so it has to pick up every change
+		Search search = make.apply(map);
+		Random r = new Random(14);
+		for (int round = 0; round < 30; round++) {
+			MapUpdate update = new MapUpdate(map);
+			for (int i = 0; i < 6; i++) {
+				update.set(r.nextInt(32), r.nextInt(32), r.nextBoolean());
+			}
+			map.apply(update);
+			assertShortest(map, search, r, 10);
+		}
+	}
+	
+	@Test
+	public void hierarchicalPathsAreWalksNoShorterThanShortest() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(48, 40, 0.25, 15);
+		HPAStar hpa = new HPAStar(map, 8);
+		Random r = new Random(16);
+		for (int round = 0; round < 10; round++) {
+			GridGraph graph = map.getGraph();
+			for (int i = 0; i < 30; i++) {
+				int start = r.nextInt(graph.size()), goal = r.nextInt(graph.size());
+				if (graph.isObstacle(start) || graph.isObstacle(goal)) {
+					continue;
+				}
+				int shortest = bfs(graph, start)[goal];
+				ArrayList<SpacetimePoint> path = hpa.pathfind(start, goal);
+				if (shortest < 0) {
+					assertNull(path);
+				} else {
+					assertNotNull(path, "no path from " + start + " to " + goal);
+					assertWalk(graph, path, start, goal);
+					assertTrue(path.size() - 1 >= shortest);
+				}
+			}
+			map.block(r.nextInt(48), r.nextInt(40));
+		}
+	}
+	
+	@Test
+	public void firstMovesFollowShortestPaths() {
+		WorldMap map = WorldMap.random(24, 20, 0.3, 17);
+		FirstMoveSearch search = new FirstMoveSearch(map, CompressedPathDatabase.build(map));
+		assertShortest(map, search::pathfind, new Random(18), 200);
+	}
+	
+	@Test
+	public void firstMovesRefuseAMapThatHasChanged() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(16, 16, 0.2, 19);
+		FirstMoveSearch search = new FirstMoveSearch(map, CompressedPathDatabase.build(map));
+		GridGraph graph = map.getGraph();
+		int cell = graph.size() - 1;
+		while (graph.isObstacle(cell)) {
+			cell--;
+		}
+		map.block(graph.x(cell), graph.y(cell));
+		assertThrows(IllegalStateException.class, () -> search.pathfind(0, 1));
+	}
+	
+	@Test
+	public void dStarLiteFollowsAnAgentAlongItsPath() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(30, 30, 0.2, 20);
+		DStarLite search = new DStarLite(map);
+		Random r = new Random(21);
+		GridGraph graph = map.getGraph();
+		int start = 0, goal = graph.size() - 1;
+		while (graph.isObstacle(start)) {
+			start++;
+		}
+		while (graph.isObstacle(goal) || bfs(graph, start)[goal] < 0) {
+			goal--;
+		}
+		// Move a step at a time, blocking a cell somewhere else every step
+		int cell = start;
+		while (cell != goal) {
+			graph = map.getGraph();
+			ArrayList<SpacetimePoint> path = search.pathfind(cell, goal);
+			int shortest = bfs(graph, cell)[goal];
+			if (shortest < 0) {
+				assertNull(path);
+				return;
+			}
+			assertWalk(graph, path, cell, goal);
+			assertEquals(shortest, path.size() - 1);
+			cell = graph.id(path.get(1).getX(), path.get(1).getY());
+			int blocked = r.nextInt(graph.size());
+			if (blocked != cell && blocked != goal) {
+				map.block(graph.x(blocked), graph.y(blocked));
+			}
+		}
+	}
+	
+	private static void assertShortest(WorldMap map, Search search, Random r, int queries) {
+		GridGraph graph = map.getGraph();
+		for (int i = 0; i < queries; i++) {
+			int start = r.nextInt(graph.size()), goal = r.nextInt(graph.size());
+			if (graph.isObstacle(start) || graph.isObstacle(goal)) {
+				continue;
+			}
+			int shortest = bfs(graph, start)[goal];
+			ArrayList<SpacetimePoint> path = search.pathfind(start, goal);
+			if (shortest < 0) {
+				assertNull(path, "path from " + start + " to " + goal + " where there is none");
+			} else {
+				assertNotNull(path, "no path from " + start + " to " + goal);
+				assertWalk(graph, path, start, goal);
+				assertEquals(shortest, path.size() - 1, "path from " + start + " to " + goal);
+			}
+		}
+	}
+	
+}
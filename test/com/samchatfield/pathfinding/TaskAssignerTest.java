@@ -0,0 +1,197 @@
+package com.samchatfield.pathfinding;
+
+import static com.samchatfield.pathfinding.GridChecks.bfs;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Assignment of goals to agents: the Hungarian method against every possible assignment, and the faster methods for being valid
+ * @author Sam
+ */
+public class TaskAssignerTest {
+	
+	@Test
+	public void hungarianAssignmentIsTheCheapest() {
+		WorldMap map = WorldMap.random(20, 20, 0.25, 70);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		TaskAssigner assigner = new TaskAssigner(map, TaskAssigner.Method.HUNGARIAN);
+		Random r = new Random(71);
+		for (int round = 0; round < 20; round++) {
+			// Sometimes more agents than goals and sometimes fewer
+			int[] cells = distinct(area, 14, r);
+			int agents = 3 + r.nextInt(5);
+			int[] as = Arrays.copyOf(cells, agents);
+			int[] goals = Arrays.copyOfRange(cells, agents, agents + 3 + r.nextInt(5));
+			int[] result = assigner.assign(as, goals);
+			assertValid(graph, as, goals, result, assigner.getCost());
+			assertEquals(Math.min(as.length, goals.length), assigned(result));
+			assertEquals(cheapest(graph, as, goals, 0, new boolean[as.length]), assigner.getCost());
+		}
+	}
+	
+	@ParameterizedTest
+	@EnumSource(TaskAssigner.Method.class)
+	public void everyGoalThatCanGetsAnAgent(TaskAssigner.Method method) {
+		WorldMap map = Scenarios.warehouse(64, 48);
+		GridGraph graph = map.getGraph();
+		int[] area = Scenarios.largestArea(graph);
+		TaskAssigner assigner = new TaskAssigner(map, method, new DistanceTable(map), ForkJoinPool.commonPool(), 2);
+		TaskAssigner best = new TaskAssigner(map, TaskAssigner.Method.HUNGARIAN);
+		Random r = new Random(72);
+		for (int round = 0; round < 5; round++) {
+			int[] cells = distinct(area, 160, r);
+			int[] as = Arrays.copyOf(cells, 80);
+			int[] goals = Arrays.copyOfRange(cells, 80, 80 + 40 + round * 20);
+			int[] result = assigner.assign(as, goals);
+			assertValid(graph, as, goals, result, assigner.getCost());
+			assertEquals(Math.min(as.length, goals.length), assigned(result));
+			best.assign(as, goals);
+			assertTrue(assigner.getCost() >= best.getCost());
+		}
+	}
+	
+	@ParameterizedTest
+	@EnumSource(TaskAssigner.Method.class)
+	public void goalsNoAgentCanReachGetNone(TaskAssigner.Method method) throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(10, 10, 0, 73);
+		// Wall off the corner cell
+		map.block(1, 0);
+		map.block(0, 1);
+		GridGraph graph = map.getGraph();
+		TaskAssigner assigner = new TaskAssigner(map, method);
+		int[] result = assigner.assign(new int[] { graph.id(5, 5), graph.id(9, 1) }, new int[] { graph.id(0, 0), graph.id(9, 0) });
+		assertArrayEquals(new int[] { -1, 1 }, result);
+		assertEquals(1, assigner.getCost());
+	}
+	
+	@Test
+	public void distanceTablesHoldTrueDistances() {
+		WorldMap map = WorldMap.random(30, 30, 0.3, 74);
+		GridGraph graph = map.getGraph();
+		DistanceTable table = new DistanceTable(map, 100, ForkJoinPool.commonPool());
+		Random r = new Random(75);
+		// More goals than go in one pass, some of them twice
+		int[] goals = new int[90];
+		for (int i = 0; i < goals.length; i++) {
+			goals[i] = i % 3 == 2 ? goals[i - 1] : r.nextInt(graph.size());
+			while (graph.isObstacle(goals[i])) {
+				goals[i] = r.nextInt(graph.size());
+			}
+		}
+		int[][] distances = table.distances(goals);
+		for (int i = 0; i < goals.length; i++) {
+			int[] dist = bfs(graph, goals[i]);
+			for (int c = 0; c < graph.size(); c++) {
+				if (!graph.isObstacle(c)) {
+					assertEquals(dist[c] < 0 ? Heuristic.UNREACHABLE : dist[c], distances[i][c]);
+				}
+			}
+			assertEquals(distances[i][goals[0]], table.estimate(goals[0], goals[i]));
+		}
+	}
+	
+	@Test
+	public void expectedGoalsAreCachedWithinTheMemoryBudget() {
+		// Each goal takes 4 bytes a cell, so 5 goals fit
+		WorldMap map = WorldMap.random(10, 10, 0, 76);
+		DistanceTable table = new DistanceTable(map, 2, ForkJoinPool.commonPool(), 5 * 4 * 100);
+		table.expectGoals(3);
+		for (int goal = 0; goal < 20; goal++) {
+			table.distances(goal);
+		}
+		assertEquals(3, table.cachedGoals());
+		table.expectGoals(1000);
+		for (int goal = 0; goal < 20; goal++) {
+			table.distances(goal);
+		}
+		assertEquals(5, table.cachedGoals());
+	}
+	
+	/**
+	 * Check that no agent is given two goals and that the cost is the total distance of the pairs
+	 */
+	private static void assertValid(GridGraph graph, int[] agents, int[] goals, int[] result, long cost) {
+		assertEquals(goals.length, result.length);
+		boolean[] taken = new boolean[agents.length];
+		long total = 0;
+		for (int g = 0; g < goals.length; g++) {
+			if (result[g] >= 0) {
+				assertFalse(taken[result[g]], "agent " + result[g] + " is given two goals");
+				taken[result[g]] = true;
+				int d = bfs(graph, goals[g])[agents[result[g]]];
+				assertNotEquals(-1, d);
+				total += d;
+			}
+		}
+		assertEquals(total, cost);
+	}
+	
+	private static int assigned(int[] result) {
+		int n = 0;
+		for (int a : result) {
+			if (a >= 0) {
+				n++;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Lowest total distance of any assignment of as many goals as possible, trying every one. The cells are all connected.
+	 */
+	private static long cheapest(GridGraph graph, int[] agents, int[] goals, int g, boolean[] taken) {
+		if (g == goals.length) {
+			return 0;
+		}
+		int free = 0;
+		for (boolean t : taken) {
+			free += t ? 0 : 1;
+		}
+		if (free == 0) {
+			return 0;
+		}
+		int[] dist = bfs(graph, goals[g]);
+		long best = Long.MAX_VALUE;
+		// A goal is only left out when there are more goals still to come than free agents
+		if (goals.length - g > free) {
+			best = cheapest(graph, agents, goals, g + 1, taken);
+		}
+		for (int a = 0; a < agents.length; a++) {
+			if (!taken[a]) {
+				taken[a] = true;
+				best = Math.min(best, dist[agents[a]] + cheapest(graph, agents, goals, g + 1, taken));
+				taken[a] = false;
+			}
+		}
+		return best;
+	}
+	
+	private static int[] distinct(int[] area, int n, Random r) {
+		int[] cells = area.clone();
+		for (int i = 0; i < n; i++) {
+			int j = i + r.nextInt(cells.length - i);
+			int c = cells[i];
+			cells[i] = cells[j];
+			cells[j] = c;
+		}
+		return Arrays.copyOf(cells, n);
+	}
+	
+}
@@ -0,0 +1,91 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.util.List;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.data.SpacetimePoint;
+
+/**
+ * Checks on finished plans for the tests and benchmarks. Agents are taken to stay at the end of their path once it's over, and agents without a path
+ * to stay at their start.
+ * @author Sam
+ */
+public final class PlanChecker {
+	
+	private PlanChecker() {
+	}
+	
+	/**
+	 * Count the conflicts in a plan: two agents in the same cell at the same time, or two agents swapping cells
+	 * @param as
+	 *            agents with their paths
+	 * @return number of conflicts
+	 */
+	public static int conflicts(List<Agent> as) {
+		int length = 0;
+		for (Agent a : as) {
+			if (a.getPath() != null) {
+				length = Math.max(length, a.getPath().size());
+			}
+		}
+		
+		int conflicts = 0;
+		for (int t = 0; t < length; t++) {
+			for (int i = 0; i < as.size(); i++) {
+				for (int j = i + 1; j < as.size(); j++) {
+					long ai = at(as.get(i), t), aj = at(as.get(j), t);
+					if (ai == aj) {
+						conflicts++;
+					} else if (t > 0 && ai == at(as.get(j), t - 1) && aj == at(as.get(i), t - 1)) {
+						conflicts++;
+					}
+				}
+			}
+		}
+		return conflicts;
+	}
+	
+	/**
+	 * Return whether every agent with a goal has a path to it
+	 * @param as
+	 *            agents with their paths
+	 * @return is complete
+	 */
+	public static boolean complete(List<Agent> as) {
+		for (Agent a : as) {
+			if (a.getGoal() != null && (a.getPath() == null || a.getPath().isEmpty())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the total number of time steps of the agents' paths
+	 * @param as
+	 *            agents with their paths
+	 * @return sum of costs
+	 */
+	public static int sumOfCosts(List<Agent> as) {
+		int cost = 0;
+		for (Agent a : as) {
+			if (a.getPath() != null && !a.getPath().isEmpty()) {
+				cost += a.getPath().size() - 1;
+			}
+		}
+		return cost;
+	}
+	
+	/**
+	 * Position of an agent at a time step packed into a long
+	 */
+	private static long at(Agent a, int t) {
+		List<SpacetimePoint> path = a.getPath();
+		if (path == null || path.isEmpty()) {
+			return ((long) a.getStart().getX() << 32) | a.getStart().getY();
+		}
+		SpacetimePoint p = path.get(Math.min(t, path.size() - 1));
+		return ((long) p.getX() << 32) | p.getY();
+	}
+	
+}
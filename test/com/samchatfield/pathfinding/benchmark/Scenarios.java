@@ -0,0 +1,131 @@
+package com.samchatfield.pathfinding.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * Random problem instances for the tests and benchmarks
+ * @author Sam
+ */
+public final class Scenarios {
+	
+	private Scenarios() {
+	}
+	
+	/**
+	 * Create agents with random starts and goals, all different, in the largest connected area of the map so every agent can reach its goal
+	 * @param map
+	 *            map data
+	 * @param agents
+	 *            number of agents
+	 * @param seed
+	 *            random seed
+	 * @return the agents, numbered from 0
+	 * @throws IllegalArgumentException
+	 *             if the area isn't big enough for that many starts and goals
+	 */
+	public static ArrayList<Agent> random(WorldMap map, int agents, long seed) {
+		GridGraph graph = map.getGraph();
+		int[] area = largestArea(graph);
+		if (area.length < 2 * agents) {
+			throw new IllegalArgumentException("Only " + area.length + " connected cells for " + agents + " agents");
+		}
+		
+		// A partial shuffle of the area gives distinct cells for every start and goal
+		Random r = new Random(seed);
+		for (int i = 0; i < 2 * agents; i++) {
+			int j = i + r.nextInt(area.length - i);
+			int tmp = area[i];
+			area[i] = area[j];
+			area[j] = tmp;
+		}
+		
+		ArrayList<Agent> list = new ArrayList<>(agents);
+		try {
+			for (int i = 0; i < agents; i++) {
+				int s = area[2 * i];
+				int g = area[2 * i + 1];
+				list.add(new Agent(map.nodeAt(graph.x(s), graph.y(s)), map.nodeAt(graph.x(g), graph.y(g)), i));
+			}
+		} catch (InvalidCoordinateException e) {
+			// Can't happen, the cells all come from the map
+			throw new IllegalStateException(e);
+		}
+		return list;
+	}
+	
+	/**
+	 * Create a warehouse of the given size with long rows of shelves two cells deep, separated by aisles two cells wide and broken up by a
+	 * cross aisle every 40 cells
+	 * @param width
+	 *            width of the warehouse
+	 * @param height
+	 *            height of the warehouse
+	 * @return the map
+	 */
+	public static WorldMap warehouse(int width, int height) {
+		boolean[] grid = new boolean[width * height];
+		for (int y = 2; y < height - 2; y++) {
+			if (y % 4 != 2 && y % 4 != 3) {
+				continue;
+			}
+			for (int x = 2; x < width - 2; x++) {
+				grid[y * width + x] = x % 40 > 1;
+			}
+		}
+		return new WorldMap(width, height, grid);
+	}
+	
+	/**
+	 * Find the cells of the largest set of free cells that are all connected to each other
+	 * @param graph
+	 *            graph of the map
+	 * @return cell IDs
+	 */
+	public static int[] largestArea(GridGraph graph) {
+		int n = graph.size();
+		int[] label = new int[n];
+		int[] queue = new int[n];
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int best = 0, bestSize = 0, areas = 0;
+		
+		for (int c = 0; c < n; c++) {
+			if (graph.isObstacle(c) || label[c] != 0) {
+				continue;
+			}
+			int id = ++areas;
+			int head = 0, tail = 0;
+			queue[tail++] = c;
+			label[c] = id;
+			while (head < tail) {
+				int cur = queue[head++];
+				for (int e = offsets[cur]; e < offsets[cur + 1]; e++) {
+					if (label[targets[e]] == 0) {
+						label[targets[e]] = id;
+						queue[tail++] = targets[e];
+					}
+				}
+			}
+			if (tail > bestSize) {
+				best = id;
+				bestSize = tail;
+			}
+		}
+		
+		int[] cells = new int[bestSize];
+		int k = 0;
+		for (int c = 0; c < n; c++) {
+			if (label[c] == best && best != 0) {
+				cells[k++] = c;
+			}
+		}
+		return cells;
+	}
+	
+}
@@ -0,0 +1,48 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.samchatfield.pathfinding.exception.InvalidDatabaseException;
+
+/**
+ * Writing path databases out and memory-mapping them back in
+ * @author Sam
+ */
+public class CompressedPathDatabaseTest {
+	
+	@TempDir
+	Path dir;
+	
+	@Test
+	public void databasesRoundTrip() throws IOException {
+		WorldMap map = WorldMap.random(20, 12, 0.25, 22);
+		CompressedPathDatabase built = CompressedPathDatabase.build(map);
+		Path file = dir.resolve("random.cpd");
+		built.write(file);
+		CompressedPathDatabase opened = CompressedPathDatabase.open(file, map);
+		assertTrue(opened.isFor(map));
+		assertEquals(built.runCount(), opened.runCount());
+		int cells = map.getWidth() * map.getHeight();
+		for (int s = 0; s < cells; s++) {
+			for (int t = 0; t < cells; t++) {
+				assertEquals(built.firstMove(s, t), opened.firstMove(s, t));
+			}
+		}
+	}
+	
+	@Test
+	public void databasesForOtherMapsAreRefused() throws IOException {
+		Path file = dir.resolve("random.cpd");
+		CompressedPathDatabase.build(WorldMap.random(20, 12, 0.25, 22)).write(file);
+		assertThrows(InvalidDatabaseException.class, () -> CompressedPathDatabase.open(file, WorldMap.random(20, 12, 0.25, 23)));
+	}
+	
+}
@@ -0,0 +1,86 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.samchatfield.pathfinding.exception.InvalidMapException;
+
+/**
+ * Loading maps of any size from MovingAI and binary map files
+ * @author Sam
+ */
+public class MapLoaderTest {
+	
+	@TempDir
+	Path dir;
+	
+	@Test
+	public void movingAIFilesRoundTrip() throws IOException {
+		WorldMap map = random(37, 23, 0.3, 5);
+		Path file = dir.resolve("random.map");
+		MapLoader.writeMovingAI(map, file);
+		assertSameCells(map, MapLoader.loadMovingAI(file));
+		assertSameCells(map, MapLoader.load(file));
+	}
+	
+	@Test
+	public void binaryFilesRoundTrip() throws IOException {
+		WorldMap map = random(70, 3, 0.4, 6);
+		Path file = dir.resolve("random.bin");
+		MapLoader.writeBinary(map, file);
+		assertSameCells(map, MapLoader.loadBinary(file));
+		assertSameCells(map, MapLoader.load(file));
+	}
+	
+	@Test
+	public void firstRowOfAMovingAIFileIsTheTop() throws IOException {
+		Path file = dir.resolve("small.map");
+		Files.write(file, "type octile\nheight 2\nwidth 3\nmap\n@..\n..T\n".getBytes(StandardCharsets.US_ASCII));
+		WorldMap map = MapLoader.load(file);
+		assertEquals(3, map.getWidth());
+		assertEquals(2, map.getHeight());
+		assertTrue(map.isObstacle(1 * 3 + 0));
+		assertTrue(map.isObstacle(0 * 3 + 2));
+		int free = 0;
+		for (int i = 0; i < 6; i++) {
+			free += map.isObstacle(i) ? 0 : 1;
+		}
+		assertEquals(4, free);
+	}
+	
+	@Test
+	public void truncatedFilesAreRejected() throws IOException {
+		Path file = dir.resolve("short.map");
+		Files.write(file, "type octile\nheight 4\nwidth 4\nmap\n....\n..\n".getBytes(StandardCharsets.US_ASCII));
+		assertThrows(InvalidMapException.class, () -> MapLoader.load(file));
+	}
+	
+	private static WorldMap random(int width, int height, double density, long seed) {
+		Random r = new Random(seed);
+		boolean[] obstacles = new boolean[width * height];
+		for (int i = 0; i < obstacles.length; i++) {
+			obstacles[i] = r.nextDouble() < density;
+		}
+		return new WorldMap(width, height, obstacles);
+	}
+	
+	private static void assertSameCells(WorldMap expected, WorldMap actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int i = 0; i < expected.getWidth() * expected.getHeight(); i++) {
+			assertEquals(expected.isObstacle(i), actual.isObstacle(i), "cell " + i);
+			assertEquals(expected.getNodes().get(i).getNeighbours().size(), actual.getNodes().get(i).getNeighbours().size(), "cell " + i);
+		}
+	}
+	
+}
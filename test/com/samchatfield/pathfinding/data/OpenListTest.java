@@ -0,0 +1,112 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * The open lists and the search contexts that own them
+ * @author Sam
+ */
+public class OpenListTest {
+	
+	@ParameterizedTest
+	@EnumSource(OpenList.Kind.class)
+	public void statesComeOutInOrderOfTheirLatestF(OpenList.Kind kind) {
+		SearchContext ctx = new SearchContext(500);
+		OpenList open = ctx.open(kind);
+		Random r = new Random(1);
+		int[] f = new int[500];
+		Arrays.fill(f, -1);
+		for (int i = 0; i < 2000; i++) {
+			int id = r.nextInt(500);
+			// Decrease-keys only, as a search with a consistent heuristic only ever lowers the f value of an open state
+			int value = f[id] < 0 ? 50 + r.nextInt(100) : f[id] - r.nextInt(3);
+			open.push(id, value, 0);
+			f[id] = value;
+			assertTrue(open.contains(id));
+		}
+		int queued = 0;
+		for (int v : f) {
+			if (v >= 0) {
+				queued++;
+			}
+		}
+		assertEquals(queued, open.size());
+		
+		int last = Integer.MIN_VALUE;
+		while (!open.isEmpty()) {
+			int id = open.poll();
+			assertTrue(f[id] >= last, "polled f " + f[id] + " after " + last);
+			last = f[id];
+			f[id] = -1;
+			assertFalse(open.contains(id));
+		}
+		for (int v : f) {
+			assertEquals(-1, v);
+		}
+	}
+	
+	@ParameterizedTest
+	@EnumSource(OpenList.Kind.class)
+	public void tiesGoToTheHigherG(OpenList.Kind kind) {
+		OpenList open = new SearchContext(10).open(kind);
+		open.push(1, 5, 1);
+		open.push(2, 5, 3);
+		open.push(3, 4, 0);
+		assertEquals(3, open.poll());
+		assertEquals(2, open.poll());
+		assertEquals(1, open.poll());
+	}
+	
+	@ParameterizedTest
+	@EnumSource(OpenList.Kind.class)
+	public void removedStatesNeverComeOut(OpenList.Kind kind) {
+		OpenList open = new SearchContext(10).open(kind);
+		for (int i = 0; i < 10; i++) {
+			open.push(i, 10 - i, 0);
+		}
+		open.remove(9);
+		open.remove(4);
+		assertEquals(8, open.size());
+		assertEquals(8, open.poll());
+		open.clear();
+		assertTrue(open.isEmpty());
+		assertFalse(open.contains(0));
+	}
+	
+	@ParameterizedTest
+	@EnumSource(OpenList.Kind.class)
+	public void resetForgetsTheLastSearch(OpenList.Kind kind) {
+		SearchContext ctx = new SearchContext(4);
+		ctx.set(2, 3, 7, 1);
+		ctx.close(2);
+		ctx.open(kind).push(1, 2, 0);
+		ctx.reset();
+		assertEquals(SearchContext.INFINITY, ctx.g(2));
+		assertEquals(SearchContext.INFINITY, ctx.f(2));
+		assertFalse(ctx.isClosed(2));
+		assertTrue(ctx.open(kind).isEmpty());
+	}
+	
+	@ParameterizedTest
+	@EnumSource(OpenList.Kind.class)
+	public void poolHandsBackReleasedContextsReset(OpenList.Kind kind) {
+		SearchContextPool pool = new SearchContextPool(4);
+		SearchContext ctx = pool.acquire();
+		ctx.set(0, 1, 1, -1);
+		ctx.open(kind).push(0, 1, 1);
+		pool.release(ctx);
+		SearchContext again = pool.acquire();
+		assertTrue(ctx == again);
+		assertEquals(SearchContext.INFINITY, again.g(0));
+		assertTrue(again.open(kind).isEmpty());
+	}
+	
+}
@@ -0,0 +1,127 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * The cache of paths: a trip is only searched for again once the map has changed in a way that affects it, and the cache keeps within
+ * its limits
+ * @author Sam
+ */
+public class PathCacheTest {
+	
+	@Test
+	public void pathsAreOnlySearchedForOnce() {
+		WorldMap map = WorldMap.random(20, 20, 0, 50);
+		GridGraph graph = map.getGraph();
+		PathCache cache = new PathCache(map);
+		AStar astar = new AStar(map);
+		AtomicInteger searches = new AtomicInteger();
+		Node start = map.getNodes().get(0), goal = map.getNodes().get(graph.size() - 1);
+		
+		ArrayList<SpacetimePoint> first = cache.path(start, goal, () -> {
+			searches.incrementAndGet();
+			return astar.pathfind(graph.id(start), graph.id(goal));
+		});
+		ArrayList<SpacetimePoint> second = cache.path(start, goal, () -> {
+			searches.incrementAndGet();
+			return null;
+		});
+		assertEquals(1, searches.get());
+		assertEquals(first, second);
+		assertNotSame(first, second);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		// The lists handed out are copies
+		second.clear();
+		assertEquals(first, cache.path(start, goal, () -> null));
+	}
+	
+	@Test
+	public void missingPathsAreCachedToo() {
+		WorldMap map = WorldMap.random(10, 10, 0, 51);
+		PathCache cache = new PathCache(map);
+		Node a = map.getNodes().get(0), b = map.getNodes().get(1);
+		assertNull(cache.path(a, b, () -> null));
+		assertNull(cache.path(a, b, () -> {
+			throw new AssertionError("searched again");
+		}));
+		assertEquals(1, cache.getHits());
+	}
+	
+	@Test
+	public void aChangedMapOnlyDropsThePathsItAffects() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(10, 10, 0, 52);
+		GridGraph graph = map.getGraph();
+		PathCache cache = new PathCache(map);
+		AStar astar = new AStar(map);
+		AtomicInteger searches = new AtomicInteger();
+		Node a = map.nodeAt(0, 0), b = map.nodeAt(9, 0), c = map.nodeAt(0, 9), d = map.nodeAt(9, 9);
+		Supplier<ArrayList<SpacetimePoint>> top = () -> {
+			searches.incrementAndGet();
+			return astar.pathfind(graph.id(a), graph.id(b));
+		};
+		Supplier<ArrayList<SpacetimePoint>> bottom = () -> {
+			searches.incrementAndGet();
+			return astar.pathfind(graph.id(c), graph.id(d));
+		};
+		Supplier<ArrayList<SpacetimePoint>> missing = () -> {
+			searches.incrementAndGet();
+			return null;
+		};
+		cache.path(a, b, top);
+		cache.path(c, d, bottom);
+		cache.path(a, d, missing);
+		assertEquals(3, searches.get());
+		
+		// Only the path along the top runs through the new obstacle
+		map.block(5, 0);
+		cache.path(a, b, top);
+		cache.path(c, d, bottom);
+		cache.path(a, d, missing);
+		assertEquals(4, searches.get());
+		assertEquals(1, cache.getInvalidations());
+		
+		// Freeing the cell again makes a shortcut for the path round it, and might make the missing path, but the bottom path stays
+		map.setObstacle(5, 0, false);
+		cache.path(a, b, top);
+		cache.path(c, d, bottom);
+		cache.path(a, d, missing);
+		assertEquals(6, searches.get());
+		assertEquals(3, cache.getInvalidations());
+		assertEquals(3, cache.size());
+	}
+	
+	@Test
+	public void theCacheKeepsWithinItsLimits() {
+		WorldMap map = WorldMap.random(30, 30, 0, 53);
+		GridGraph graph = map.getGraph();
+		PathCache cache = new PathCache(map, 32, 1L << 20);
+		AStar astar = new AStar(map);
+		Node goal = map.getNodes().get(graph.size() - 1);
+		for (int i = 0; i < 400; i++) {
+			Node start = map.getNodes().get(i);
+			cache.path(start, goal, () -> astar.pathfind(graph.id(start), graph.id(goal)));
+		}
+		assertTrue(cache.size() <= 32, "cache holds " + cache.size() + " paths");
+		assertEquals(400 - cache.size(), cache.getEvictions());
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertThrows(IllegalArgumentException.class, () -> new PathCache(map, 0, 1));
+	}
+	
+}
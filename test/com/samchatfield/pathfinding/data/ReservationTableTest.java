@@ -0,0 +1,110 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * The reservation tables of points and of intervals
+ * @author Sam
+ */
+public class ReservationTableTest {
+	
+	static Stream<Arguments> tables() {
+		Supplier<ReservationTable> hash = HashReservationTable::new;
+		Supplier<ReservationTable> bitset = () -> new BitsetReservationTable(8, 8, 4, 16);
+		Supplier<ReservationTable> interval = () -> new IntervalReservationTable(8, 8);
+		return Stream.of(Arguments.of("hash", hash), Arguments.of("bitset", bitset), Arguments.of("interval", interval));
+	}
+	
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("tables")
+	public void reservationsAreFoundAgainByPointAndAgent(String name, Supplier<ReservationTable> make) {
+		ReservationTable table = make.get();
+		assertEquals(-1, table.getMaxTime());
+		table.reserve(1, 2, 3, 7);
+		table.reserve(new SpacetimePoint(1, 2, 4), 7);
+		table.reserve(5, 5, 300, 0);
+		assertEquals(7, table.agentAt(1, 2, 3));
+		assertEquals(7, table.agentAt(1, 2, 4));
+		assertEquals(0, table.agentAt(5, 5, 300));
+		assertEquals(ReservationTable.NONE, table.agentAt(1, 2, 5));
+		assertEquals(ReservationTable.NONE, table.agentAt(2, 1, 3));
+		assertTrue(table.isReservedByOther(1, 2, 3, 6));
+		assertFalse(table.isReservedByOther(1, 2, 3, 7));
+		assertFalse(table.isReservedByOther(0, 0, 3, 7));
+		assertEquals(300, table.getMaxTime());
+		
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(-1, table.getMaxTime());
+		assertEquals(ReservationTable.NONE, table.agentAt(1, 2, 3));
+	}
+	
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("tables")
+	public void reserveFromHoldsTheCellFromThen(String name, Supplier<ReservationTable> make) {
+		ReservationTable table = make.get();
+		table.reserveFrom(3, 3, 10, 2);
+		assertEquals(ReservationTable.NONE, table.agentAt(3, 3, 9));
+		assertEquals(2, table.agentAt(3, 3, 10));
+		assertEquals(2, table.agentAt(3, 3, 10 + ReservationTable.POINT_HOLD - 1));
+	}
+	
+	@Test
+	public void intervalsOfOneAgentJoinUp() {
+		IntervalReservationTable table = new IntervalReservationTable(4, 4);
+		for (int t = 0; t < 50; t++) {
+			table.reserve(1, 1, t, 3);
+		}
+		assertEquals(1, table.size());
+		table.reserveFrom(1, 1, 50, 3);
+		assertEquals(1, table.size());
+		assertEquals(3, table.agentAt(1, 1, Integer.MAX_VALUE - 1));
+		assertEquals(50, table.getMaxTime());
+	}
+	
+	@Test
+	public void intervalsOfOtherAgentsCantBeOverlapped() {
+		IntervalReservationTable table = new IntervalReservationTable(4, 4);
+		table.reserve(2, 0, 5, 9, 1);
+		assertThrows(IllegalStateException.class, () -> table.reserve(2, 0, 9, 2));
+		assertThrows(IllegalStateException.class, () -> table.reserve(2, 0, 0, 5, 2));
+		assertThrows(IllegalStateException.class, () -> table.reserveFrom(2, 0, 7, 2));
+		// Nothing has changed after the refusals
+		assertEquals(1, table.size());
+		assertEquals(ReservationTable.NONE, table.agentAt(2, 0, 4));
+		table.reserve(2, 0, 10, 2);
+		table.reserve(2, 0, 0, 4, 2);
+		assertEquals(3, table.size());
+	}
+	
+	@Test
+	public void safeIntervalsAreTheGapsBetweenOtherAgents() {
+		IntervalReservationTable table = new IntervalReservationTable(4, 4);
+		table.reserve(0, 0, 3, 4, 1);
+		table.reserve(0, 0, 8, 8, 2);
+		table.reserveFrom(0, 0, 20, 3);
+		assertEquals(0, table.nextFree(0, 0, 0, 9));
+		assertEquals(2, table.safeUntil(0, 0, 0, 9));
+		assertEquals(5, table.nextFree(0, 0, 3, 9));
+		assertEquals(7, table.safeUntil(0, 0, 5, 9));
+		assertEquals(9, table.nextFree(0, 0, 8, 9));
+		assertEquals(19, table.safeUntil(0, 0, 9, 9));
+		assertEquals(IntervalReservationTable.FOREVER, table.nextFree(0, 0, 25, 9));
+		// An agent's own reservations don't get in its way
+		assertEquals(3, table.nextFree(0, 0, 3, 1));
+		assertEquals(7, table.safeUntil(0, 0, 3, 1));
+		assertEquals(IntervalReservationTable.FOREVER, new IntervalReservationTable(4, 4).safeUntil(1, 1, 0, 0));
+	}
+	
+}
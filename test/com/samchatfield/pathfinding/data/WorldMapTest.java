@@ -0,0 +1,103 @@
+package com.samchatfield.pathfinding.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * The CSR graph of a map and the versioned snapshots published as the map is updated
+ * @author Sam
+ */
+public class WorldMapTest {
+	
+	@Test
+	public void graphHasAnEdgeForEveryPairOfFreeNeighbours() {
+		WorldMap map = WorldMap.random(19, 11, 0.3, 4);
+		GridGraph graph = map.getGraph();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int edges = 0;
+		for (int c = 0; c < graph.size(); c++) {
+			assertEquals(c, graph.id(graph.x(c), graph.y(c)));
+			int[] expected = new int[4];
+			int n = 0;
+			int x = graph.x(c), y = graph.y(c);
+			int[][] steps = { { 0, 1 }, { 0, -1 }, { -1, 0 }, { 1, 0 } };
+			for (int[] s : steps) {
+				int nx = x + s[0], ny = y + s[1];
+				if (!graph.isObstacle(c) && map.inBounds(nx, ny) && !graph.isObstacle(graph.id(nx, ny))) {
+					expected[n++] = graph.id(nx, ny);
+				}
+			}
+			int[] actual = Arrays.copyOfRange(targets, offsets[c], offsets[c + 1]);
+			Arrays.sort(actual);
+			int[] sorted = Arrays.copyOf(expected, n);
+			Arrays.sort(sorted);
+			assertArrayEquals(sorted, actual, "neighbours of " + c);
+			edges += n;
+		}
+		assertEquals(edges, graph.edgeCount());
+	}
+	
+	@Test
+	public void updatesPublishANewGraphAndLeaveTheOldOneAlone() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(16, 16, 0.2, 8);
+		GridGraph before = map.getGraph();
+		int cell = firstFree(before);
+		int x = before.x(cell), y = before.y(cell);
+		
+		GridGraph after = map.apply(new MapUpdate(map).block(x, y));
+		assertNotSame(before, after);
+		assertSame(after, map.getGraph());
+		assertEquals(before.getVersion() + 1, after.getVersion());
+		assertEquals(after.getVersion(), map.getVersion());
+		assertFalse(before.isObstacle(cell));
+		assertTrue(after.isObstacle(cell));
+		assertEquals(0, after.getOffsets()[cell + 1] - after.getOffsets()[cell]);
+		assertArrayEquals(new int[] { cell }, map.changedCells(before.getVersion(), after.getVersion()));
+		
+		map.unblock(x, y);
+		assertFalse(map.getGraph().isObstacle(cell));
+		assertEquals(before.getVersion() + 2, map.getVersion());
+		// Blocked and then freed again, the cell is still one that changed in between
+		assertArrayEquals(new int[] { cell }, map.changedCells(before.getVersion(), map.getVersion()));
+		assertEquals(0, map.changedCells(map.getVersion(), map.getVersion()).length);
+	}
+	
+	@Test
+	public void anUpdateThatChangesNothingKeepsTheGraph() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(8, 8, 0.2, 9);
+		GridGraph graph = map.getGraph();
+		int cell = firstFree(graph);
+		map.apply(new MapUpdate(map).set(graph.x(cell), graph.y(cell), false));
+		assertSame(graph, map.getGraph());
+	}
+	
+	@Test
+	public void jumpTableFollowsTheMap() throws InvalidCoordinateException {
+		WorldMap map = WorldMap.random(24, 24, 0.2, 10);
+		assertSame(map.getGraph(), map.getJumpTable().getGraph());
+		int cell = firstFree(map.getGraph());
+		map.block(map.getGraph().x(cell), map.getGraph().y(cell));
+		assertSame(map.getGraph(), map.getJumpTable().getGraph());
+	}
+	
+	private static int firstFree(GridGraph graph) {
+		for (int c = 0; c < graph.size(); c++) {
+			if (!graph.isObstacle(c)) {
+				return c;
+			}
+		}
+		throw new AssertionError("no free cell");
+	}
+	
+}
@@ -0,0 +1,178 @@
+package com.samchatfield.pathfinding.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.Agent;
+import com.samchatfield.pathfinding.MeteredPlanning;
+import com.samchatfield.pathfinding.MultiAgentPlanning;
+import com.samchatfield.pathfinding.benchmark.Scenarios;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * Counters, latency histograms and their export, and the statistics searches record into them
+ * @author Sam
+ */
+public class MetricsTest {
+	
+	@Test
+	public void percentilesAreWithinABucketOfTheTruth() {
+		LatencyHistogram h = new MetricsRegistry().histogram("test_seconds", "Test");
+		assertEquals(0, h.percentile(0.99));
+		Random r = new Random(90);
+		long[] latencies = new long[10000];
+		long sum = 0;
+		for (int i = 0; i < latencies.length; i++) {
+			// Spread over several orders of magnitude, from 1 microsecond to 10 seconds
+			latencies[i] = (long) Math.pow(10, 3 + r.nextDouble() * 7);
+			h.record(latencies[i]);
+			sum += latencies[i];
+		}
+		Arrays.sort(latencies);
+		assertEquals(latencies.length, h.getCount());
+		assertEquals(sum, h.getSum());
+		assertEquals(latencies[latencies.length - 1], h.getMax());
+		for (double q : new double[] { 0.01, 0.5, 0.9, 0.99, 0.999, 1 }) {
+			long truth = latencies[(int) Math.ceil(q * latencies.length) - 1];
+			long p = h.percentile(q);
+			assertTrue(p >= truth && p <= truth * 1.25, q + " percentile is " + p + " but should be " + truth);
+		}
+		assertThrows(IllegalArgumentException.class, () -> h.percentile(1.5));
+	}
+	
+	@Test
+	public void metricsAreLookedUpByName() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Counter c = registry.counter("queries_total", "Queries");
+		assertSame(c, registry.counter("queries_total", "Something else"));
+		assertThrows(IllegalArgumentException.class, () -> registry.histogram("queries_total", "Queries"));
+		assertThrows(IllegalArgumentException.class, () -> registry.counter("2fast", "Bad name"));
+		assertThrows(IllegalArgumentException.class, () -> registry.counter("with space", "Bad name"));
+	}
+	
+	@Test
+	public void countersAddUpAcrossThreads() throws InterruptedException {
+		Counter c = new MetricsRegistry().counter("adds_total", "Adds");
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			pool.execute(() -> {
+				for (int i = 0; i < 100000; i++) {
+					c.increment();
+				}
+				c.add(5);
+			});
+		}
+		pool.shutdown();
+		assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+		assertEquals(8 * 100005, c.get());
+	}
+	
+	@Test
+	public void metricsAreExported() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("b_total", "Bees").add(3);
+		LatencyHistogram h = registry.histogram("a_seconds", "Ays");
+		h.record(1500);
+		h.record(Long.MAX_VALUE / 2);
+		
+		String text = registry.toPrometheus();
+		assertTrue(text.startsWith("# HELP a_seconds Ays\n# TYPE a_seconds histogram\n"), text);
+		assertTrue(text.contains("a_seconds_bucket{le=\"1.0E-6\"} 0\n"), text);
+		assertTrue(text.contains("a_seconds_bucket{le=\"2.0E-6\"} 1\n"), text);
+		assertTrue(text.contains("a_seconds_bucket{le=\"+Inf\"} 2\n"), text);
+		assertTrue(text.contains("a_seconds_count 2\n"), text);
+		assertTrue(text.contains("# TYPE b_total counter\nb_total 3\n"), text);
+		
+		String json = registry.toJson();
+		assertTrue(json.startsWith("{\"counters\":{\"b_total\":3},\"histograms\":{\"a_seconds\":{\"count\":2,"), json);
+	}
+	
+	@Test
+	public void recordersCountEachQueryAfresh() {
+		SearchStats.Recorder rec = new SearchStats.Recorder();
+		rec.expanded();
+		rec.generated(4);
+		rec.generated(2);
+		rec.probed();
+		SearchStats stats = rec.stop();
+		assertEquals(1, stats.getExpansions());
+		assertEquals(2, stats.getGenerated());
+		assertEquals(4, stats.getPeakOpen());
+		assertEquals(1, stats.getReservationProbes());
+		
+		rec.reset();
+		rec.expanded();
+		stats = rec.stop();
+		assertEquals(1, stats.getExpansions());
+		assertEquals(0, stats.getPeakOpen());
+		
+		SearchStats.Recorder plan = SearchStats.Recorder.aggregate();
+		plan.add(stats);
+		plan.add(new SearchStats(2, 3, 7, 4, 100, 0));
+		SearchStats total = plan.stop();
+		assertEquals(3, total.getExpansions());
+		assertEquals(7, total.getPeakOpen());
+		assertEquals(4, total.getReservationProbes());
+		
+		SearchStats both = total.plus(new SearchStats(1, 1, 9, 1, -1, 5));
+		assertEquals(4, both.getExpansions());
+		assertEquals(9, both.getPeakOpen());
+		assertEquals(-1, both.getAllocatedBytes());
+		assertEquals(total.getWallNanos() + 5, both.getWallNanos());
+	}
+	
+	@Test
+	public void allocationIsOnlyMeasuredWhenAskedFor() {
+		boolean was = SearchStats.isAllocationMeasured();
+		try {
+			SearchStats.setAllocationMeasured(false);
+			SearchStats.Recorder rec = new SearchStats.Recorder();
+			assertEquals(-1, rec.stop().getAllocatedBytes());
+			SearchStats.Recorder plan = SearchStats.Recorder.aggregate();
+			plan.add(new SearchStats(0, 0, 0, 0, 100, 0));
+			assertEquals(-1, plan.stop().getAllocatedBytes());
+			
+			SearchStats.setAllocationMeasured(true);
+			rec.reset();
+			ArrayList<long[]> garbage = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				garbage.add(new long[1000]);
+			}
+			long bytes = rec.stop().getAllocatedBytes();
+			// Where the JVM can't count allocation the bytes stay unknown
+			assertTrue(bytes == -1 || bytes >= 100 * 8000, bytes + " bytes for " + garbage.size() + " arrays");
+			plan = SearchStats.Recorder.aggregate();
+			plan.add(new SearchStats(0, 0, 0, 0, 100, 0));
+			plan.add(new SearchStats(0, 0, 0, 0, 50, 0));
+			assertEquals(150, plan.stop().getAllocatedBytes());
+		} finally {
+			SearchStats.setAllocationMeasured(was);
+		}
+	}
+	
+	@Test
+	public void meteredPlansAreRecorded() {
+		MetricsRegistry registry = new MetricsRegistry();
+		WorldMap map = WorldMap.random(20, 20, 0.1, 91);
+		MeteredPlanning planner = new MeteredPlanning(new MultiAgentPlanning(map), registry, "sipp");
+		for (long seed = 0; seed < 3; seed++) {
+			ArrayList<Agent> agents = Scenarios.random(map, 5, seed);
+			planner.computePlan(agents);
+		}
+		assertEquals(3, registry.counter("sipp_calls_total", "").get());
+		assertEquals(3, registry.histogram("sipp_seconds", "").getCount());
+		assertTrue(registry.counter("sipp_expansions_total", "").get() > 0);
+	}
+	
+}
@@ -0,0 +1,261 @@
+package com.samchatfield.pathfinding.server;
+
+import static com.samchatfield.pathfinding.GridChecks.bfs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.samchatfield.pathfinding.BatchPlanner;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+import com.samchatfield.pathfinding.exception.InvalidCoordinateException;
+
+/**
+ * The planning server over real sockets: every request gets exactly one response, with the shortest path or the reason there isn't one
+ * @author Sam
+ */
+public class PlanningServerTest {
+	
+	@Test
+	public void requestsAreAnsweredWithShortestPaths() throws IOException, InvalidCoordinateException {
+		WorldMap map = WorldMap.random(16, 16, 0, 110);
+		// Wall off the corner cell
+		map.block(1, 0);
+		map.block(0, 1);
+		try (PlanningServer server = new PlanningServer(map, 0); Client client = start(server)) {
+			client.request(1, 2, 2, 12, 9);
+			Protocol.Response r = client.response();
+			assertEquals(1, r.getId());
+			assertEquals(Protocol.OK, r.getStatus());
+			int[] points = r.getPoints();
+			assertEquals(2 * (10 + 7 + 1), points.length);
+			assertEquals(2, points[0]);
+			assertEquals(9, points[points.length - 1]);
+			
+			client.request(2, 5, 5, 0, 0);
+			assertEquals(Protocol.NO_PATH, client.response().getStatus());
+			client.request(3, 5, 5, 16, 0);
+			r = client.response();
+			assertEquals(3, r.getId());
+			assertEquals(Protocol.BAD_REQUEST, r.getStatus());
+			assertEquals(0, r.getPoints().length);
+		}
+	}
+	
+	@Test
+	public void clientsCanPipelineRequests() throws Exception {
+		WorldMap map = WorldMap.random(48, 48, 0.25, 111);
+		GridGraph graph = map.getGraph();
+		try (PlanningServer server = new PlanningServer(map, 0)) {
+			server.start();
+			Thread[] clients = new Thread[6];
+			Throwable[] failures = new Throwable[clients.length];
+			for (int c = 0; c < clients.length; c++) {
+				int seed = c;
+				clients[c] = new Thread(() -> {
+					try (Client client = new Client(server.getPort())) {
+						pipeline(graph, client, new Random(seed), 400);
+					} catch (Throwable e) {
+						failures[seed] = e;
+					}
+				});
+				clients[c].start();
+			}
+			for (int c = 0; c < clients.length; c++) {
+				clients[c].join();
+				if (failures[c] != null) {
+					throw new AssertionError("client " + c + " failed", failures[c]);
+				}
+			}
+			assertEquals(6 * 400, server.getPlanned());
+			assertTrue(server.getRounds() < server.getPlanned(), "every request was planned on its own");
+		}
+	}
+	
+	@Test
+	public void aFullQueueTurnsRequestsAway() throws Exception {
+		WorldMap map = WorldMap.random(8, 8, 0, 112);
+		CountDownLatch planning = new CountDownLatch(1), release = new CountDownLatch(1);
+		// Holds up the first round until the test lets it go
+		Executor held = task -> ForkJoinPool.commonPool().execute(() -> {
+			planning.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			task.run();
+		});
+		BatchPlanner planner = new BatchPlanner(map, held, null, BatchPlanner.DEFAULT_CHUNK_SIZE);
+		try (PlanningServer server = new PlanningServer(map, 0, planner, 1, 4, PlanningServer.DEFAULT_OUTBOX_CAPACITY);
+				Client client = start(server)) {
+			client.request(1, 0, 0, 7, 7);
+			assertTrue(planning.await(10, TimeUnit.SECONDS));
+			client.request(2, 0, 0, 7, 6);
+			client.request(3, 0, 0, 7, 5);
+			Protocol.Response r = client.response();
+			assertEquals(3, r.getId());
+			assertEquals(Protocol.BUSY, r.getStatus());
+			
+			release.countDown();
+			assertEquals(1, client.response().getId());
+			assertEquals(2, client.response().getId());
+			assertEquals(1, server.getRejected());
+		}
+	}
+	
+	@Test
+	public void aFailedRoundIsAnsweredWithErrorsAndPlanningCarriesOn() throws Exception {
+		WorldMap map = WorldMap.random(8, 8, 0, 114);
+		// Fails its first round only
+		BatchPlanner planner = new BatchPlanner(map) {
+			private boolean failed;
+			
+			@Override
+			public List<Result> plan(int[] starts, int[] goals) {
+				if (!failed) {
+					failed = true;
+					throw new IllegalStateException("planning failed");
+				}
+				return super.plan(starts, goals);
+			}
+		};
+		try (PlanningServer server = new PlanningServer(map, 0, planner, PlanningServer.DEFAULT_QUEUE_CAPACITY, 1,
+				PlanningServer.DEFAULT_OUTBOX_CAPACITY); Client client = start(server)) {
+			client.request(1, 0, 0, 7, 7);
+			Protocol.Response r = client.response();
+			assertEquals(1, r.getId());
+			assertEquals(Protocol.ERROR, r.getStatus());
+			assertEquals(0, r.getPoints().length);
+			
+			client.request(2, 0, 0, 7, 7);
+			r = client.response();
+			assertEquals(2, r.getId());
+			assertEquals(Protocol.OK, r.getStatus());
+			assertEquals(1, server.getFailed());
+		}
+	}
+	
+	@Test
+	public void aClientThatStopsReadingIsHeldBackWithoutHoldingUpOthers() throws Exception {
+		WorldMap map = WorldMap.random(128, 128, 0, 113);
+		BatchPlanner planner = new BatchPlanner(map);
+		int requests = 1000000;
+		try (PlanningServer server = new PlanningServer(map, 0, planner, PlanningServer.DEFAULT_QUEUE_CAPACITY, 64, 16);
+				Client other = start(server); Client stalled = new Client(server.getPort())) {
+			// Long paths, so the socket's buffers fill up long before the client runs out of requests
+			Thread sender = new Thread(() -> {
+				try {
+					for (int i = 0; i < requests; i++) {
+						stalled.request(i, 0, 0, 127, 127);
+					}
+				} catch (IOException e) {
+					// Closed while it was held back
+				}
+			});
+			sender.setDaemon(true);
+			sender.start();
+			
+			// Wait for planning to stop while the client is still sending
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30), planned = -1;
+			for (int still = 0; still < 5 && System.nanoTime() < deadline; Thread.sleep(100)) {
+				long now = server.getPlanned();
+				still = now == planned ? still + 1 : 0;
+				planned = now;
+			}
+			assertTrue(sender.isAlive(), "the client was never held back");
+			assertTrue(planned < requests, "every request was planned");
+			assertEquals(0, server.getRejected());
+			
+			other.request(7, 0, 0, 3, 4);
+			Protocol.Response r = other.response();
+			assertEquals(7, r.getId());
+			assertEquals(Protocol.OK, r.getStatus());
+			assertEquals(2 * 8, r.getPoints().length);
+			assertEquals(planned + 1, server.getPlanned());
+			
+			stalled.close();
+			sender.join(TimeUnit.SECONDS.toMillis(30));
+			assertTrue(!sender.isAlive());
+		}
+	}
+	
+	/**
+	 * Send all of a client's requests before reading any of the responses, then check each has its own shortest path
+	 */
+	private static void pipeline(GridGraph graph, Client client, Random r, int requests) throws IOException {
+		int[] starts = new int[requests], goals = new int[requests];
+		for (int i = 0; i < requests; i++) {
+			starts[i] = r.nextInt(graph.size());
+			goals[i] = r.nextInt(graph.size());
+			client.request(i, graph.x(starts[i]), graph.y(starts[i]), graph.x(goals[i]), graph.y(goals[i]));
+		}
+		boolean[] answered = new boolean[requests];
+		for (int k = 0; k < requests; k++) {
+			Protocol.Response response = client.response();
+			int i = response.getId();
+			assertTrue(!answered[i], "request " + i + " answered twice");
+			answered[i] = true;
+			int shortest = graph.isObstacle(starts[i]) || graph.isObstacle(goals[i]) ? -1 : bfs(graph, starts[i])[goals[i]];
+			if (shortest < 0) {
+				assertEquals(Protocol.NO_PATH, response.getStatus());
+			} else {
+				assertEquals(Protocol.OK, response.getStatus());
+				assertEquals(2 * (shortest + 1), response.getPoints().length);
+			}
+		}
+	}
+	
+	private static Client start(PlanningServer server) throws IOException {
+		server.start();
+		return new Client(server.getPort());
+	}
+	
+	/**
+	 * A client of the server on the loopback interface
+	 */
+	private static final class Client implements AutoCloseable {
+		
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+		
+		Client(int port) throws IOException {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+			socket.setSoTimeout(30000);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+		
+		void request(int id, int sx, int sy, int gx, int gy) throws IOException {
+			Protocol.writeRequest(out, id, sx, sy, gx, gy);
+			out.flush();
+		}
+		
+		Protocol.Response response() throws IOException {
+			return Protocol.readResponse(in);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+		
+	}
+	
+}
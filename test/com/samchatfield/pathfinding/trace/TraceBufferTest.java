@@ -0,0 +1,108 @@
+package com.samchatfield.pathfinding.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.samchatfield.pathfinding.AStar;
+import com.samchatfield.pathfinding.data.GridGraph;
+import com.samchatfield.pathfinding.data.WorldMap;
+
+/**
+ * The ring buffer of search events: what a search records in it, what's kept once it wraps round and how it's written out
+ * @author Sam
+ */
+public class TraceBufferTest {
+	
+	@TempDir
+	Path dir;
+	
+	@Test
+	public void aSearchIsRecordedEventByEvent() throws IOException {
+		WorldMap map = WorldMap.random(6, 4, 0, 100);
+		GridGraph graph = map.getGraph();
+		TraceBuffer trace = new TraceBuffer(graph, 1024);
+		assertNull(trace.searchMap());
+		AStar astar = new AStar(map);
+		astar.setListener(trace);
+		astar.pathfind(graph.id(0, 0), graph.id(5, 3));
+		
+		long expansions = astar.getStats().getExpansions();
+		long generated = astar.getStats().getGenerated();
+		assertEquals(expansions + generated + 2, trace.getRecorded());
+		assertEquals(0, trace.getOverwritten());
+		
+		Path file = dir.resolve("trace.csv");
+		assertEquals(trace.getRecorded(), trace.dump(file));
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals("position,thread,event,x,y,g,f", lines.get(0));
+		assertTrue(lines.get(1).matches("0,\\d+,start,0,0," + graph.id(5, 3) + ",0"), lines.get(1));
+		assertTrue(lines.get(lines.size() - 1).matches("\\d+,\\d+,finish,5,3,8,0"), lines.get(lines.size() - 1));
+		assertEquals(expansions, lines.stream().filter(l -> l.contains(",expand,")).count());
+		
+		// North is at the top, so the goal is on the first line and the start on the last
+		String[] rows = trace.searchMap().split("\n");
+		assertEquals(4, rows.length);
+		assertTrue(rows[0].endsWith(" @"), rows[0]);
+		assertTrue(rows[3].startsWith(" S"), rows[3]);
+	}
+	
+	@Test
+	public void onlyTheNewestEventsAreKept() throws IOException {
+		GridGraph graph = WorldMap.random(4, 4, 0, 101).getGraph();
+		// Rounded up to 8
+		TraceBuffer trace = new TraceBuffer(graph, 5);
+		for (int i = 0; i < 20; i++) {
+			trace.generated(i % 16, i, i);
+		}
+		assertEquals(20, trace.getRecorded());
+		assertEquals(12, trace.getOverwritten());
+		Path file = dir.resolve("newest.csv");
+		assertEquals(8, trace.dump(file));
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertTrue(lines.get(1).startsWith("12,"), lines.get(1));
+		assertTrue(lines.get(8).startsWith("19,"), lines.get(8));
+		assertThrows(IllegalArgumentException.class, () -> new TraceBuffer(graph, 0));
+	}
+	
+	@Test
+	public void threadsShareOneBuffer() throws Exception {
+		GridGraph graph = WorldMap.random(100, 1, 0, 102).getGraph();
+		TraceBuffer trace = new TraceBuffer(graph, 1 << 12);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					trace.expanded(i % 100, i, i);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(80000, trace.getRecorded());
+		// A slot can be left with an event older than its position by a thread that was overtaken while writing it, and that slot is
+		// skipped, but every event read back is a whole one
+		Path file = dir.resolve("threads.csv");
+		int dumped = trace.dump(file);
+		assertTrue(dumped > (1 << 11) && dumped <= 1 << 12, dumped + " events dumped");
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8).subList(1, dumped + 1)) {
+			String[] columns = line.split(",");
+			assertEquals("expand", columns[2]);
+			assertEquals(columns[5], columns[6], line);
+			assertEquals(Integer.parseInt(columns[5]) % 100, Integer.parseInt(columns[3]), line);
+		}
+	}
+	
+}